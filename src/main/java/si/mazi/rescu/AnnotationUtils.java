@@ -36,18 +36,6 @@ public final class AnnotationUtils {
         throw new InstantiationException("This class is not for instantiation");
     }
 
-    static <T extends Annotation> String getValueOrNull(Class<T> annotationClass, Annotation ann) {
-
-        if (!annotationClass.isInstance(ann)) {
-            return null;
-        }
-        try {
-            return (String) ann.annotationType().getMethod("value").invoke(ann);
-        } catch (Exception e) {
-            throw new RuntimeException("Can't access element 'value' in  " + annotationClass + ". This is probably a bug in rescu.", e);
-        }
-    }
-
     static <A extends Annotation> A getFromMethodOrClass(Method method, Class<A> annotationClass) {
 
         A methodAnn = method.getAnnotation(annotationClass);
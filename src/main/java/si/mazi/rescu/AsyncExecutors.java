@@ -0,0 +1,103 @@
+package si.mazi.rescu;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The default executors for asynchronous invocations, and a scheduler for delaying them. Each is created on first use.
+ */
+final class AsyncExecutors {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncExecutors.class);
+
+    private AsyncExecutors() throws InstantiationException {
+        throw new InstantiationException("This class is not for instantiation");
+    }
+
+    static Executor forConfig(ClientConfig config) {
+        if (config.getAsyncExecutor() != null) {
+            return config.getAsyncExecutor();
+        }
+        if (config.getExecutionMode() == ExecutionMode.VIRTUAL_THREADS) {
+            if (VirtualThreads.INSTANCE != null) {
+                return VirtualThreads.INSTANCE;
+            }
+            log.warn("Virtual threads are not supported on Java {}; using platform threads.", System.getProperty("java.version"));
+        }
+        return PlatformThreads.INSTANCE;
+    }
+
+    /**
+     * Runs the task on the executor after the delay. The delay is kept by a single shared daemon thread that only
+     * hands tasks over, so delayed tasks never run on it.
+     */
+    static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit, Executor executor) {
+        return Scheduler.INSTANCE.schedule(() -> executor.execute(task), delay, unit);
+    }
+
+    static boolean isVirtualThreadsSupported() {
+        return VirtualThreads.INSTANCE != null;
+    }
+
+    /**
+     * At most {@link #MAX_THREADS} daemon threads, which end when idle for a minute; further tasks wait in a queue.
+     */
+    private static final class PlatformThreads {
+        static final int MAX_THREADS = 64;
+
+        private static final AtomicInteger threadCount = new AtomicInteger();
+
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "rescu-async-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.allowCoreThreadTimeOut(true);
+            return executor;
+        }
+    }
+
+    private static final class Scheduler {
+        static final ScheduledExecutorService INSTANCE = create();
+
+        private static ScheduledExecutorService create() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "rescu-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // Timeouts are mostly cancelled long before they're due.
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+    }
+
+    /**
+     * Looked up reflectively so that the library still compiles for and runs on Java 8.
+     */
+    private static final class VirtualThreads {
+        static final Executor INSTANCE = create();
+
+        private static Executor create() {
+            try {
+                return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // Not available, or still a preview feature on this JVM.
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package si.mazi.rescu;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A response that has been read off the connection, so it may be read again, or by several invocations at once: it's
+ * immutable, and each call of {@link #getBody()} returns a new stream. The body is kept as it was received (eg. still
+ * gzipped).
+ */
+final class BufferedResponse implements HttpTransportResponse {
+
+    private final int statusCode;
+    private final Map<String, List<String>> headers;
+    private final byte[] body;
+
+    private BufferedResponse(int statusCode, Map<String, List<String>> headers, byte[] body) {
+        this.statusCode = statusCode;
+        this.headers = headers;
+        this.body = body;
+    }
+
+    /**
+     * Reads the whole response and releases its connection.
+     */
+    static BufferedResponse read(HttpTransportResponse response) throws IOException {
+        if (response instanceof BufferedResponse) {
+            return (BufferedResponse) response;
+        }
+        int statusCode = response.getStatusCode();
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : response.getHeaderFields().entrySet()) {
+            headers.put(header.getKey(), Collections.unmodifiableList(new ArrayList<>(header.getValue())));
+        }
+        InputStream in = response.getBody();
+        byte[] body = null;
+        if (in != null) {
+            try {
+                body = HttpStreams.readFully(in, -1);
+            } finally {
+                HttpStreams.drainAndClose(in);
+            }
+        }
+        return new BufferedResponse(statusCode, Collections.unmodifiableMap(headers), body);
+    }
+
+    @Override
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        return headers;
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public InputStream getBody() {
+        return body == null ? null : new ByteArrayInputStream(body);
+    }
+}
@@ -0,0 +1,35 @@
+package si.mazi.rescu;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Lets the responses of a GET method be kept in the {@link ResponseCache} set with
+ * {@link ClientConfig#setResponseCache(ResponseCache)}. May be put on a method or on the rest interface, where it
+ * applies to the GET methods only.
+ * </p>
+ * <p>
+ * Responses are kept for as long as their {@code Cache-Control: max-age} says, or for {@link #maxAge()} if they don't
+ * say; {@code no-store} responses aren't kept. A response that is no longer fresh but has an {@code ETag} or a
+ * {@code Last-Modified} header is revalidated with a conditional request, and reused if the server answers
+ * {@code 304 Not Modified}.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Cacheable {
+
+    /**
+     * @return for how long a response without a {@code Cache-Control: max-age} is fresh; 0 (the default) means it's
+     * revalidated every time, if it can be
+     */
+    long maxAge() default 0;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+}
@@ -0,0 +1,146 @@
+package si.mazi.rescu;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * <p>
+ * The parts of a complete request that signatures are usually computed from, as they are sent. The body is the array
+ * that is sent, so signing it needs no copying or re-serialization; derived parts (eg. the sorted query string) are
+ * computed once, on first use.
+ * </p>
+ * <p>
+ * Eg. a signer for an API that signs {@code timestamp + method + path?query + body}:
+ * </p>
+ * <pre>
+ * request -&gt; RequestSignature.of().header("X-SIGN", hmacSigner.sign(HmacSigner.Encoding.HEX,
+ *         CanonicalRequest.utf8(timestamp + request.getMethod() + request.getPathAndQuery()), request.getBody()))
+ * </pre>
+ */
+public final class CanonicalRequest {
+
+    private static final byte[] NO_BODY = new byte[0];
+
+    /** Orders query params by name; the sort is stable, so params with the same name keep their order. */
+    private static final Comparator<String> BY_PARAM_NAME = Comparator.comparing(param -> {
+        int eq = param.indexOf('=');
+        return eq == -1 ? param : param.substring(0, eq);
+    });
+
+    private final RestInvocation invocation;
+    private final String invocationUrl;
+    private final String queryString;
+
+    private String urlPath;
+    private String sortedQueryString;
+
+    /**
+     * The url is taken as it is before signing: query params added by the signature don't change it.
+     */
+    CanonicalRequest(RestInvocation invocation) {
+        this.invocation = invocation;
+        this.invocationUrl = invocation.getInvocationUrl();
+        this.queryString = invocation.getQueryString() == null ? "" : invocation.getQueryString();
+    }
+
+    /**
+     * @return the HTTP method, eg. GET
+     */
+    public String getMethod() {
+        return invocation.getHttpMethod();
+    }
+
+    /**
+     * @return the path of the invocation url, starting with a slash, eg. {@code /api/v1/order}; unlike
+     * {@link RestInvocation#getPath()} this includes the path of the base url
+     */
+    public String getUrlPath() {
+        if (urlPath == null) {
+            String url = invocationUrl;
+            int scheme = url.indexOf("://");
+            int start = url.indexOf('/', scheme == -1 ? 0 : scheme + 3);
+            int end = url.indexOf('?');
+            if (end == -1) {
+                end = url.length();
+            }
+            urlPath = start == -1 || start >= end ? "/" : url.substring(start, end);
+        }
+        return urlPath;
+    }
+
+    /**
+     * @return the url-encoded query string as it is sent, without the '?'; empty if there's none
+     */
+    public String getQueryString() {
+        return queryString;
+    }
+
+    /**
+     * @return the query string with the params sorted by name
+     */
+    public String getSortedQueryString() {
+        if (sortedQueryString == null) {
+            String queryString = getQueryString();
+            if (queryString.indexOf('&') == -1) {
+                sortedQueryString = queryString;
+            } else {
+                String[] params = queryString.split("&");
+                Arrays.sort(params, BY_PARAM_NAME);
+                sortedQueryString = String.join("&", params);
+            }
+        }
+        return sortedQueryString;
+    }
+
+    /**
+     * @return the url path followed by '?' and the query string if there is one, eg. {@code /api/v1/order?id=1}
+     */
+    public String getPathAndQuery() {
+        String queryString = getQueryString();
+        return queryString.isEmpty() ? getUrlPath() : getUrlPath() + '?' + queryString;
+    }
+
+    /**
+     * @return the body as it is sent; an empty array if there's none. Must not be modified.
+     */
+    public byte[] getBody() {
+        byte[] body = invocation.getRequestBodyBytes();
+        return body == null ? NO_BODY : body;
+    }
+
+    /**
+     * @return the body as it is sent; empty if there's none
+     */
+    public String getBodyAsString() {
+        String body = invocation.getRequestBody();
+        return body == null ? "" : body;
+    }
+
+    /**
+     * @return the value of the header (case-insensitive), or null if it's not set
+     */
+    public String getHeader(String name) {
+        for (Map.Entry<String, String> header : invocation.getHttpHeaders().entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the invocation, for anything else
+     */
+    public RestInvocation getInvocation() {
+        return invocation;
+    }
+
+    /**
+     * @return the part encoded as UTF-8, eg. for {@link HmacSigner#sign(HmacSigner.Encoding, byte[]...)}
+     */
+    public static byte[] utf8(String part) {
+        return part.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,59 @@
+package si.mazi.rescu;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Sets how the {@link CircuitBreaker} treats the calls of a method, or of all the methods of a rest interface. Without
+ * a breaker set with {@link ClientConfig#setCircuitBreaker(CircuitBreaker)}, only the methods with this annotation go
+ * through one, with the default settings.
+ * </p>
+ * <p>
+ * By default, all the calls to a base url share its circuit. A method that fails or slows down on its own (eg. a
+ * heavy history download) can have its own circuit, with its own thresholds, so that it doesn't cut off the rest:
+ * </p>
+ * <pre>
+ * &#64;GET &#64;Path("trades") &#64;Circuit(perMethod = true, slowCallDuration = 30, unit = TimeUnit.SECONDS)
+ * List&lt;Trade&gt; getTradeHistory(...);
+ *
+ * &#64;DELETE &#64;Path("order") &#64;Circuit(enabled = false) // always attempted
+ * void cancelOrder(...);
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Circuit {
+
+    /**
+     * @return whether the calls go through the circuit breaker
+     */
+    boolean enabled() default true;
+
+    /**
+     * @return whether the method has a circuit of its own (per base url) rather than sharing the base url's
+     */
+    boolean perMethod() default false;
+
+    /**
+     * @return the failure rate at which the method's own circuit opens; 0 (the default) means the breaker's
+     */
+    double failureRateThreshold() default 0;
+
+    /**
+     * @return the slow call rate at which the method's own circuit opens; 0 (the default) means the breaker's
+     */
+    double slowCallRateThreshold() default 0;
+
+    /**
+     * @return the response time from which a call of the method counts as slow; 0 (the default) means the breaker's
+     */
+    long slowCallDuration() default 0;
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
@@ -0,0 +1,502 @@
+package si.mazi.rescu;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Stops calling a server that is failing or slow, so that callers don't pile up waiting for timeouts. Each circuit
+ * (by default one per base url, see {@link Circuit#perMethod()}) keeps the outcomes of its last
+ * {@link #setSlidingWindow(int, int) calls}. When too many of them failed (the request couldn't be sent or no response
+ * arrived, or the response status was 5xx) or were slow, the circuit opens: calls fail immediately with a
+ * {@link CircuitBreakerOpenException} for {@link #setOpenDuration(long, TimeUnit) a while}. Then it's half-open: a
+ * few probe calls are let through, and depending on how they go, the circuit closes again or opens for another while.
+ * </p>
+ * <p>
+ * Set it with {@link ClientConfig#setCircuitBreaker(CircuitBreaker)}; share one between proxies that call the same
+ * servers. State changes are reported to {@link #addListener(Listener) listeners}, and the current state and rates of
+ * each circuit are in {@link #getStats()}.
+ * </p>
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private volatile double failureRateThreshold = 0.5;
+    private volatile double slowCallRateThreshold = 0.8;
+    private volatile long slowCallDurationNanos = TimeUnit.SECONDS.toNanos(10);
+    private volatile int windowSize = 100;
+    private volatile int minimumCalls = 20;
+    private volatile long openNanos = TimeUnit.SECONDS.toNanos(30);
+    private volatile int probes = 3;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentMap<String, CircuitState> circuits = new ConcurrentHashMap<>();
+
+    /**
+     * @param failureRateThreshold the share of failed calls at which a circuit opens; between 0 and 1
+     */
+    public void setFailureRateThreshold(double failureRateThreshold) {
+        this.failureRateThreshold = checkRate(failureRateThreshold);
+    }
+
+    /**
+     * @param slowCallRateThreshold the share of slow calls at which a circuit opens; between 0 and 1
+     * @param slowCallDuration the response time from which a call counts as slow
+     */
+    public void setSlowCallRateThreshold(double slowCallRateThreshold, long slowCallDuration, TimeUnit unit) {
+        if (slowCallDuration <= 0) {
+            throw new IllegalArgumentException("Invalid slowCallDuration: " + slowCallDuration);
+        }
+        this.slowCallRateThreshold = checkRate(slowCallRateThreshold);
+        this.slowCallDurationNanos = unit.toNanos(slowCallDuration);
+    }
+
+    /**
+     * @param size the number of recent calls per circuit whose outcomes are kept; applies to circuits created later
+     * @param minimumCalls the number of calls needed before a circuit may open
+     */
+    public void setSlidingWindow(int size, int minimumCalls) {
+        if (minimumCalls < 1 || size < minimumCalls) {
+            throw new IllegalArgumentException(String.format("Invalid sliding window: size %d, min. calls %d", size, minimumCalls));
+        }
+        this.windowSize = size;
+        this.minimumCalls = minimumCalls;
+    }
+
+    /**
+     * @param openDuration how long an open circuit rejects calls before it lets probe calls through
+     */
+    public void setOpenDuration(long openDuration, TimeUnit unit) {
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    /**
+     * @param probes the number of calls let through a half-open circuit; the circuit closes if their failure and slow
+     * call rates are below the thresholds
+     */
+    public void setHalfOpenProbes(int probes) {
+        if (probes < 1) {
+            throw new IllegalArgumentException("probes must be at least 1: " + probes);
+        }
+        this.probes = probes;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return the state, recent failure and slow call rates and rejected calls per circuit
+     */
+    public Map<String, Stats> getStats() {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        for (CircuitState circuit : circuits.values()) {
+            stats.put(circuit.name, circuit.getStats());
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * @param circuit the base url, or for a method with its own circuit, the base url, a space and the interface and
+     * method name, eg. {@code https://api.example.com com.example.Exchange#getTrades}
+     * @return the circuit's state etc.; a closed circuit without calls if no calls went through it yet
+     */
+    public Stats getStats(String circuit) {
+        CircuitState state = circuits.get(circuit);
+        return state == null ? new Stats(State.CLOSED, 0, 0, 0, 0) : state.getStats();
+    }
+
+    /**
+     * Resolves whether and how calls of the method go through the breaker.
+     *
+     * @param enabledByDefault whether methods without {@link Circuit} go through it
+     * @return the method's circuit settings, or null if its calls don't go through the breaker
+     */
+    Plan resolvePlan(Class<?> restInterface, Method method, boolean enabledByDefault) {
+        Circuit circuit = AnnotationUtils.getFromMethodOrClass(method, Circuit.class);
+        if (circuit == null) {
+            return enabledByDefault ? new Plan(null, 0, 0, 0) : null;
+        }
+        if (!circuit.enabled()) {
+            return null;
+        }
+        boolean ownThresholds = circuit.failureRateThreshold() != 0 || circuit.slowCallRateThreshold() != 0 || circuit.slowCallDuration() != 0;
+        if (ownThresholds && !circuit.perMethod()) {
+            throw new IllegalArgumentException("Only a circuit of its own can have the thresholds of " + method);
+        }
+        if (circuit.failureRateThreshold() < 0 || circuit.failureRateThreshold() > 1
+                || circuit.slowCallRateThreshold() < 0 || circuit.slowCallRateThreshold() > 1 || circuit.slowCallDuration() < 0) {
+            throw new IllegalArgumentException("Invalid circuit thresholds of " + method);
+        }
+        return new Plan(circuit.perMethod() ? restInterface.getName() + '#' + method.getName() : null,
+                circuit.failureRateThreshold(), circuit.slowCallRateThreshold(), circuit.unit().toNanos(circuit.slowCallDuration()));
+    }
+
+    private static double checkRate(double rate) {
+        if (rate <= 0 || rate > 1) {
+            throw new IllegalArgumentException("The rate must be between 0 and 1: " + rate);
+        }
+        return rate;
+    }
+
+    /**
+     * Failures on the client side, eg. a rate limit, say nothing about the server.
+     */
+    private static boolean isClientSide(IOException e) {
+        return e instanceof RateLimitExceededException || e instanceof ConcurrencyLimitExceededException
+                || e instanceof CircuitBreakerOpenException || e instanceof DeadlineExceededException;
+    }
+
+    /**
+     * The circuit settings of a method.
+     */
+    final class Plan {
+        /** The interface and method name if the method has a circuit of its own, otherwise null. */
+        private final String methodName;
+        private final double failureRateThreshold;
+        private final double slowCallRateThreshold;
+        private final long slowCallDurationNanos;
+
+        private Plan(String methodName, double failureRateThreshold, double slowCallRateThreshold, long slowCallDurationNanos) {
+            this.methodName = methodName;
+            this.failureRateThreshold = failureRateThreshold;
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            this.slowCallDurationNanos = slowCallDurationNanos;
+        }
+
+        /**
+         * Sends the invocation unless its circuit is open, and records how it went.
+         */
+        HttpTransportResponse send(RestInvocation invocation, HttpSender sender) throws IOException {
+            CircuitState circuit = getCircuit(invocation.getBaseUrl());
+            long generation = circuit.acquire();
+            long start = System.nanoTime();
+            try {
+                HttpTransportResponse response = sender.send(invocation);
+                circuit.record(generation, response.getStatusCode() >= 500, getCallNanos(invocation, start));
+                return response;
+            } catch (IOException e) {
+                if (isClientSide(e)) {
+                    circuit.release(generation);
+                } else {
+                    circuit.record(generation, true, getCallNanos(invocation, start));
+                }
+                throw e;
+            } catch (RuntimeException | Error e) {
+                circuit.release(generation);
+                throw e;
+            }
+        }
+
+        /**
+         * Sends the invocation asynchronously unless its circuit is open, and records how it went.
+         */
+        CompletableFuture<HttpTransportResponse> sendAsync(RestInvocation invocation, Function<RestInvocation, CompletableFuture<HttpTransportResponse>> sender) {
+            CircuitState circuit = getCircuit(invocation.getBaseUrl());
+            long generation;
+            try {
+                generation = circuit.acquire();
+            } catch (CircuitBreakerOpenException e) {
+                CompletableFuture<HttpTransportResponse> rejected = new CompletableFuture<>();
+                rejected.completeExceptionally(e);
+                return rejected;
+            }
+            long start = System.nanoTime();
+            CompletableFuture<HttpTransportResponse> response;
+            try {
+                response = sender.apply(invocation);
+            } catch (RuntimeException | Error e) {
+                circuit.release(generation);
+                throw e;
+            }
+            return response.whenComplete((r, failure) -> {
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                if (cause == null) {
+                    try {
+                        circuit.record(generation, r.getStatusCode() >= 500, getCallNanos(invocation, start));
+                    } catch (IOException e) {
+                        circuit.record(generation, true, getCallNanos(invocation, start));
+                    }
+                } else if (cause instanceof IOException && !isClientSide((IOException) cause)) {
+                    circuit.record(generation, true, getCallNanos(invocation, start));
+                } else {
+                    circuit.release(generation);
+                }
+            });
+        }
+
+        /**
+         * @return how long the call took since the start, without the time it waited for a free slot of the
+         * concurrency limiter, which says nothing about the server
+         */
+        private long getCallNanos(RestInvocation invocation, long start) {
+            return System.nanoTime() - start - invocation.getQueueWait(TimeUnit.NANOSECONDS);
+        }
+
+        private CircuitState getCircuit(String baseUrl) {
+            String name = methodName == null ? baseUrl : baseUrl + ' ' + methodName;
+            CircuitState circuit = circuits.get(name);
+            return circuit != null ? circuit : circuits.computeIfAbsent(name, n -> new CircuitState(n, this));
+        }
+    }
+
+    /**
+     * The state of one circuit, and the outcomes of its recent calls.
+     */
+    private final class CircuitState {
+        private final String name;
+        private final Plan plan;
+        private final Lock lock = new ReentrantLock();
+
+        /** The outcomes of the recent calls in a ring, as FAILED and SLOW flags. */
+        private final byte[] outcomes;
+        private int next;
+        private int calls;
+        private int failures;
+        private int slowCalls;
+
+        private State state = State.CLOSED;
+        /** Changes with the state, so that calls started in an earlier state don't count in the current one. */
+        private long generation;
+        private long openedAt;
+        private int probesLeft;
+        private int probeCalls;
+        private int probeFailures;
+        private int probeSlowCalls;
+        private long rejected;
+
+        private CircuitState(String name, Plan plan) {
+            this.name = name;
+            this.plan = plan;
+            this.outcomes = new byte[windowSize];
+        }
+
+        /**
+         * @return the generation of the state in which the call is let through
+         * @throws CircuitBreakerOpenException if the circuit is open, or half-open and all the probes were let through
+         */
+        private long acquire() throws CircuitBreakerOpenException {
+            State from = null;
+            lock.lock();
+            try {
+                if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+                    from = transition(State.HALF_OPEN);
+                }
+                if (state == State.OPEN || state == State.HALF_OPEN && probesLeft == 0) {
+                    rejected++;
+                    throw new CircuitBreakerOpenException("The circuit of " + name + " is " + (state == State.OPEN ? "open" : "half-open and probing"));
+                }
+                if (state == State.HALF_OPEN) {
+                    probesLeft--;
+                }
+                return generation;
+            } finally {
+                lock.unlock();
+                notifyListeners(from, State.HALF_OPEN);
+            }
+        }
+
+        /**
+         * A call that was let through didn't reach the server, eg. because of a client-side limit.
+         */
+        private void release(long generation) {
+            lock.lock();
+            try {
+                if (generation == this.generation && state == State.HALF_OPEN) {
+                    probesLeft++;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void record(long generation, boolean failed, long durationNanos) {
+            boolean slow = durationNanos >= (plan.slowCallDurationNanos > 0 ? plan.slowCallDurationNanos : slowCallDurationNanos);
+            double failureThreshold = plan.failureRateThreshold > 0 ? plan.failureRateThreshold : failureRateThreshold;
+            double slowThreshold = plan.slowCallRateThreshold > 0 ? plan.slowCallRateThreshold : slowCallRateThreshold;
+            State from = null;
+            State to = null;
+            lock.lock();
+            try {
+                if (generation != this.generation) {
+                    return;
+                }
+                if (state == State.CLOSED) {
+                    add((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+                    if (calls >= minimumCalls && (failures >= failureThreshold * calls || slowCalls >= slowThreshold * calls)) {
+                        to = State.OPEN;
+                    }
+                } else if (state == State.HALF_OPEN) {
+                    probeCalls++;
+                    probeFailures += failed ? 1 : 0;
+                    probeSlowCalls += slow ? 1 : 0;
+                    if (probeCalls >= probes) {
+                        boolean healthy = probeFailures < failureThreshold * probeCalls && probeSlowCalls < slowThreshold * probeCalls;
+                        to = healthy ? State.CLOSED : State.OPEN;
+                    }
+                }
+                if (to != null) {
+                    from = transition(to);
+                }
+            } finally {
+                lock.unlock();
+                notifyListeners(from, to);
+            }
+        }
+
+        private void add(byte outcome) {
+            if (calls == outcomes.length) {
+                byte evicted = outcomes[next];
+                failures -= (evicted & FAILED) != 0 ? 1 : 0;
+                slowCalls -= (evicted & SLOW) != 0 ? 1 : 0;
+            } else {
+                calls++;
+            }
+            outcomes[next] = outcome;
+            next = (next + 1) % outcomes.length;
+            failures += (outcome & FAILED) != 0 ? 1 : 0;
+            slowCalls += (outcome & SLOW) != 0 ? 1 : 0;
+        }
+
+        /**
+         * @return the previous state
+         */
+        private State transition(State to) {
+            State from = state;
+            state = to;
+            generation++;
+            if (to == State.OPEN) {
+                openedAt = System.nanoTime();
+                log.warn("Opening the circuit of {} for {} ms: {} of {} calls failed, {} were slow{}", name, TimeUnit.NANOSECONDS.toMillis(openNanos),
+                        from == State.HALF_OPEN ? probeFailures : failures, from == State.HALF_OPEN ? probeCalls : calls,
+                        from == State.HALF_OPEN ? probeSlowCalls : slowCalls, from == State.HALF_OPEN ? " while probing" : "");
+            } else {
+                log.info("The circuit of {} is {}", name, to == State.CLOSED ? "closed again" : "half-open");
+            }
+            if (to == State.HALF_OPEN) {
+                probesLeft = probes;
+                probeCalls = 0;
+                probeFailures = 0;
+                probeSlowCalls = 0;
+            }
+            if (to == State.CLOSED) {
+                next = 0;
+                calls = 0;
+                failures = 0;
+                slowCalls = 0;
+            }
+            return from;
+        }
+
+        private void notifyListeners(State from, State to) {
+            if (from == null) {
+                return;
+            }
+            for (Listener listener : listeners) {
+                try {
+                    listener.onStateChange(name, from, to);
+                } catch (RuntimeException e) {
+                    log.warn("Circuit breaker listener failed", e);
+                }
+            }
+        }
+
+        private Stats getStats() {
+            lock.lock();
+            try {
+                return new Stats(state, calls, calls == 0 ? 0 : (double) failures / calls, calls == 0 ? 0 : (double) slowCalls / calls, rejected);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public enum State {
+        /** Calls go through. */
+        CLOSED,
+        /** Calls fail immediately. */
+        OPEN,
+        /** A few probe calls go through, the others fail immediately. */
+        HALF_OPEN
+    }
+
+    /**
+     * Notified when a circuit changes its state, on the thread of the call that changed it.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        void onStateChange(String circuit, State from, State to);
+    }
+
+    public static final class Stats {
+        private final State state;
+        private final int calls;
+        private final double failureRate;
+        private final double slowCallRate;
+        private final long rejected;
+
+        Stats(State state, int calls, double failureRate, double slowCallRate, long rejected) {
+            this.state = state;
+            this.calls = calls;
+            this.failureRate = failureRate;
+            this.slowCallRate = slowCallRate;
+            this.rejected = rejected;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return the number of calls in the sliding window since the circuit last closed
+         */
+        public int getCalls() {
+            return calls;
+        }
+
+        public double getFailureRate() {
+            return failureRate;
+        }
+
+        public double getSlowCallRate() {
+            return slowCallRate;
+        }
+
+        /**
+         * @return the number of calls that failed because the circuit was open
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stats{state=%s, calls=%d, failureRate=%s, slowCallRate=%s, rejected=%d}", state, calls, failureRate, slowCallRate, rejected);
+        }
+    }
+}
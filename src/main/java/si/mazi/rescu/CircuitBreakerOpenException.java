@@ -0,0 +1,14 @@
+package si.mazi.rescu;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request when the {@link CircuitBreaker}'s circuit for the server is open, ie. recent calls
+ * failed or were slow too often. Nothing was sent; the circuit is tried again after a while.
+ */
+public class CircuitBreakerOpenException extends IOException {
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
@@ -34,6 +34,7 @@ import java.lang.annotation.Annotation;
 import java.net.Proxy.Type;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 public class ClientConfig {
 
@@ -50,6 +51,17 @@ public class ClientConfig {
     private boolean ignoreHttpErrorCodes;
     private boolean wrapUnexpectedExceptions;
     private OAuthConsumer oAuthConsumer;
+    private HttpTransportFactory httpTransportFactory = HttpTransportFactory.URL_CONNECTION;
+    private Executor asyncExecutor;
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS;
+    private RequestSigner requestSigner;
+    private ResponseCache responseCache;
+    private boolean coalesceRequests;
+    private RateLimiter rateLimiter;
+    private ConcurrencyLimiter concurrencyLimiter;
+    private RetryPolicy retryPolicy;
+    private HedgingPolicy hedgingPolicy;
+    private CircuitBreaker circuitBreaker;
 
     public ClientConfig() {
         httpConnTimeout = Config.getHttpConnTimeout();
@@ -220,4 +232,190 @@ public class ClientConfig {
         this.oAuthConsumer = oAuthConsumer;
     }
 
+    /**
+     * @return the factory of the HTTP transport used by proxies created with this config
+     * @see HttpTransportFactory
+     */
+    public HttpTransportFactory getHttpTransportFactory() {
+        return httpTransportFactory;
+    }
+
+    /**
+     * Selects the HTTP transport, eg. {@link HttpTransportFactory#JDK_HTTP_CLIENT} for HTTP/2 support.
+     * The transport is created when the proxy is created, so the other settings (timeouts etc.) should be set before that.
+     *
+     * @param httpTransportFactory the httpTransportFactory to set; {@link HttpTransportFactory#URL_CONNECTION} by default
+     */
+    public void setHttpTransportFactory(HttpTransportFactory httpTransportFactory) {
+        this.httpTransportFactory = httpTransportFactory;
+    }
+
+    /**
+     * @return the executor for asynchronous (CompletableFuture-returning) methods, or null for the default one
+     */
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    /**
+     * Sets the executor used to complete asynchronous (CompletableFuture-returning) methods. Transports that can't
+     * send requests asynchronously by themselves block a thread of this executor while waiting for the response.
+     * If not set, the executor is chosen by the {@link #setExecutionMode(ExecutionMode) execution mode}.
+     *
+     * @param asyncExecutor the asyncExecutor to set
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    /**
+     * @return the threads that asynchronous methods run on if no async executor is set
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Selects the threads that asynchronous methods run on if no {@link #setAsyncExecutor(Executor) async executor}
+     * is set. Defaults to {@link ExecutionMode#PLATFORM_THREADS}.
+     *
+     * @param executionMode the executionMode to set
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * @return the signer of all requests, or null
+     */
+    public RequestSigner getRequestSigner() {
+        return requestSigner;
+    }
+
+    /**
+     * Sets the signer of all requests made by proxies created with this config. A {@link RequestSigner} argument of a
+     * rest method takes precedence.
+     *
+     * @param requestSigner the requestSigner to set
+     */
+    public void setRequestSigner(RequestSigner requestSigner) {
+        this.requestSigner = requestSigner;
+    }
+
+    /**
+     * @return the cache of the responses of {@link Cacheable} methods, or null
+     */
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * Sets the cache of the responses of {@link Cacheable} methods; without one (the default), nothing is cached.
+     * One cache may be shared by several configs.
+     *
+     * @param responseCache the responseCache to set
+     */
+    public void setResponseCache(ResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    public boolean isCoalesceRequests() {
+        return coalesceRequests;
+    }
+
+    /**
+     * If set, concurrent identical GET invocations of a proxy share one request: those that arrive while it's in
+     * flight wait for its response instead of sending their own. Invocations with {@link ParamsDigest}s,
+     * {@link SynchronizedValueFactory} values or a {@link RequestSigner} never share requests. Off by default.
+     *
+     * @param coalesceRequests the coalesceRequests to set
+     */
+    public void setCoalesceRequests(boolean coalesceRequests) {
+        this.coalesceRequests = coalesceRequests;
+    }
+
+    /**
+     * @return the limiter of the {@link RateLimit}s, or null if each proxy has its own
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the limiter of the {@link RateLimit}s of all proxies created with this config, so that they share buckets
+     * with the same names, and the waiting policy. Without one, each proxy gets a limiter that waits for permits.
+     *
+     * @param rateLimiter the rateLimiter to set
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Sets the limiter of requests in flight per base url, which adapts to the servers' latency and errors; null (the
+     * default) means no limit. Share one limiter between configs to limit the requests of all their proxies together.
+     *
+     * @param concurrencyLimiter the concurrencyLimiter to set
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * @return the policy of retrying failed calls, or null if only methods with {@link Retry} are retried
+     */
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the policy of retrying failed calls of all proxies created with this config. With a policy, all methods
+     * with an idempotent HTTP method are retried (unless their {@link Retry} says otherwise); without one, only methods
+     * with {@link Retry} are, with a default policy. The retry budget is shared by all the calls that use the policy.
+     *
+     * @param retryPolicy the retryPolicy to set
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * @return the policy of hedging slow calls, or null if they aren't hedged
+     */
+    public HedgingPolicy getHedgingPolicy() {
+        return hedgingPolicy;
+    }
+
+    /**
+     * Sets the policy of hedging slow calls of all proxies created with this config; null (the default) means calls
+     * aren't hedged. The hedging budget and stats are shared by all the calls that use the policy.
+     *
+     * @param hedgingPolicy the hedgingPolicy to set
+     */
+    public void setHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+    }
+
+    /**
+     * @return the circuit breaker, or null if only methods with {@link Circuit} go through one
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Sets the circuit breaker of all proxies created with this config. With a breaker, the calls of all methods go
+     * through it (unless their {@link Circuit} says otherwise); without one, only the calls of methods with
+     * {@link Circuit} do, through a breaker with the default settings. Share one breaker between configs so that their
+     * proxies share the circuits of the same servers.
+     *
+     * @param circuitBreaker the circuitBreaker to set
+     */
+    public void setCircuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
 }
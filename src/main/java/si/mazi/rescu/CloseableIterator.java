@@ -0,0 +1,56 @@
+package si.mazi.rescu;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * <p>
+ * An iterator over the elements of a JSON array response that are read off the connection as they are pulled, so the
+ * whole response is never held in memory. A rest method may return this, an {@link Iterator} or a {@link Stream} of
+ * the element type.
+ * </p>
+ * <p>
+ * The connection is released when the iterator is read to the end or closed; it should be closed (eg. with
+ * try-with-resources) if it may not be read to the end. A failure to read an element is thrown as an
+ * {@link java.io.UncheckedIOException}.
+ * </p>
+ */
+public interface CloseableIterator<T> extends Iterator<T>, Closeable {
+
+    /**
+     * Releases the connection; the remaining elements are discarded. Errors are ignored.
+     */
+    @Override
+    void close();
+
+    /**
+     * @return a sequential stream of the elements that closes this iterator when it's closed
+     */
+    default Stream<T> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED), false)
+                .onClose(this::close);
+    }
+
+    static <T> CloseableIterator<T> empty() {
+        return new CloseableIterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return false;
+            }
+
+            @Override
+            public T next() {
+                throw new NoSuchElementException();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,14 @@
+package si.mazi.rescu;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request when the {@link ConcurrencyLimiter}'s queue for the server is full, or the call
+ * waited too long for a free slot. Nothing was sent, so the call may be retried later.
+ */
+public class ConcurrencyLimitExceededException extends IOException {
+
+    public ConcurrencyLimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,737 @@
+package si.mazi.rescu;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Limits the number of requests in flight (sent and waiting for the response) per base url, and adapts the limit to
+ * what the server handles well: it grows by one per limit's worth of fast responses (additive increase), and is cut by
+ * {@link #setBackoffRatio(double) a ratio} (multiplicative decrease) on a 429 or 503 response, on an I/O error, or
+ * when the median round trip of the last 20 responses is {@link #setLatencyTolerance(double) a multiple} of the
+ * long-term average. Single slow responses don't count, so that a server with jittery but steady latency keeps its
+ * limit. The limit is cut at most once per round trip: the responses to requests sent before the last cut don't cut
+ * it again, so a burst of 429s from the requests in flight counts once.
+ * </p>
+ * <p>
+ * Calls over the limit wait in a queue; when the queue is full, or a call has waited for too long, the call fails with
+ * a {@link ConcurrencyLimitExceededException}. Asynchronous calls wait without blocking a thread.
+ * </p>
+ * <p>
+ * The waiting calls are sent by {@link Priority}: all those of a higher priority before any of a lower one, so that
+ * eg. order cancels don't wait behind history downloads. A full queue turns away its newest call of the lowest
+ * priority for a call of a higher one. Within a priority, the calls take turns between
+ * {@link #setFairShareKey(Function) keys}, such as the API keys the requests are made with, in proportion to the
+ * keys' {@link #setFairShareWeight(String, double) weights}; the calls of one key go in order. How long the calls wait
+ * is measured apart from how long the requests take, in {@link RestInvocation#getQueueWait(TimeUnit)} and the stats.
+ * </p>
+ * <p>
+ * Set it with {@link ClientConfig#setConcurrencyLimiter(ConcurrencyLimiter)}; share one between proxies that call the
+ * same servers. The current limits and queue lengths are in {@link #getStats()}.
+ * </p>
+ */
+public class ConcurrencyLimiter {
+
+    /** How many of the latest round trips the recent median round trip is taken from. */
+    private static final int RECENT_RTT_SAMPLES = 20;
+
+    /**
+     * The weight of a new round trip in the baseline that the recent round trips are compared to; the baseline follows
+     * the last several hundred responses, and so a server that becomes slower or faster for good.
+     */
+    private static final double BASELINE_RTT_WEIGHT = 0.002;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private volatile double backoffRatio = 0.9;
+    private volatile double latencyTolerance = 2;
+    private volatile int maxQueueLength = 1000;
+    private volatile long maxQueueWaitNanos = TimeUnit.SECONDS.toNanos(30);
+    private volatile Function<RestInvocation, String> fairShareKey;
+    private final ConcurrentMap<String, Double> fairShareWeights = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Limit> limits = new ConcurrentHashMap<>();
+
+    /**
+     * A limiter that starts at 20 requests in flight per base url, and adapts between 1 and 200.
+     */
+    public ConcurrencyLimiter() {
+        this(20, 1, 200);
+    }
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException(String.format("Invalid limits: initial %d, min %d, max %d", initialLimit, minLimit, maxLimit));
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+    }
+
+    /**
+     * @param backoffRatio the ratio by which the limit is cut when the server is overloaded; between 0 and 1
+     */
+    public void setBackoffRatio(double backoffRatio) {
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException("backoffRatio must be between 0 and 1: " + backoffRatio);
+        }
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * @param latencyTolerance how many times longer than the long-term average the median of the recent round trips
+     * may be before the server is considered overloaded; at least 1
+     */
+    public void setLatencyTolerance(double latencyTolerance) {
+        if (latencyTolerance < 1) {
+            throw new IllegalArgumentException("latencyTolerance must be at least 1: " + latencyTolerance);
+        }
+        this.latencyTolerance = latencyTolerance;
+    }
+
+    /**
+     * @param maxQueueLength how many calls per base url may wait for a free slot; calls over that fail immediately
+     */
+    public void setMaxQueueLength(int maxQueueLength) {
+        this.maxQueueLength = maxQueueLength;
+    }
+
+    /**
+     * @param maxQueueWait how long a call may wait for a free slot before it fails
+     */
+    public void setMaxQueueWait(long maxQueueWait, TimeUnit unit) {
+        this.maxQueueWaitNanos = unit.toNanos(maxQueueWait);
+    }
+
+    /**
+     * @param fairShareKey what a call's share of the slots is counted by within its priority, eg.
+     * {@code invocation -> (String) invocation.getParamValue(HeaderParam.class, "X-API-KEY")}; null (the default) or a
+     * null key puts the calls in a single share
+     */
+    public void setFairShareKey(Function<RestInvocation, String> fairShareKey) {
+        this.fairShareKey = fairShareKey;
+    }
+
+    /**
+     * @param weight how many calls of the {@link #setFairShareKey(Function) key} are sent for one of a key with the
+     * default weight of 1, while both have calls of the same priority waiting
+     */
+    public void setFairShareWeight(String key, double weight) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException("weight must be positive: " + weight);
+        }
+        fairShareWeights.put(key, weight);
+    }
+
+    /**
+     * @return the current limit, calls in flight and queued calls per base url
+     */
+    public Map<String, Stats> getStats() {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        for (Limit limit : limits.values()) {
+            stats.put(limit.baseUrl, limit.getStats());
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * @return the current limit etc. of the base url; all zeros if no calls were made to it yet
+     */
+    public Stats getStats(String baseUrl) {
+        Limit limit = limits.get(baseUrl);
+        return limit == null ? new Stats(0, 0, 0, 0, 0, 0, 0, 0) : limit.getStats();
+    }
+
+    /**
+     * Sends the invocation when there's a free slot, waiting for one if needed, and records how it went.
+     */
+    HttpTransportResponse send(RestInvocation invocation, HttpSender sender) throws IOException {
+        Permit permit = acquire(getLimit(invocation.getBaseUrl()), invocation);
+        invocation.setQueueWaitNanos(permit.queueWaitNanos);
+        HttpTransportResponse response;
+        try {
+            response = sender.send(invocation);
+            permit.release(isOverloaded(response.getStatusCode()));
+        } catch (IOException e) {
+            permit.release(true);
+            throw e;
+        } catch (RuntimeException | Error e) {
+            permit.release(false);
+            throw e;
+        }
+        return response;
+    }
+
+    /**
+     * Sends the invocation when there's a free slot, without blocking the caller, and records how it went. Like a
+     * synchronous call, it waits no longer than the max queue wait or until the invocation's deadline.
+     *
+     * @param executor where a call that waited for too long is failed
+     * @param abandoned whether the caller no longer waits for the response; checked when the slot is granted, and if
+     * so the slot is handed on and the request isn't sent
+     */
+    CompletableFuture<HttpTransportResponse> sendAsync(RestInvocation invocation, Function<RestInvocation, CompletableFuture<HttpTransportResponse>> sender,
+            Executor executor, BooleanSupplier abandoned) {
+        Limit limit = getLimit(invocation.getBaseUrl());
+        Deadline deadline = invocation.getDeadline();
+        Waiter waiter = limit.acquire(invocation.getPriority(), getFairShareKey(invocation));
+        if (!waiter.isDone()) {
+            long maxWait = deadline == null ? maxQueueWaitNanos : Math.min(maxQueueWaitNanos, deadline.getRemainingNanos());
+            ScheduledFuture<?> timeout = AsyncExecutors.schedule(() -> limit.timeOut(waiter, getTimeoutFailure(limit, maxWait)),
+                    maxWait, TimeUnit.NANOSECONDS, executor);
+            waiter.whenComplete((permit, failure) -> timeout.cancel(false));
+        }
+        return waiter.thenCompose(permit -> {
+            if (abandoned.getAsBoolean()) {
+                permit.cancel();
+                throw new CancellationException("The call was completed while it waited for a free slot");
+            }
+            if (deadline != null && deadline.isExpired()) {
+                permit.cancel();
+                throw new CompletionException(new DeadlineExceededException("The deadline passed while waiting for a free slot for " + limit.baseUrl));
+            }
+            invocation.setQueueWaitNanos(permit.queueWaitNanos);
+            CompletableFuture<HttpTransportResponse> response;
+            try {
+                response = sender.apply(invocation);
+            } catch (RuntimeException | Error e) {
+                permit.release(false);
+                throw e;
+            }
+            return response.whenComplete((r, failure) -> permit.release(failure != null ? isOverloaded(failure) : isOverloaded(r)));
+        });
+    }
+
+    private Permit acquire(Limit limit, RestInvocation invocation) throws IOException {
+        Deadline deadline = invocation.getDeadline();
+        long maxWait = deadline == null ? maxQueueWaitNanos : Math.min(maxQueueWaitNanos, deadline.getRemainingNanos());
+        Waiter permit = limit.acquire(invocation.getPriority(), getFairShareKey(invocation));
+        try {
+            return permit.get(maxWait, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            IOException failure = getTimeoutFailure(limit, maxWait);
+            if (!limit.timeOut(permit, failure)) {
+                // Granted just now after all.
+                return permit.join();
+            }
+            throw failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (!permit.completeExceptionally(e)) {
+                return permit.join();
+            }
+            limit.dequeue(permit);
+            throw new InterruptedIOException("Interrupted while waiting for a free slot for " + limit.baseUrl);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private IOException getTimeoutFailure(Limit limit, long maxWait) {
+        if (maxWait < maxQueueWaitNanos) {
+            return new DeadlineExceededException("No free slot for " + limit.baseUrl + " before the deadline");
+        }
+        return new ConcurrencyLimitExceededException("Timed out waiting for a free slot for " + limit.baseUrl);
+    }
+
+    private String getFairShareKey(RestInvocation invocation) {
+        Function<RestInvocation, String> fairShareKey = this.fairShareKey;
+        String key = fairShareKey == null ? null : fairShareKey.apply(invocation);
+        return key == null ? "" : key;
+    }
+
+    private double getFairShareWeight(String key) {
+        return fairShareWeights.getOrDefault(key, 1.0);
+    }
+
+    private Limit getLimit(String baseUrl) {
+        Limit limit = limits.get(baseUrl);
+        return limit != null ? limit : limits.computeIfAbsent(baseUrl, Limit::new);
+    }
+
+    private static boolean isOverloaded(int statusCode) {
+        return statusCode == 429 || statusCode == 503;
+    }
+
+    private static boolean isOverloaded(HttpTransportResponse response) {
+        try {
+            return isOverloaded(response.getStatusCode());
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static boolean isOverloaded(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        return cause instanceof IOException;
+    }
+
+    /**
+     * The limit of one base url.
+     */
+    private final class Limit {
+        private final String baseUrl;
+        private final Lock lock = new ReentrantLock();
+        private final WaitQueue queue = new WaitQueue();
+        private double limit = initialLimit;
+        private int inFlight;
+        private final long[] recentRtts = new long[RECENT_RTT_SAMPLES];
+        private long rttSamples;
+        private double baselineRttNanos;
+        private long lastCutNanos = System.nanoTime();
+        private long rejected;
+        private long granted;
+        private long queueWaitNanos;
+        private long responses;
+        private long responseNanos;
+
+        Limit(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        Waiter acquire(Priority priority, String key) {
+            Waiter waiter = new Waiter(priority, key);
+            Waiter shed = null;
+            lock.lock();
+            try {
+                if (inFlight < (int) limit) {
+                    inFlight++;
+                    granted++;
+                    waiter.complete(new Permit(this, 0));
+                    return waiter;
+                }
+                if (queue.size() >= maxQueueLength) {
+                    rejected++;
+                    shed = queue.shed(priority);
+                    if (shed == null) {
+                        waiter.completeExceptionally(new ConcurrencyLimitExceededException(
+                                "Too many calls waiting for a free slot for " + baseUrl + "; limit " + (int) limit));
+                        return waiter;
+                    }
+                }
+                queue.add(waiter);
+            } finally {
+                lock.unlock();
+            }
+            if (shed != null) {
+                shed.completeExceptionally(new ConcurrencyLimitExceededException(
+                        "Turned away from the full queue for " + baseUrl + " by a call of a higher priority"));
+            }
+            return waiter;
+        }
+
+        void dequeue(Waiter waiter) {
+            lock.lock();
+            try {
+                queue.remove(waiter);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Fails a call that waited for too long, and counts it as rejected; unless it was granted a slot just now.
+         *
+         * @return whether the call was failed
+         */
+        boolean timeOut(Waiter waiter, IOException failure) {
+            boolean queued;
+            lock.lock();
+            try {
+                // Counted before the call fails, so that its caller sees it in the stats.
+                queued = queue.remove(waiter);
+                if (queued) {
+                    rejected++;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (queued) {
+                // Out of the queue, so nothing else completes it.
+                waiter.completeExceptionally(failure);
+                return true;
+            }
+            // Taken from the queue just now, to be granted a slot or turned away.
+            if (!waiter.completeExceptionally(failure)) {
+                return false;
+            }
+            lock.lock();
+            try {
+                rejected++;
+            } finally {
+                lock.unlock();
+            }
+            return true;
+        }
+
+        /**
+         * @param sentNanos when the request was sent
+         * @param rttNanos how long the response took; -1 if there's none
+         */
+        void release(long sentNanos, long rttNanos, boolean overloaded) {
+            List<Waiter> next;
+            lock.lock();
+            try {
+                inFlight--;
+                if (rttNanos >= 0) {
+                    responses++;
+                    responseNanos += rttNanos;
+                    recordRtt(rttNanos);
+                }
+                if (overloaded || isSlow()) {
+                    // The responses to requests sent before the last cut don't show its effect yet.
+                    if (sentNanos - lastCutNanos >= 0) {
+                        limit = Math.max(minLimit, limit * backoffRatio);
+                        lastCutNanos = System.nanoTime();
+                    }
+                } else if (inFlight + 1 >= limit / 2) {
+                    // Only grow when the limit is actually used; idle capacity says nothing about the server.
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+                next = pollGranted();
+            } finally {
+                lock.unlock();
+            }
+            grant(next);
+        }
+
+        /**
+         * @return the waiting calls that fit under the limit now, counted as in flight; called under the lock
+         */
+        private List<Waiter> pollGranted() {
+            List<Waiter> next = new ArrayList<>();
+            while (inFlight < (int) limit && queue.size() > 0) {
+                Waiter waiter = queue.poll();
+                if (!waiter.isDone()) {
+                    inFlight++;
+                    next.add(waiter);
+                }
+            }
+            return next;
+        }
+
+        private void grant(List<Waiter> next) {
+            // Completed outside the lock: asynchronous calls continue (and send) on this thread.
+            for (Waiter waiter : next) {
+                long waitNanos = System.nanoTime() - waiter.enqueuedNanos;
+                Permit permit = new Permit(this, waitNanos);
+                if (waiter.complete(permit)) {
+                    recordQueueWait(waitNanos);
+                } else {
+                    permit.cancel();
+                }
+            }
+        }
+
+        private void recordQueueWait(long waitNanos) {
+            lock.lock();
+            try {
+                granted++;
+                queueWaitNanos += waitNanos;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Returns a slot that was granted but not used, without counting it as a sample, and hands it on.
+         */
+        void cancel() {
+            List<Waiter> next;
+            lock.lock();
+            try {
+                inFlight--;
+                next = pollGranted();
+            } finally {
+                lock.unlock();
+            }
+            grant(next);
+        }
+
+        private void recordRtt(long rttNanos) {
+            recentRtts[(int) (rttSamples++ % RECENT_RTT_SAMPLES)] = rttNanos;
+            // The plain mean of the first samples, so that the first responses don't set the baseline for long.
+            baselineRttNanos += (rttNanos - baselineRttNanos) * Math.max(BASELINE_RTT_WEIGHT, 1.0 / rttSamples);
+        }
+
+        private boolean isSlow() {
+            if (rttSamples == 0) {
+                return false;
+            }
+            long[] recent = Arrays.copyOf(recentRtts, (int) Math.min(rttSamples, RECENT_RTT_SAMPLES));
+            Arrays.sort(recent);
+            return recent[recent.length / 2] > baselineRttNanos * latencyTolerance;
+        }
+
+        Stats getStats() {
+            lock.lock();
+            try {
+                return new Stats((int) limit, inFlight, queue.size(), rejected, granted, queueWaitNanos, responses, responseNanos);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * The calls waiting for a free slot of one base url: by priority, and within a priority in turns between the fair
+     * share keys, in proportion to their weights (stride scheduling). Guarded by the limit's lock.
+     */
+    private final class WaitQueue {
+        private final Share[] priorities = new Share[Priority.values().length];
+        private int size;
+
+        WaitQueue() {
+            for (int i = 0; i < priorities.length; i++) {
+                priorities[i] = new Share();
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        void add(Waiter waiter) {
+            priorities[waiter.priority.ordinal()].add(waiter);
+            size++;
+        }
+
+        Waiter poll() {
+            for (Share share : priorities) {
+                if (share.size > 0) {
+                    size--;
+                    return share.poll();
+                }
+            }
+            return null;
+        }
+
+        boolean remove(Waiter waiter) {
+            if (priorities[waiter.priority.ordinal()].remove(waiter)) {
+                size--;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Removes the call to turn away for a call of the priority, if there's one of a lower priority.
+         */
+        Waiter shed(Priority priority) {
+            for (int i = priorities.length - 1; i > priority.ordinal(); i--) {
+                if (priorities[i].size > 0) {
+                    size--;
+                    return priorities[i].shed();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The waiting calls of one priority, per fair share key. The key with the least pass goes next, and its pass then
+     * grows by the inverse of its weight.
+     */
+    private final class Share {
+        private final Map<String, Flow> flows = new LinkedHashMap<>();
+        private double virtualTime;
+        private int size;
+
+        void add(Waiter waiter) {
+            Flow flow = flows.computeIfAbsent(waiter.key, Flow::new);
+            if (flow.waiters.isEmpty()) {
+                // A key gets no credit for the time it had nothing waiting.
+                flow.pass = Math.max(flow.pass, virtualTime);
+            }
+            flow.waiters.add(waiter);
+            size++;
+        }
+
+        Waiter poll() {
+            Flow next = null;
+            for (Flow flow : flows.values()) {
+                if (!flow.waiters.isEmpty() && (next == null || flow.pass < next.pass)) {
+                    next = flow;
+                }
+            }
+            virtualTime = next.pass;
+            next.pass += 1 / getFairShareWeight(next.key);
+            return taken(next.waiters.poll());
+        }
+
+        boolean remove(Waiter waiter) {
+            Flow flow = flows.get(waiter.key);
+            if (flow == null || !flow.waiters.remove(waiter)) {
+                return false;
+            }
+            taken(waiter);
+            return true;
+        }
+
+        /**
+         * @return the newest call of the key with the most waiting calls
+         */
+        Waiter shed() {
+            Flow heaviest = Collections.max(flows.values(), Comparator.comparingInt(flow -> flow.waiters.size()));
+            return taken(heaviest.waiters.pollLast());
+        }
+
+        private Waiter taken(Waiter waiter) {
+            if (--size == 0) {
+                // The turns only matter while keys compete; this also forgets keys that are no longer used.
+                flows.clear();
+            }
+            return waiter;
+        }
+    }
+
+    private static final class Flow {
+        private final String key;
+        private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+        private double pass;
+
+        Flow(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A call waiting for a slot; completed with its permit.
+     */
+    private static final class Waiter extends CompletableFuture<Permit> {
+        private final Priority priority;
+        private final String key;
+        private final long enqueuedNanos = System.nanoTime();
+
+        Waiter(Priority priority, String key) {
+            this.priority = priority;
+            this.key = key;
+        }
+    }
+
+    /**
+     * A slot for one request; released exactly once.
+     */
+    private static final class Permit {
+        private final Limit limit;
+        private final long queueWaitNanos;
+        private final long start = System.nanoTime();
+        private boolean released;
+
+        Permit(Limit limit, long queueWaitNanos) {
+            this.limit = limit;
+            this.queueWaitNanos = queueWaitNanos;
+        }
+
+        void release(boolean overloaded) {
+            if (!released) {
+                released = true;
+                // Failures aren't round trips; they only say the server is overloaded.
+                limit.release(start, overloaded ? -1 : System.nanoTime() - start, overloaded);
+            }
+        }
+
+        void cancel() {
+            if (!released) {
+                released = true;
+                limit.cancel();
+            }
+        }
+    }
+
+    /**
+     * A snapshot of the state of one base url.
+     */
+    public static final class Stats {
+        private final int limit;
+        private final int inFlight;
+        private final int queued;
+        private final long rejected;
+        private final long granted;
+        private final long queueWaitNanos;
+        private final long responses;
+        private final long responseNanos;
+
+        Stats(int limit, int inFlight, int queued, long rejected, long granted, long queueWaitNanos, long responses, long responseNanos) {
+            this.limit = limit;
+            this.inFlight = inFlight;
+            this.queued = queued;
+            this.rejected = rejected;
+            this.granted = granted;
+            this.queueWaitNanos = queueWaitNanos;
+            this.responses = responses;
+            this.responseNanos = responseNanos;
+        }
+
+        /**
+         * @return the current number of requests that may be in flight
+         */
+        public int getLimit() {
+            return limit;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * @return the number of calls waiting for a free slot
+         */
+        public int getQueued() {
+            return queued;
+        }
+
+        /**
+         * @return the number of calls that failed because the queue was full or they waited for too long
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * @return how long the calls that got a slot waited for it on average, counting those that didn't have to
+         */
+        public long getMeanQueueWait(TimeUnit unit) {
+            return granted == 0 ? 0 : unit.convert(queueWaitNanos / granted, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return how long the requests took on average from sending to the response, without their time in the queue
+         */
+        public long getMeanResponseTime(TimeUnit unit) {
+            return responses == 0 ? 0 : unit.convert(responseNanos / responses, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stats{limit=%d, inFlight=%d, queued=%d, rejected=%d, meanQueueWait=%dms, meanResponseTime=%dms}",
+                    limit, inFlight, queued, rejected, getMeanQueueWait(TimeUnit.MILLISECONDS), getMeanResponseTime(TimeUnit.MILLISECONDS));
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package si.mazi.rescu;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keep-alive connections used by {@link PooledHttpTransport}, grouped by host.
+ *
+ * At most {@code maxConnectionsPerHost} connections to a host are open at any time; callers that need one more wait
+ * until a connection is released. A connection is only returned to the pool after its response has been read
+ * completely, and idle connections are closed once they've been idle for longer than the idle timeout. There is no
+ * background thread: expired connections are evicted when a host's connections are leased or released, or by calling
+ * {@link #evictIdleConnections()}.
+ *
+ * A pool may be shared by several proxies (see {@link HttpTransportFactory#pooled(ConnectionPool)}); those should
+ * use the same proxy and TLS settings.
+ */
+public class ConnectionPool implements Closeable {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 60_000;
+
+    private final int maxConnectionsPerHost;
+    private final long idleTimeoutNanos;
+    private final ConcurrentMap<String, HostPool> hostPools = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    public ConnectionPool() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public ConnectionPool(int maxConnectionsPerHost, long idleTimeout, TimeUnit unit) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerHost must be positive: " + maxConnectionsPerHost);
+        }
+        if (idleTimeout < 0) {
+            throw new IllegalArgumentException("idleTimeout must not be negative: " + idleTimeout);
+        }
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Returns an idle connection to the host, or opens a new one if there's none and the host is below its limit.
+     * Otherwise waits until a connection is released.
+     *
+     * @param hostKey     identifies the host (and route) that connections are pooled by
+     * @param maxWaitMillis how long to wait for a connection when the host is at its limit; 0 means no limit
+     * @param connector   opens a new connection; called without holding any lock
+     */
+    Connection lease(String hostKey, long maxWaitMillis, Connector connector) throws IOException {
+        return lease(hostKey, maxWaitMillis, connector, false);
+    }
+
+    /**
+     * @param forceNew whether to open a new connection rather than reuse an idle one, eg. after an idle one turned out
+     *                 to be closed by the server, which probably closed the others as well
+     * @see #lease(String, long, Connector)
+     */
+    Connection lease(String hostKey, long maxWaitMillis, Connector connector, boolean forceNew) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("The connection pool is closed.");
+        }
+        HostPool host = hostPools.computeIfAbsent(hostKey, HostPool::new);
+        List<Connection> expired = new ArrayList<>();
+        host.lock.lock();
+        try {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+            while (true) {
+                host.removeExpired(System.nanoTime(), expired);
+                Connection connection = forceNew ? null : host.idle.pollFirst();
+                if (connection != null) {
+                    host.leased++;
+                    connection.reused = true;
+                    return connection;
+                }
+                if (host.leased < maxConnectionsPerHost) {
+                    host.leased++; // reserve the slot; connect without holding the lock
+                    break;
+                }
+                if (maxWaitMillis <= 0) {
+                    host.available.await();
+                } else if (remainingNanos <= 0) {
+                    throw new IOException(String.format("Timed out waiting for a connection to %s; all %d are in use.", hostKey, maxConnectionsPerHost));
+                } else {
+                    remainingNanos = host.available.awaitNanos(remainingNanos);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a connection to " + hostKey);
+        } finally {
+            host.lock.unlock();
+            closeAll(expired);
+        }
+
+        try {
+            Connection connection = new Connection(host, connector.connect());
+            host.created.incrementAndGet();
+            return connection;
+        } catch (IOException | RuntimeException e) {
+            host.lock.lock();
+            try {
+                host.leased--;
+                host.available.signal();
+            } finally {
+                host.lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param reusable whether the response has been read completely and the connection may be kept alive
+     */
+    void release(Connection connection, boolean reusable) {
+        HostPool host = connection.host;
+        List<Connection> toClose = new ArrayList<>();
+        host.lock.lock();
+        try {
+            host.leased--;
+            if (reusable && !closed && !connection.socket.isClosed()) {
+                connection.idleSinceNanos = System.nanoTime();
+                host.idle.addFirst(connection);
+            } else {
+                toClose.add(connection);
+            }
+            host.removeExpired(System.nanoTime(), toClose);
+            host.available.signal();
+        } finally {
+            host.lock.unlock();
+        }
+        closeAll(toClose);
+    }
+
+    /**
+     * Closes the connections that have been idle for longer than the idle timeout.
+     */
+    public void evictIdleConnections() {
+        for (HostPool host : hostPools.values()) {
+            List<Connection> expired = new ArrayList<>();
+            host.lock.lock();
+            try {
+                host.removeExpired(System.nanoTime(), expired);
+            } finally {
+                host.lock.unlock();
+            }
+            closeAll(expired);
+        }
+    }
+
+    /**
+     * @return the counters summed over all hosts
+     */
+    public Stats getStats() {
+        int leased = 0, idle = 0;
+        long created = 0, evicted = 0;
+        for (Stats stats : getHostStats().values()) {
+            leased += stats.leased;
+            idle += stats.idle;
+            created += stats.created;
+            evicted += stats.evicted;
+        }
+        return new Stats(leased, idle, created, evicted);
+    }
+
+    /**
+     * @return the counters per host, keyed by {@code scheme://host:port}
+     */
+    public Map<String, Stats> getHostStats() {
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        for (HostPool host : hostPools.values()) {
+            host.lock.lock();
+            try {
+                stats.put(host.key, new Stats(host.leased, host.idle.size(), host.created.get(), host.evicted.get()));
+            } finally {
+                host.lock.unlock();
+            }
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * Closes the idle connections; leased connections are closed when they're released.
+     * Connections can't be leased from a closed pool.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (HostPool host : hostPools.values()) {
+            List<Connection> idle;
+            host.lock.lock();
+            try {
+                idle = new ArrayList<>(host.idle);
+                host.idle.clear();
+            } finally {
+                host.lock.unlock();
+            }
+            closeAll(idle);
+        }
+    }
+
+    private static void closeAll(List<Connection> connections) {
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    interface Connector {
+        Socket connect() throws IOException;
+    }
+
+    private final class HostPool {
+        private final String key;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition available = lock.newCondition();
+        /** Most recently used first, so that the least used connections are the ones that expire. */
+        private final Deque<Connection> idle = new ArrayDeque<>();
+        private final AtomicLong created = new AtomicLong();
+        private final AtomicLong evicted = new AtomicLong();
+        private int leased;
+
+        private HostPool(String key) {
+            this.key = key;
+        }
+
+        /**
+         * Moves the connections that expired or were closed by the server to {@code removed}; must hold the lock.
+         */
+        private void removeExpired(long nowNanos, List<Connection> removed) {
+            for (Iterator<Connection> it = idle.iterator(); it.hasNext(); ) {
+                Connection connection = it.next();
+                if (nowNanos - connection.idleSinceNanos > idleTimeoutNanos || connection.socket.isClosed()) {
+                    it.remove();
+                    evicted.incrementAndGet();
+                    removed.add(connection);
+                }
+            }
+        }
+    }
+
+    static final class Connection {
+        private final HostPool host;
+        final Socket socket;
+        final InputStream in;
+        final OutputStream out;
+        private long idleSinceNanos;
+        private boolean reused;
+
+        private Connection(HostPool host, Socket socket) throws IOException {
+            this.host = host;
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream());
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        /**
+         * @return true if the connection was taken from the pool rather than newly opened
+         */
+        boolean isReused() {
+            return reused;
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * A snapshot of the pool's counters.
+     */
+    public static final class Stats {
+        private final int leased;
+        private final int idle;
+        private final long created;
+        private final long evicted;
+
+        Stats(int leased, int idle, long created, long evicted) {
+            this.leased = leased;
+            this.idle = idle;
+            this.created = created;
+            this.evicted = evicted;
+        }
+
+        /**
+         * @return the number of connections currently in use
+         */
+        public int getLeased() {
+            return leased;
+        }
+
+        /**
+         * @return the number of open connections waiting in the pool
+         */
+        public int getIdle() {
+            return idle;
+        }
+
+        /**
+         * @return the number of connections opened so far
+         */
+        public long getCreated() {
+            return created;
+        }
+
+        /**
+         * @return the number of idle connections closed so far because they expired or were closed by the server
+         */
+        public long getEvicted() {
+            return evicted;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stats{leased=%d, idle=%d, created=%d, evicted=%d}", leased, idle, created, evicted);
+        }
+    }
+}
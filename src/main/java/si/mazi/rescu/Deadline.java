@@ -0,0 +1,72 @@
+package si.mazi.rescu;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * The time by which a call must be done. Pass one as an argument of a rest method to bound that call (the argument
+ * isn't a part of the request), or put {@link Timeout} on the method; the earlier of the two applies.
+ * </p>
+ * <p>
+ * The deadline bounds the whole call: waiting for rate limit permits and concurrency limit slots, connecting, sending
+ * and receiving, and any retries. The timeouts of each attempt are cut to the time that's left, and a call that can't
+ * make it by the deadline fails with a {@link DeadlineExceededException} without sending the request.
+ * </p>
+ */
+public final class Deadline {
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @return a deadline {@code timeout} from now
+     */
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * @return the time left until the deadline; 0 once it has passed
+     */
+    public long getRemaining(TimeUnit unit) {
+        return unit.convert(getRemainingNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    public boolean isExpired() {
+        return getRemainingNanos() == 0;
+    }
+
+    long getRemainingNanos() {
+        return Math.max(0, deadlineNanos - System.nanoTime());
+    }
+
+    /**
+     * @return the time left in milliseconds, rounded up so that a deadline that hasn't passed isn't 0 (which would
+     * mean no timeout to the transports)
+     */
+    int getRemainingTimeoutMillis() {
+        long remaining = getRemainingNanos();
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining + 999_999)));
+    }
+
+    /**
+     * @return the earlier of the two deadlines; either may be null
+     */
+    static Deadline earlier(Deadline a, Deadline b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.deadlineNanos - b.deadlineNanos <= 0 ? a : b;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + getRemaining(TimeUnit.MILLISECONDS) + " ms}";
+    }
+}
@@ -0,0 +1,19 @@
+package si.mazi.rescu;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Thrown when a call isn't done by its {@link Deadline} (or {@link Timeout}): when the deadline passed before the
+ * request was sent, or when waiting for a rate limit or for the response took too long. It isn't retried.
+ */
+public class DeadlineExceededException extends InterruptedIOException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+
+    public DeadlineExceededException(String message, Throwable cause) {
+        super(message);
+        initCause(cause);
+    }
+}
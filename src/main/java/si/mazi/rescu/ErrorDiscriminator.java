@@ -0,0 +1,41 @@
+package si.mazi.rescu;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Declares how to tell error responses from successful ones by a top-level field of the JSON body, for APIs that
+ * return errors with HTTP 200. The body of such methods is parsed once and then bound either to the return type or to
+ * the declared exception, instead of trying the return type first and parsing again as the exception on failure.
+ * </p>
+ * <p>
+ * Eg. {@code @ErrorDiscriminator(field = "success", successValues = "true")} or
+ * {@code @ErrorDiscriminator(field = "error")}. May be put on a method or on the rest interface.
+ * An HTTP error status is an error regardless of the body (unless HTTP error codes are ignored).
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface ErrorDiscriminator {
+
+    /**
+     * @return the name of the top-level field
+     */
+    String field();
+
+    /**
+     * @return the values of the field (as text) that mean an error; other values or a missing field mean success
+     */
+    String[] errorValues() default {};
+
+    /**
+     * @return the values of the field (as text) that mean success; other values or a missing field mean an error.
+     * If neither these nor the {@link #errorValues()} are given, any non-empty value that isn't false means an error.
+     */
+    String[] successValues() default {};
+}
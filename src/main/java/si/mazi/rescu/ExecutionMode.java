@@ -0,0 +1,25 @@
+package si.mazi.rescu;
+
+/**
+ * Selects the threads that asynchronous (CompletableFuture-returning) invocations run on: the transport's sends if it
+ * can't send requests asynchronously by itself, and the reading and mapping of the responses. With
+ * {@link HttpTransportFactory#JDK_HTTP_CLIENT}, they are the threads of the HttpClient.
+ *
+ * Blocking methods always run on the calling thread, whatever the mode; to run them on virtual threads, call them from
+ * virtual threads. Rescu doesn't hold any monitors while doing I/O, so that doesn't pin their carrier threads.
+ *
+ * @see ClientConfig#setExecutionMode(ExecutionMode)
+ */
+public enum ExecutionMode {
+
+    /**
+     * A pool of at most 64 daemon platform threads shared by all proxies; calls over that wait for a free thread.
+     */
+    PLATFORM_THREADS,
+
+    /**
+     * A new virtual thread for each invocation. Virtual threads are available on Java 21 and later; on older JVMs
+     * a warning is logged and {@link #PLATFORM_THREADS} is used instead.
+     */
+    VIRTUAL_THREADS
+}
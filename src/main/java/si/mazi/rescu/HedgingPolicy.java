@@ -0,0 +1,351 @@
+package si.mazi.rescu;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * <p>
+ * Cuts the tail latency of calls: if the response to a request hasn't arrived after a delay, an identical request is
+ * sent (a hedge), and whichever response arrives first is used. The other one is closed unread when it arrives.
+ * </p>
+ * <p>
+ * The delay is by default the 95th {@link #setDelayPercentile(double, long, TimeUnit) percentile} of the method's
+ * recent response times, so that about one call in twenty is hedged; methods are only hedged once a few of their
+ * responses were timed. All the calls that use a policy may hedge at most {@link #setHedgingBudget(double, int) a
+ * given ratio} of their calls (plus a few), so that a slow server doesn't get twice the load. {@link #getStats()}
+ * tells how many calls were hedged and how many of those the hedge won.
+ * </p>
+ * <p>
+ * Only GET, HEAD and OPTIONS methods whose requests are the same each time are hedged: not those with
+ * {@link ParamsDigest}s, {@link SynchronizedValueFactory} values (eg. nonces) or signatures, and not streamed responses.
+ * With a {@link LoadBalancer}, the hedge is sent to another endpoint if there's a healthy one.
+ * </p>
+ */
+public class HedgingPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(HedgingPolicy.class);
+
+    private static final Set<HttpMethod> HEDGED_METHODS = Collections.unmodifiableSet(EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS));
+
+    /** The number of recent response times per method that the percentile is computed from. */
+    private static final int LATENCY_WINDOW = 100;
+    /** The number of response times needed before a method is hedged. */
+    private static final int MIN_SAMPLES = 20;
+    /** The percentile is recomputed after this many new response times. */
+    private static final int RECOMPUTE_INTERVAL = 10;
+
+    private volatile long fixedDelayNanos = -1;
+    private volatile double delayPercentile = 0.95;
+    private volatile long minDelayNanos = TimeUnit.MILLISECONDS.toNanos(5);
+    private volatile RequestBudget budget = new RequestBudget(0.1, 10);
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * Hedges after a fixed delay instead of a percentile of the response times.
+     */
+    public void setDelay(long delay, TimeUnit unit) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("Invalid delay: " + delay);
+        }
+        this.fixedDelayNanos = unit.toNanos(delay);
+    }
+
+    /**
+     * Hedges after a percentile of each method's recent response times.
+     *
+     * @param percentile eg. 0.95 to hedge the calls slower than 95% of the recent ones
+     * @param minDelay the shortest delay, so that calls to a fast server aren't hedged because of jitter
+     */
+    public void setDelayPercentile(double percentile, long minDelay, TimeUnit unit) {
+        if (percentile <= 0 || percentile >= 1 || minDelay < 0) {
+            throw new IllegalArgumentException(String.format("Invalid delay: percentile %s, min. %d", percentile, minDelay));
+        }
+        this.delayPercentile = percentile;
+        this.minDelayNanos = unit.toNanos(minDelay);
+        this.fixedDelayNanos = -1;
+    }
+
+    /**
+     * @param ratio the number of hedges allowed per call, eg. 0.1 for one hedge per ten calls
+     * @param minHedges the number of hedges allowed regardless of the ratio, eg. when there were few calls yet; also
+     * the most that can be saved up by calls that weren't hedged
+     */
+    public void setHedgingBudget(double ratio, int minHedges) {
+        this.budget = new RequestBudget(ratio, minHedges);
+    }
+
+    /**
+     * @return the number of calls that used the policy, how many of them were hedged and how many the hedge won
+     */
+    public Stats getStats() {
+        return new Stats(calls.sum(), hedges.sum(), hedgeWins.sum());
+    }
+
+    /**
+     * @return how the method's calls are hedged, or null if they aren't
+     */
+    Plan resolvePlan(HttpMethod httpMethod, boolean streaming) {
+        return HEDGED_METHODS.contains(httpMethod) && !streaming ? new Plan() : null;
+    }
+
+    /**
+     * How a method is hedged; keeps the method's recent response times.
+     */
+    final class Plan {
+        private final Lock lock = new ReentrantLock();
+        private final long[] latencies = new long[LATENCY_WINDOW];
+        private long samples;
+        private int sinceRecompute;
+        private long percentileNanos = -1;
+
+        /**
+         * Sends the invocation, and a hedge created by {@code hedgeInvocation} if the response hasn't arrived after the
+         * delay.
+         *
+         * @param sender sends an invocation; the returned response is complete when its status has arrived
+         * @param executor runs the delayed hedge
+         * @return the first response that arrived; fails only if all the requests failed
+         */
+        CompletableFuture<HttpTransportResponse> send(RestInvocation invocation, Supplier<RestInvocation> hedgeInvocation,
+                Function<RestInvocation, CompletableFuture<HttpTransportResponse>> sender, Executor executor) {
+            calls.increment();
+            budget.deposit();
+            long delayNanos = getDelayNanos();
+            Race race = new Race();
+            race.send(invocation, sender, false);
+            if (delayNanos >= 0) {
+                ScheduledFuture<?> hedgeTask = AsyncExecutors.schedule(() -> race.hedge(hedgeInvocation, sender), delayNanos,
+                        TimeUnit.NANOSECONDS, executor);
+                race.result.whenComplete((r, f) -> hedgeTask.cancel(false));
+            }
+            return race.result;
+        }
+
+        /**
+         * @return the delay after which a call is hedged, in nanoseconds; -1 if it isn't hedged
+         */
+        private long getDelayNanos() {
+            long fixedDelay = fixedDelayNanos;
+            if (fixedDelay >= 0) {
+                return fixedDelay;
+            }
+            lock.lock();
+            try {
+                if (samples < MIN_SAMPLES) {
+                    return -1;
+                }
+                if (percentileNanos < 0 || sinceRecompute >= RECOMPUTE_INTERVAL) {
+                    long[] sorted = Arrays.copyOf(latencies, (int) Math.min(samples, LATENCY_WINDOW));
+                    Arrays.sort(sorted);
+                    percentileNanos = sorted[(int) Math.min(sorted.length - 1, Math.floor(delayPercentile * sorted.length))];
+                    sinceRecompute = 0;
+                }
+                return Math.max(minDelayNanos, percentileNanos);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void recordLatency(long latencyNanos) {
+            lock.lock();
+            try {
+                latencies[(int) (samples++ % LATENCY_WINDOW)] = latencyNanos;
+                sinceRecompute++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * The requests of one call: the first response wins.
+         */
+        private final class Race {
+            private final CompletableFuture<HttpTransportResponse> result = new CompletableFuture<>();
+            private final Lock lock = new ReentrantLock();
+            /** The requests sent and not answered yet, starting with the first one. */
+            private int pending = 1;
+            private boolean done;
+
+            private void send(RestInvocation invocation, Function<RestInvocation, CompletableFuture<HttpTransportResponse>> sender, boolean hedge) {
+                long start = System.nanoTime();
+                CompletableFuture<HttpTransportResponse> response;
+                try {
+                    response = sender.apply(invocation);
+                } catch (RuntimeException e) {
+                    response = new CompletableFuture<>();
+                    response.completeExceptionally(e);
+                }
+                response.thenApply(HedgingPolicy::awaitStatus).whenComplete((r, failure) -> {
+                    if (failure != null) {
+                        lost(failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+                    } else {
+                        recordLatency(System.nanoTime() - start);
+                        arrived(r, hedge);
+                    }
+                });
+            }
+
+            private void hedge(Supplier<RestInvocation> hedgeInvocation, Function<RestInvocation, CompletableFuture<HttpTransportResponse>> sender) {
+                lock.lock();
+                try {
+                    if (done) {
+                        return;
+                    }
+                    if (!budget.withdraw()) {
+                        log.debug("Not hedging: the hedging budget is used up");
+                        return;
+                    }
+                    pending++;
+                } finally {
+                    lock.unlock();
+                }
+                hedges.increment();
+                RestInvocation invocation;
+                try {
+                    invocation = hedgeInvocation.get();
+                } catch (RuntimeException e) {
+                    log.warn("Failed to create the hedged request", e);
+                    lost(e);
+                    return;
+                }
+                log.debug("Hedging the call to {}", invocation.getInvocationUrl());
+                send(invocation, sender, true);
+            }
+
+            private void arrived(HttpTransportResponse response, boolean hedge) {
+                lock.lock();
+                try {
+                    pending--;
+                    if (done) {
+                        discard(response);
+                        return;
+                    }
+                    done = true;
+                } finally {
+                    lock.unlock();
+                }
+                if (hedge) {
+                    hedgeWins.increment();
+                }
+                if (!result.complete(response)) {
+                    // The caller gave up waiting.
+                    discard(response);
+                }
+            }
+
+            /**
+             * A request failed: the call fails if no other one can still succeed.
+             */
+            private void lost(Throwable failure) {
+                lock.lock();
+                try {
+                    pending--;
+                    if (done || pending > 0) {
+                        return;
+                    }
+                    done = true;
+                } finally {
+                    lock.unlock();
+                }
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Waits for the status of a response that a transport returns before it has arrived (eg. HttpURLConnection's),
+     * so that the race is decided by the arrival of the response.
+     */
+    private static HttpTransportResponse awaitStatus(HttpTransportResponse response) {
+        try {
+            response.getStatusCode();
+            return response;
+        } catch (IOException e) {
+            discard(response);
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Closes the response of a request that lost, without reading it.
+     */
+    private static void discard(HttpTransportResponse response) {
+        try {
+            InputStream body = response.getBody();
+            if (body != null) {
+                body.close();
+            }
+        } catch (IOException e) {
+            log.debug("Failed to close the response of a hedged request", e);
+        }
+    }
+
+    public static final class Stats {
+        private final long calls;
+        private final long hedges;
+        private final long hedgeWins;
+
+        Stats(long calls, long hedges, long hedgeWins) {
+            this.calls = calls;
+            this.hedges = hedges;
+            this.hedgeWins = hedgeWins;
+        }
+
+        public long getCalls() {
+            return calls;
+        }
+
+        /**
+         * @return the number of calls whose request was hedged
+         */
+        public long getHedges() {
+            return hedges;
+        }
+
+        /**
+         * @return the number of hedged calls in which the hedge's response arrived first
+         */
+        public long getHedgeWins() {
+            return hedgeWins;
+        }
+
+        /**
+         * @return the share of the calls that were hedged
+         */
+        public double getHedgeRate() {
+            return calls == 0 ? 0 : (double) hedges / calls;
+        }
+
+        /**
+         * @return the share of the hedged calls in which the hedge won
+         */
+        public double getWinRate() {
+            return hedges == 0 ? 0 : (double) hedgeWins / hedges;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stats{calls=%d, hedges=%d, hedgeWins=%d}", calls, hedges, hedgeWins);
+        }
+    }
+}
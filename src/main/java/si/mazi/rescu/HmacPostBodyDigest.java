@@ -21,15 +21,6 @@
  */
 package si.mazi.rescu;
 
-import javax.crypto.Mac;
-import javax.crypto.SecretKey;
-import javax.crypto.spec.SecretKeySpec;
-import java.io.IOException;
-import java.nio.charset.Charset;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
-
 /**
  * <p>
  * This may be used as the value of a @HeaderParam, @QueryParam or @PathParam to create a digest of the post body (composed of @FormParam's). Don't use as the value of a @FormParam, it will probably
@@ -42,9 +33,7 @@ import java.util.Base64;
  */
 public final class HmacPostBodyDigest implements ParamsDigest {
 
-    private static final String HMAC_SHA_512 = "HmacSHA512";
-	public final static String CHARSET_UTF_8 = "UTF-8";
-    private final Mac mac;
+    private final HmacSigner signer;
 
     /**
      * Constructor
@@ -53,17 +42,7 @@ public final class HmacPostBodyDigest implements ParamsDigest {
      */
     private HmacPostBodyDigest(String secretKeyBase64) throws IllegalArgumentException {
 
-        try {
-            SecretKey secretKey = new SecretKeySpec(Base64.getDecoder().decode(secretKeyBase64.getBytes(CHARSET_UTF_8)), HMAC_SHA_512);
-            mac = Mac.getInstance(HMAC_SHA_512);
-            mac.init(secretKey);
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Could not decode Base 64 string", e);
-        } catch (InvalidKeyException e) {
-            throw new IllegalArgumentException("Invalid key for hmac initialization.", e);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Illegal algorithm for post body digest. Check the implementation.");
-        }
+        signer = HmacSigner.createWithBase64Key(HmacSigner.Algorithm.HMAC_SHA512, secretKeyBase64);
     }
 
     public static HmacPostBodyDigest createInstance(String secretKeyBase64) throws IllegalArgumentException {
@@ -73,7 +52,6 @@ public final class HmacPostBodyDigest implements ParamsDigest {
 
     public String digestParams(RestInvocation restInvocation) {
 
-        mac.update(restInvocation.getRequestBody().getBytes(Charset.forName(CHARSET_UTF_8)));
-        return Base64.getEncoder().encodeToString(mac.doFinal()).trim();
+        return signer.sign(restInvocation.getRequestBodyBytes(), HmacSigner.Encoding.BASE64);
     }
 }
\ No newline at end of file
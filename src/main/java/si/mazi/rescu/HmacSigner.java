@@ -0,0 +1,169 @@
+package si.mazi.rescu;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ * Computes HMACs of request data, eg. for {@link ParamsDigest}s that sign requests with an API secret.
+ * </p>
+ * <p>
+ * Instances are thread-safe and meant to be shared: a {@link Mac} isn't, so each signature is computed on a Mac taken
+ * from a small pool. The pooled Macs are clones of one initialized prototype, so the key is only processed once.
+ * </p>
+ */
+public final class HmacSigner {
+
+    public enum Algorithm {
+        HMAC_SHA256("HmacSHA256"),
+        HMAC_SHA384("HmacSHA384"),
+        HMAC_SHA512("HmacSHA512");
+
+        private final String jcaName;
+
+        Algorithm(String jcaName) {
+            this.jcaName = jcaName;
+        }
+
+        public String getJcaName() {
+            return jcaName;
+        }
+    }
+
+    public enum Encoding {
+        /** Lowercase hexadecimal. */
+        HEX,
+        BASE64
+    }
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** More idle Macs than this are left to the garbage collector. */
+    private static final int MAX_POOLED = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private final Algorithm algorithm;
+    private final Mac prototype;
+    private final SecretKeySpec key;
+    private final BlockingQueue<Mac> pool = new ArrayBlockingQueue<>(MAX_POOLED);
+
+    /**
+     * @throws IllegalArgumentException if the key is invalid for the algorithm
+     */
+    private HmacSigner(Algorithm algorithm, byte[] key) throws IllegalArgumentException {
+        this.algorithm = algorithm;
+        this.key = new SecretKeySpec(key, algorithm.getJcaName());
+        try {
+            this.prototype = Mac.getInstance(algorithm.getJcaName());
+            this.prototype.init(this.key);
+        } catch (InvalidKeyException e) {
+            throw new IllegalArgumentException("Invalid key for hmac initialization.", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Algorithm " + algorithm.getJcaName() + " is not available.", e);
+        }
+    }
+
+    public static HmacSigner create(Algorithm algorithm, byte[] key) throws IllegalArgumentException {
+        return new HmacSigner(algorithm, key);
+    }
+
+    public static HmacSigner create(Algorithm algorithm, String key) throws IllegalArgumentException {
+        return new HmacSigner(algorithm, key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the key can't be base-64-decoded or is invalid for the algorithm
+     */
+    public static HmacSigner createWithBase64Key(Algorithm algorithm, String keyBase64) throws IllegalArgumentException {
+        return new HmacSigner(algorithm, Base64.getDecoder().decode(keyBase64));
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @param parts the data to sign; null parts are skipped
+     * @return the HMAC of the concatenated parts
+     */
+    public byte[] sign(byte[]... parts) {
+        Mac mac = acquire();
+        try {
+            for (byte[] part : parts) {
+                if (part != null) {
+                    mac.update(part);
+                }
+            }
+            return mac.doFinal();
+        } finally {
+            // doFinal leaves the Mac reset and ready for the next signature.
+            pool.offer(mac);
+        }
+    }
+
+    public String sign(byte[] data, Encoding encoding) {
+        return encode(sign(new byte[][] {data}), encoding);
+    }
+
+    /**
+     * @param parts the data to sign; null parts are skipped
+     * @return the encoded HMAC of the concatenated parts
+     */
+    public String sign(Encoding encoding, byte[]... parts) {
+        return encode(sign(parts), encoding);
+    }
+
+    /**
+     * @param data the data to sign, encoded as UTF-8; a different name than {@link #sign(byte[], Encoding)} so that a
+     *             null argument isn't ambiguous
+     */
+    public String signUtf8(String data, Encoding encoding) {
+        return sign(data == null ? null : data.getBytes(StandardCharsets.UTF_8), encoding);
+    }
+
+    public static String encode(byte[] bytes, Encoding encoding) {
+        switch (encoding) {
+            case HEX:
+                return toHex(bytes);
+            case BASE64:
+                return Base64.getEncoder().encodeToString(bytes);
+            default:
+                throw new IllegalArgumentException("Unsupported encoding: " + encoding);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    private Mac acquire() {
+        Mac mac = pool.poll();
+        return mac != null ? mac : newMac();
+    }
+
+    private Mac newMac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            // Not all providers support cloning; initializing a new instance is slower but equivalent.
+            try {
+                Mac mac = Mac.getInstance(algorithm.getJcaName(), prototype.getProvider());
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Could not create a " + algorithm.getJcaName() + " instance.", ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package si.mazi.rescu;
+
+import java.io.IOException;
+
+/**
+ * Sends an invocation and returns the response, eg. {@link RestInvocationHandler#invokeHttp(RestInvocation)}. The
+ * policies on the way to the transport (caching, coalescing...) each take the next one as a sender.
+ */
+@FunctionalInterface
+interface HttpSender {
+
+    HttpTransportResponse send(RestInvocation invocation) throws IOException;
+}
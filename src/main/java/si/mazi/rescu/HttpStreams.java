@@ -0,0 +1,252 @@
+package si.mazi.rescu;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Helpers for reading HTTP/1.1 messages off a connection.
+ */
+final class HttpStreams {
+
+    /**
+     * How much of an unread response body is read and discarded to keep the connection alive.
+     * Longer bodies are cut off by closing the connection.
+     */
+    static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    /** A Content-Length above this isn't trusted for sizing the buffer up front. */
+    private static final int MAX_PRESIZED_LENGTH = 16 * 1024 * 1024;
+
+    private HttpStreams() throws InstantiationException {
+        throw new InstantiationException("This class is not for instantiation");
+    }
+
+    /**
+     * Reads and discards the rest of the stream, up to {@code maxBytes}.
+     *
+     * @return true if the end of the stream was reached
+     */
+    static boolean drain(InputStream in, int maxBytes) throws IOException {
+        byte[] buffer = new byte[4096];
+        int total = 0;
+        for (int read; (read = in.read(buffer)) != -1; ) {
+            total += read;
+            if (total > maxBytes) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the rest of the stream into an array. If the length is known in advance, the bytes are read straight into
+     * an array of that size.
+     *
+     * @param expectedLength the expected number of bytes, eg. from Content-Length, or -1 if unknown
+     */
+    static byte[] readFully(InputStream in, int expectedLength) throws IOException {
+        byte[] buffer = new byte[expectedLength > 0 && expectedLength <= MAX_PRESIZED_LENGTH ? expectedLength : 8192];
+        int length = 0;
+        for (int read; (read = in.read(buffer, length, buffer.length - length)) != -1; ) {
+            length += read;
+            if (length == buffer.length) {
+                int next = in.read();
+                if (next == -1) {
+                    return buffer;
+                }
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                buffer[length++] = (byte) next;
+            }
+        }
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Drains the stream so that the connection it comes from may be reused, then closes it. Errors are ignored.
+     */
+    static void drainAndClose(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            drain(in, MAX_DRAIN_BYTES);
+        } catch (IOException ignore) {
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    /**
+     * Reads a CRLF- (or LF-) terminated ISO-8859-1 line, without the terminator.
+     *
+     * @return the line, or null if the stream ended before any byte was read
+     */
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(80);
+        for (int b; (b = in.read()) != '\n'; ) {
+            if (b == -1) {
+                if (line.size() == 0) {
+                    return null;
+                }
+                throw new EOFException("Unexpected end of stream in the middle of a line");
+            }
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("Line longer than " + MAX_LINE_LENGTH + " bytes");
+            }
+            line.write(b);
+        }
+        String string = new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+        return string.endsWith("\r") ? string.substring(0, string.length() - 1) : string;
+    }
+
+    /**
+     * A body delimited by Content-Length. Doesn't close the underlying stream.
+     */
+    static final class FixedLengthInputStream extends FilterInputStream {
+        private long remaining;
+
+        FixedLengthInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Premature end of response body; " + remaining + " bytes missing");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read == -1) {
+                throw new EOFException("Premature end of response body; " + remaining + " bytes missing");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            return super.skip(Math.min(n, remaining));
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * A body with chunked transfer encoding. Doesn't close the underlying stream.
+     */
+    static final class ChunkedInputStream extends FilterInputStream {
+        private long chunkRemaining;
+        private boolean eof;
+
+        ChunkedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (eof) {
+                return -1;
+            }
+            if (chunkRemaining == 0) {
+                nextChunk();
+                if (eof) {
+                    return -1;
+                }
+            }
+            int read = in.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (read == -1) {
+                throw new EOFException("Premature end of chunked response body");
+            }
+            chunkRemaining -= read;
+            if (chunkRemaining == 0) {
+                String crlf = readLine(in);
+                if (crlf == null || !crlf.isEmpty()) {
+                    throw new IOException("Malformed chunked response body");
+                }
+            }
+            return read;
+        }
+
+        private void nextChunk() throws IOException {
+            String sizeLine = readLine(in);
+            if (sizeLine == null) {
+                throw new EOFException("Premature end of chunked response body");
+            }
+            int extension = sizeLine.indexOf(';');
+            String size = (extension == -1 ? sizeLine : sizeLine.substring(0, extension)).trim();
+            try {
+                chunkRemaining = Long.parseLong(size, 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed chunk size: " + sizeLine);
+            }
+            if (chunkRemaining == 0) {
+                // Skip the trailers.
+                for (String trailer; (trailer = readLine(in)) != null && !trailer.isEmpty(); ) {
+                }
+                eof = true;
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 4096)];
+            int read = read(buffer, 0, buffer.length);
+            return read == -1 ? 0 : read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return eof ? 0 : (int) Math.min(in.available(), chunkRemaining);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -24,28 +24,24 @@ package si.mazi.rescu;
 
 import oauth.signpost.OAuthConsumer;
 import oauth.signpost.exception.OAuthException;
-import oauth.signpost.http.HttpRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import si.mazi.rescu.oauth.RescuOAuthRequestAdapter;
-import si.mazi.rescu.utils.HttpUtils;
+import si.mazi.rescu.oauth.RescuOAuthHttpRequest;
 
 import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLSocketFactory;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.InetSocketAddress;
+import java.io.UnsupportedEncodingException;
 import java.net.Proxy;
-import java.net.URL;
-import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -54,6 +50,8 @@ import java.util.zip.GZIPInputStream;
 class HttpTemplate {
     public final static String CHARSET_UTF_8 = "UTF-8";
 
+    private static final byte[] UTF_8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+
 
     /**
      * if log level DEBUG is set to this class, response body will be logged.
@@ -73,11 +71,7 @@ class HttpTemplate {
      * Default request header fields
      */
     private final Map<String, String> defaultHttpHeaders = new HashMap<>();
-    private final int connTimeout;
-    private final int readTimeout;
-    private final Proxy proxy;
-    private final SSLSocketFactory sslSocketFactory;
-    private final HostnameVerifier hostnameVerifier;
+    private final HttpTransport transport;
     private final OAuthConsumer oAuthConsumer;
 
     HttpTemplate(int readTimeout, String proxyHost, Integer proxyPort, Proxy.Type proxyType,
@@ -87,10 +81,12 @@ class HttpTemplate {
 
     HttpTemplate(int connTimeout, int readTimeout, String proxyHost, Integer proxyPort, Proxy.Type proxyType,
                  SSLSocketFactory sslSocketFactory, HostnameVerifier hostnameVerifier, OAuthConsumer oAuthConsumer) {
-        this.connTimeout = connTimeout;
-        this.readTimeout = readTimeout;
-        this.sslSocketFactory = sslSocketFactory;
-        this.hostnameVerifier = hostnameVerifier;
+        this(new UrlConnectionHttpTransport(connTimeout, readTimeout, proxyHost, proxyPort, proxyType, sslSocketFactory, hostnameVerifier),
+                oAuthConsumer);
+    }
+
+    HttpTemplate(HttpTransport transport, OAuthConsumer oAuthConsumer) {
+        this.transport = transport;
         this.oAuthConsumer = oAuthConsumer;
 
         defaultHttpHeaders.put("Accept-Charset", CHARSET_UTF_8);
@@ -98,188 +94,218 @@ class HttpTemplate {
         defaultHttpHeaders.put("Accept", "application/json");
         // User agent provides statistics for servers, but some use it for content negotiation so fake good agents
         defaultHttpHeaders.put("User-Agent", "ResCU JDK/6 AppleWebKit/535.7 Chrome/16.0.912.36 Safari/535.7"); // custom User-Agent
+    }
 
-        if (proxyHost == null || proxyPort == null) {
-            proxy = Proxy.NO_PROXY;
-        } else {
-            Proxy.Type type = proxyType == null ? Proxy.Type.HTTP : proxyType;
-            proxy = new Proxy(type, new InetSocketAddress(proxyHost, proxyPort));
-            log.info("Using proxy {}", proxy);
-        }
+    /**
+     * @param requestBody the encoded body, or null; it's sent (and signed) as it is
+     */
+    HttpTransportResponse send(String urlString, byte[] requestBody, Map<String, String> httpHeaders, HttpMethod method) throws IOException {
+        return send(urlString, requestBody, httpHeaders, method, 0);
     }
 
-    HttpURLConnection send(String urlString, String requestBody, Map<String, String> httpHeaders, HttpMethod method) throws IOException {
-        if (requestBody != null && requestBody.length() > 0) {
-            log.debug("Executing {} request at {}  body \n{}", method, urlString, truncate(requestBody, requestMaxLogLen));
+    /**
+     * @param timeoutMillis the time left for a call with a {@link Deadline}; 0 means the transport's own timeouts
+     */
+    HttpTransportResponse send(String urlString, byte[] requestBody, Map<String, String> httpHeaders, HttpMethod method, int timeoutMillis) throws IOException {
+        PreparedRequest request = prepare(urlString, requestBody, httpHeaders, method);
+        return transport.send(method, request.url, request.headers, request.body, timeoutMillis);
+    }
+
+    /**
+     * Like {@link #send(String, byte[], Map, HttpMethod)}, but returns immediately. The returned future completes
+     * when the response has arrived.
+     *
+     * @param executor used by transports that can't send requests asynchronously by themselves
+     */
+    CompletableFuture<HttpTransportResponse> sendAsync(String urlString, byte[] requestBody, Map<String, String> httpHeaders, HttpMethod method, Executor executor) {
+        return sendAsync(urlString, requestBody, httpHeaders, method, executor, 0);
+    }
+
+    CompletableFuture<HttpTransportResponse> sendAsync(String urlString, byte[] requestBody, Map<String, String> httpHeaders, HttpMethod method, Executor executor, int timeoutMillis) {
+        PreparedRequest request = prepare(urlString, requestBody, httpHeaders, method);
+        return transport.sendAsync(method, request.url, request.headers, request.body, executor, timeoutMillis);
+    }
+
+    private PreparedRequest prepare(String urlString, byte[] body, Map<String, String> httpHeaders, HttpMethod method) {
+        if (body != null && body.length > 0) {
+            if (log.isDebugEnabled()) {
+                log.debug("Executing {} request at {}  body \n{}", method, urlString, truncate(new String(body, StandardCharsets.UTF_8), requestMaxLogLen));
+            }
         } else {
             log.debug("Executing {} request at {}", method, urlString);
         }
         log.trace("Request headers = {}", httpHeaders);
 
+        preconditionNotNull(method, "method cannot be null");
         preconditionNotNull(urlString, "urlString cannot be null");
         preconditionNotNull(httpHeaders, "httpHeaders should not be null");
 
-        int contentLength = requestBody == null ? 0 : requestBody.getBytes().length;
-        HttpURLConnection connection = configureURLConnection(method, urlString, httpHeaders, contentLength);
+        int contentLength = body == null ? 0 : body.length;
+
+        Map<String, String> headerKeyValues = new HashMap<>(defaultHttpHeaders);
+        headerKeyValues.putAll(httpHeaders);
+        headerKeyValues.put("Content-Length", Integer.toString(contentLength));
 
         if (oAuthConsumer != null) {
-            HttpRequest request = new RescuOAuthRequestAdapter(connection, requestBody);
+            RescuOAuthHttpRequest request = new RescuOAuthHttpRequest(method.name(), urlString, headerKeyValues, body);
 
             try {
                 oAuthConsumer.sign(request);
             } catch (OAuthException e) {
                 throw new RuntimeException("OAuth error", e);
             }
+            urlString = request.getRequestUrl();
         }
 
-        if (contentLength > 0) {
-            // Write the request body
-            OutputStream out = connection.getOutputStream();
-            out.write(requestBody.getBytes(CHARSET_UTF_8));
-            out.flush();
+        if (log.isTraceEnabled()) {
+            for (Map.Entry<String, String> entry : headerKeyValues.entrySet()) {
+                log.trace("Header request property: key='{}', value='{}'", entry.getKey(), entry.getValue());
+            }
         }
-        return connection;
+
+        return new PreparedRequest(urlString, headerKeyValues, contentLength > 0 ? body : null);
     }
 
-    InvocationResult receive(HttpURLConnection connection) throws IOException {
-        int httpStatus = connection.getResponseCode();
+    InvocationResult receive(HttpTransportResponse response) throws IOException {
+        int httpStatus = response.getStatusCode();
         log.debug("Request http status = {}", httpStatus);
         if (log.isTraceEnabled()) {
-            for (Map.Entry<String, List<String>> entry : connection.getHeaderFields().entrySet()) {
+            for (Map.Entry<String, List<String>> entry : response.getHeaderFields().entrySet()) {
                 if (entry.getKey() != null) {
                     log.trace("Header response property: key='{}', value='{}'", entry.getKey(), entry.getValue());
                 }
             }
         }
 
-        InputStream inputStream = !HttpUtils.isErrorStatusCode(httpStatus) ? connection.getInputStream() : connection.getErrorStream();
-        String responseString = readInputStreamAsEncodedString(inputStream, connection);
-        if (responseString != null && responseString.startsWith("\uFEFF")) {
-            responseString = responseString.substring(1);
+        InputStream inputStream = response.getBody();
+        if (inputStream == null) {
+            log.debug("Http call returned {}; no response body", httpStatus);
+            return new InvocationResult((String) null, httpStatus);
         }
-        log.debug("Http call returned {}; response body:\n{}", httpStatus, truncate(responseString, responseMaxLogLen));
-
-        return new InvocationResult(responseString, httpStatus);
+        Charset charset = getResponseCharset(response);
+        byte[] body = readInputStream(inputStream, response);
+        if (StandardCharsets.UTF_8.equals(charset) && startsWithUtf8Bom(body)) {
+            body = Arrays.copyOfRange(body, UTF_8_BOM.length, body.length);
+        }
+        InvocationResult invocationResult = new InvocationResult(body, charset, httpStatus);
+        if (log.isDebugEnabled()) {
+            log.debug("Http call returned {}; response body:\n{}", httpStatus, truncate(invocationResult.getHttpBody(), responseMaxLogLen));
+        }
+        return invocationResult;
     }
 
     /**
-     * Provides an internal convenience method to allow easy overriding by test classes
+     * Opens the (uncompressed) body for reading it incrementally rather than as a whole. Closing the returned stream
+     * releases the connection.
      *
-     * @param method        The HTTP method (e.g. GET, POST etc)
-     * @param urlString     A string representation of a URL
-     * @param httpHeaders   The HTTP headers (will override the defaults)
-     * @param contentLength The Content-Length request property
-     * @return An HttpURLConnection based on the given parameters
-     * @throws IOException If something goes wrong
+     * @return the body, or null if there's none
      */
-    private HttpURLConnection configureURLConnection(HttpMethod method, String urlString, Map<String, String> httpHeaders, int contentLength) throws IOException {
-
-        preconditionNotNull(method, "method cannot be null");
-        preconditionNotNull(urlString, "urlString cannot be null");
-        preconditionNotNull(httpHeaders, "httpHeaders cannot be null");
-
-        HttpURLConnection connection = getHttpURLConnection(urlString);
-        connection.setRequestMethod(method.name());
-
-        Map<String, String> headerKeyValues = new HashMap<>(defaultHttpHeaders);
-
-        headerKeyValues.putAll(httpHeaders);
-
-        for (Map.Entry<String, String> entry : headerKeyValues.entrySet()) {
-            connection.setRequestProperty(entry.getKey(), entry.getValue());
-            log.trace("Header request property: key='{}', value='{}'", entry.getKey(), entry.getValue());
+    InputStream openBody(HttpTransportResponse response) throws IOException {
+        int httpStatus = response.getStatusCode();
+        InputStream inputStream = response.getBody();
+        log.debug("Request http status = {}; streaming the response body", httpStatus);
+        if (inputStream == null || !izGzipped(response)) {
+            return inputStream;
         }
-
-        // Perform additional configuration for POST
-        if (contentLength > 0) {
-            connection.setDoOutput(true);
-            connection.setDoInput(true);
-        }
-        connection.setRequestProperty("Content-Length", Integer.toString(contentLength));
-
-        return connection;
-    }
-
-    protected HttpURLConnection getHttpURLConnection(String urlString) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) new URL(urlString).openConnection(proxy);
-
-        if (readTimeout > 0) {
-            connection.setReadTimeout(readTimeout);
-        }
-        if (connTimeout > 0) {
-          connection.setConnectTimeout(connTimeout);
-        }
-
-        if (connection instanceof HttpsURLConnection) {
-            HttpsURLConnection httpsConnection = (HttpsURLConnection) connection;
-
-            if (sslSocketFactory != null) {
-                httpsConnection.setSSLSocketFactory(sslSocketFactory);
-            }
-
-            if (hostnameVerifier != null) {
-                httpsConnection.setHostnameVerifier(hostnameVerifier);
-            }
+        try {
+            return new GZIPInputStream(inputStream);
+        } catch (IOException | RuntimeException e) {
+            HttpStreams.drainAndClose(inputStream);
+            throw e;
         }
-
-        return connection;
     }
 
     /**
      * <p>
-     * Reads an InputStream as a String allowing for different encoding types. This closes the stream at the end.
+     * Reads an InputStream as a String allowing for different encoding types. This drains and closes the stream at the end.
      * </p>
      *
      * @param inputStream The input stream
-     * @param connection  The HTTP connection object
+     * @param response    The HTTP response
      * @return A String representation of the input stream
      * @throws IOException If something goes wrong
      */
-    String readInputStreamAsEncodedString(InputStream inputStream, HttpURLConnection connection) throws IOException {
+    String readInputStreamAsEncodedString(InputStream inputStream, HttpTransportResponse response) throws IOException {
         if (inputStream == null) {
             return null;
         }
+        Charset charset = getResponseCharset(response);
+        return new String(readInputStream(inputStream, response), charset);
+    }
 
-        BufferedReader reader = null;
+    /**
+     * Reads the whole (uncompressed) body without decoding it. This drains and closes the stream at the end.
+     */
+    private byte[] readInputStream(InputStream inputStream, HttpTransportResponse response) throws IOException {
+        InputStream in = inputStream;
         try {
-            String responseEncoding = getResponseEncoding(connection);
-            if (izGzipped(connection)) {
-                inputStream = new GZIPInputStream(inputStream);
+            int expectedLength = -1;
+            if (izGzipped(response)) {
+                in = new GZIPInputStream(inputStream);
+            } else if (response != null) {
+                expectedLength = parseContentLength(response.getHeaderField("Content-Length"));
             }
-            final InputStreamReader in = responseEncoding != null ? new InputStreamReader(inputStream, responseEncoding)
-                    : new InputStreamReader(inputStream, CHARSET_UTF_8);
-            reader = new BufferedReader(in);
-            StringBuilder sb = new StringBuilder();
-            for (String line; (line = reader.readLine()) != null; ) {
-                sb.append(line);
-            }
-            return sb.toString();
+            return HttpStreams.readFully(in, expectedLength);
         } finally {
-            inputStream.close();
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (IOException ignore) {
-                }
+            // Drain whatever wasn't read (eg. after a decoding error) so that the connection can be kept alive.
+            HttpStreams.drainAndClose(inputStream);
+            if (in != inputStream) {
+                in.close(); // releases the inflater
             }
         }
     }
 
-    boolean izGzipped(HttpURLConnection connection) {
-        return "gzip".equalsIgnoreCase(connection.getHeaderField("Content-Encoding"));
+    private static int parseContentLength(String contentLength) {
+        try {
+            return contentLength == null ? -1 : Integer.parseInt(contentLength.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static boolean startsWithUtf8Bom(byte[] body) {
+        if (body.length < UTF_8_BOM.length) {
+            return false;
+        }
+        for (int i = 0; i < UTF_8_BOM.length; i++) {
+            if (body[i] != UTF_8_BOM[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the charset from the "Content-Type" header, UTF-8 if there's none
+     * @throws UnsupportedEncodingException if the charset is not supported
+     */
+    Charset getResponseCharset(HttpTransportResponse response) throws IOException {
+        String responseEncoding = getResponseEncoding(response);
+        if (responseEncoding == null) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(responseEncoding);
+        } catch (IllegalArgumentException e) {
+            throw new UnsupportedEncodingException(responseEncoding);
+        }
+    }
+
+    boolean izGzipped(HttpTransportResponse response) throws IOException {
+        return "gzip".equalsIgnoreCase(response.getHeaderField("Content-Encoding"));
     }
 
     /**
      * Determine the response encoding if specified
      *
-     * @param connection The HTTP connection
+     * @param response The HTTP response
      * @return The response encoding as a string (taken from "Content-Type")
      */
-    String getResponseEncoding(URLConnection connection) {
+    String getResponseEncoding(HttpTransportResponse response) throws IOException {
 
         String charset = null;
 
-        String contentType = connection.getHeaderField("Content-Type");
+        String contentType = response.getHeaderField("Content-Type");
         if (contentType != null) {
             for (String param : contentType.replace(" ", "").split(";")) {
                 if (param.startsWith("charset=")) {
@@ -312,4 +338,16 @@ class HttpTemplate {
         }
         return toTruncate.substring(0, maxLen);
     }
+
+    private static final class PreparedRequest {
+        private final String url;
+        private final Map<String, String> headers;
+        private final byte[] body;
+
+        private PreparedRequest(String url, Map<String, String> headers, byte[] body) {
+            this.url = url;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
 }
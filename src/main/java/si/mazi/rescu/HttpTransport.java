@@ -0,0 +1,88 @@
+package si.mazi.rescu;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * The HTTP client used to execute rest invocations. {@link HttpTemplate} prepares the request (headers, body, signing)
+ * and delegates the actual network exchange to an implementation of this interface.
+ *
+ * Implementations must be thread-safe: a single transport is shared by all invocations of a proxy (and may be shared
+ * between proxies).
+ *
+ * @see HttpTransportFactory
+ * @see ClientConfig#setHttpTransportFactory(HttpTransportFactory)
+ */
+public interface HttpTransport {
+
+    /**
+     * Sends the request. Implementations may return before the response has arrived; the returned
+     * {@link HttpTransportResponse} then blocks until the response status and headers are available.
+     *
+     * @param method  the HTTP method
+     * @param url     the complete request url, including the query string
+     * @param headers the request headers; Content-Length is included, but implementations may compute it themselves
+     * @param body    the request body, or null if there is none
+     * @return a handle to the response
+     * @throws IOException if the request can't be sent
+     */
+    HttpTransportResponse send(HttpMethod method, String url, Map<String, String> headers, byte[] body) throws IOException;
+
+    /**
+     * Like {@link #send(HttpMethod, String, Map, byte[])}, with the read timeout replaced by {@code timeoutMillis}, and
+     * the connect timeout cut to it if longer. Used for calls with a {@link Deadline}.
+     *
+     * The default implementation ignores the timeout; the transports of rescu override this.
+     *
+     * @param timeoutMillis the time left for the call; 0 means the transport's own timeouts
+     */
+    default HttpTransportResponse send(HttpMethod method, String url, Map<String, String> headers, byte[] body, int timeoutMillis) throws IOException {
+        return send(method, url, headers, body);
+    }
+
+    /**
+     * Sends the request without blocking the calling thread. The returned future completes when the response status
+     * and headers have arrived. Reading the body of the completed response should not block for long.
+     *
+     * The default implementation calls {@link #send(HttpMethod, String, Map, byte[])} on the given executor;
+     * transports with native asynchronous support should override this.
+     *
+     * @param executor the executor to use for blocking work
+     */
+    default CompletableFuture<HttpTransportResponse> sendAsync(HttpMethod method, String url, Map<String, String> headers, byte[] body, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                HttpTransportResponse response = send(method, url, headers, body);
+                response.getStatusCode();
+                return response;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+    /**
+     * Like {@link #sendAsync(HttpMethod, String, Map, byte[], Executor)}, with the timeouts of
+     * {@link #send(HttpMethod, String, Map, byte[], int)}.
+     *
+     * The default implementation calls {@link #send(HttpMethod, String, Map, byte[], int)} on the given executor, or,
+     * without a timeout, {@link #sendAsync(HttpMethod, String, Map, byte[], Executor)}.
+     */
+    default CompletableFuture<HttpTransportResponse> sendAsync(HttpMethod method, String url, Map<String, String> headers, byte[] body, Executor executor, int timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return sendAsync(method, url, headers, body, executor);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                HttpTransportResponse response = send(method, url, headers, body, timeoutMillis);
+                response.getStatusCode();
+                return response;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+}
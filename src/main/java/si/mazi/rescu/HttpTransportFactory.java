@@ -0,0 +1,37 @@
+package si.mazi.rescu;
+
+/**
+ * Creates the {@link HttpTransport} for a rest proxy.
+ *
+ * The built-in transports are {@link #URL_CONNECTION} (the default) and {@link #JDK_HTTP_CLIENT}. To share a single
+ * transport (and thus its connections) between several proxies, create it once and return the same instance from a
+ * custom factory.
+ */
+public interface HttpTransportFactory {
+
+    /**
+     * A transport based on {@link java.net.HttpURLConnection}; this is the default.
+     */
+    HttpTransportFactory URL_CONNECTION = UrlConnectionHttpTransport::new;
+
+    /**
+     * A transport based on {@code java.net.http.HttpClient}, which supports HTTP/2: concurrent requests to the same
+     * host are multiplexed over a few connections. Requires Java 11 or later.
+     */
+    HttpTransportFactory JDK_HTTP_CLIENT = new ReflectiveHttpTransportFactory("si.mazi.rescu.JdkHttpClientTransport");
+
+    /**
+     * A HTTP/1.1 transport with an explicit {@link ConnectionPool} with default limits. Each proxy gets its own pool;
+     * use {@link #pooled(ConnectionPool)} to share one and to read its counters.
+     */
+    HttpTransportFactory POOLED = PooledHttpTransport::new;
+
+    /**
+     * @return a factory for HTTP/1.1 transports that all use the given connection pool
+     */
+    static HttpTransportFactory pooled(ConnectionPool pool) {
+        return config -> new PooledHttpTransport(config, pool);
+    }
+
+    HttpTransport createTransport(ClientConfig config);
+}
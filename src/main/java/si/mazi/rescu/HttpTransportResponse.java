@@ -0,0 +1,33 @@
+package si.mazi.rescu;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The response to a request sent by a {@link HttpTransport}.
+ */
+public interface HttpTransportResponse {
+
+    /**
+     * @return the HTTP status code; blocks until the response has arrived.
+     */
+    int getStatusCode() throws IOException;
+
+    /**
+     * @return all response headers; blocks until the response has arrived.
+     */
+    Map<String, List<String>> getHeaderFields() throws IOException;
+
+    /**
+     * @return the first value of the response header with the given (case-insensitive) name, or null if not present.
+     */
+    String getHeaderField(String name) throws IOException;
+
+    /**
+     * @return the raw (possibly gzipped) response body, regardless of the status code; null if there is no body.
+     * The caller is responsible for closing the stream.
+     */
+    InputStream getBody() throws IOException;
+}
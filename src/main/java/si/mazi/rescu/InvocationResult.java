@@ -27,6 +27,7 @@ package si.mazi.rescu;
 import si.mazi.rescu.utils.HttpUtils;
 
 import java.io.Serializable;
+import java.nio.charset.Charset;
 
 /**
  * Result of a REST service invocation.
@@ -34,20 +35,60 @@ import java.io.Serializable;
  * @author Martin ZIMA
  */
 public class InvocationResult implements Serializable {
-    
-    private final String httpBody;
+
+    /** The raw response body, or null if this result was created from a String. */
+    private final byte[] httpBodyBytes;
+    private final String charsetName;
+    /** Decoded from {@link #httpBodyBytes} on first use. */
+    private String httpBody;
     private final int statusCode;
 
     public InvocationResult(String httpBody,
             int statusCode) {
+        this.httpBodyBytes = null;
+        this.charsetName = null;
         this.httpBody = httpBody;
         this.statusCode = statusCode;
     }
 
+    /**
+     * @param httpBody the (uncompressed) response body; it's only decoded into a String when that is asked for
+     * @param charset  the charset to decode the body with
+     */
+    public InvocationResult(byte[] httpBody, Charset charset, int statusCode) {
+        this.httpBodyBytes = httpBody;
+        this.charsetName = charset.name();
+        this.statusCode = statusCode;
+    }
+
     public String getHttpBody() {
+        if (httpBody == null && httpBodyBytes != null) {
+            httpBody = new String(httpBodyBytes, getCharset());
+        }
         return httpBody;
     }
 
+    /**
+     * @return the raw response body, or null if this result was created from a String
+     */
+    public byte[] getHttpBodyBytes() {
+        return httpBodyBytes;
+    }
+
+    /**
+     * @return the charset of {@link #getHttpBodyBytes()}, or null if this result was created from a String
+     */
+    public Charset getCharset() {
+        return charsetName == null ? null : Charset.forName(charsetName);
+    }
+
+    /**
+     * @return false if the body is null or empty
+     */
+    public boolean hasHttpBody() {
+        return httpBodyBytes != null ? httpBodyBytes.length > 0 : httpBody != null && httpBody.length() > 0;
+    }
+
     public int getStatusCode() {
         return statusCode;
     }
@@ -0,0 +1,391 @@
+package si.mazi.rescu;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * <p>
+ * Spreads the calls of a proxy over several equivalent base urls, eg. the regional and backup hosts of an API (see
+ * {@link RestProxyFactory#createProxy(Class, LoadBalancer, ClientConfig, Interceptor...)}). The request of each call
+ * is created for the chosen endpoint, so its {@link RestInvocation#getInvocationUrl() url}, digests and signatures
+ * cover the host it's sent to.
+ * </p>
+ * <p>
+ * The {@link Strategy} chooses among the healthy endpoints: {@link #LEAST_OUTSTANDING} the one with the fewest
+ * requests in flight, {@link #LEAST_LATENCY} the one with the lowest average response time (weighted by the requests
+ * in flight), {@link #FAILOVER} the first one in the given order.
+ * </p>
+ * <p>
+ * An endpoint whose requests fail {@link #setEjection(int, long, long, TimeUnit) a number of times} in a row (the
+ * request couldn't be sent or no response arrived, or the response status was 5xx) is ejected: it isn't chosen until
+ * the ejection time passes. Then one call is sent to it as a probe; if it succeeds the endpoint is back, otherwise it's
+ * ejected again for twice as long. When all the endpoints are ejected, the one that is due first is used. With a
+ * {@link RetryPolicy}, a retry is sent to another endpoint than the failed attempt if there's another healthy one.
+ * </p>
+ */
+public class LoadBalancer {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadBalancer.class);
+
+    /** The weight of a new response time in the moving average. */
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    /**
+     * Chooses the endpoint with the fewest requests in flight; a random one of those if there are several.
+     */
+    public static final Strategy LEAST_OUTSTANDING = candidates -> {
+        List<Endpoint> least = new ArrayList<>();
+        int min = Integer.MAX_VALUE;
+        for (Endpoint endpoint : candidates) {
+            int outstanding = endpoint.getOutstanding();
+            if (outstanding < min) {
+                least.clear();
+                min = outstanding;
+            }
+            if (outstanding == min) {
+                least.add(endpoint);
+            }
+        }
+        return least.get(ThreadLocalRandom.current().nextInt(least.size()));
+    };
+
+    /**
+     * Chooses the endpoint with the lowest moving average of response times, multiplied by the requests in flight (plus
+     * one), so that a fast endpoint isn't swamped. Endpoints without a response yet are tried first.
+     */
+    public static final Strategy LEAST_LATENCY = candidates -> {
+        Endpoint best = null;
+        double bestCost = Double.MAX_VALUE;
+        for (Endpoint endpoint : candidates) {
+            double cost = (double) endpoint.latencyNanos * (endpoint.getOutstanding() + 1);
+            if (best == null || cost < bestCost) {
+                best = endpoint;
+                bestCost = cost;
+            }
+        }
+        return best;
+    };
+
+    /**
+     * Chooses the first healthy endpoint in the given order: the primary, and the next ones only while it's ejected.
+     */
+    public static final Strategy FAILOVER = candidates -> candidates.get(0);
+
+    private final Strategy strategy;
+    private final List<Endpoint> endpoints;
+    private final Map<String, Endpoint> endpointsByUrl;
+
+    private volatile int failureThreshold = 3;
+    private volatile long ejectionNanos = TimeUnit.SECONDS.toNanos(10);
+    private volatile long maxEjectionNanos = TimeUnit.MINUTES.toNanos(5);
+
+    public LoadBalancer(Strategy strategy, String... baseUrls) {
+        this(strategy, Arrays.asList(baseUrls));
+    }
+
+    /**
+     * @param baseUrls the equivalent base urls; {@link #FAILOVER} uses them in this order
+     */
+    public LoadBalancer(Strategy strategy, List<String> baseUrls) {
+        if (strategy == null) {
+            throw new IllegalArgumentException("No strategy given");
+        }
+        if (baseUrls.isEmpty()) {
+            throw new IllegalArgumentException("No base urls given");
+        }
+        Map<String, Endpoint> endpointsByUrl = new LinkedHashMap<>();
+        for (String baseUrl : baseUrls) {
+            if (endpointsByUrl.put(baseUrl, new Endpoint(baseUrl)) != null) {
+                throw new IllegalArgumentException("Duplicate base url: " + baseUrl);
+            }
+        }
+        this.strategy = strategy;
+        this.endpointsByUrl = Collections.unmodifiableMap(endpointsByUrl);
+        this.endpoints = Collections.unmodifiableList(new ArrayList<>(endpointsByUrl.values()));
+    }
+
+    /**
+     * @param consecutiveFailures the number of failures in a row after which an endpoint is ejected
+     * @param ejection how long an endpoint is ejected the first time; each failed probe doubles it
+     * @param maxEjection the longest ejection
+     */
+    public void setEjection(int consecutiveFailures, long ejection, long maxEjection, TimeUnit unit) {
+        if (consecutiveFailures < 1 || ejection <= 0 || maxEjection < ejection) {
+            throw new IllegalArgumentException(String.format("Invalid ejection: after %d failures, for %d, max. %d", consecutiveFailures, ejection, maxEjection));
+        }
+        this.failureThreshold = consecutiveFailures;
+        this.ejectionNanos = unit.toNanos(ejection);
+        this.maxEjectionNanos = unit.toNanos(maxEjection);
+    }
+
+    /**
+     * @return the endpoints in the given order, with their requests in flight, latencies and health
+     */
+    public List<Endpoint> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * @return the first of the base urls, used where a proxy needs one independent of the calls
+     */
+    String getPrimaryBaseUrl() {
+        return endpoints.get(0).baseUrl;
+    }
+
+    /**
+     * Chooses the endpoint of the next request.
+     *
+     * @param avoidBaseUrl the endpoint that the previous attempt of the call failed on, or that a hedged request waits
+     * for, which is avoided if there's another healthy one; null if none
+     * @return the base url of the chosen endpoint
+     */
+    String select(String avoidBaseUrl) {
+        long now = System.nanoTime();
+        List<Endpoint> candidates = new ArrayList<>(endpoints.size());
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint.isAvailable(now, ejectionNanos)) {
+                candidates.add(endpoint);
+            }
+        }
+        if (candidates.size() > 1 && avoidBaseUrl != null) {
+            candidates.removeIf(endpoint -> endpoint.baseUrl.equals(avoidBaseUrl));
+        }
+        Endpoint chosen;
+        if (candidates.isEmpty()) {
+            chosen = endpoints.get(0);
+            for (Endpoint endpoint : endpoints) {
+                if (endpoint.getEjectedForNanos(now) < chosen.getEjectedForNanos(now)) {
+                    chosen = endpoint;
+                }
+            }
+        } else {
+            chosen = strategy.choose(Collections.unmodifiableList(candidates));
+            if (chosen == null || endpointsByUrl.get(chosen.baseUrl) != chosen) {
+                throw new IllegalStateException("The strategy chose an unknown endpoint: " + chosen);
+            }
+        }
+        chosen.startProbeIfEjected(now);
+        return chosen.baseUrl;
+    }
+
+    /**
+     * Sends the invocation and records the outcome against its endpoint.
+     */
+    HttpTransportResponse send(RestInvocation invocation, HttpSender sender) throws IOException {
+        Endpoint endpoint = endpointsByUrl.get(invocation.getBaseUrl());
+        if (endpoint == null) {
+            return sender.send(invocation);
+        }
+        endpoint.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            HttpTransportResponse response = sender.send(invocation);
+            record(endpoint, start, response.getStatusCode());
+            return response;
+        } catch (IOException e) {
+            endpoint.recordFailure(e.toString());
+            throw e;
+        } finally {
+            endpoint.outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Sends the invocation asynchronously and records the outcome against its endpoint.
+     */
+    CompletableFuture<HttpTransportResponse> sendAsync(RestInvocation invocation, Function<RestInvocation, CompletableFuture<HttpTransportResponse>> sender) {
+        Endpoint endpoint = endpointsByUrl.get(invocation.getBaseUrl());
+        if (endpoint == null) {
+            return sender.apply(invocation);
+        }
+        endpoint.outstanding.incrementAndGet();
+        long start = System.nanoTime();
+        CompletableFuture<HttpTransportResponse> response;
+        try {
+            response = sender.apply(invocation);
+        } catch (RuntimeException | Error e) {
+            endpoint.outstanding.decrementAndGet();
+            throw e;
+        }
+        return response.whenComplete((r, failure) -> {
+            endpoint.outstanding.decrementAndGet();
+            if (failure != null) {
+                endpoint.recordFailure(failure.toString());
+                return;
+            }
+            try {
+                record(endpoint, start, r.getStatusCode());
+            } catch (IOException e) {
+                endpoint.recordFailure(e.toString());
+            }
+        });
+    }
+
+    private void record(Endpoint endpoint, long start, int statusCode) {
+        if (statusCode >= 500) {
+            endpoint.recordFailure("status " + statusCode);
+        } else {
+            endpoint.recordSuccess(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Chooses the endpoint of a request.
+     */
+    @FunctionalInterface
+    public interface Strategy {
+
+        /**
+         * @param candidates the healthy endpoints, in the given order; never empty
+         * @return one of the candidates
+         */
+        Endpoint choose(List<Endpoint> candidates);
+    }
+
+    /**
+     * One of the base urls, with the state that the strategies choose by.
+     */
+    public final class Endpoint {
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        /** The moving average of response times; 0 until the first response. */
+        private volatile long latencyNanos;
+
+        private final Lock lock = new ReentrantLock();
+        private int consecutiveFailures;
+        private int ejections;
+        private boolean ejected;
+        private long ejectedUntil;
+        private boolean probing;
+        private long probeStart;
+
+        private Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        /**
+         * @return the requests sent to the endpoint whose responses haven't arrived yet
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        /**
+         * @return the moving average of the endpoint's response times (until the status arrives); 0 if there was no
+         * response yet
+         */
+        public long getLatency(TimeUnit unit) {
+            return unit.convert(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * @return whether the endpoint is ejected because its requests failed; it may be being probed
+         */
+        public boolean isEjected() {
+            lock.lock();
+            try {
+                return ejected;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * @return whether the endpoint may be chosen: it's healthy, or its ejection is over and it isn't being probed
+         * (or the probe took so long that its outcome was probably lost, eg. it was served from a cache)
+         */
+        private boolean isAvailable(long now, long probeTimeoutNanos) {
+            lock.lock();
+            try {
+                return !ejected || now - ejectedUntil >= 0 && (!probing || now - probeStart >= probeTimeoutNanos);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private long getEjectedForNanos(long now) {
+            lock.lock();
+            try {
+                return ejected ? ejectedUntil - now : 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void startProbeIfEjected(long now) {
+            lock.lock();
+            try {
+                if (ejected) {
+                    probing = true;
+                    probeStart = now;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void recordSuccess(long latency) {
+            long average = latencyNanos;
+            latencyNanos = average == 0 ? Math.max(1, latency) : Math.max(1, (long) (average + LATENCY_SMOOTHING * (latency - average)));
+            lock.lock();
+            try {
+                if (ejected) {
+                    log.info("Endpoint {} is back after a successful probe", baseUrl);
+                }
+                consecutiveFailures = 0;
+                ejections = 0;
+                ejected = false;
+                probing = false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void recordFailure(String reason) {
+            lock.lock();
+            try {
+                consecutiveFailures++;
+                // Failures of requests sent before the ejection don't extend it.
+                if (ejected ? probing : consecutiveFailures >= failureThreshold) {
+                    long ejection = ejectionNanos;
+                    for (int i = 0; i < ejections && ejection < maxEjectionNanos; i++) {
+                        ejection *= 2;
+                    }
+                    ejection = Math.min(maxEjectionNanos, ejection);
+                    ejections++;
+                    ejected = true;
+                    probing = false;
+                    ejectedUntil = System.nanoTime() + ejection;
+                    log.warn("Ejecting endpoint {} for {} ms after {} failures in a row, the last: {}",
+                            baseUrl, TimeUnit.NANOSECONDS.toMillis(ejection), consecutiveFailures, reason);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return baseUrl;
+        }
+    }
+}
@@ -25,11 +25,10 @@ import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
 import java.net.URLEncoder;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * <p>
@@ -52,18 +51,20 @@ import java.util.regex.Pattern;
  */
 public final class Params implements Serializable {
 
-    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    /** Immutable and thread-safe, so shared by all instances and used without locking. */
+    private static final DateTimeFormatter ISO_8601_DATETIME = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter ISO_8601_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneOffset.UTC);
 
-    private final Map<String, Object> data = new LinkedHashMap<>();
-    private final DateFormat iso8601datetime;
-    private final DateFormat iso8601date;
+    private static final String[] NO_NAMES = {};
+    private static final Object[] NO_VALUES = {};
 
-    {
-        iso8601datetime = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
-        iso8601datetime.setTimeZone(UTC);
-        iso8601date = new SimpleDateFormat("yyyy-MM-dd");
-        iso8601date.setTimeZone(UTC);
-    }
+    /**
+     * The params in insertion order, as parallel arrays: there are only a few per call, so a linear scan is cheaper
+     * than hashing. The arrays are allocated on the first add, so empty Params cost a single object.
+     */
+    private String[] names = NO_NAMES;
+    private Object[] values = NO_VALUES;
+    private int size;
 
     /**
      * private Constructor to prevent instantiation
@@ -71,8 +72,13 @@ public final class Params implements Serializable {
     private Params() {
     }
 
-    private Params(Map<String, Object> data) {
-        this.data.putAll(data);
+    private Params(Params other) {
+        if (other.size > 0) {
+            // Leave room for the params of the invocation, which are typically added to a copy of the defaults.
+            this.names = Arrays.copyOf(other.names, other.size + 4);
+            this.values = Arrays.copyOf(other.values, other.size + 4);
+            this.size = other.size;
+        }
     }
 
     public static Params of() {
@@ -96,15 +102,52 @@ public final class Params implements Serializable {
     }
 
     public Params add(String param, Object value) {
-        data.put(param, value);
+        int i = indexOf(param);
+        if (i >= 0) {
+            values[i] = value;
+            return this;
+        }
+        if (size == names.length) {
+            int capacity = Math.max(4, size * 2);
+            names = Arrays.copyOf(names, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        names[size] = param;
+        values[size] = value;
+        size++;
+        return this;
+    }
+
+    /**
+     * Removes the param if it's set; the order of the others is kept.
+     */
+    Params remove(String param) {
+        int i = indexOf(param);
+        if (i >= 0) {
+            System.arraycopy(names, i + 1, names, i, size - i - 1);
+            System.arraycopy(values, i + 1, values, i, size - i - 1);
+            size--;
+            names[size] = null;
+            values[size] = null;
+        }
         return this;
     }
 
+    private int indexOf(String param) {
+        for (int i = 0; i < size; i++) {
+            if (Objects.equals(names[i], param)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     private String toQueryString(boolean encode) {
         StringBuilder b = new StringBuilder();
-        for (String paramName : data.keySet()) {
-            if (isParamSet(paramName)) {
-                Object originalValue = getParamValue(paramName);
+        for (int i = 0; i < size; i++) {
+            String paramName = names[i];
+            Object originalValue = values[i];
+            if (originalValue != null) {
                 boolean createArrayParameters = originalValue instanceof Iterable && paramName.endsWith("[]");
                 @SuppressWarnings("unchecked")
                 Iterable<Object> paramValues = createArrayParameters
@@ -139,48 +182,53 @@ public final class Params implements Serializable {
     }
 
     public boolean isEmpty() {
-        return data.isEmpty();
+        return size == 0;
     }
 
     public String applyToPath(String path) {
-        for (String paramName : data.keySet()) {
-            if (!isParamSet(paramName)) {
-                throw new IllegalArgumentException("The value of '" + paramName + "' path parameter was not specified.");
+        return PathTemplate.parse(path).expand(this);
+    }
+
+    /**
+     * @param kind the kind of parameters, for the error message
+     * @throws IllegalArgumentException if the value of any parameter is null
+     */
+    void checkAllParamsSet(String kind) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == null) {
+                throw new IllegalArgumentException("The value of '" + names[i] + "' " + kind + " parameter was not specified.");
             }
-            path = Pattern.compile("\\{" + paramName + "(:.+?)?\\}").matcher(
-                path).replaceAll(Matcher.quoteReplacement(urlEncode(getParamValueAsString(paramName), true)));
         }
-        return path;
+    }
+
+    /**
+     * @return the url-encoded value of the parameter, or null if there's no such parameter
+     */
+    String getPathParamValue(String paramName) {
+        int i = indexOf(paramName);
+        return i >= 0 ? urlEncode(toString(values[i]), true) : null;
     }
 
     public Map<String, String> asHttpHeaders() {
-        Map<String, String> stringMap = new LinkedHashMap<>();
-        for (String key : data.keySet()) {
-            if (isParamSet(key)) {
-                stringMap.put(key, getParamValueAsString(key));
+        Map<String, String> stringMap = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            if (values[i] != null) {
+                stringMap.put(names[i], toString(values[i]));
             }
         }
         return stringMap;
     }
 
-    private String getParamValueAsString(String key) {
-        Object paramValue = getParamValue(key);
-        return toString(paramValue);
-    }
-
     String toString(Object paramValue) {
         if (paramValue instanceof BigDecimal) {
             return ((BigDecimal) paramValue).toPlainString();
         } else if (paramValue instanceof Iterable) {
             return iterableToString((Iterable) paramValue);
         } else if (paramValue instanceof java.sql.Date) {
-            synchronized (iso8601date) {
-                return iso8601date.format(paramValue);
-            }
+            // java.sql.Date.toInstant() is unsupported.
+            return ISO_8601_DATE.format(Instant.ofEpochMilli(((Date) paramValue).getTime()));
         } else if (paramValue instanceof Date) {
-            synchronized (iso8601datetime) {
-                return iso8601datetime.format(paramValue);
-            }
+            return ISO_8601_DATETIME.format(Instant.ofEpochMilli(((Date) paramValue).getTime()));
         }
         return String.valueOf(paramValue);
     }
@@ -197,27 +245,44 @@ public final class Params implements Serializable {
     }
 
     public void digestAll(RestInvocation invocationParams) {
-        for (String paramName : data.keySet()) {
-            Object paramValue = getParamValue(paramName);
-            if (paramValue instanceof ParamsDigest) {
-                data.put(paramName, ((ParamsDigest) paramValue).digestParams(invocationParams));
+        for (int i = 0; i < size; i++) {
+            if (values[i] instanceof ParamsDigest) {
+                values[i] = ((ParamsDigest) values[i]).digestParams(invocationParams);
+            }
+        }
+    }
+
+    boolean containsDigests() {
+        for (int i = 0; i < size; i++) {
+            if (values[i] instanceof ParamsDigest) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    boolean containsValueFactories() {
+        for (int i = 0; i < size; i++) {
+            if (values[i] instanceof SynchronizedValueFactory) {
+                return true;
             }
         }
+        return false;
     }
 
     public boolean isParamSet(String paramName) {
-        return data.containsKey(paramName) && getParamValue(paramName) != null;
+        return getParamValue(paramName) != null;
     }
 
     public Object getParamValue(String paramName) {
-        return data.get(paramName);
+        int i = indexOf(paramName);
+        return i >= 0 ? values[i] : null;
     }
 
     public void replaceValueFactories(){
-        for (Map.Entry<String, Object> e : data.entrySet()) {
-            Object value = e.getValue();
-            if(value instanceof SynchronizedValueFactory)
-                e.setValue(((SynchronizedValueFactory) value).createValue());
+        for (int i = 0; i < size; i++) {
+            if (values[i] instanceof SynchronizedValueFactory)
+                values[i] = ((SynchronizedValueFactory) values[i]).createValue();
         }
     }
 
@@ -227,6 +292,6 @@ public final class Params implements Serializable {
     }
 
     public Params copy() {
-        return new Params(this.data);
+        return new Params(this);
     }
 }
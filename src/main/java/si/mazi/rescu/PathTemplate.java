@@ -0,0 +1,96 @@
+package si.mazi.rescu;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link jakarta.ws.rs.Path} template such as {@code {ident: [a-z]+}_{currency}/ticker}, parsed once into literal
+ * text and parameter placeholders so that a path can be built without regular expressions.
+ */
+final class PathTemplate implements Serializable {
+
+    private final String template;
+
+    /** One more than there are parameters: the path is literals[0] + param 0 + literals[1] + ... + literals[n]. */
+    private final String[] literals;
+    private final String[] paramNames;
+
+    /** The placeholders as they are written in the template; left in the path if there's no such parameter. */
+    private final String[] placeholders;
+
+    private PathTemplate(String template, String[] literals, String[] paramNames, String[] placeholders) {
+        this.template = template;
+        this.literals = literals;
+        this.paramNames = paramNames;
+        this.placeholders = placeholders;
+    }
+
+    static PathTemplate parse(String template) {
+        if (template == null) {
+            template = "";
+        }
+        List<String> literals = new ArrayList<>();
+        List<String> paramNames = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        int literalStart = 0;
+        int open;
+        while ((open = template.indexOf('{', literalStart)) != -1) {
+            int close = findClosingBrace(template, open);
+            if (close == -1) {
+                break;
+            }
+            String placeholder = template.substring(open, close + 1);
+            int colon = placeholder.indexOf(':');
+            literals.add(template.substring(literalStart, open));
+            paramNames.add(placeholder.substring(1, colon == -1 ? placeholder.length() - 1 : colon).trim());
+            placeholders.add(placeholder);
+            literalStart = close + 1;
+        }
+        literals.add(template.substring(literalStart));
+        return new PathTemplate(template, literals.toArray(new String[0]), paramNames.toArray(new String[0]), placeholders.toArray(new String[0]));
+    }
+
+    /**
+     * Regular expressions in placeholders may contain braces themselves, eg. {@code {id: [0-9]{3}}}.
+     */
+    private static int findClosingBrace(String template, int open) {
+        int depth = 0;
+        for (int i = open; i < template.length(); i++) {
+            char c = template.charAt(i);
+            if (c == '{') {
+                depth++;
+            } else if (c == '}' && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the path with the placeholders replaced by the url-encoded values of the path parameters
+     * @throws IllegalArgumentException if the value of any of the path parameters is null
+     */
+    String expand(Params pathParams) {
+        pathParams.checkAllParamsSet("path");
+        if (paramNames.length == 0) {
+            return template;
+        }
+        StringBuilder path = new StringBuilder(template.length() + 16 * paramNames.length);
+        for (int i = 0; i < paramNames.length; i++) {
+            path.append(literals[i]);
+            String value = pathParams.getPathParamValue(paramNames[i]);
+            path.append(value != null ? value : placeholders[i]);
+        }
+        return path.append(literals[paramNames.length]).toString();
+    }
+
+    String getTemplate() {
+        return template;
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+}
@@ -0,0 +1,508 @@
+package si.mazi.rescu;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A HTTP/1.1 {@link HttpTransport} that keeps connections alive in an explicit {@link ConnectionPool}, so the number
+ * of connections per host is bounded and observable and TCP and TLS handshakes are only paid for new connections.
+ *
+ * GET and HEAD requests follow up to {@value #MAX_REDIRECTS} redirects within the same scheme; other redirects are
+ * returned as they are. If a pooled connection turns out to have been closed by the server before the request was
+ * answered, the request is resent once on a new connection, provided it had not been fully written yet or its method
+ * is idempotent: a POST or PATCH the server may already have acted on is not sent twice.
+ */
+public class PooledHttpTransport implements HttpTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(PooledHttpTransport.class);
+
+    static final int MAX_REDIRECTS = 5;
+
+    private final ConnectionPool pool;
+    private final int connTimeout;
+    private final int readTimeout;
+    private final Proxy proxy;
+    private final SSLSocketFactory sslSocketFactory;
+    private final HostnameVerifier hostnameVerifier;
+
+    /**
+     * Creates a transport with its own pool with default limits.
+     */
+    public PooledHttpTransport(ClientConfig config) {
+        this(config, new ConnectionPool());
+    }
+
+    public PooledHttpTransport(ClientConfig config, ConnectionPool pool) {
+        this.pool = pool;
+        this.connTimeout = config.getHttpConnTimeout();
+        this.readTimeout = config.getHttpReadTimeout();
+        this.sslSocketFactory = config.getSslSocketFactory() != null
+                ? config.getSslSocketFactory() : HttpsURLConnection.getDefaultSSLSocketFactory();
+        this.hostnameVerifier = config.getHostnameVerifier();
+
+        if (config.getProxyHost() == null || config.getProxyPort() == null) {
+            proxy = Proxy.NO_PROXY;
+        } else {
+            Proxy.Type type = config.getProxyType() == null ? Proxy.Type.HTTP : config.getProxyType();
+            proxy = new Proxy(type, new InetSocketAddress(config.getProxyHost(), config.getProxyPort()));
+            log.info("Using proxy {}", proxy);
+        }
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    /**
+     * Opens connections to the host of the given url ahead of the first requests, up to the pool's per-host limit.
+     *
+     * @param url         any url on the host, eg. the service's base url
+     * @param connections how many connections should be open and idle after this returns
+     */
+    public void warmUp(String url, int connections) throws IOException {
+        URI uri = parseUrl(url);
+        List<ConnectionPool.Connection> leased = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.min(connections, pool.getMaxConnectionsPerHost()); i++) {
+                leased.add(pool.lease(getHostKey(uri), connTimeout, () -> connect(uri, connTimeout)));
+            }
+        } finally {
+            for (ConnectionPool.Connection connection : leased) {
+                pool.release(connection, true);
+            }
+        }
+    }
+
+    @Override
+    public HttpTransportResponse send(HttpMethod method, String url, Map<String, String> headers, byte[] body) throws IOException {
+        return send(method, url, headers, body, 0);
+    }
+
+    @Override
+    public HttpTransportResponse send(HttpMethod method, String url, Map<String, String> headers, byte[] body, int timeoutMillis) throws IOException {
+        URI uri = parseUrl(url);
+        int connectTimeout = timeoutMillis <= 0 ? connTimeout : connTimeout > 0 ? Math.min(connTimeout, timeoutMillis) : timeoutMillis;
+        int soTimeout = timeoutMillis <= 0 ? readTimeout : timeoutMillis;
+        for (int redirects = 0; ; redirects++) {
+            Response response = execute(method, uri, headers, body, connectTimeout, soTimeout);
+            String location = response.getHeaderField("Location");
+            if (redirects == MAX_REDIRECTS || location == null || !isRedirect(response.statusCode)
+                    || (method != HttpMethod.GET && method != HttpMethod.HEAD)) {
+                return response;
+            }
+            URI redirectUri = uri.resolve(location);
+            if (!uri.getScheme().equalsIgnoreCase(redirectUri.getScheme())) {
+                return response;
+            }
+            HttpStreams.drainAndClose(response.body);
+            log.debug("Following redirect to {}", redirectUri);
+            uri = redirectUri;
+        }
+    }
+
+    private Response execute(HttpMethod method, URI uri, Map<String, String> headers, byte[] body, int connectTimeout, int soTimeout) throws IOException {
+        String hostKey = getHostKey(uri);
+        for (int attempt = 0; ; attempt++) {
+            // A retry doesn't take the next idle connection, which the server has likely closed as well.
+            ConnectionPool.Connection connection = pool.lease(hostKey, connectTimeout, () -> connect(uri, connectTimeout), attempt > 0);
+            boolean written = false;
+            try {
+                // Set on every request: a pooled connection has the timeout of the request it last served.
+                connection.socket.setSoTimeout(soTimeout);
+                writeRequest(connection.out, method, uri, headers, body);
+                written = true;
+                return readResponse(connection, method);
+            } catch (IOException | RuntimeException e) {
+                pool.release(connection, false);
+                if (connection.isReused() && attempt == 0 && (e instanceof SocketException || e instanceof NoResponseException)
+                        && (!written || isIdempotent(method))) {
+                    log.debug("Pooled connection to {} was closed by the server, retrying on a new one: {}", hostKey, e.toString());
+                    continue;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private static boolean isIdempotent(HttpMethod method) {
+        return method != HttpMethod.POST && method != HttpMethod.PATCH;
+    }
+
+    private void writeRequest(OutputStream out, HttpMethod method, URI uri, Map<String, String> headers, byte[] body) throws IOException {
+        String hostHeader = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        // Plain http through a http proxy uses the absolute url; https is tunnelled so it's like a direct connection.
+        boolean absoluteTarget = proxy.type() == Proxy.Type.HTTP && "http".equalsIgnoreCase(uri.getScheme());
+
+        StringBuilder request = new StringBuilder(256);
+        request.append(method.name()).append(' ')
+                .append(absoluteTarget ? uri.toASCIIString() : getRequestTarget(uri)).append(" HTTP/1.1\r\n");
+        appendHeader(request, "Host", hostHeader);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            String name = header.getKey();
+            if (header.getValue() != null && !isManagedHeader(name)) {
+                appendHeader(request, name, header.getValue());
+            }
+        }
+        if (body != null) {
+            appendHeader(request, "Content-Length", Integer.toString(body.length));
+        } else if (method == HttpMethod.POST || method == HttpMethod.PUT || method == HttpMethod.PATCH) {
+            appendHeader(request, "Content-Length", "0");
+        }
+        request.append("\r\n");
+
+        out.write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (body != null) {
+            out.write(body);
+        }
+        out.flush();
+    }
+
+    private static boolean isManagedHeader(String name) {
+        return name.equalsIgnoreCase("Host") || name.equalsIgnoreCase("Content-Length")
+                || name.equalsIgnoreCase("Connection") || name.equalsIgnoreCase("Transfer-Encoding");
+    }
+
+    private static void appendHeader(StringBuilder request, String name, String value) {
+        if (name.indexOf('\r') != -1 || name.indexOf('\n') != -1 || value.indexOf('\r') != -1 || value.indexOf('\n') != -1) {
+            throw new IllegalArgumentException("Illegal character in header " + name);
+        }
+        request.append(name).append(": ").append(value).append("\r\n");
+    }
+
+    private Response readResponse(ConnectionPool.Connection connection, HttpMethod method) throws IOException {
+        InputStream in = connection.in;
+        String statusLine;
+        int statusCode;
+        Map<String, List<String>> headers;
+        do {
+            statusLine = HttpStreams.readLine(in);
+            if (statusLine == null) {
+                throw new NoResponseException("Connection closed by the server before sending a response");
+            }
+            statusCode = parseStatusCode(statusLine);
+            headers = readHeaders(in);
+        } while (statusCode >= 100 && statusCode < 200);
+
+        String connectionHeader = getHeaderField(headers, "Connection");
+        boolean keepAlive = statusLine.startsWith("HTTP/1.0")
+                ? "keep-alive".equalsIgnoreCase(connectionHeader)
+                : !"close".equalsIgnoreCase(connectionHeader);
+
+        String transferEncoding = getHeaderField(headers, "Transfer-Encoding");
+        String contentLength = getHeaderField(headers, "Content-Length");
+        InputStream body;
+        if (method == HttpMethod.HEAD || statusCode == 204 || statusCode == 304) {
+            body = null;
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            body = new HttpStreams.ChunkedInputStream(in);
+        } else if (contentLength != null) {
+            long length;
+            try {
+                length = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length: " + contentLength);
+            }
+            body = length == 0 ? null : new HttpStreams.FixedLengthInputStream(in, length);
+        } else {
+            // Delimited by the end of the connection.
+            body = in;
+            keepAlive = false;
+        }
+
+        if (body == null) {
+            pool.release(connection, keepAlive);
+            return new Response(statusCode, headers, new ByteArrayInputStream(new byte[0]));
+        }
+        return new Response(statusCode, headers, new ReleasingInputStream(body, connection, keepAlive));
+    }
+
+    private static int parseStatusCode(String statusLine) throws IOException {
+        // HTTP/1.1 200 OK
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+    }
+
+    private static Map<String, List<String>> readHeaders(InputStream in) throws IOException {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        for (String line; (line = HttpStreams.readLine(in)) != null && !line.isEmpty(); ) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new IOException("Invalid HTTP header: " + line);
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            List<String> values = null;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (header.getKey().equalsIgnoreCase(name)) {
+                    values = header.getValue();
+                    break;
+                }
+            }
+            if (values == null) {
+                values = new ArrayList<>(1);
+                headers.put(name, values);
+            }
+            values.add(value);
+        }
+        return headers;
+    }
+
+    private static String getHeaderField(Map<String, List<String>> headers, String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                List<String> values = header.getValue();
+                return values.get(values.size() - 1);
+            }
+        }
+        return null;
+    }
+
+    private Socket connect(URI uri, int connectTimeout) throws IOException {
+        String host = uri.getHost();
+        int port = getPort(uri);
+        boolean https = "https".equalsIgnoreCase(uri.getScheme());
+
+        Socket socket = proxy.type() == Proxy.Type.SOCKS ? new Socket(proxy) : new Socket();
+        try {
+            if (proxy.type() == Proxy.Type.HTTP) {
+                socket.connect(proxy.address(), connectTimeout);
+            } else if (proxy.type() == Proxy.Type.SOCKS) {
+                socket.connect(InetSocketAddress.createUnresolved(host, port), connectTimeout);
+            } else {
+                socket.connect(new InetSocketAddress(host, port), connectTimeout);
+            }
+            socket.setSoTimeout(readTimeout);
+            socket.setTcpNoDelay(true);
+
+            if (https) {
+                if (proxy.type() == Proxy.Type.HTTP) {
+                    tunnel(socket, host, port);
+                }
+                socket = startTls(socket, host, port);
+            }
+            log.debug("Opened connection to {}", getHostKey(uri));
+            return socket;
+        } catch (IOException | RuntimeException e) {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+            }
+            throw e;
+        }
+    }
+
+    private SSLSocket startTls(Socket socket, String host, int port) throws IOException {
+        SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(socket, host, port, true);
+        if (hostnameVerifier == null) {
+            SSLParameters parameters = sslSocket.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            sslSocket.setSSLParameters(parameters);
+        }
+        sslSocket.startHandshake();
+        if (hostnameVerifier != null && !hostnameVerifier.verify(host, sslSocket.getSession())) {
+            sslSocket.close();
+            throw new SSLPeerUnverifiedException("Hostname " + host + " was not verified");
+        }
+        return sslSocket;
+    }
+
+    private static void tunnel(Socket socket, String host, int port) throws IOException {
+        String target = host + ":" + port;
+        OutputStream out = socket.getOutputStream();
+        out.write(("CONNECT " + target + " HTTP/1.1\r\nHost: " + target + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        out.flush();
+
+        // Read unbuffered: anything after the proxy's response belongs to the TLS handshake.
+        InputStream in = socket.getInputStream();
+        String statusLine = HttpStreams.readLine(in);
+        if (statusLine == null) {
+            throw new NoResponseException("Proxy closed the connection when tunnelling to " + target);
+        }
+        readHeaders(in);
+        if (parseStatusCode(statusLine) != 200) {
+            throw new IOException("Unable to tunnel to " + target + " through the proxy: " + statusLine);
+        }
+    }
+
+    private String getHostKey(URI uri) {
+        String key = uri.getScheme().toLowerCase() + "://" + uri.getHost() + ":" + getPort(uri);
+        return proxy == Proxy.NO_PROXY ? key : key + " via " + proxy.address();
+    }
+
+    private static int getPort(URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    private static String getRequestTarget(URI uri) {
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        return uri.getRawQuery() == null ? path : path + "?" + uri.getRawQuery();
+    }
+
+    private static URI parseUrl(String url) throws IOException {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid url: " + url, e);
+        }
+        if (uri.getHost() == null || !("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme()))) {
+            throw new IOException("Not a http(s) url: " + url);
+        }
+        return uri;
+    }
+
+    private static boolean isRedirect(int statusCode) {
+        return statusCode == 301 || statusCode == 302 || statusCode == 303 || statusCode == 307 || statusCode == 308;
+    }
+
+    /**
+     * The connection was closed before any byte of the response was received.
+     */
+    private static class NoResponseException extends IOException {
+        NoResponseException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Returns the connection to the pool when the body has been read to the end, or when it's closed.
+     */
+    private final class ReleasingInputStream extends InputStream {
+        private final InputStream body;
+        private final ConnectionPool.Connection connection;
+        private final boolean keepAlive;
+        private boolean released;
+
+        private ReleasingInputStream(InputStream body, ConnectionPool.Connection connection, boolean keepAlive) {
+            this.body = body;
+            this.connection = connection;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (released) {
+                return -1;
+            }
+            try {
+                int b = body.read();
+                if (b == -1) {
+                    release(true);
+                }
+                return b;
+            } catch (IOException | RuntimeException e) {
+                release(false);
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (released) {
+                return -1;
+            }
+            try {
+                int read = body.read(b, off, len);
+                if (read == -1) {
+                    release(true);
+                }
+                return read;
+            } catch (IOException | RuntimeException e) {
+                release(false);
+                throw e;
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return released ? 0 : body.available();
+        }
+
+        @Override
+        public void close() {
+            if (released) {
+                return;
+            }
+            boolean complete;
+            try {
+                complete = keepAlive && HttpStreams.drain(body, HttpStreams.MAX_DRAIN_BYTES);
+            } catch (IOException e) {
+                complete = false;
+            }
+            release(complete);
+        }
+
+        private void release(boolean complete) {
+            if (!released) {
+                released = true;
+                pool.release(connection, complete && keepAlive);
+            }
+        }
+    }
+
+    static class Response implements HttpTransportResponse {
+
+        private final int statusCode;
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+
+        Response(int statusCode, Map<String, List<String>> headers, InputStream body) {
+            this.statusCode = statusCode;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.body = body;
+        }
+
+        @Override
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            return headers;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return PooledHttpTransport.getHeaderField(headers, name);
+        }
+
+        @Override
+        public InputStream getBody() {
+            return body;
+        }
+    }
+}
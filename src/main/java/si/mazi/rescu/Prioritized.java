@@ -0,0 +1,29 @@
+package si.mazi.rescu;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Sets the {@link Priority} of the calls of a method, or of all the methods of a rest interface, when they wait for a
+ * free slot of the {@link ConcurrencyLimiter}. A {@code Priority} argument overrides it for a single call. It doesn't
+ * affect anything else, such as waits for rate limit permits; see {@link Priority}.
+ * </p>
+ * <pre>
+ * &#64;DELETE &#64;Path("order") &#64;Prioritized(Priority.CRITICAL)
+ * void cancelOrder(...);
+ *
+ * &#64;GET &#64;Path("trades") &#64;Prioritized(Priority.LOW)
+ * List&lt;Trade&gt; getTradeHistory(...);
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Prioritized {
+
+    Priority value();
+}
@@ -0,0 +1,32 @@
+package si.mazi.rescu;
+
+/**
+ * <p>
+ * How urgent a call is when it has to wait for a free slot of the {@link ConcurrencyLimiter}: waiting calls of a higher
+ * priority are sent before all those of a lower one, and when the queue is full, the calls of the lowest priority are
+ * turned away first. Within a priority, the slots are shared fairly between
+ * {@link ConcurrencyLimiter#setFairShareKey(java.util.function.Function) keys} (eg. API keys).
+ * </p>
+ * <p>
+ * Set it for a method, or all the methods of a rest interface, with {@link Prioritized}, or for a single call with a
+ * {@code Priority} argument, which isn't sent. Calls have the {@link #NORMAL} priority by default.
+ * </p>
+ * <p>
+ * The priority only orders the concurrency limiter's queue, so it has no effect unless a limiter is
+ * {@link ClientConfig#setConcurrencyLimiter(ConcurrencyLimiter) set}. Everything a call waits for before it gets
+ * there is not prioritized: a {@link #CRITICAL} call waits for its {@link RateLimit rate limit} permits like any
+ * other, and takes its turn with a {@link SynchronizedValueFactory} in order.
+ * </p>
+ */
+public enum Priority {
+
+    /** Calls that must go out as soon as possible, eg. cancelling orders. */
+    CRITICAL,
+
+    HIGH,
+
+    NORMAL,
+
+    /** Calls that may wait for everything else, eg. history downloads. */
+    LOW
+}
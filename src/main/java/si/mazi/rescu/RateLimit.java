@@ -0,0 +1,62 @@
+package si.mazi.rescu;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Limits the rate of calls on the client side. Each limit is a bucket of {@link #permits()} per {@link #period()}; a
+ * call takes {@link #weight()} permits from each bucket that applies to it, and waits for them, or fails if the
+ * {@link RateLimiter} is set to fail fast.
+ * </p>
+ * <p>
+ * On the rest interface, a limit applies to all its methods. On a method, it's a limit of that method only, or, if it
+ * names a bucket that is defined elsewhere and doesn't give {@link #permits()}, the weight of the method in that
+ * bucket. Eg. for an API that allows 1200 weight per minute, and 10 orders per second:
+ * </p>
+ * <pre>
+ * &#64;RateLimit(permits = 1200, period = 1, unit = TimeUnit.MINUTES)
+ * public interface Exchange {
+ *     &#64;GET &#64;Path("depth") &#64;RateLimit(weight = 5)
+ *     Depth getDepth(...);
+ *
+ *     &#64;POST &#64;Path("order") &#64;RateLimit(bucket = "orders", permits = 10)
+ *     Order placeOrder(...);
+ * }
+ * </pre>
+ * <p>
+ * Buckets with the same name share their permits, also between interfaces that use the same {@link RateLimiter}
+ * (see {@link ClientConfig#setRateLimiter(RateLimiter)}); buckets may also be defined on the RateLimiter.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Repeatable(RateLimits.class)
+public @interface RateLimit {
+
+    /**
+     * @return the name of the bucket; if empty, the interface's bucket (on the interface, or on a method without
+     * {@link #permits()}) or the method's own bucket (on a method, with permits)
+     */
+    String bucket() default "";
+
+    /**
+     * @return the number of permits per period; 0 if the bucket is defined elsewhere
+     */
+    int permits() default 0;
+
+    long period() default 1;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * @return the number of permits a call takes; on the interface, the default for its methods
+     */
+    int weight() default 1;
+}
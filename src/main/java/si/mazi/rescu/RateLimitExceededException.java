@@ -0,0 +1,24 @@
+package si.mazi.rescu;
+
+import java.io.IOException;
+
+/**
+ * Thrown instead of sending a request when the permits of a {@link RateLimit} aren't available soon enough for the
+ * {@link RateLimiter}. Nothing was sent, so the call may be retried later.
+ */
+public class RateLimitExceededException extends IOException {
+
+    private final String bucket;
+
+    public RateLimitExceededException(String bucket) {
+        super("Rate limit " + bucket + " exceeded");
+        this.bucket = bucket;
+    }
+
+    /**
+     * @return the name of the bucket whose permits weren't available
+     */
+    public String getBucket() {
+        return bucket;
+    }
+}
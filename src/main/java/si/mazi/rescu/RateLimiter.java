@@ -0,0 +1,189 @@
+package si.mazi.rescu;
+
+import java.io.InterruptedIOException;
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Holds the token buckets of the {@link RateLimit}s and decides what a call does when its permits aren't available:
+ * wait for them (the default), wait at most a given time, or fail fast with a {@link RateLimitExceededException}.
+ * Asynchronous methods never block the caller: the returned future completes after the permits were granted and the
+ * request was sent.
+ * </p>
+ * <p>
+ * Set it with {@link ClientConfig#setRateLimiter(RateLimiter)} to share buckets between proxies, or to define buckets
+ * in code; otherwise each proxy with {@link RateLimit}s gets its own limiter that waits. The bucket named
+ * {@link #DEFAULT_BUCKET}, if defined, applies to every call.
+ * </p>
+ * <p>
+ * The buckets are lock-free, so contended calls don't serialize on a monitor.
+ * </p>
+ */
+public class RateLimiter {
+
+    /** The bucket that applies to all calls, if it's defined. */
+    public static final String DEFAULT_BUCKET = "default";
+
+    private final long maxWaitNanos;
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * A limiter that makes calls wait for as long as it takes.
+     */
+    public RateLimiter() {
+        this.maxWaitNanos = Long.MAX_VALUE;
+    }
+
+    /**
+     * A limiter that fails calls that would have to wait longer than {@code maxWait}; 0 means fail fast.
+     */
+    public RateLimiter(long maxWait, TimeUnit unit) {
+        if (maxWait < 0) {
+            throw new IllegalArgumentException("maxWait must not be negative: " + maxWait);
+        }
+        this.maxWaitNanos = unit.toNanos(maxWait);
+    }
+
+    /**
+     * Defines a bucket of {@code permits} per {@code period}. Defining a bucket again with the same limit has no effect.
+     *
+     * @throws IllegalArgumentException if the bucket is already defined with a different limit
+     */
+    public RateLimiter defineBucket(String name, int permits, long period, TimeUnit unit) throws IllegalArgumentException {
+        TokenBucket bucket = new TokenBucket(name, permits, period, unit);
+        TokenBucket existing = buckets.putIfAbsent(name, bucket);
+        if (existing != null && (existing.getPermits() != permits || existing.getPeriodNanos() != bucket.getPeriodNanos())) {
+            throw new IllegalArgumentException("Rate limit bucket " + name + " is already defined as " + existing.getPermits()
+                    + " permits per " + existing.getPeriodNanos() + " ns");
+        }
+        return this;
+    }
+
+    /**
+     * @return the number of permits of the bucket that could be taken now without waiting
+     * @throws IllegalArgumentException if there's no such bucket
+     */
+    public int getAvailablePermits(String bucket) throws IllegalArgumentException {
+        return getBucket(bucket).getAvailablePermits();
+    }
+
+    private TokenBucket getBucket(String name) {
+        TokenBucket bucket = buckets.get(name);
+        if (bucket == null) {
+            throw new IllegalArgumentException("Rate limit bucket " + name + " is not defined.");
+        }
+        return bucket;
+    }
+
+    /**
+     * Defines the buckets that the {@link RateLimit}s of the method declare and resolves the ones it takes permits from.
+     *
+     * @return the permits a call of the method takes, or null if it's not limited
+     * @throws IllegalArgumentException if the limits are inconsistent
+     */
+    Quota resolveQuota(Class<?> restInterface, Method method) throws IllegalArgumentException {
+        String interfaceBucket = restInterface.getName();
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        if (buckets.containsKey(DEFAULT_BUCKET)) {
+            weights.put(DEFAULT_BUCKET, 1);
+        }
+        for (RateLimit limit : restInterface.getAnnotationsByType(RateLimit.class)) {
+            String name = limit.bucket().isEmpty() ? interfaceBucket : limit.bucket();
+            if (limit.permits() > 0) {
+                defineBucket(name, limit.permits(), limit.period(), limit.unit());
+            }
+            weights.put(name, limit.weight());
+        }
+        for (RateLimit limit : method.getAnnotationsByType(RateLimit.class)) {
+            String name;
+            if (limit.permits() > 0) {
+                name = limit.bucket().isEmpty() ? interfaceBucket + '#' + method.getName() : limit.bucket();
+                defineBucket(name, limit.permits(), limit.period(), limit.unit());
+            } else {
+                name = limit.bucket().isEmpty() ? interfaceBucket : limit.bucket();
+            }
+            weights.put(name, limit.weight());
+        }
+        if (weights.isEmpty()) {
+            return null;
+        }
+        TokenBucket[] quotaBuckets = new TokenBucket[weights.size()];
+        int[] quotaWeights = new int[weights.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+            if (!buckets.containsKey(weight.getKey())) {
+                throw new IllegalArgumentException("Rate limit bucket " + weight.getKey() + " used by " + method + " is not defined.");
+            }
+            quotaBuckets[i] = buckets.get(weight.getKey());
+            quotaWeights[i] = weight.getValue();
+            if (quotaWeights[i] < 0 || quotaWeights[i] > quotaBuckets[i].getPermits()) {
+                throw new IllegalArgumentException("Weight " + quotaWeights[i] + " of " + method + " doesn't fit in rate limit bucket " + weight.getKey());
+            }
+            i++;
+        }
+        return new Quota(quotaBuckets, quotaWeights);
+    }
+
+    /**
+     * Reserves the permits of a call from all its buckets.
+     *
+     * @param deadline the deadline of the call, or null
+     * @return how long to wait before sending the request, in nanoseconds
+     * @throws RateLimitExceededException if the call would have to wait longer than allowed; nothing is reserved then
+     * @throws DeadlineExceededException if the permits wouldn't be granted before the deadline; nothing is reserved
+     */
+    long reserve(Quota quota, Deadline deadline) throws RateLimitExceededException, DeadlineExceededException {
+        long maxWait = deadline == null ? maxWaitNanos : Math.min(maxWaitNanos, deadline.getRemainingNanos());
+        long wait = 0;
+        for (int i = 0; i < quota.buckets.length; i++) {
+            long bucketWait = quota.buckets[i].tryReserve(quota.weights[i], maxWait);
+            if (bucketWait < 0) {
+                for (int j = 0; j < i; j++) {
+                    quota.buckets[j].cancel(quota.weights[j]);
+                }
+                if (maxWait < maxWaitNanos) {
+                    throw new DeadlineExceededException("Rate limit " + quota.buckets[i].getName() + " can't be granted before the deadline");
+                }
+                throw new RateLimitExceededException(quota.buckets[i].getName());
+            }
+            wait = Math.max(wait, bucketWait);
+        }
+        return wait;
+    }
+
+    /**
+     * Reserves the permits of a call and waits until they are granted, but not past the deadline (if not null).
+     */
+    void acquire(Quota quota, Deadline deadline) throws RateLimitExceededException, InterruptedIOException {
+        long wait = reserve(quota, deadline);
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                for (int i = 0; i < quota.buckets.length; i++) {
+                    quota.buckets[i].cancel(quota.weights[i]);
+                }
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for a rate limit permit");
+            }
+        }
+    }
+
+    /**
+     * The buckets that a call of a method takes permits from, and how many.
+     */
+    static final class Quota {
+        private final TokenBucket[] buckets;
+        private final int[] weights;
+
+        private Quota(TokenBucket[] buckets, int[] weights) {
+            this.buckets = buckets;
+            this.weights = weights;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package si.mazi.rescu;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Creates transports whose classes may not be loadable on the current JVM (eg. because they need a newer JDK).
+ */
+class ReflectiveHttpTransportFactory implements HttpTransportFactory {
+
+    private final String className;
+
+    ReflectiveHttpTransportFactory(String className) {
+        this.className = className;
+    }
+
+    @Override
+    public HttpTransport createTransport(ClientConfig config) {
+        try {
+            return (HttpTransport) Class.forName(className).getConstructor(ClientConfig.class).newInstance(config);
+        } catch (ClassNotFoundException | LinkageError e) {
+            throw new IllegalStateException("HTTP transport " + className + " is not supported on Java " + System.getProperty("java.version"), e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Error creating HTTP transport " + className, e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Error creating HTTP transport " + className, e);
+        }
+    }
+}
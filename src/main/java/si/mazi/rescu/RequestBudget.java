@@ -0,0 +1,56 @@
+package si.mazi.rescu;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the extra requests (retries, hedges) to a ratio of the calls: each call deposits the ratio of a request, each
+ * extra request withdraws a whole one. The budget starts full, so that a few are allowed before there were many calls.
+ */
+final class RequestBudget {
+
+    /** Kept in thousandths of a request, so that fractional ratios need no floating point state. */
+    private static final long REQUEST_COST = 1000;
+
+    private final long deposit;
+    private final long max;
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio the number of extra requests allowed per call
+     * @param min the number of extra requests allowed regardless of the ratio; also the most that can be saved up
+     */
+    RequestBudget(double ratio, int min) {
+        if (ratio < 0 || min < 0) {
+            throw new IllegalArgumentException(String.format("Invalid budget: ratio %s, min. %d", ratio, min));
+        }
+        this.deposit = Math.round(ratio * REQUEST_COST);
+        this.max = min * REQUEST_COST;
+        this.balance = new AtomicLong(max);
+    }
+
+    void deposit() {
+        balance.getAndUpdate(b -> Math.min(max, b + deposit));
+    }
+
+    /**
+     * @return whether an extra request is allowed; if so, it's paid for
+     */
+    boolean withdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < REQUEST_COST) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - REQUEST_COST)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the number of extra requests allowed now
+     */
+    int getAvailable() {
+        return (int) (balance.get() / REQUEST_COST);
+    }
+}
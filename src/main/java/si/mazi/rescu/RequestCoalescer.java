@@ -0,0 +1,63 @@
+package si.mazi.rescu;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Lets concurrent identical invocations share one request: the first one sends it, and the ones that arrive while
+ * it's in flight wait for its response. The response is read whole, so each invocation reads it into its own objects.
+ * Invocations are identical if they have the same HTTP method, url and headers.
+ */
+final class RequestCoalescer {
+
+    private final ConcurrentMap<String, CompletableFuture<BufferedResponse>> inFlight = new ConcurrentHashMap<>();
+
+    HttpTransportResponse send(RestInvocation invocation, HttpSender sender) throws IOException {
+        String key = invocation.getRequestKey();
+        CompletableFuture<BufferedResponse> call = new CompletableFuture<>();
+        CompletableFuture<BufferedResponse> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            return await(existing, invocation.getDeadline());
+        }
+        try {
+            BufferedResponse response = BufferedResponse.read(sender.send(invocation));
+            call.complete(response);
+            return response;
+        } catch (IOException | RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * Waits for the response of the invocation that sent the request, but not past this invocation's own deadline.
+     */
+    private static BufferedResponse await(CompletableFuture<BufferedResponse> call, Deadline deadline) throws IOException {
+        try {
+            return deadline == null ? call.get() : call.get(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("The deadline passed before the coalesced request was answered");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a coalesced request");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                // A new exception, so that it has this thread's stack trace; the original one is the cause.
+                throw new IOException(cause.getMessage(), cause);
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+}
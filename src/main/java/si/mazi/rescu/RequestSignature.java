@@ -0,0 +1,43 @@
+package si.mazi.rescu;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The headers and query params that a {@link RequestSigner} adds to a request, eg.
+ * {@code RequestSignature.of().header("X-SIGNATURE", signature)}.
+ */
+public final class RequestSignature {
+
+    private final Map<String, String> headers = new LinkedHashMap<>(4);
+    private final Map<String, String> queryParams = new LinkedHashMap<>(4);
+
+    private RequestSignature() {
+    }
+
+    public static RequestSignature of() {
+        return new RequestSignature();
+    }
+
+    public RequestSignature header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    /**
+     * Query params are appended to the end of the query string, which is where most APIs expect a signature.
+     */
+    public RequestSignature queryParam(String name, String value) {
+        queryParams.put(name, value);
+        return this;
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    public Map<String, String> getQueryParams() {
+        return Collections.unmodifiableMap(queryParams);
+    }
+}
@@ -0,0 +1,20 @@
+package si.mazi.rescu;
+
+/**
+ * <p>
+ * Signs requests. Unlike a {@link ParamsDigest}, a signer runs once the request is complete: all the other params
+ * (including digests) are known and the body is written, and it gets them as a {@link CanonicalRequest}. The values it
+ * returns are added to the request as headers and/or query params.
+ * </p>
+ * <p>
+ * A signer may be set for all calls with {@link ClientConfig#setRequestSigner(RequestSigner)}, or passed as an
+ * (unannotated) argument of the rest methods that need signing; the argument takes precedence.
+ * </p>
+ */
+public interface RequestSigner {
+
+    /**
+     * @return the values to add to the request, or null if it shouldn't be signed
+     */
+    RequestSignature sign(CanonicalRequest request);
+}
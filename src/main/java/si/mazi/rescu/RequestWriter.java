@@ -24,6 +24,8 @@
 
 package si.mazi.rescu;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Interface for serializing data sent to REST services (HTTP body).
  * 
@@ -32,4 +34,22 @@ package si.mazi.rescu;
 public interface RequestWriter {
 
     String writeBody(RestInvocation invocation);
+
+    /**
+     * Writes the body as the bytes to be sent. Writers that can produce bytes directly may override this
+     * to avoid creating the String.
+     *
+     * @return the UTF-8 encoded body, or null if there's no body
+     */
+    default byte[] writeBodyBytes(RestInvocation invocation) {
+        String body = writeBody(invocation);
+        return body == null ? null : body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Called for each method that uses this writer when the proxy is created, so that the writer can prepare what it
+     * needs for the method's body type before the first call. Does nothing by default.
+     */
+    default void prepare(RestMethodMetadata methodMetadata) {
+    }
 }
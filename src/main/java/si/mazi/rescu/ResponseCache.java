@@ -0,0 +1,289 @@
+package si.mazi.rescu;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>
+ * Keeps the responses of {@link Cacheable} methods, keyed by the HTTP method, the invocation url and the request
+ * headers, so that eg. calls with different API key headers never share a response. The cache holds at most
+ * {@code maxEntries} responses and evicts the least recently used ones first.
+ * </p>
+ * <p>
+ * Set it with {@link ClientConfig#setResponseCache(ResponseCache)}; one cache may be shared by several proxies.
+ * Only successful (200) responses of synchronous methods are cached, and not those of calls with digests, generated
+ * values or signatures, which differ each time. Responses marked {@code Cache-Control: private} or {@code no-store},
+ * or with {@code Vary: *}, are not stored; other {@code Vary} headers are satisfied by keying on all the request
+ * headers. The raw response is kept, so each call reads it into new objects.
+ * </p>
+ */
+public class ResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+    private static final int NOT_MODIFIED = 304;
+
+    private final int maxEntries;
+    private final Lock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param maxEntries the maximum number of cached responses
+     */
+    public ResponseCache(int maxEntries) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("maxEntries must be positive: " + maxEntries);
+        }
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > ResponseCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return the number of cached responses
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(hits.get(), misses.get(), revalidations.get(), evictions.get());
+    }
+
+    /**
+     * Serves the invocation from the cache if there's a fresh response, revalidates a stale one, or sends the request
+     * and caches the response.
+     */
+    HttpTransportResponse send(RestInvocation invocation, Cacheable policy, HttpSender sender) throws IOException {
+        String key = invocation.getRequestKey();
+        long now = System.nanoTime();
+        Entry cached = get(key);
+        if (cached != null && cached.isFresh(now)) {
+            hits.incrementAndGet();
+            return cached.response;
+        }
+        if (cached != null && cached.hasValidators()) {
+            if (cached.etag != null) {
+                invocation.setHttpHeader("If-None-Match", cached.etag);
+            }
+            if (cached.lastModified != null) {
+                invocation.setHttpHeader("If-Modified-Since", cached.lastModified);
+            }
+        } else {
+            cached = null;
+        }
+
+        HttpTransportResponse response = sender.send(invocation);
+        int status = response.getStatusCode();
+        if (status == NOT_MODIFIED && cached != null) {
+            HttpStreams.drainAndClose(response.getBody());
+            revalidations.incrementAndGet();
+            Entry refreshed = cached.refresh(getFreshUntil(response, policy, System.nanoTime()), response.getHeaderField("ETag"));
+            put(key, refreshed);
+            return refreshed.response;
+        }
+        misses.incrementAndGet();
+        if (status != 200 || hasDirective(response, "no-store") || hasDirective(response, "private") || varies(response)) {
+            remove(key);
+            return response;
+        }
+        long freshUntil = getFreshUntil(response, policy, now);
+        Entry entry = new Entry(BufferedResponse.read(response), freshUntil,
+                response.getHeaderField("ETag"), response.getHeaderField("Last-Modified"));
+        if (freshUntil - now <= 0 && !entry.hasValidators()) {
+            // Neither fresh nor revalidatable: keeping it wouldn't save anything.
+            remove(key);
+        } else {
+            put(key, entry);
+        }
+        return entry.response;
+    }
+
+    /**
+     * @return the System.nanoTime() until which the response is fresh
+     */
+    private static long getFreshUntil(HttpTransportResponse response, Cacheable policy, long now) throws IOException {
+        long maxAgeNanos = policy.unit().toNanos(policy.maxAge());
+        String cacheControl = response.getHeaderField("Cache-Control");
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase();
+                if (directive.equals("no-cache")) {
+                    return now;
+                }
+                if (directive.startsWith("max-age=")) {
+                    try {
+                        maxAgeNanos = TimeUnit.SECONDS.toNanos(Long.parseLong(directive.substring("max-age=".length()).trim()));
+                    } catch (NumberFormatException e) {
+                        log.debug("Ignoring invalid Cache-Control: {}", cacheControl);
+                    }
+                }
+            }
+        }
+        return now + Math.max(0, maxAgeNanos);
+    }
+
+    private static boolean hasDirective(HttpTransportResponse response, String directive) throws IOException {
+        String cacheControl = response.getHeaderField("Cache-Control");
+        if (cacheControl == null) {
+            return false;
+        }
+        for (String d : cacheControl.split(",")) {
+            if (d.trim().equalsIgnoreCase(directive)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return whether the response may differ for any request, so that it can't be reused
+     */
+    private static boolean varies(HttpTransportResponse response) throws IOException {
+        String vary = response.getHeaderField("Vary");
+        return vary != null && vary.trim().equals("*");
+    }
+
+    private Entry get(String key) {
+        lock.lock();
+        try {
+            return entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void put(String key, Entry entry) {
+        lock.lock();
+        try {
+            entries.put(key, entry);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(String key) {
+        lock.lock();
+        try {
+            entries.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static final class Entry {
+        final BufferedResponse response;
+        final long freshUntil;
+        final String etag;
+        final String lastModified;
+
+        Entry(BufferedResponse response, long freshUntil, String etag, String lastModified) {
+            this.response = response;
+            this.freshUntil = freshUntil;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+
+        boolean isFresh(long now) {
+            return freshUntil - now > 0;
+        }
+
+        boolean hasValidators() {
+            return etag != null || lastModified != null;
+        }
+
+        Entry refresh(long freshUntil, String etag) {
+            return new Entry(response, freshUntil, etag != null ? etag : this.etag, lastModified);
+        }
+    }
+
+    /**
+     * A snapshot of the cache's counters.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long revalidations;
+        private final long evictions;
+
+        Stats(long hits, long misses, long revalidations, long evictions) {
+            this.hits = hits;
+            this.misses = misses;
+            this.revalidations = revalidations;
+            this.evictions = evictions;
+        }
+
+        /**
+         * @return the number of calls served from the cache without a request
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * @return the number of calls whose response was read from the server
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * @return the number of calls served from the cache after the server confirmed that the cached response was
+         * still valid ({@code 304 Not Modified})
+         */
+        public long getRevalidations() {
+            return revalidations;
+        }
+
+        /**
+         * @return the number of responses evicted because the cache was full
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stats{hits=%d, misses=%d, revalidations=%d, evictions=%d}", hits, misses, revalidations, evictions);
+        }
+    }
+}
@@ -29,7 +29,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
 
 /**
  * Interface for deserializing of REST returned data.
@@ -54,15 +56,14 @@ public abstract class ResponseReader {
     @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
     public Object read(InvocationResult invocationResult, RestMethodMetadata methodMetadata)
             throws IOException {
-        final String httpBody = invocationResult.getHttpBody();
         Exception normalParseFailCause = null;
         final boolean isHttpStatusPass = !invocationResult.isErrorStatusCode() || isIgnoreHttpErrorCodes();
         if (isHttpStatusPass) {
-            if (httpBody == null || httpBody.length() == 0) {
+            if (!invocationResult.hasHttpBody()) {
                 return null;
             } else {
                 try {
-                    return read(httpBody, methodMetadata.getReturnType());
+                    return readBody(invocationResult, methodMetadata.getReturnType());
                 } catch (IOException|RuntimeException e) {
                     normalParseFailCause = findCause(e, ExceptionalReturnContentException.class, JsonMappingException.class);
                     if (normalParseFailCause == null) {
@@ -75,23 +76,17 @@ public abstract class ResponseReader {
 
         // We shoud throw an exception now.
 
-        if (methodMetadata.getExceptionType() != null && httpBody != null) {
+        if (methodMetadata.getExceptionType() != null && (invocationResult.getHttpBodyBytes() != null || invocationResult.getHttpBody() != null)) {
             // Try with the declared custom exception first (methodMetadata.getExceptionType()).
             RuntimeException exception = null;
             try {
-                exception = readException(httpBody, methodMetadata.getExceptionType());
+                exception = readExceptionBody(invocationResult, methodMetadata.getExceptionType());
             } catch (Exception e) {
-                log.warn("Noncritical error parsing error output: " + Utils.clip(httpBody, BODY_FRAGMENT_CHARS), e);
+                log.warn("Noncritical error parsing error output: " + Utils.clip(invocationResult.getHttpBody(), BODY_FRAGMENT_CHARS), e);
             }
 
             if (exception != null) {
-                if (exception.getMessage() == null) {
-                    log.info("Constructed an exception with no message. Response body was: {}", Utils.clip(httpBody, BODY_FRAGMENT_CHARS));
-                }
-                if (exception instanceof HttpStatusException) {
-                    ((HttpStatusException) exception).setHttpStatusCode(invocationResult.getStatusCode());
-                }
-                throw exception;
+                throw prepareException(exception, invocationResult);
             }
         }
 
@@ -104,10 +99,65 @@ public abstract class ResponseReader {
         throw new HttpStatusIOException(exceptionMessage, invocationResult);
     }
 
+    /**
+     * Completes an exception that was read from the response body before it's thrown.
+     */
+    protected RuntimeException prepareException(RuntimeException exception, InvocationResult invocationResult) {
+        if (exception.getMessage() == null) {
+            log.info("Constructed an exception with no message. Response body was: {}", Utils.clip(invocationResult.getHttpBody(), BODY_FRAGMENT_CHARS));
+        }
+        if (exception instanceof HttpStatusException) {
+            ((HttpStatusException) exception).setHttpStatusCode(invocationResult.getStatusCode());
+        }
+        return exception;
+    }
+
+    /**
+     * Called for each method that uses this reader when the proxy is created, so that the reader can prepare what it
+     * needs for the method's types before the first response arrives. Does nothing by default.
+     */
+    public void prepare(RestMethodMetadata methodMetadata) {
+    }
+
+    /**
+     * Whether this reader implements {@link #readElements}; a proxy with a streaming method whose reader can't stream
+     * is not created. False by default.
+     */
+    public boolean canStream() {
+        return false;
+    }
+
+    /**
+     * Reads the elements of an array response one by one, as they are pulled from the returned iterator, for methods
+     * that {@link RestMethodMetadata#isStreaming() stream} their response. The iterator closes the body when it's read
+     * to the end or closed. Not supported by default; see {@link #canStream()}.
+     *
+     * @param body the uncompressed response body
+     * @param statusCode the HTTP status of the response, for exceptions read from a body that isn't an array
+     */
+    public <T> CloseableIterator<T> readElements(InputStream body, Charset charset, int statusCode, RestMethodMetadata methodMetadata) throws IOException {
+        throw new UnsupportedOperationException(getClass().getSimpleName() + " can't stream responses; method: " + methodMetadata.getMethodName());
+    }
+
     protected abstract <T> T read(String httpBody, Type returnType) throws IOException, ExceptionalReturnContentException;
 
     protected abstract RuntimeException readException(String httpBody, Class<? extends RuntimeException> exceptionType) throws IOException;
 
+    /**
+     * Reads the response body as the given type. This implementation decodes the body into a String and calls
+     * {@link #read(String, Type)}; readers that can parse the raw bytes should override it and avoid that.
+     */
+    protected <T> T readBody(InvocationResult invocationResult, Type returnType) throws IOException, ExceptionalReturnContentException {
+        return read(invocationResult.getHttpBody(), returnType);
+    }
+
+    /**
+     * Reads the response body as the given exception type; see {@link #readBody(InvocationResult, Type)}.
+     */
+    protected RuntimeException readExceptionBody(InvocationResult invocationResult, Class<? extends RuntimeException> exceptionType) throws IOException {
+        return readException(invocationResult.getHttpBody(), exceptionType);
+    }
+
     /**
      * Search the cause chain of <em>t</em> (starting from and including <em>t</em>) for a Throwable
      * that is assignable to any of <em>ofClasses</em>, or null if not found. The chain is first fully searched
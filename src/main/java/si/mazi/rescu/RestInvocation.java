@@ -22,6 +22,7 @@
 package si.mazi.rescu;
 
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.ws.rs.FormParam;
 import jakarta.ws.rs.HeaderParam;
 import jakarta.ws.rs.PathParam;
@@ -31,9 +32,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Serializable;
 import java.lang.annotation.Annotation;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This holds name-value mapping for various types of params used in REST (QueryParam, PathParam, FormParam, HeaderParam).
@@ -48,37 +49,59 @@ public class RestInvocation implements Serializable {
     @SuppressWarnings("unchecked")
     protected static final List<Class<? extends Annotation>> PARAM_ANNOTATION_CLASSES = Arrays.asList(QueryParam.class, PathParam.class, FormParam.class, HeaderParam.class);
 
-    private static final Pattern STARTS_WITH_SLASHES = Pattern.compile("(/*)(.*)");
-    private static final Pattern ENDS_WITH_SLASHES = Pattern.compile("(.*?)(/*)");
 
     private final Map<Class<? extends Annotation>, Params> paramsMap;
     private final List<Object> unannanotatedParams;
     private final RestMethodMetadata methodMetadata;
+    private final String baseUrl;
     private final String methodPath;
-    private final String invocationUrl;
-    private final String queryString;
+    private String invocationUrl;
+    private String queryString;
     private final String path;
     private final RequestWriter requestWriter;
 
     private Map<String, String> allHttpHeaders;
 
+    /** Written on first use and shared by the digests, the OAuth signer and the transport. */
+    private byte[] requestBodyBytes;
+    private String requestBody;
+    private boolean requestBodyWritten;
+    private transient Deadline deadline;
+    private transient Priority priority = Priority.NORMAL;
+    private transient long queueWaitNanos;
+
+    RestInvocation(Map<Class<? extends Annotation>, Params> paramsMap,
+                          List<Object> unannanotatedParams,
+                          RestMethodMetadata methodMetadata,
+                          String methodPath,
+                          String path,
+                          RequestWriterResolver requestWriterResolver) {
+        this(paramsMap, unannanotatedParams, methodMetadata, methodMetadata.getBaseUrl(), methodPath, path, requestWriterResolver);
+    }
+
     RestInvocation(Map<Class<? extends Annotation>, Params> paramsMap,
                           List<Object> unannanotatedParams,
                           RestMethodMetadata methodMetadata,
+                          String baseUrl,
                           String methodPath,
                           String path,
                           RequestWriterResolver requestWriterResolver) {
         this.paramsMap = paramsMap;
         this.unannanotatedParams = unannanotatedParams;
         this.methodMetadata = methodMetadata;
+        this.baseUrl = baseUrl;
         this.methodPath = methodPath;
         this.path = path;
         this.requestWriter = requestWriterResolver == null ? null : requestWriterResolver.resolveWriter(this.getMethodMetadata());
 
+        // Digests may read the body while it still contains digests that are replaced later.
+        boolean bodyContainsDigests = this.paramsMap.get(FormParam.class).containsDigests()
+                || this.unannanotatedParams.stream().anyMatch(param -> param instanceof ParamsDigest);
+
         this.paramsMap.get(QueryParam.class).digestAll(this);
 
         this.queryString = paramsMap.get(QueryParam.class).asQueryString();
-        this.invocationUrl = getInvocationUrl(methodMetadata.getBaseUrl(), path, this.queryString);
+        this.invocationUrl = getInvocationUrl(baseUrl, path, this.queryString);
 
         for (int i = 0; i < this.unannanotatedParams.size(); i++) {
             Object param = this.unannanotatedParams.get(i);
@@ -91,55 +114,57 @@ public class RestInvocation implements Serializable {
                 .filter(par -> !QueryParam.class.equals(par))
                 .map(this.paramsMap::get)
                 .forEach(params -> params.digestAll(this));
+
+        if (bodyContainsDigests) {
+            requestBodyWritten = false;
+            requestBodyBytes = null;
+            requestBody = null;
+        }
     }
 
     public static RestInvocation create(RequestWriterResolver requestWriterResolver,
             RestMethodMetadata methodMetadata,
             Object[] args,
             Map<Class<? extends Annotation>, Params> defaultParamsMap) {
+        return create(requestWriterResolver, methodMetadata, args, defaultParamsMap, methodMetadata.getBaseUrl());
+    }
+
+    /**
+     * @param baseUrl the base url that the request is sent to, eg. one of several equivalent hosts chosen by a
+     * {@link LoadBalancer}, instead of the method's
+     */
+    public static RestInvocation create(RequestWriterResolver requestWriterResolver,
+            RestMethodMetadata methodMetadata,
+            Object[] args,
+            Map<Class<? extends Annotation>, Params> defaultParamsMap,
+            String baseUrl) {
 
         HashMap<Class<? extends Annotation>, Params> paramsMap = createEmptyParamsMap(defaultParamsMap);
 
-        List<Object> unannanotatedParams = new ArrayList<>();
-        
-        Annotation[][] paramAnnotations = methodMetadata.getParameterAnnotations();
-        for (int i = 0; i < paramAnnotations.length; i++) {
-            Annotation[] paramAnns = paramAnnotations[i];
-            if (paramAnns.length == 0) {
-                unannanotatedParams.add(args[i]);
-            }
-            for (Annotation paramAnn : paramAnns) {
-                String paramName = getParamName(paramAnn);
-                if (paramName != null) {
-                    paramsMap.get(paramAnn.annotationType()).add(paramName, args[i]);
-                }
-            }
+        int[] unannotatedArgIndexes = methodMetadata.getUnannotatedArgIndexes();
+        List<Object> unannanotatedParams = new ArrayList<>(unannotatedArgIndexes.length);
+        for (int argIndex : unannotatedArgIndexes) {
+            unannanotatedParams.add(args[argIndex]);
         }
 
-        Map<Class<? extends Annotation>, Annotation> methodAnnotationMap = methodMetadata.getMethodAnnotationMap();
-
-        // Support using method name as a parameter.
-        for (Class<? extends Annotation> paramAnnotationClass : methodAnnotationMap.keySet()) {
-            Annotation annotation = methodAnnotationMap.get(paramAnnotationClass);
-            if (annotation != null) {
-                String paramName = getParamName(annotation);
-                paramsMap.get(paramAnnotationClass).add(paramName, methodMetadata.getMethodName());
-            }
+        for (RestMethodMetadata.ParamBinding binding : methodMetadata.getParamBindings()) {
+            Object value = binding.argIndex == RestMethodMetadata.ParamBinding.METHOD_NAME ? methodMetadata.getMethodName() : args[binding.argIndex];
+            paramsMap.get(binding.paramType).add(binding.name, value);
         }
 
         for (Params params : paramsMap.values()) {
             params.replaceValueFactories();
         }
 
-        String methodPath = getPath(paramsMap, methodMetadata.getMethodPathTemplate());
-        
-        String path = getPath(paramsMap, methodMetadata.getIntfacePath());
-        path = appendPath(path, methodPath);
+        Params pathParams = paramsMap.get(PathParam.class);
+        String methodPath = methodMetadata.getCompiledMethodPath().expand(pathParams);
+        String path = appendPath(methodMetadata.getCompiledIntfacePath().expand(pathParams), methodPath);
 
         RestInvocation invocation = new RestInvocation(
                 paramsMap,
                 unannanotatedParams,
                 methodMetadata,
+                baseUrl,
                 methodPath,
                 path,
                 requestWriterResolver);
@@ -155,27 +180,13 @@ public class RestInvocation implements Serializable {
     public static HashMap<Class<? extends Annotation>, Params> createEmptyParamsMap(Map<Class<? extends Annotation>, Params> defaultParamsMap) {
         HashMap<Class<? extends Annotation>, Params> paramsMap = new HashMap<>();
 
-        for (Class<? extends Annotation> annotationClass : PARAM_ANNOTATION_CLASSES) {
-            paramsMap.put(annotationClass, Params.of());
-        }
-
         if (defaultParamsMap != null) {
-            defaultParamsMap.keySet().forEach(
-                    h -> paramsMap.put(h, defaultParamsMap.get(h).copy()));
+            defaultParamsMap.forEach((annotationClass, defaults) -> paramsMap.put(annotationClass, defaults.copy()));
         }
-        return paramsMap;
-    }
-
-    private static String getParamName(Annotation queryParam) {
-
         for (Class<? extends Annotation> annotationClass : PARAM_ANNOTATION_CLASSES) {
-            String paramName = AnnotationUtils.getValueOrNull(annotationClass, queryParam);
-            if (paramName != null) {
-                return paramName;
-            }
+            paramsMap.putIfAbsent(annotationClass, Params.of());
         }
-        // This is not one of the annotations in PARAM_ANNOTATION_CLASSES.
-        return null;
+        return paramsMap;
     }
 
     static String getInvocationUrl(String baseUrl, String apiPath, String queryString) {
@@ -199,21 +210,22 @@ public class RestInvocation implements Serializable {
         first = nullToEmpty(first);
         second = nullToEmpty(second);
 
-        Matcher firstParsed = ENDS_WITH_SLASHES.matcher(first);
-        if (!firstParsed.matches()) {
-            throw new RuntimeException("Incorrect regular expression ENDS_WITH_SLASHES, fix the bug in rescu.");
+        int firstEnd = first.length();
+        while (firstEnd > 0 && first.charAt(firstEnd - 1) == '/') {
+            firstEnd--;
         }
-        Matcher secondParsed = STARTS_WITH_SLASHES.matcher(second);
-        if (!secondParsed.matches()) {
-            throw new RuntimeException("Incorrect regular expression STARTS_WITH_SLASHES, fix the bug in rescu.");
+        int secondStart = 0;
+        while (secondStart < second.length() && second.charAt(secondStart) == '/') {
+            secondStart++;
         }
 
-        String firstTrimmed = firstParsed.group(1);
-        String secondTrimmed = secondParsed.group(2);
-
         // Use middle slash when any of the original strings contained adjacent slash, or both trimmed strings were nonempty.
-        boolean midSlash = isNonEmpty(firstParsed.group(2)) || isNonEmpty(secondParsed.group(1)) || (isNonEmpty(firstTrimmed) && isNonEmpty(secondTrimmed));
-        return firstTrimmed + (midSlash ? "/" : "") + secondTrimmed;
+        boolean midSlash = firstEnd < first.length() || secondStart > 0 || (firstEnd > 0 && secondStart < second.length());
+        return new StringBuilder(firstEnd + 1 + second.length() - secondStart)
+                .append(first, 0, firstEnd)
+                .append(midSlash ? "/" : "")
+                .append(second, secondStart, second.length())
+                .toString();
     }
 
     private static boolean isNonEmpty(String str) {
@@ -224,13 +236,44 @@ public class RestInvocation implements Serializable {
         return str == null ? "" : str;
     }
 
-    static String getPath(
-            Map<Class<? extends Annotation>, Params> paramsMap, String methodPath) {
-        return paramsMap.get(PathParam.class).applyToPath(methodPath);
+    /**
+     * Lets the signer sign the complete request and adds the signature to it.
+     */
+    void sign(RequestSigner signer) {
+        RequestSignature signature = signer.sign(new CanonicalRequest(this));
+        if (signature == null) {
+            return;
+        }
+        Params headerParams = paramsMap.get(HeaderParam.class);
+        signature.getHeaders().forEach(headerParams::add);
+        allHttpHeaders = null;
+        if (!signature.getQueryParams().isEmpty()) {
+            Params queryParams = paramsMap.get(QueryParam.class);
+            // Removed first, so that a signature param that was already set is moved to the end.
+            signature.getQueryParams().forEach((name, value) -> queryParams.remove(name).add(name, value));
+            queryString = queryParams.asQueryString();
+            invocationUrl = getInvocationUrl(baseUrl, path, queryString);
+        }
     }
 
     public String getRequestBody() {
-        return requestWriter.writeBody(this);
+        if (requestBody == null) {
+            byte[] bytes = getRequestBodyBytes();
+            requestBody = bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+        return requestBody;
+    }
+
+    /**
+     * @return the UTF-8 encoded request body exactly as it is sent, or null if there's no body; must not be modified.
+     * It's written once, so digests and signatures computed from it match what is sent.
+     */
+    public byte[] getRequestBodyBytes() {
+        if (!requestBodyWritten) {
+            requestBodyBytes = requestWriter.writeBodyBytes(this);
+            requestBodyWritten = true;
+        }
+        return requestBodyBytes;
     }
 
     /**
@@ -240,6 +283,37 @@ public class RestInvocation implements Serializable {
      */
     @Deprecated
     public Map<String, String> getAllHttpHeaders() {
+        return computeHttpHeaders();
+    }
+
+    /**
+     * @return all the headers that are sent with the request: the header params and the content types
+     */
+    Map<String, String> getHttpHeaders() {
+        return Collections.unmodifiableMap(computeHttpHeaders());
+    }
+
+    /**
+     * @return the HTTP method, url and headers of the request, sorted by header name, so that requests that are the
+     * same have the same key regardless of the order their headers were set in
+     */
+    String getRequestKey() {
+        StringBuilder key = new StringBuilder(getHttpMethod()).append(' ').append(getInvocationUrl());
+        for (Map.Entry<String, String> header : new TreeMap<>(getHttpHeaders()).entrySet()) {
+            key.append('\n').append(header.getKey()).append(": ").append(header.getValue());
+        }
+        return key.toString();
+    }
+
+    /**
+     * Sets a header that isn't one of the method's params, eg. a conditional request header.
+     */
+    void setHttpHeader(String name, String value) {
+        paramsMap.get(HeaderParam.class).add(name, value);
+        allHttpHeaders = null;
+    }
+
+    private Map<String, String> computeHttpHeaders() {
         if (allHttpHeaders == null) {
             allHttpHeaders = new HashMap<>();
             allHttpHeaders.putAll(getHttpHeadersFromParams());
@@ -285,10 +359,11 @@ public class RestInvocation implements Serializable {
 
     /**
      * @return The base of the url: this usually contains the protocol (eg. http) and the host name
-     * (eg. http://www.example.com/) but may be longer.
+     * (eg. http://www.example.com/) but may be longer. With a {@link LoadBalancer}, it's the endpoint that the request
+     * is sent to.
      */
     public String getBaseUrl() {
-        return getMethodMetadata().getBaseUrl();
+        return baseUrl;
     }
 
     /**
@@ -309,6 +384,43 @@ public class RestInvocation implements Serializable {
         return methodMetadata;
     }
 
+    /**
+     * @return the time by which the call must be done (see {@link Deadline}), or null if it's only bounded by the
+     * transport's timeouts
+     */
+    @JsonIgnore
+    public Deadline getDeadline() {
+        return deadline;
+    }
+
+    void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * @return the priority of the call in the {@link ConcurrencyLimiter}'s queue
+     */
+    @JsonIgnore
+    public Priority getPriority() {
+        return priority;
+    }
+
+    void setPriority(Priority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * @return how long the request waited for a free slot of the {@link ConcurrencyLimiter} before it was sent; this
+     * isn't a part of the response time
+     */
+    public long getQueueWait(TimeUnit unit) {
+        return unit.convert(queueWaitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    void setQueueWaitNanos(long queueWaitNanos) {
+        this.queueWaitNanos = queueWaitNanos;
+    }
+
     /**
      * @param paramAnnotation One of {@link jakarta.ws.rs.QueryParam}.class, {@link jakarta.ws.rs.PathParam}.class,
      *                         {@link jakarta.ws.rs.FormParam}.class, {@link jakarta.ws.rs.HeaderParam}.class
@@ -21,6 +21,7 @@
  */
 package si.mazi.rescu;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,15 +29,33 @@ import si.mazi.rescu.serialization.PlainTextResponseReader;
 import si.mazi.rescu.serialization.jackson.DefaultJacksonObjectMapperFactory;
 import si.mazi.rescu.serialization.jackson.JacksonObjectMapperFactory;
 import si.mazi.rescu.serialization.jackson.JacksonResponseReader;
+import si.mazi.rescu.utils.HttpUtils;
 
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.core.MediaType;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.net.HttpURLConnection;
+import java.util.ArrayDeque;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * @author Matija Mazi
@@ -52,12 +71,38 @@ public class RestInvocationHandler implements InvocationHandler {
     private final String intfacePath;
     private final String baseUrl;
     private final ClientConfig config;
+    private final Executor asyncExecutor;
+    private final RequestCoalescer requestCoalescer;
+    private final RateLimiter rateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final RetryPolicy retryPolicy;
+    private final LoadBalancer loadBalancer;
 
-    private final Map<Method, RestMethodMetadata> methodMetadataCache = new HashMap<>();
+    private static final Map<SynchronizedValueFactory, SendTurns> VALUE_GENERATOR_TURNS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /** Resolved when the proxy is created and never modified afterwards, so lookups need no synchronization. */
+    private final Map<Method, RestMethodMetadata> methodMetadata;
+    /** The rate limit permits of the methods that are limited; resolved with the metadata. */
+    private final Map<Method, RateLimiter.Quota> rateLimitQuotas;
+    /** The retries of the methods that are retried; resolved with the metadata. */
+    private final Map<Method, RetryPolicy.Plan> retryPlans;
+    /** The hedging of the methods that may be hedged; resolved with the metadata. */
+    private final Map<Method, HedgingPolicy.Plan> hedgingPlans;
+    /** The circuit settings of the methods whose calls go through the circuit breaker; resolved with the metadata. */
+    private final Map<Method, CircuitBreaker.Plan> circuitPlans;
 
     RestInvocationHandler(Class<?> restInterface, String url, ClientConfig config) {
+        this(restInterface, url, null, config);
+    }
+
+    /**
+     * @param url the base url of the method metadata; with a load balancer, its primary endpoint
+     * @param loadBalancer chooses the base url of each request; null to send all of them to {@code url}
+     */
+    RestInvocationHandler(Class<?> restInterface, String url, LoadBalancer loadBalancer, ClientConfig config) {
         this.intfacePath = restInterface.getAnnotation(Path.class).value();
         this.baseUrl = url;
+        this.loadBalancer = loadBalancer;
 
         if (config == null) {
             config = new ClientConfig(); //default config
@@ -80,16 +125,81 @@ public class RestInvocationHandler implements InvocationHandler {
         responseReaderResolver.addReader(MediaType.TEXT_PLAIN,
                 new PlainTextResponseReader(this.config.isIgnoreHttpErrorCodes()));
 
-                //setup http client
-        this.httpTemplate = new HttpTemplate(
-                this.config.getHttpConnTimeout(),
-                this.config.getHttpReadTimeout(),
-                this.config.getProxyHost(),
-                this.config.getProxyPort(),
-                this.config.getProxyType(),
-                this.config.getSslSocketFactory(),
-                this.config.getHostnameVerifier(),
-                this.config.getOAuthConsumer());
+        //setup http client
+        HttpTransportFactory transportFactory = this.config.getHttpTransportFactory();
+        if (transportFactory == null) {
+            transportFactory = HttpTransportFactory.URL_CONNECTION;
+        }
+        this.httpTemplate = new HttpTemplate(transportFactory.createTransport(this.config), this.config.getOAuthConsumer());
+
+        this.asyncExecutor = AsyncExecutors.forConfig(this.config);
+        this.requestCoalescer = this.config.isCoalesceRequests() ? new RequestCoalescer() : null;
+        this.concurrencyLimiter = this.config.getConcurrencyLimiter();
+
+        this.methodMetadata = resolveMethodMetadata(restInterface, baseUrl, intfacePath);
+        for (RestMethodMetadata metadata : this.methodMetadata.values()) {
+            ResponseReader responseReader = responseReaderResolver.resolveReader(metadata);
+            if (metadata.isStreaming() && !responseReader.canStream()) {
+                throw new IllegalArgumentException(responseReader.getClass().getSimpleName() + " can't stream responses; method: " + metadata.getMethodName());
+            }
+            responseReader.prepare(metadata);
+            requestWriterResolver.resolveWriter(metadata).prepare(metadata);
+        }
+
+        this.rateLimiter = this.config.getRateLimiter() != null ? this.config.getRateLimiter() : new RateLimiter();
+        Map<Method, RateLimiter.Quota> quotas = new HashMap<>();
+        for (Method method : this.methodMetadata.keySet()) {
+            RateLimiter.Quota quota = rateLimiter.resolveQuota(restInterface, method);
+            if (quota != null) {
+                quotas.put(method, quota);
+            }
+        }
+        this.rateLimitQuotas = Collections.unmodifiableMap(quotas);
+
+        this.retryPolicy = this.config.getRetryPolicy() != null ? this.config.getRetryPolicy() : new RetryPolicy();
+        Map<Method, RetryPolicy.Plan> plans = new HashMap<>();
+        for (Map.Entry<Method, RestMethodMetadata> metadata : this.methodMetadata.entrySet()) {
+            RetryPolicy.Plan plan = retryPolicy.resolvePlan(metadata.getKey(), metadata.getValue().getHttpMethod(), this.config.getRetryPolicy() != null);
+            if (plan != null) {
+                plans.put(metadata.getKey(), plan);
+            }
+        }
+        this.retryPlans = Collections.unmodifiableMap(plans);
+
+        Map<Method, HedgingPolicy.Plan> hedgingPlans = new HashMap<>();
+        if (this.config.getHedgingPolicy() != null) {
+            for (Map.Entry<Method, RestMethodMetadata> metadata : this.methodMetadata.entrySet()) {
+                HedgingPolicy.Plan plan = this.config.getHedgingPolicy().resolvePlan(metadata.getValue().getHttpMethod(), metadata.getValue().isStreaming());
+                if (plan != null) {
+                    hedgingPlans.put(metadata.getKey(), plan);
+                }
+            }
+        }
+        this.hedgingPlans = Collections.unmodifiableMap(hedgingPlans);
+
+        CircuitBreaker circuitBreaker = this.config.getCircuitBreaker() != null ? this.config.getCircuitBreaker() : new CircuitBreaker();
+        Map<Method, CircuitBreaker.Plan> circuitPlans = new HashMap<>();
+        for (Method method : this.methodMetadata.keySet()) {
+            CircuitBreaker.Plan plan = circuitBreaker.resolvePlan(restInterface, method, this.config.getCircuitBreaker() != null);
+            if (plan != null) {
+                circuitPlans.put(method, plan);
+            }
+        }
+        this.circuitPlans = Collections.unmodifiableMap(circuitPlans);
+    }
+
+    /**
+     * Resolves the metadata of all the rest methods of the interface, so that misconfigured methods fail when the proxy
+     * is created rather than on first use.
+     */
+    private static Map<Method, RestMethodMetadata> resolveMethodMetadata(Class<?> restInterface, String baseUrl, String intfacePath) {
+        Map<Method, RestMethodMetadata> metadata = new HashMap<>();
+        for (Method method : restInterface.getMethods()) {
+            if (!method.isDefault() && !Modifier.isStatic(method.getModifiers())) {
+                metadata.put(method, RestMethodMetadata.create(method, baseUrl, intfacePath));
+            }
+        }
+        return Collections.unmodifiableMap(metadata);
     }
 
     public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
@@ -98,31 +208,260 @@ public class RestInvocationHandler implements InvocationHandler {
         }
 
         RestMethodMetadata methodMetadata = getMetadata(method);
+        if (methodMetadata.isAsync()) {
+            return invokeAsync(methodMetadata, method, args);
+        }
 
-        HttpURLConnection connection = null;
-        RestInvocation invocation = null;
-        Object lock = getValueGenerator(args);
-        if (lock == null) {
-            lock = new Object(); // effectively no locking
+        Deadline deadline = getDeadline(methodMetadata, args);
+        RetryPolicy.Plan retryPlan = retryPlans.get(method);
+        RetryPolicy.Attempts attempts = retryPlan == null ? null : retryPlan.start(deadline);
+        long retryDelayNanos = 0;
+        String failedBaseUrl = null;
+        while (true) {
+            HttpTransportResponse response = null;
+            RestInvocation invocation = null;
+            try {
+                if (retryDelayNanos > 0) {
+                    sleepBeforeRetry(retryDelayNanos);
+                }
+                checkDeadline(deadline);
+                RateLimiter.Quota quota = rateLimitQuotas.get(method);
+                if (quota != null) {
+                    // Before the invocation is created, so that nonces are generated when the request is sent.
+                    rateLimiter.acquire(quota, deadline);
+                }
+                SynchronizedValueFactory valueGenerator = getValueGenerator(args);
+                SendTurns turns = getSendTurns(valueGenerator);
+                if (turns != null) {
+                    turns.await(deadline);
+                }
+                try {
+                    checkDeadline(deadline);
+                    invocation = createInvocation(method, args, selectBaseUrl(failedBaseUrl), valueGenerator);
+                    invocation.setDeadline(deadline);
+                    response = send(method, methodMetadata, invocation, args);
+                } finally {
+                    if (turns != null) {
+                        turns.pass();
+                    }
+                }
+                retryDelayNanos = attempts == null ? -1 : attempts.getRetryDelayNanos(response);
+                if (retryDelayNanos >= 0) {
+                    discard(response);
+                    failedBaseUrl = invocation.getBaseUrl();
+                    continue;
+                }
+                final Object result = receiveAndMap(methodMetadata, response);
+                makeAware(result, response, invocation);
+                return result;
+            } catch (Exception e) {
+                // Failures while reading a response are final: the request was handled.
+                retryDelayNanos = attempts == null || response != null ? -1 : attempts.getRetryDelayNanos(e);
+                if (retryDelayNanos < 0) {
+                    throw toThrownException(toDeadlineExceeded(e, deadline), response, invocation);
+                }
+                failedBaseUrl = invocation == null ? null : invocation.getBaseUrl();
+            }
+        }
+    }
+
+    /**
+     * @return the earlier of the {@link Deadline} argument and the method's {@link Timeout}; null if it has neither
+     */
+    private static Deadline getDeadline(RestMethodMetadata methodMetadata, Object[] args) {
+        int argIndex = methodMetadata.getDeadlineArgIndex();
+        Deadline deadline = argIndex >= 0 ? (Deadline) args[argIndex] : null;
+        if (methodMetadata.getTimeoutNanos() > 0) {
+            deadline = Deadline.earlier(deadline, Deadline.after(methodMetadata.getTimeoutNanos(), TimeUnit.NANOSECONDS));
+        }
+        return deadline;
+    }
+
+    /**
+     * Fails a call that can't be done in time before it touches the network.
+     */
+    private static void checkDeadline(Deadline deadline) throws DeadlineExceededException {
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException("The deadline passed before the request was sent");
+        }
+    }
+
+    /**
+     * @return a {@link DeadlineExceededException} if the call failed on I/O (typically a timeout of the transport)
+     * after its deadline passed, otherwise the failure
+     */
+    private static Exception toDeadlineExceeded(Exception e, Deadline deadline) {
+        if (deadline == null || !deadline.isExpired() || !(e instanceof IOException) || e instanceof DeadlineExceededException
+                || e instanceof HttpStatusIOException || e instanceof JsonProcessingException) {
+            return e;
         }
+        return new DeadlineExceededException("The deadline passed: " + e.getMessage(), e);
+    }
+
+    /**
+     * Sends the invocation as soon as its rate limit permits are granted, without blocking the caller, and returns
+     * without waiting for the response.
+     */
+    private CompletableFuture<Object> invokeAsync(RestMethodMetadata methodMetadata, Method method, Object[] args) {
+        final CompletableFuture<Object> result = new CompletableFuture<>();
+        Deadline deadline = getDeadline(methodMetadata, args);
+        if (deadline != null) {
+            // The request can't be cancelled, but the caller needn't wait for it.
+            ScheduledFuture<?> timeout = AsyncExecutors.schedule(() -> result.completeExceptionally(new DeadlineExceededException("The deadline passed before the response arrived")),
+                    deadline.getRemainingNanos(), TimeUnit.NANOSECONDS, asyncExecutor);
+            result.whenComplete((r, f) -> timeout.cancel(false));
+        }
+        RetryPolicy.Plan retryPlan = retryPlans.get(method);
+        invokeAsync(methodMetadata, method, args, result, deadline, retryPlan == null ? null : retryPlan.start(deadline), 0, null);
+        return result;
+    }
+
+    /**
+     * Sends the invocation when its rate limit permits are granted, but not before {@code retryDelayNanos}.
+     *
+     * @param failedBaseUrl the base url of the previous attempt if this is a retry
+     */
+    private void invokeAsync(RestMethodMetadata methodMetadata, Method method, Object[] args, CompletableFuture<Object> result,
+            Deadline deadline, RetryPolicy.Attempts attempts, long retryDelayNanos, String failedBaseUrl) {
+        if (result.isDone()) {
+            return;
+        }
+        long delayNanos = retryDelayNanos;
         try {
-            synchronized (lock) {
-                invocation = createInvocation(method, args);
-                connection = invokeHttp(invocation);
+            checkDeadline(deadline);
+            RateLimiter.Quota quota = rateLimitQuotas.get(method);
+            if (quota != null) {
+                delayNanos = Math.max(delayNanos, rateLimiter.reserve(quota, deadline));
             }
-            final Object result = receiveAndMap(methodMetadata, connection);
-            makeAware(result, connection, invocation);
-            return result;
         } catch (Exception e) {
-            final boolean madeAware = makeAware(e, connection, invocation);
-            if (config.isWrapUnexpectedExceptions() && !madeAware) {
-                throw new AwareException(e, invocation);
+            result.completeExceptionally(toThrownException(e, null, null));
+            return;
+        }
+        if (delayNanos > 0) {
+            AsyncExecutors.schedule(() -> sendAsync(methodMetadata, method, args, result, deadline, attempts, failedBaseUrl),
+                    delayNanos, TimeUnit.NANOSECONDS, asyncExecutor);
+        } else {
+            sendAsync(methodMetadata, method, args, result, deadline, attempts, failedBaseUrl);
+        }
+    }
+
+    /**
+     * Creates and sends the invocation, on the current thread if it can be sent right away. With a
+     * SynchronizedValueFactory, the calls that use it take turns: the values are generated when the call's turn comes,
+     * and the next call only gets its turn when the response has arrived, so that the requests reach the server in the
+     * order of their values, as with blocking calls. The result is completed when the response arrives and is read and
+     * mapped, or the call is retried.
+     */
+    private void sendAsync(RestMethodMetadata methodMetadata, Method method, Object[] args, CompletableFuture<Object> result,
+            Deadline deadline, RetryPolicy.Attempts attempts, String failedBaseUrl) {
+        SynchronizedValueFactory valueGenerator = getValueGenerator(args);
+        SendTurns turns = getSendTurns(valueGenerator);
+        if (turns == null) {
+            sendAsync(methodMetadata, method, args, result, deadline, attempts, failedBaseUrl, null, null);
+            return;
+        }
+        CompletableFuture<Void> turn = turns.take();
+        if (turn.isDone()) {
+            sendAsync(methodMetadata, method, args, result, deadline, attempts, failedBaseUrl, valueGenerator, turns);
+        } else {
+            // Not on the thread that passes the turn, which completes another call's response.
+            turn.thenRunAsync(() -> sendAsync(methodMetadata, method, args, result, deadline, attempts, failedBaseUrl, valueGenerator, turns), asyncExecutor);
+        }
+    }
+
+    /**
+     * @param turns the turns of the value generator, whose turn the call has; null if it has none
+     */
+    private void sendAsync(RestMethodMetadata methodMetadata, Method method, Object[] args, CompletableFuture<Object> result,
+            Deadline deadline, RetryPolicy.Attempts attempts, String failedBaseUrl, SynchronizedValueFactory valueGenerator, SendTurns turns) {
+        if (result.isDone()) {
+            if (turns != null) {
+                turns.pass();
+            }
+            return;
+        }
+        RestInvocation invocation = null;
+        try {
+            CompletableFuture<HttpTransportResponse> responseFuture;
+            try {
+                checkDeadline(deadline);
+                RestInvocation created = invocation = createInvocation(method, args, selectBaseUrl(failedBaseUrl), valueGenerator);
+                created.setDeadline(deadline);
+                HedgingPolicy.Plan hedgingPlan = hedgingPlans.get(method);
+                CircuitBreaker.Plan circuitPlan = circuitPlans.get(method);
+                responseFuture = hedgingPlan != null && isRepeatable(methodMetadata, args)
+                        ? hedgingPlan.send(created, () -> createHedgeInvocation(method, args, created), inv -> sendHttpAsync(circuitPlan, inv, result), asyncExecutor)
+                        : sendHttpAsync(circuitPlan, created, result);
+            } catch (Exception | Error e) {
+                if (turns != null) {
+                    turns.pass();
+                }
+                throw e;
+            }
+            if (turns != null) {
+                responseFuture.whenComplete((response, failure) -> turns.pass());
             }
-            throw e;
+            final RestInvocation sentInvocation = invocation;
+            responseFuture.whenComplete((response, failure) -> {
+                if (failure != null) {
+                    Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                    long retryDelayNanos = attempts == null ? -1 : attempts.getRetryDelayNanos(cause);
+                    if (retryDelayNanos >= 0) {
+                        invokeAsync(methodMetadata, method, args, result, deadline, attempts, retryDelayNanos, sentInvocation.getBaseUrl());
+                        return;
+                    }
+                    result.completeExceptionally(cause instanceof Exception
+                            ? toThrownException(toDeadlineExceeded((Exception) cause, deadline), null, sentInvocation) : cause);
+                    return;
+                }
+                try {
+                    long retryDelayNanos = attempts == null ? -1 : attempts.getRetryDelayNanos(response);
+                    if (retryDelayNanos >= 0) {
+                        discard(response);
+                        invokeAsync(methodMetadata, method, args, result, deadline, attempts, retryDelayNanos, sentInvocation.getBaseUrl());
+                        return;
+                    }
+                    final Object mapped = receiveAndMap(methodMetadata, response);
+                    makeAware(mapped, response, sentInvocation);
+                    result.complete(mapped);
+                } catch (Exception e) {
+                    result.completeExceptionally(toThrownException(toDeadlineExceeded(e, deadline), response, sentInvocation));
+                }
+            });
+        } catch (Exception e) {
+            result.completeExceptionally(toThrownException(e, null, invocation));
+        }
+    }
+
+    private static void sleepBeforeRetry(long delayNanos) throws InterruptedIOException {
+        try {
+            TimeUnit.NANOSECONDS.sleep(delayNanos);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    /**
+     * Releases the connection of a response that won't be used because the call is retried.
+     */
+    private static void discard(HttpTransportResponse response) {
+        try {
+            HttpStreams.drainAndClose(response.getBody());
+        } catch (IOException e) {
+            log.debug("Failed to discard the response before retrying", e);
         }
     }
 
-    private boolean makeAware(Object result, HttpURLConnection connection, RestInvocation invocation) {
+    private Exception toThrownException(Exception e, HttpTransportResponse response, RestInvocation invocation) {
+        final boolean madeAware = makeAware(e, response, invocation);
+        if (config.isWrapUnexpectedExceptions() && !madeAware) {
+            return new AwareException(e, invocation);
+        }
+        return e;
+    }
+
+    private boolean makeAware(Object result, HttpTransportResponse response, RestInvocation invocation) {
         boolean madeAware = false;
         if (result instanceof InvocationAware) {
             try {
@@ -132,9 +471,9 @@ public class RestInvocationHandler implements InvocationHandler {
                 log.warn("Failed to set invocation on the InvocationAware", ex);
             }
         }
-        if (result instanceof HttpResponseAware && connection != null) {
+        if (result instanceof HttpResponseAware && response != null) {
             try {
-                ((HttpResponseAware) result).setResponseHeaders(connection.getHeaderFields());
+                ((HttpResponseAware) result).setResponseHeaders(response.getHeaderFields());
                 madeAware = true;
             } catch (Exception ex) {
                 log.warn("Failed to set response headers on the HttpResponseAware", ex);
@@ -143,20 +482,184 @@ public class RestInvocationHandler implements InvocationHandler {
         return madeAware;
     }
 
-    protected HttpURLConnection invokeHttp(RestInvocation invocation) throws IOException {
+    /**
+     * Sends the invocation, or lets it share a request with identical concurrent invocations, or serves it from the
+     * response cache if the method is {@link Cacheable}, or hedges it if the response is slow. Only requests that are
+     * actually sent count against the concurrency limit and in the load balancer's endpoint stats.
+     */
+    private HttpTransportResponse send(Method method, RestMethodMetadata methodMetadata, RestInvocation invocation, Object[] args) throws IOException {
+        HttpSender sender = this::invokeHttp;
+        if (loadBalancer != null) {
+            HttpSender next = sender;
+            sender = inv -> loadBalancer.send(inv, next);
+        }
+        if (concurrencyLimiter != null) {
+            HttpSender next = sender;
+            sender = inv -> concurrencyLimiter.send(inv, next);
+        }
+        CircuitBreaker.Plan circuitPlan = circuitPlans.get(method);
+        if (circuitPlan != null) {
+            // Outside the concurrency limit, so that calls to an open circuit don't wait in its queue.
+            HttpSender next = sender;
+            sender = inv -> circuitPlan.send(inv, next);
+        }
+        HedgingPolicy.Plan hedgingPlan = hedgingPlans.get(method);
+        if (hedgingPlan != null && isRepeatable(methodMetadata, args)) {
+            // The requests race on other threads; the caller waits for the winner.
+            sender = inv -> awaitResponse(hedgingPlan.send(inv, () -> createHedgeInvocation(method, args, inv), i -> sendHttpAsync(circuitPlan, i, null), asyncExecutor));
+        }
+        ResponseCache responseCache = config.getResponseCache();
+        if (responseCache != null && methodMetadata.getCacheable() != null && isRepeatable(methodMetadata, args)) {
+            HttpSender next = sender;
+            sender = inv -> responseCache.send(inv, methodMetadata.getCacheable(), next);
+        }
+        if (requestCoalescer != null && canCoalesce(methodMetadata, invocation, args)) {
+            return requestCoalescer.send(invocation, sender);
+        }
+        return sender.send(invocation);
+    }
+
+    /**
+     * Only GETs whose requests are the same each time may share one, and not streamed responses, which would have to
+     * be read whole.
+     */
+    private boolean canCoalesce(RestMethodMetadata methodMetadata, RestInvocation invocation, Object[] args) {
+        return methodMetadata.getHttpMethod() == HttpMethod.GET && !methodMetadata.isStreaming() && isRepeatable(methodMetadata, args);
+    }
+
+    /**
+     * @return whether the requests of the call are the same each time, so that one may be shared, cached or sent
+     * twice: not if there are digests, generated values (eg. nonces) or signatures
+     */
+    private boolean isRepeatable(RestMethodMetadata methodMetadata, Object[] args) {
+        if (config.getRequestSigner() != null || methodMetadata.getRequestSignerArgIndex() >= 0) {
+            return false;
+        }
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg instanceof ParamsDigest || arg instanceof SynchronizedValueFactory) {
+                    return false;
+                }
+            }
+        }
+        for (Params params : config.getDefaultParamsMap().values()) {
+            if (params.containsDigests() || params.containsValueFactories()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected HttpTransportResponse invokeHttp(RestInvocation invocation) throws IOException {
         RestMethodMetadata methodMetadata = invocation.getMethodMetadata();
+        return httpTemplate.send(invocation.getInvocationUrl(), invocation.getRequestBodyBytes(), invocation.getHttpHeaders(), methodMetadata.getHttpMethod(),
+                getTimeoutMillis(invocation));
+    }
+
+    protected CompletableFuture<HttpTransportResponse> invokeHttpAsync(RestInvocation invocation) {
+        RestMethodMetadata methodMetadata = invocation.getMethodMetadata();
+        return httpTemplate.sendAsync(invocation.getInvocationUrl(), invocation.getRequestBodyBytes(), invocation.getHttpHeaders(), methodMetadata.getHttpMethod(), asyncExecutor,
+                getTimeoutMillis(invocation));
+    }
 
-        RequestWriter requestWriter = requestWriterResolver.resolveWriter(invocation.getMethodMetadata());
-        final String requestBody = requestWriter.writeBody(invocation);
+    /**
+     * Sends the invocation asynchronously through the circuit breaker, concurrency limit and load balancer, like
+     * {@link #send} does synchronously.
+     *
+     * @param circuitPlan the method's circuit settings; null if it doesn't go through the circuit breaker
+     * @param result the result of an asynchronous call, which needs no request once it's done; null for a synchronous one
+     */
+    private CompletableFuture<HttpTransportResponse> sendHttpAsync(CircuitBreaker.Plan circuitPlan, RestInvocation invocation, CompletableFuture<?> result) {
+        Function<RestInvocation, CompletableFuture<HttpTransportResponse>> sender = this::invokeHttpAsync;
+        if (loadBalancer != null) {
+            Function<RestInvocation, CompletableFuture<HttpTransportResponse>> next = sender;
+            sender = inv -> loadBalancer.sendAsync(inv, next);
+        }
+        if (concurrencyLimiter != null) {
+            Function<RestInvocation, CompletableFuture<HttpTransportResponse>> next = sender;
+            sender = inv -> concurrencyLimiter.sendAsync(inv, next, asyncExecutor, result == null ? () -> false : result::isDone);
+        }
+        return circuitPlan != null ? circuitPlan.sendAsync(invocation, sender) : sender.apply(invocation);
+    }
+
+    /**
+     * @return a copy of a repeatable invocation to hedge it with; with a load balancer, for another endpoint if possible
+     */
+    private RestInvocation createHedgeInvocation(Method method, Object[] args, RestInvocation invocation) {
+        RestInvocation hedge = createInvocation(method, args, selectBaseUrl(invocation.getBaseUrl()));
+        hedge.setDeadline(invocation.getDeadline());
+        return hedge;
+    }
+
+    private static HttpTransportResponse awaitResponse(CompletableFuture<HttpTransportResponse> response) throws IOException {
+        try {
+            return response.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // The response is closed when it arrives.
+            response.cancel(false);
+            throw new InterruptedIOException("Interrupted while waiting for the response");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null ? e.getCause().getCause() : e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
 
-        return httpTemplate.send(invocation.getInvocationUrl(), requestBody, invocation.getAllHttpHeaders(), methodMetadata.getHttpMethod());
+    /**
+     * @return the time left for the invocation, which replaces the transport's read timeout; 0 if it has no deadline
+     */
+    private static int getTimeoutMillis(RestInvocation invocation) {
+        return invocation.getDeadline() == null ? 0 : invocation.getDeadline().getRemainingTimeoutMillis();
     }
 
+    /**
+     * @deprecated The response is a {@link HttpTransportResponse} now, whatever the transport; override
+     * {@link #receiveAndMap(RestMethodMetadata, HttpTransportResponse)} instead. Only kept for subclasses that call it.
+     */
+    @Deprecated
     protected Object receiveAndMap(RestMethodMetadata methodMetadata, HttpURLConnection connection) throws IOException {
-        InvocationResult invocationResult = httpTemplate.receive(connection);
+        return receiveAndMap(methodMetadata, new UrlConnectionHttpTransport.Response(connection));
+    }
+
+    protected Object receiveAndMap(RestMethodMetadata methodMetadata, HttpTransportResponse response) throws IOException {
+        if (methodMetadata.isStreaming()) {
+            return receiveStreaming(methodMetadata, response);
+        }
+        InvocationResult invocationResult = httpTemplate.receive(response);
         return mapInvocationResult(invocationResult, methodMetadata);
     }
 
+    /**
+     * Returns the elements of the response without reading it: they are read off the connection as the returned
+     * iterator or stream is pulled. Error responses are read as a whole and mapped to the declared exception.
+     */
+    private Object receiveStreaming(RestMethodMetadata methodMetadata, HttpTransportResponse response) throws IOException {
+        int statusCode = response.getStatusCode();
+        if (HttpUtils.isErrorStatusCode(statusCode) && !config.isIgnoreHttpErrorCodes()) {
+            return mapInvocationResult(httpTemplate.receive(response), methodMetadata);
+        }
+        InputStream body = httpTemplate.openBody(response);
+        CloseableIterator<Object> elements;
+        if (body == null) {
+            elements = CloseableIterator.empty();
+        } else {
+            try {
+                elements = responseReaderResolver.resolveReader(methodMetadata)
+                        .readElements(body, httpTemplate.getResponseCharset(response), statusCode, methodMetadata);
+            } catch (IOException | RuntimeException e) {
+                HttpStreams.drainAndClose(body);
+                throw e;
+            }
+        }
+        return methodMetadata.getStreamType() == Stream.class ? elements.stream() : elements;
+    }
+
     private static SynchronizedValueFactory getValueGenerator(Object[] args) {
         if (args != null) for (Object arg : args)
             if (arg instanceof SynchronizedValueFactory)
@@ -164,23 +667,170 @@ public class RestInvocationHandler implements InvocationHandler {
         return null;
     }
 
+    /**
+     * Turns rather than the factory's monitor are held while the request is sent: blocking I/O inside a synchronized
+     * block would pin the carrier thread of a virtual thread, and an asynchronous call holds its turn until the
+     * response arrives, on another thread. The monitor is only held while the values are generated; see
+     * {@link #createInvocation(Method, Object[], String, SynchronizedValueFactory)}.
+     *
+     * @return the turns shared by all invocations that use the SynchronizedValueFactory; null if there's none
+     */
+    private static SendTurns getSendTurns(SynchronizedValueFactory valueGenerator) {
+        if (valueGenerator == null) {
+            return null;
+        }
+        return VALUE_GENERATOR_TURNS.computeIfAbsent(valueGenerator, vg -> new SendTurns());
+    }
+
+    /**
+     * Creates the invocation holding the value factory's monitor, so that code that synchronizes on the factory to
+     * generate values of its own still excludes rescu. Nothing blocks while the monitor is held.
+     */
+    private RestInvocation createInvocation(Method method, Object[] args, String baseUrl, SynchronizedValueFactory valueGenerator) {
+        if (valueGenerator == null) {
+            return createInvocation(method, args, baseUrl);
+        }
+        synchronized (valueGenerator) {
+            return createInvocation(method, args, baseUrl);
+        }
+    }
+
     protected Object mapInvocationResult(InvocationResult invocationResult,
             RestMethodMetadata methodMetadata) throws IOException {
         return responseReaderResolver.resolveReader(methodMetadata).read(invocationResult, methodMetadata);
     }
 
     private RestMethodMetadata getMetadata(Method method) {
-        RestMethodMetadata metadata = methodMetadataCache.get(method);
+        RestMethodMetadata metadata = methodMetadata.get(method);
         if (metadata == null) {
+            // Not a method of the rest interface, eg. when the handler is shared with a proxy of another interface.
             metadata = RestMethodMetadata.create(method, baseUrl, intfacePath);
-            methodMetadataCache.put(method, metadata);
         }
         return metadata;
     }
 
+    /**
+     * @param avoidBaseUrl the endpoint that the previous attempt failed on or that a hedged request waits for, if any
+     * @return the base url of the next request: the one chosen by the load balancer if there's one
+     */
+    private String selectBaseUrl(String avoidBaseUrl) {
+        return loadBalancer == null ? baseUrl : loadBalancer.select(avoidBaseUrl);
+    }
+
     protected RestInvocation createInvocation(Method method, Object[] args) {
-        return RestInvocation.create(
-                requestWriterResolver, getMetadata(method), args, config.getDefaultParamsMap()
+        return createInvocation(method, args, baseUrl);
+    }
+
+    /**
+     * @param baseUrl the base url that the request is sent to, which the url, digests and signatures are computed with
+     */
+    protected RestInvocation createInvocation(Method method, Object[] args, String baseUrl) {
+        RestMethodMetadata methodMetadata = getMetadata(method);
+        RestInvocation invocation = RestInvocation.create(
+                requestWriterResolver, methodMetadata, args, config.getDefaultParamsMap(), baseUrl
         );
+        invocation.setPriority(getPriority(methodMetadata, args));
+        RequestSigner signer = getRequestSigner(methodMetadata, args);
+        if (signer != null) {
+            invocation.sign(signer);
+        }
+        return invocation;
+    }
+
+    /**
+     * @return the {@link Priority} argument if there's one, otherwise the method's
+     */
+    private static Priority getPriority(RestMethodMetadata methodMetadata, Object[] args) {
+        int argIndex = methodMetadata.getPriorityArgIndex();
+        return argIndex >= 0 && args[argIndex] != null ? (Priority) args[argIndex] : methodMetadata.getPriority();
+    }
+
+    private RequestSigner getRequestSigner(RestMethodMetadata methodMetadata, Object[] args) {
+        int argIndex = methodMetadata.getRequestSignerArgIndex();
+        if (argIndex >= 0 && args[argIndex] != null) {
+            return (RequestSigner) args[argIndex];
+        }
+        return config.getRequestSigner();
+    }
+
+    /**
+     * Lets calls generate their values and send their requests one at a time, in the order they asked for a turn. Unlike
+     * a lock, a turn may be passed on by another thread than the one that took it.
+     */
+    static final class SendTurns {
+        private final Lock lock = new ReentrantLock();
+        private final ArrayDeque<CompletableFuture<Void>> waiting = new ArrayDeque<>();
+        private boolean taken;
+
+        /**
+         * @return completed when the caller has the turn; it must then {@link #pass()} it exactly once
+         */
+        CompletableFuture<Void> take() {
+            lock.lock();
+            try {
+                if (!taken) {
+                    taken = true;
+                    return CompletableFuture.completedFuture(null);
+                }
+                CompletableFuture<Void> turn = new CompletableFuture<>();
+                waiting.add(turn);
+                return turn;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Blocks until the caller has the turn.
+         *
+         * @param deadline when to stop waiting; null to wait for as long as it takes
+         * @throws DeadlineExceededException if the deadline passed first
+         */
+        void await(Deadline deadline) throws InterruptedIOException {
+            CompletableFuture<Void> turn = take();
+            try {
+                if (deadline == null) {
+                    turn.get();
+                } else {
+                    turn.get(deadline.getRemainingNanos(), TimeUnit.NANOSECONDS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                giveUp(turn);
+                throw new InterruptedIOException("Interrupted while waiting for the turn of the SynchronizedValueFactory");
+            } catch (TimeoutException e) {
+                giveUp(turn);
+                throw new DeadlineExceededException("The deadline passed while waiting for the turn of the SynchronizedValueFactory");
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void giveUp(CompletableFuture<Void> turn) {
+            if (!turn.cancel(false)) {
+                // Got it just now; the next one gets it instead.
+                pass();
+            }
+        }
+
+        void pass() {
+            while (true) {
+                CompletableFuture<Void> next;
+                lock.lock();
+                try {
+                    next = waiting.poll();
+                    if (next == null) {
+                        taken = false;
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                // Skips callers that were interrupted while waiting.
+                if (next.complete(null)) {
+                    return;
+                }
+            }
+        }
     }
 }
@@ -21,6 +21,7 @@
  */
 package si.mazi.rescu;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,10 +30,17 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.stream.Stream;
 
 /**
  * @author Matija Mazi
@@ -48,6 +56,8 @@ public class RestMethodMetadata implements Serializable {
             = Arrays.asList(GET.class, POST.class, PUT.class, OPTIONS.class, HEAD.class, DELETE.class, PATCH.class);
 
     private final Type returnType;
+    private final boolean async;
+    private final Class<?> streamType;
     private final HttpMethod httpMethod;
     private final String baseUrl;
     private final String intfacePath;
@@ -59,6 +69,21 @@ public class RestMethodMetadata implements Serializable {
     private final Map<Class<? extends Annotation>,Annotation> methodAnnotationMap;
     private final Annotation[][] parameterAnnotations;
 
+    /** Which argument goes to which parameter, resolved once so that invocations don't have to read annotations. */
+    private final ParamBinding[] paramBindings;
+    private final int[] unannotatedArgIndexes;
+    private final int requestSignerArgIndex;
+    private final int deadlineArgIndex;
+    private final int priorityArgIndex;
+    private final Class<?> bodyType;
+    private final ErrorDiscriminator errorDiscriminator;
+    private final Cacheable cacheable;
+    private final long timeoutNanos;
+    private final Priority priority;
+
+    private final PathTemplate compiledIntfacePath;
+    private final PathTemplate compiledMethodPath;
+
     /**
      * @deprecated Use {@link #create(Method, String, String)} instead.
      */
@@ -69,7 +94,21 @@ public class RestMethodMetadata implements Serializable {
                               String resContentType, String methodName,
                               Map<Class<? extends Annotation>, Annotation> methodAnnotationMap,
                               Annotation[][] parameterAnnotations) {
+        this(returnType, false, null, httpMethod, baseUrl, intfacePath, methodPathTemplate, exceptionType, reqContentType,
+                resContentType, methodName, methodAnnotationMap, parameterAnnotations, null, null, null, 0, Priority.NORMAL);
+    }
+
+    private RestMethodMetadata(Type returnType, boolean async, Class<?> streamType, HttpMethod httpMethod,
+                              String baseUrl, String intfacePath, String methodPathTemplate,
+                              Class<? extends RuntimeException> exceptionType, String reqContentType,
+                              String resContentType, String methodName,
+                              Map<Class<? extends Annotation>, Annotation> methodAnnotationMap,
+                              Annotation[][] parameterAnnotations, Class<?>[] parameterTypes,
+                              ErrorDiscriminator errorDiscriminator, Cacheable cacheable, long timeoutNanos,
+                              Priority priority) {
         this.returnType = returnType;
+        this.async = async;
+        this.streamType = streamType;
         this.httpMethod = httpMethod;
         this.baseUrl = baseUrl;
         this.intfacePath = intfacePath;
@@ -80,6 +119,77 @@ public class RestMethodMetadata implements Serializable {
         this.parameterAnnotations = parameterAnnotations;
         this.methodPathTemplate = methodPathTemplate == null ? "" : methodPathTemplate;
         this.exceptionType = exceptionType;
+        this.errorDiscriminator = errorDiscriminator;
+        this.cacheable = cacheable;
+        this.timeoutNanos = timeoutNanos;
+        this.priority = priority;
+        this.compiledIntfacePath = PathTemplate.parse(intfacePath);
+        this.compiledMethodPath = PathTemplate.parse(this.methodPathTemplate);
+
+        List<ParamBinding> bindings = new ArrayList<>();
+        List<Integer> unannotated = new ArrayList<>();
+        int signerArgIndex = -1;
+        int deadlineIndex = -1;
+        int priorityIndex = -1;
+        if (parameterAnnotations != null) {
+            for (int i = 0; i < parameterAnnotations.length; i++) {
+                if (parameterTypes != null && RequestSigner.class.isAssignableFrom(parameterTypes[i])) {
+                    // Not a part of the request; it signs it.
+                    signerArgIndex = i;
+                    continue;
+                }
+                if (parameterTypes != null && parameterTypes[i] == Deadline.class) {
+                    // Not a part of the request; it bounds the call.
+                    deadlineIndex = i;
+                    continue;
+                }
+                if (parameterTypes != null && parameterTypes[i] == Priority.class) {
+                    // Not a part of the request; it orders the call in the queue.
+                    priorityIndex = i;
+                    continue;
+                }
+                if (parameterAnnotations[i].length == 0) {
+                    unannotated.add(i);
+                }
+                for (Annotation paramAnn : parameterAnnotations[i]) {
+                    String paramName = getParamName(paramAnn);
+                    if (paramName != null) {
+                        bindings.add(new ParamBinding(paramAnn.annotationType(), paramName, i));
+                    }
+                }
+            }
+        }
+        if (methodAnnotationMap != null) {
+            // Support using method name as a parameter.
+            for (Annotation annotation : methodAnnotationMap.values()) {
+                String paramName = getParamName(annotation);
+                if (paramName != null) {
+                    bindings.add(new ParamBinding(annotation.annotationType(), paramName, ParamBinding.METHOD_NAME));
+                }
+            }
+        }
+        this.paramBindings = bindings.toArray(new ParamBinding[0]);
+        this.unannotatedArgIndexes = unannotated.stream().mapToInt(Integer::intValue).toArray();
+        this.requestSignerArgIndex = signerArgIndex;
+        this.deadlineArgIndex = deadlineIndex;
+        this.priorityArgIndex = priorityIndex;
+        this.bodyType = unannotatedArgIndexes.length == 1 && parameterTypes != null ? parameterTypes[unannotatedArgIndexes[0]] : null;
+    }
+
+    /**
+     * @return the value of the annotation if it's one of the parameter annotations, otherwise null
+     */
+    static String getParamName(Annotation annotation) {
+        if (annotation instanceof QueryParam) {
+            return ((QueryParam) annotation).value();
+        } else if (annotation instanceof PathParam) {
+            return ((PathParam) annotation).value();
+        } else if (annotation instanceof FormParam) {
+            return ((FormParam) annotation).value();
+        } else if (annotation instanceof HeaderParam) {
+            return ((HeaderParam) annotation).value();
+        }
+        return null;
     }
 
     public static RestMethodMetadata create(Method method, String baseUrl, String intfacePath) {
@@ -115,9 +225,64 @@ public class RestMethodMetadata implements Serializable {
             log.warn("{} request declared as consuming method body as {}. While body is allowed, it should be ignored by the server. Is this intended? Method: {}", httpMethod, reqContentType, method);
         }
 
-        return new RestMethodMetadata(method.getGenericReturnType(), httpMethod,
+        boolean async = isAsync(method);
+        Class<?> streamType = getStreamType(method);
+        Type returnType = async || streamType != null ? getTypeArgument(method.getGenericReturnType()) : method.getGenericReturnType();
+        if (async && isStreamType(getRawType(returnType))) {
+            throw new IllegalArgumentException("Streamed responses can't be read asynchronously; return a Stream or an Iterator directly: " + method);
+        }
+        if (method.isAnnotationPresent(Cacheable.class) && httpMethod != HttpMethod.GET) {
+            throw new IllegalArgumentException("Only GET methods may be @Cacheable: " + method);
+        }
+        Cacheable cacheable = httpMethod == HttpMethod.GET ? AnnotationUtils.getFromMethodOrClass(method, Cacheable.class) : null;
+        Timeout timeout = AnnotationUtils.getFromMethodOrClass(method, Timeout.class);
+        if (timeout != null && timeout.value() <= 0) {
+            throw new IllegalArgumentException("@Timeout must be positive: " + method);
+        }
+        Prioritized prioritized = AnnotationUtils.getFromMethodOrClass(method, Prioritized.class);
+
+        return new RestMethodMetadata(returnType, async, streamType, httpMethod,
                 baseUrl, intfacePath, methodPathTemplate, exceptionType,
-                reqContentType, resContentType, methodName, methodAnnotationMap, parameterAnnotations);
+                reqContentType, resContentType, methodName, methodAnnotationMap, parameterAnnotations, method.getParameterTypes(),
+                AnnotationUtils.getFromMethodOrClass(method, ErrorDiscriminator.class), cacheable,
+                timeout == null ? 0 : timeout.unit().toNanos(timeout.value()),
+                prioritized == null ? Priority.NORMAL : prioritized.value());
+    }
+
+    private static boolean isAsync(Method method) {
+        return method.getReturnType() == CompletableFuture.class || method.getReturnType() == CompletionStage.class;
+    }
+
+    /**
+     * @return the streamed return type, or null if the response isn't streamed
+     */
+    private static Class<?> getStreamType(Method method) {
+        return isStreamType(method.getReturnType()) ? method.getReturnType() : null;
+    }
+
+    private static boolean isStreamType(Class<?> type) {
+        return type == Stream.class || type == Iterator.class || type == CloseableIterator.class;
+    }
+
+    private static Class<?> getRawType(Type type) {
+        if (type instanceof ParameterizedType) {
+            type = ((ParameterizedType) type).getRawType();
+        }
+        return type instanceof Class ? (Class<?>) type : null;
+    }
+
+    /**
+     * @return the value type of a future or the element type of a stream
+     */
+    private static Type getTypeArgument(Type genericType) {
+        if (!(genericType instanceof ParameterizedType)) {
+            return Object.class;
+        }
+        Type valueType = ((ParameterizedType) genericType).getActualTypeArguments()[0];
+        if (valueType instanceof WildcardType) {
+            valueType = ((WildcardType) valueType).getUpperBounds()[0];
+        }
+        return valueType;
     }
 
     static HttpMethod getHttpMethod(Method method) {
@@ -138,12 +303,37 @@ public class RestMethodMetadata implements Serializable {
     }
 
     /**
-     * @return the returnType
+     * @return the type the response body is read as: the method's return type, the value type
+     * of the returned future for asynchronous methods, or the element type for streamed responses
      */
     public Type getReturnType() {
         return returnType;
     }
 
+    /**
+     * @return true if the method returns a {@link CompletableFuture} (or {@link CompletionStage}) and should be invoked
+     * without blocking the caller
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * @return true if the method returns a {@link Stream}, an {@link Iterator} or a {@link CloseableIterator}, whose
+     * elements are read from a JSON array response as they are pulled
+     */
+    public boolean isStreaming() {
+        return streamType != null;
+    }
+
+    /**
+     * @return the return type of a streaming method ({@link Stream}, {@link Iterator} or {@link CloseableIterator}),
+     * otherwise null
+     */
+    public Class<?> getStreamType() {
+        return streamType;
+    }
+
     /**
      * @return the httpMethod
      */
@@ -210,4 +400,99 @@ public class RestMethodMetadata implements Serializable {
     public Annotation[][] getParameterAnnotations() {
         return parameterAnnotations;
     }
+
+    PathTemplate getCompiledIntfacePath() {
+        return compiledIntfacePath;
+    }
+
+    PathTemplate getCompiledMethodPath() {
+        return compiledMethodPath;
+    }
+
+    ParamBinding[] getParamBindings() {
+        return paramBindings;
+    }
+
+    /**
+     * @return the indexes of the arguments without annotations; these make up the body
+     */
+    int[] getUnannotatedArgIndexes() {
+        return unannotatedArgIndexes;
+    }
+
+    /**
+     * @return how to tell error responses from successful ones, or null if by the HTTP status and parse failures
+     */
+    @JsonIgnore // InvocationAware exceptions make Jackson introspect RestInvocation and this; it can't bind annotations.
+    public ErrorDiscriminator getErrorDiscriminator() {
+        return errorDiscriminator;
+    }
+
+    /**
+     * @return the caching policy of a GET method, or null if its responses aren't cached
+     */
+    @JsonIgnore
+    public Cacheable getCacheable() {
+        return cacheable;
+    }
+
+    /**
+     * @return the declared type of the argument that is the body, or null if there isn't exactly one unannotated argument
+     */
+    public Class<?> getBodyType() {
+        return bodyType;
+    }
+
+    /**
+     * @return the index of the {@link RequestSigner} argument, or -1 if there's none
+     */
+    int getRequestSignerArgIndex() {
+        return requestSignerArgIndex;
+    }
+
+    /**
+     * @return the index of the {@link Deadline} argument, or -1 if there's none
+     */
+    int getDeadlineArgIndex() {
+        return deadlineArgIndex;
+    }
+
+    /**
+     * @return the index of the {@link Priority} argument, or -1 if there's none
+     */
+    int getPriorityArgIndex() {
+        return priorityArgIndex;
+    }
+
+    /**
+     * @return the {@link Timeout} of the method in nanoseconds, or 0 if it has none
+     */
+    public long getTimeoutNanos() {
+        return timeoutNanos;
+    }
+
+    /**
+     * @return the {@link Prioritized priority} of the method's calls, unless a call has a {@link Priority} argument
+     */
+    public Priority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Binds a method argument (or the method name) to a named query, path, form or header parameter.
+     */
+    static final class ParamBinding implements Serializable {
+        /** The {@link #argIndex} of bindings whose value is the method name. */
+        static final int METHOD_NAME = -1;
+
+        final Class<? extends Annotation> paramType;
+        final String name;
+        final int argIndex;
+
+        ParamBinding(Class<? extends Annotation> paramType, String name, int argIndex) {
+            this.paramType = paramType;
+            this.name = name;
+            this.argIndex = argIndex;
+        }
+    }
 }
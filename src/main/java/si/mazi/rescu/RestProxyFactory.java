@@ -47,6 +47,20 @@ public final class RestProxyFactory {
         return createProxy(restInterface, wrap(new RestInvocationHandler(restInterface, baseUrl, config), interceptors));
     }
 
+    /**
+     * Create a proxy implementation of restInterface whose calls are spread over several equivalent base urls.
+     *
+     * @param restInterface The interface to implement
+     * @param loadBalancer  Chooses the base url of each call from its endpoints
+     * @param <I>           The interface to implement
+     * @param config        Client configuration
+     * @param interceptors  The interceptors that will be able to intercept all proxy method calls
+     * @return a proxy implementation of restInterface
+     */
+    public static <I> I createProxy(Class<I> restInterface, LoadBalancer loadBalancer, ClientConfig config, Interceptor... interceptors) {
+        return createProxy(restInterface, wrap(new RestInvocationHandler(restInterface, loadBalancer.getPrimaryBaseUrl(), loadBalancer, config), interceptors));
+    }
+
     static InvocationHandler wrap(InvocationHandler handler, Interceptor... interceptors) {
         for (Interceptor interceptor : interceptors) {
             handler = new InterceptedInvocationHandler(interceptor, handler);
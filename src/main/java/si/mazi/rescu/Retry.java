@@ -0,0 +1,42 @@
+package si.mazi.rescu;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>
+ * Sets how calls of a method, or of all the methods of a rest interface, are retried after transient failures (see
+ * {@link RetryPolicy}). Without a policy set with {@link ClientConfig#setRetryPolicy(RetryPolicy)}, only the methods
+ * with this annotation are retried, with a default policy.
+ * </p>
+ * <p>
+ * Methods whose HTTP method isn't idempotent (POST and PATCH) are never retried unless declared
+ * {@link #idempotent()}, eg. because the request carries an id generated by the client that the server deduplicates:
+ * </p>
+ * <pre>
+ * &#64;POST &#64;Path("order") &#64;Retry(idempotent = true)
+ * Order placeOrder(&#64;FormParam("clientOrderId") String clientOrderId, ...);
+ *
+ * &#64;GET &#64;Path("stream") &#64;Retry(maxAttempts = 1) // never retried
+ * Status getStatus();
+ * </pre>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Retry {
+
+    /**
+     * @return the number of attempts, including the first one; 1 means no retries, 0 (the default) means the
+     * policy's
+     */
+    int maxAttempts() default 0;
+
+    /**
+     * @return whether the method may be retried even though its HTTP method isn't idempotent
+     */
+    boolean idempotent() default false;
+}
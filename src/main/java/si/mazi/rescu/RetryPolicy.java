@@ -0,0 +1,251 @@
+package si.mazi.rescu;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Decides whether and when a failed call is sent again. A call is retried when the request couldn't be sent or no
+ * response arrived (an {@link IOException}, eg. a refused or reset connection or a read timeout), or when the response
+ * status is one of {@link #setRetryableStatusCodes(Integer...) the retryable ones} (by default 429, 502, 503 and 504).
+ * Calls that failed because of a client-side {@link RateLimitExceededException rate limit},
+ * {@link ConcurrencyLimitExceededException concurrency limit}, {@link CircuitBreaker} or {@link Deadline} aren't
+ * retried, and neither are calls whose deadline would pass while waiting to retry.
+ * </p>
+ * <p>
+ * Only methods with an idempotent HTTP method (GET, HEAD, OPTIONS, PUT, DELETE) are retried, unless declared
+ * {@link Retry#idempotent()}. Each retry creates the request anew, so {@link SynchronizedValueFactory} values (eg.
+ * nonces), {@link ParamsDigest}s and signatures are fresh.
+ * </p>
+ * <p>
+ * The retries wait with exponential backoff and full jitter (a random time up to the backoff), or as long as the
+ * response's {@code Retry-After} header says if that's longer. They stop when the {@link #setMaxAttempts(int) attempts}
+ * or the {@link #setMaxElapsed(long, TimeUnit) total time} are used up, and when the retry budget is: all the calls
+ * that use a policy may retry at most {@link #setRetryBudget(double, int) a given ratio} of their calls (plus a few),
+ * so that a failing server doesn't get a storm of retries.
+ * </p>
+ */
+public class RetryPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(RetryPolicy.class);
+
+    private static final Set<HttpMethod> IDEMPOTENT_METHODS = Collections.unmodifiableSet(
+            EnumSet.of(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.OPTIONS, HttpMethod.PUT, HttpMethod.DELETE));
+
+    private volatile int maxAttempts = 3;
+    private volatile long initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(100);
+    private volatile long maxBackoffNanos = TimeUnit.SECONDS.toNanos(10);
+    private volatile double backoffMultiplier = 2;
+    private volatile long maxElapsedNanos = TimeUnit.SECONDS.toNanos(30);
+    private volatile Set<Integer> retryableStatusCodes = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(429, 502, 503, 504)));
+
+    private volatile RequestBudget budget = new RequestBudget(0.2, 10);
+
+    /**
+     * @param maxAttempts the number of attempts per call, including the first one
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param initial the backoff before the first retry; it's multiplied by {@code multiplier} before each next one
+     * @param max the longest backoff
+     */
+    public void setBackoff(long initial, long max, TimeUnit unit, double multiplier) {
+        if (initial < 0 || max < initial || multiplier < 1) {
+            throw new IllegalArgumentException(String.format("Invalid backoff: initial %d, max %d, multiplier %s", initial, max, multiplier));
+        }
+        this.initialBackoffNanos = unit.toNanos(initial);
+        this.maxBackoffNanos = unit.toNanos(max);
+        this.backoffMultiplier = multiplier;
+    }
+
+    /**
+     * @param maxElapsed the time after the start of a call after which it isn't retried any more; a retry that would
+     * have to wait past it (eg. because of a long {@code Retry-After}) isn't made either
+     */
+    public void setMaxElapsed(long maxElapsed, TimeUnit unit) {
+        this.maxElapsedNanos = unit.toNanos(maxElapsed);
+    }
+
+    public void setRetryableStatusCodes(Integer... statusCodes) {
+        this.retryableStatusCodes = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(statusCodes)));
+    }
+
+    /**
+     * @param ratio the number of retries allowed per call, eg. 0.2 for one retry per five calls
+     * @param minRetries the number of retries allowed regardless of the ratio, eg. when there were few calls yet;
+     * also the most that can be saved up by calls that didn't need retries
+     */
+    public void setRetryBudget(double ratio, int minRetries) {
+        this.budget = new RequestBudget(ratio, minRetries);
+    }
+
+    /**
+     * @return the number of retries that the budget allows now
+     */
+    public int getAvailableRetries() {
+        return budget.getAvailable();
+    }
+
+    /**
+     * Resolves how calls of the method are retried.
+     *
+     * @param enabledByDefault whether methods without {@link Retry} are retried (if they're idempotent)
+     * @return the retries of the method, or null if it's not retried
+     */
+    Plan resolvePlan(Method method, HttpMethod httpMethod, boolean enabledByDefault) {
+        Retry retry = AnnotationUtils.getFromMethodOrClass(method, Retry.class);
+        if (retry == null && !enabledByDefault) {
+            return null;
+        }
+        int attempts = retry == null || retry.maxAttempts() == 0 ? maxAttempts : retry.maxAttempts();
+        boolean idempotent = IDEMPOTENT_METHODS.contains(httpMethod) || retry != null && retry.idempotent();
+        if (attempts < 0) {
+            throw new IllegalArgumentException("Invalid maxAttempts of " + method + ": " + attempts);
+        }
+        return attempts > 1 && idempotent ? new Plan(attempts) : null;
+    }
+
+    private long getBackoffNanos(int retry) {
+        double backoff = initialBackoffNanos * Math.pow(backoffMultiplier, retry - 1);
+        long max = backoff >= maxBackoffNanos ? maxBackoffNanos : (long) backoff;
+        return max <= 0 ? 0 : ThreadLocalRandom.current().nextLong(max + 1);
+    }
+
+    /**
+     * @return the wait that the {@code Retry-After} header asks for, in nanoseconds; 0 if there's none
+     */
+    static long getRetryAfterNanos(HttpTransportResponse response) throws IOException {
+        String retryAfter = response.getHeaderField("Retry-After");
+        if (retryAfter == null || retryAfter.trim().isEmpty()) {
+            return 0;
+        }
+        retryAfter = retryAfter.trim();
+        try {
+            return TimeUnit.SECONDS.toNanos(Math.max(0, Long.parseLong(retryAfter)));
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(retryAfter, DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toNanos());
+            } catch (DateTimeParseException e2) {
+                log.debug("Ignoring invalid Retry-After header: {}", retryAfter);
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * How a method is retried.
+     */
+    final class Plan {
+        private final int maxAttempts;
+
+        Plan(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        /**
+         * Starts a call; its first attempt is about to be made.
+         */
+        Attempts start() {
+            return start(null);
+        }
+
+        /**
+         * Starts a call that must be done by the deadline, if not null.
+         */
+        Attempts start(Deadline deadline) {
+            budget.deposit();
+            return new Attempts(maxAttempts, deadline);
+        }
+    }
+
+    /**
+     * The attempts of one call.
+     */
+    final class Attempts {
+        private final int maxAttempts;
+        private final Deadline deadline;
+        private final long start = System.nanoTime();
+        private int attempt = 1;
+
+        private Attempts(int maxAttempts, Deadline deadline) {
+            this.maxAttempts = maxAttempts;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return how long to wait before retrying after this response, in nanoseconds, or -1 if the response is to
+         * be used
+         */
+        long getRetryDelayNanos(HttpTransportResponse response) {
+            int statusCode;
+            long retryAfterNanos;
+            try {
+                statusCode = response.getStatusCode();
+                if (!retryableStatusCodes.contains(statusCode)) {
+                    return -1;
+                }
+                retryAfterNanos = getRetryAfterNanos(response);
+            } catch (IOException e) {
+                return getRetryDelayNanos(e);
+            }
+            return getRetryDelayNanos(retryAfterNanos, "status " + statusCode);
+        }
+
+        /**
+         * @return how long to wait before retrying after this failure, in nanoseconds, or -1 if it's final
+         */
+        long getRetryDelayNanos(Throwable failure) {
+            if (!(failure instanceof IOException)
+                    || failure instanceof RateLimitExceededException || failure instanceof ConcurrencyLimitExceededException
+                    || failure instanceof CircuitBreakerOpenException
+                    || failure instanceof DeadlineExceededException
+                    || Thread.currentThread().isInterrupted()) {
+                return -1;
+            }
+            return getRetryDelayNanos(0, failure.toString());
+        }
+
+        int getAttempt() {
+            return attempt;
+        }
+
+        private long getRetryDelayNanos(long retryAfterNanos, String reason) {
+            if (attempt >= maxAttempts) {
+                return -1;
+            }
+            long delay = Math.max(getBackoffNanos(attempt), retryAfterNanos);
+            if (System.nanoTime() - start + delay > maxElapsedNanos || deadline != null && delay >= deadline.getRemainingNanos()) {
+                log.debug("Not retrying after {}: the wait of {} ms would exceed the time budget", reason, TimeUnit.NANOSECONDS.toMillis(delay));
+                return -1;
+            }
+            if (!budget.withdraw()) {
+                log.debug("Not retrying after {}: the retry budget is used up", reason);
+                return -1;
+            }
+            attempt++;
+            log.debug("Retrying after {} in {} ms (attempt {} of {})", reason, TimeUnit.NANOSECONDS.toMillis(delay), attempt, maxAttempts);
+            return delay;
+        }
+    }
+}
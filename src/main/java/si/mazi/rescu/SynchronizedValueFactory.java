@@ -24,7 +24,9 @@ package si.mazi.rescu;
 /**
  * Allows services to accept a placeholder that is replaced with generated value just before message is serialized and sent.
  *
- * If a method of a service accepts ValueFactory as a parameter, it's evaluated, the message is serialized and sent in a single synchronized block.
+ * If a method of a service accepts ValueFactory as a parameter, the invocations using the same factory instance take turns: each one
+ * evaluates it and serializes the message while holding the factory's monitor, and is sent before the next one gets its turn (an
+ * asynchronous one keeps its turn until the response has arrived). No monitor is held while the message is sent.
  *
  * @author Rafał Krupiński
  */
@@ -0,0 +1,36 @@
+package si.mazi.rescu;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Sets the time in which calls of a method, or of all the methods of a rest interface, must be done, including waits
+ * for rate limits, retries and reading the response; see {@link Deadline}. It replaces the read timeout of the
+ * {@link ClientConfig}, longer or shorter, eg. for calls that are worthless if late, or for slow downloads:
+ * </p>
+ * <pre>
+ * &#64;POST &#64;Path("order") &#64;Timeout(500)
+ * Order placeOrder(...);
+ *
+ * &#64;GET &#64;Path("history") &#64;Timeout(value = 60, unit = TimeUnit.SECONDS)
+ * List&lt;Trade&gt; getHistory(...);
+ * </pre>
+ * <p>
+ * Connecting still takes at most the config's connect timeout. The transports bound each read of the response rather
+ * than the whole of it, so a streamed response may be read past the deadline as long as data keeps arriving.
+ * </p>
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Timeout {
+
+    long value();
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+}
@@ -0,0 +1,92 @@
+package si.mazi.rescu;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * A token bucket that holds up to {@code permits} tokens and refills them evenly over {@code period}, so that at most
+ * {@code permits} are granted per period, with bursts of up to {@code permits}.
+ * </p>
+ * <p>
+ * It's lock-free: the whole state is a single timestamp, the time at which the bucket will be full again if no more
+ * tokens are taken (the "theoretical arrival time" of the generic cell rate algorithm, which is equivalent to a token
+ * bucket). Taking tokens moves it forward with one compare-and-set, and tokens are reserved in the order in which the
+ * compare-and-sets succeed, so waiting callers are served first come, first served.
+ * </p>
+ */
+final class TokenBucket {
+
+    private final String name;
+    private final int permits;
+    private final long periodNanos;
+    private final long nanosPerPermit;
+
+    /** System.nanoTime() at which the bucket will be full if no more tokens are taken. */
+    private final AtomicLong fullAt;
+
+    TokenBucket(String name, int permits, long period, TimeUnit unit) {
+        if (permits <= 0 || period <= 0) {
+            throw new IllegalArgumentException("Rate limit " + name + " must allow a positive number of permits per a positive period.");
+        }
+        this.name = name;
+        this.permits = permits;
+        this.periodNanos = unit.toNanos(period);
+        this.nanosPerPermit = Math.max(1, periodNanos / permits);
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Reserves the tokens if they are available now or will be within {@code maxWaitNanos}.
+     *
+     * @return how long the caller must wait before using the tokens (0 if they're available now), or -1 if they
+     * wouldn't be available in time, in which case nothing is reserved
+     */
+    long tryReserve(int weight, long maxWaitNanos) {
+        if (weight > permits) {
+            throw new IllegalArgumentException("A weight of " + weight + " can never be granted by rate limit " + name + " of " + permits + " permits.");
+        }
+        long cost = weight * nanosPerPermit;
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + cost;
+            // The tokens are available once the bucket would hold no more than what's left after taking them.
+            long wait = next - periodNanos - now;
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return Math.max(0, wait);
+            }
+        }
+    }
+
+    /**
+     * Returns tokens that were reserved but won't be used.
+     */
+    void cancel(int weight) {
+        fullAt.addAndGet(-weight * nanosPerPermit);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getPermits() {
+        return permits;
+    }
+
+    long getPeriodNanos() {
+        return periodNanos;
+    }
+
+    /**
+     * @return the number of tokens that could be taken now without waiting
+     */
+    int getAvailablePermits() {
+        long now = System.nanoTime();
+        long used = Math.max(0, fullAt.get() - now);
+        return (int) Math.max(0, (periodNanos - used) / nanosPerPermit);
+    }
+}
@@ -0,0 +1,136 @@
+package si.mazi.rescu;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import si.mazi.rescu.utils.HttpUtils;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The default {@link HttpTransport}, based on {@link HttpURLConnection}. Connection reuse is left to the JDK's
+ * keep-alive cache.
+ */
+public class UrlConnectionHttpTransport implements HttpTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(UrlConnectionHttpTransport.class);
+
+    private final int connTimeout;
+    private final int readTimeout;
+    private final Proxy proxy;
+    private final SSLSocketFactory sslSocketFactory;
+    private final HostnameVerifier hostnameVerifier;
+
+    public UrlConnectionHttpTransport(ClientConfig config) {
+        this(config.getHttpConnTimeout(), config.getHttpReadTimeout(), config.getProxyHost(), config.getProxyPort(),
+                config.getProxyType(), config.getSslSocketFactory(), config.getHostnameVerifier());
+    }
+
+    public UrlConnectionHttpTransport(int connTimeout, int readTimeout, String proxyHost, Integer proxyPort, Proxy.Type proxyType,
+                                      SSLSocketFactory sslSocketFactory, HostnameVerifier hostnameVerifier) {
+        this.connTimeout = connTimeout;
+        this.readTimeout = readTimeout;
+        this.sslSocketFactory = sslSocketFactory;
+        this.hostnameVerifier = hostnameVerifier;
+
+        if (proxyHost == null || proxyPort == null) {
+            proxy = Proxy.NO_PROXY;
+        } else {
+            Proxy.Type type = proxyType == null ? Proxy.Type.HTTP : proxyType;
+            proxy = new Proxy(type, new InetSocketAddress(proxyHost, proxyPort));
+            log.info("Using proxy {}", proxy);
+        }
+    }
+
+    @Override
+    public HttpTransportResponse send(HttpMethod method, String url, Map<String, String> headers, byte[] body) throws IOException {
+        return send(method, url, headers, body, 0);
+    }
+
+    @Override
+    public HttpTransportResponse send(HttpMethod method, String url, Map<String, String> headers, byte[] body, int timeoutMillis) throws IOException {
+        HttpURLConnection connection = getHttpURLConnection(url);
+        if (timeoutMillis > 0) {
+            connection.setReadTimeout(timeoutMillis);
+            connection.setConnectTimeout(connTimeout > 0 ? Math.min(connTimeout, timeoutMillis) : timeoutMillis);
+        }
+        connection.setRequestMethod(method.name());
+
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            connection.setRequestProperty(entry.getKey(), entry.getValue());
+        }
+
+        if (body != null && body.length > 0) {
+            connection.setDoOutput(true);
+            connection.setDoInput(true);
+            OutputStream out = connection.getOutputStream();
+            out.write(body);
+            out.flush();
+        }
+        return new Response(connection);
+    }
+
+    protected HttpURLConnection getHttpURLConnection(String urlString) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(urlString).openConnection(proxy);
+
+        if (readTimeout > 0) {
+            connection.setReadTimeout(readTimeout);
+        }
+        if (connTimeout > 0) {
+            connection.setConnectTimeout(connTimeout);
+        }
+
+        if (connection instanceof HttpsURLConnection) {
+            HttpsURLConnection httpsConnection = (HttpsURLConnection) connection;
+
+            if (sslSocketFactory != null) {
+                httpsConnection.setSSLSocketFactory(sslSocketFactory);
+            }
+
+            if (hostnameVerifier != null) {
+                httpsConnection.setHostnameVerifier(hostnameVerifier);
+            }
+        }
+
+        return connection;
+    }
+
+    static class Response implements HttpTransportResponse {
+
+        private final HttpURLConnection connection;
+
+        Response(HttpURLConnection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public int getStatusCode() throws IOException {
+            return connection.getResponseCode();
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            return connection.getHeaderFields();
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return HttpUtils.isErrorStatusCode(getStatusCode()) ? connection.getErrorStream() : connection.getInputStream();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package si.mazi.rescu.oauth;
+
+import oauth.signpost.http.HttpRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * Exposes a request that hasn't been sent yet to the OAuth signer, independently of the HTTP transport used.
+ * Headers set by the signer are written to the given header map.
+ */
+public class RescuOAuthHttpRequest implements HttpRequest {
+
+    private final String method;
+    private final Map<String, String> headers;
+    private final byte[] messagePayload;
+    private String requestUrl;
+
+    public RescuOAuthHttpRequest(String method, String requestUrl, Map<String, String> headers, byte[] messagePayload) {
+        this.method = method;
+        this.requestUrl = requestUrl;
+        this.headers = headers;
+        this.messagePayload = messagePayload;
+    }
+
+    @Override
+    public String getMethod() {
+        return method;
+    }
+
+    @Override
+    public String getRequestUrl() {
+        return requestUrl;
+    }
+
+    @Override
+    public void setRequestUrl(String url) {
+        this.requestUrl = url;
+    }
+
+    @Override
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    @Override
+    public String getHeader(String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Map<String, String> getAllHeaders() {
+        return headers;
+    }
+
+    @Override
+    public InputStream getMessagePayload() {
+        return messagePayload != null ? new ByteArrayInputStream(messagePayload) : null;
+    }
+
+    @Override
+    public String getContentType() {
+        return getHeader("Content-Type");
+    }
+
+    @Override
+    public Object unwrap() {
+        return this;
+    }
+}
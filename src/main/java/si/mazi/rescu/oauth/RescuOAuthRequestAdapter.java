@@ -9,7 +9,10 @@ import java.net.HttpURLConnection;
 
 /**
  * @author Rafał Krupiński
+ * @deprecated rescu signs requests through {@link RescuOAuthHttpRequest}, which doesn't depend on the HTTP transport
+ * and signs the same body bytes that are sent.
  */
+@Deprecated
 public class RescuOAuthRequestAdapter extends HttpURLConnectionRequestAdapter {
     private final String messagePayload;
 
@@ -25,11 +25,16 @@ package si.mazi.rescu.serialization.jackson;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import si.mazi.rescu.RequestWriter;
 import si.mazi.rescu.RestInvocation;
+import si.mazi.rescu.RestMethodMetadata;
 
 import jakarta.ws.rs.FormParam;
 import jakarta.ws.rs.core.MediaType;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Writes the data as JSON-serialized string using Jackson.
@@ -40,11 +45,64 @@ public class JacksonRequestWriter implements RequestWriter {
 
     private final ObjectMapper objectMapper;
 
+    /**
+     * Writers bound to the runtime classes of the bodies (the same root type that ObjectMapper.writeValue uses), so
+     * that the serializer is looked up once rather than per call.
+     */
+    private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
     public JacksonRequestWriter(ObjectMapper objectMapper) {
         this.objectMapper = objectMapper;
     }
 
+    /**
+     * Prepares the writer for the declared body type, which usually is the class of the bodies too.
+     */
+    @Override
+    public void prepare(RestMethodMetadata methodMetadata) {
+        Class<?> bodyType = methodMetadata.getBodyType();
+        if (bodyType != null && !bodyType.isPrimitive() && !bodyType.isInterface() && !Modifier.isAbstract(bodyType.getModifiers())) {
+            getWriter(bodyType);
+        }
+    }
+
+    private ObjectWriter getWriter(Class<?> bodyClass) {
+        ObjectWriter writer = writers.get(bodyClass);
+        if (writer == null) {
+            writer = writers.computeIfAbsent(bodyClass, objectMapper::writerFor);
+        }
+        return writer;
+    }
+
     public String writeBody(RestInvocation invocation) {
+        Object body = getBodyObject(invocation);
+        if (body == null) {
+            return null;
+        }
+        try {
+            return getWriter(body.getClass()).writeValueAsString(body);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error writing json. This could be due to an error in your Jackson mapping, or a bug in rescu.", e);
+        }
+    }
+
+    /**
+     * Serializes straight to UTF-8 bytes, without an intermediate String.
+     */
+    @Override
+    public byte[] writeBodyBytes(RestInvocation invocation) {
+        Object body = getBodyObject(invocation);
+        if (body == null) {
+            return null;
+        }
+        try {
+            return getWriter(body.getClass()).writeValueAsBytes(body);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Error writing json. This could be due to an error in your Jackson mapping, or a bug in rescu.", e);
+        }
+    }
+
+    private Object getBodyObject(RestInvocation invocation) {
         if (!MediaType.APPLICATION_JSON.equals(invocation.getMethodMetadata().getReqContentType())) {
             throw new IllegalArgumentException("JsonRequestWriter supports application/json content type only!");
         }
@@ -59,12 +117,7 @@ public class JacksonRequestWriter implements RequestWriter {
         if (invocation.getUnannanotatedParams().isEmpty()) {
             return null;
         }
-        
-        try {
-            return objectMapper.writeValueAsString(invocation.getUnannanotatedParams().get(0));
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException("Error writing json. This could be due to an error in your Jackson mapping, or a bug in rescu.", e);
-        }
+        return invocation.getUnannanotatedParams().get(0);
     }
 
 }
@@ -24,12 +24,34 @@
 
 package si.mazi.rescu.serialization.jackson;
 
-import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import si.mazi.rescu.CloseableIterator;
+import si.mazi.rescu.ErrorDiscriminator;
+import si.mazi.rescu.ExceptionalReturnContentException;
+import si.mazi.rescu.HttpStatusIOException;
+import si.mazi.rescu.InvocationResult;
 import si.mazi.rescu.ResponseReader;
+import si.mazi.rescu.RestMethodMetadata;
+import si.mazi.rescu.Utils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Reads the JSON responses into POJO object using Jackson.
@@ -38,19 +60,146 @@ import java.lang.reflect.Type;
  */
 public class JacksonResponseReader extends ResponseReader {
 
+    private static final Logger log = LoggerFactory.getLogger(JacksonResponseReader.class);
+
     private final ObjectMapper objectMapper;
 
+    /** Readers bound to the return and exception types, so that types are resolved once rather than per response. */
+    private final ConcurrentMap<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+
     public JacksonResponseReader(ObjectMapper objectMapper, boolean ignoreHttpErrorCodes) {
         super(ignoreHttpErrorCodes);
         this.objectMapper = objectMapper;
     }
 
-    public <T> T read(String httpBody, Type returnType) throws IOException {
-        JavaType javaType = objectMapper
-                .getTypeFactory()
-                .constructType(returnType);
+    /**
+     * Reads responses of methods with an {@link ErrorDiscriminator} in a single pass: the body is parsed into a tree
+     * once, and the tree is bound either to the return type or to the declared exception. Other responses, and
+     * bodies that aren't JSON at all (eg. a proxy's HTML error page), are read as described in
+     * {@link ResponseReader#read(InvocationResult, RestMethodMetadata)}.
+     */
+    @Override
+    public Object read(InvocationResult invocationResult, RestMethodMetadata methodMetadata) throws IOException {
+        ErrorDiscriminator discriminator = methodMetadata.getErrorDiscriminator();
+        if (discriminator == null || !invocationResult.hasHttpBody()) {
+            return super.read(invocationResult, methodMetadata);
+        }
+        boolean statusError = invocationResult.isErrorStatusCode() && !isIgnoreHttpErrorCodes();
+        JsonNode tree;
+        try {
+            tree = readBody(invocationResult, getReader(JsonNode.class));
+        } catch (JsonProcessingException e) {
+            log.debug("Response body is not JSON, reading it without the error discriminator: {}", e.toString());
+            return super.read(invocationResult, methodMetadata);
+        }
+        String errorMessage = statusError
+                ? "HTTP status code was not OK: " + invocationResult.getStatusCode()
+                : isError(tree, discriminator) ? "Response body is an error according to the '" + discriminator.field() + "' field" : null;
+
+        if (errorMessage == null) {
+            try {
+                return getReader(methodMetadata.getReturnType()).readValue(tree);
+            } catch (IOException | RuntimeException e) {
+                Exception cause = findCause(e, ExceptionalReturnContentException.class, JsonMappingException.class);
+                if (cause == null || methodMetadata.getExceptionType() == null) {
+                    throw e;
+                }
+                errorMessage = String.format("Response body could not be parsed as method return type %s: %s", methodMetadata.getReturnType(), cause.getMessage());
+            }
+        }
+
+        if (methodMetadata.getExceptionType() != null) {
+            RuntimeException exception = null;
+            try {
+                exception = getReader(methodMetadata.getExceptionType()).readValue(tree);
+            } catch (Exception e) {
+                log.warn("Noncritical error parsing error output: " + Utils.clip(invocationResult.getHttpBody(), BODY_FRAGMENT_CHARS), e);
+            }
+            if (exception != null) {
+                throw prepareException(exception, invocationResult);
+            }
+        }
+        throw new HttpStatusIOException(errorMessage, invocationResult);
+    }
+
+    @Override
+    public boolean canStream() {
+        return true;
+    }
+
+    /**
+     * Reads the array with a streaming parser: each element is bound when it's pulled, so only the parser's buffer and
+     * the current element are held in memory. If the body is an object rather than an array (eg. an error returned with
+     * a success status), it's read as the declared exception.
+     */
+    @Override
+    public <T> CloseableIterator<T> readElements(InputStream body, Charset charset, int statusCode, RestMethodMetadata methodMetadata) throws IOException {
+        JsonParser parser = StandardCharsets.UTF_8.equals(charset)
+                ? objectMapper.getFactory().createParser(body)
+                : objectMapper.getFactory().createParser(new InputStreamReader(body, charset));
+        JsonNode nonArray;
+        try {
+            JsonToken first = parser.nextToken();
+            if (first == JsonToken.START_ARRAY) {
+                return new JsonArrayIterator<>(parser, body, getReader(methodMetadata.getReturnType()));
+            }
+            nonArray = first == null || first == JsonToken.VALUE_NULL ? null : getReader(JsonNode.class).readValue(parser);
+        } catch (IOException | RuntimeException e) {
+            JsonArrayIterator.closeQuietly(parser, body);
+            throw e;
+        }
+        JsonArrayIterator.closeQuietly(parser, body);
+        if (nonArray == null) {
+            return CloseableIterator.empty();
+        }
+
+        InvocationResult invocationResult = new InvocationResult(nonArray.toString(), statusCode);
+        if (methodMetadata.getExceptionType() != null) {
+            RuntimeException exception = null;
+            try {
+                exception = getReader(methodMetadata.getExceptionType()).readValue(nonArray);
+            } catch (Exception e) {
+                log.warn("Noncritical error parsing error output: " + Utils.clip(invocationResult.getHttpBody(), BODY_FRAGMENT_CHARS), e);
+            }
+            if (exception != null) {
+                throw prepareException(exception, invocationResult);
+            }
+        }
+        throw new HttpStatusIOException("Response body is not a JSON array", invocationResult);
+    }
+
+    static boolean isError(JsonNode tree, ErrorDiscriminator discriminator) {
+        JsonNode field = tree.get(discriminator.field());
+        String value = field == null || field.isNull() ? null : field.isContainerNode() ? field.toString() : field.asText();
+        if (discriminator.successValues().length > 0) {
+            return value == null || !Arrays.asList(discriminator.successValues()).contains(value);
+        }
+        if (discriminator.errorValues().length > 0) {
+            return value != null && Arrays.asList(discriminator.errorValues()).contains(value);
+        }
+        return value != null && !value.isEmpty() && !"false".equals(value) && !(field.isContainerNode() && field.size() == 0);
+    }
+
+    @Override
+    public void prepare(RestMethodMetadata methodMetadata) {
+        if (methodMetadata.getReturnType() != null) {
+            getReader(methodMetadata.getReturnType());
+        }
+        if (methodMetadata.getExceptionType() != null) {
+            getReader(methodMetadata.getExceptionType());
+        }
+    }
 
-        return objectMapper.readValue(httpBody, javaType);
+    private ObjectReader getReader(Type type) {
+        ObjectReader reader = readers.get(type);
+        if (reader == null) {
+            reader = readers.computeIfAbsent(type, t -> objectMapper.readerFor(objectMapper.getTypeFactory().constructType(t)));
+        }
+        return reader;
+    }
+
+    public <T> T read(String httpBody, Type returnType) throws IOException {
+        return getReader(returnType).readValue(httpBody);
     }
 
     @Override
@@ -58,4 +207,29 @@ public class JacksonResponseReader extends ResponseReader {
         return read(httpBody, exceptionType);
     }
 
+    /**
+     * Parses the raw body without decoding it into a String first.
+     */
+    @Override
+    protected <T> T readBody(InvocationResult invocationResult, Type returnType) throws IOException {
+        return readBody(invocationResult, getReader(returnType));
+    }
+
+    private <T> T readBody(InvocationResult invocationResult, ObjectReader reader) throws IOException {
+        byte[] body = invocationResult.getHttpBodyBytes();
+        if (body == null) {
+            return reader.readValue(invocationResult.getHttpBody());
+        }
+        Charset charset = invocationResult.getCharset();
+        if (StandardCharsets.UTF_8.equals(charset)) {
+            return reader.readValue(body);
+        }
+        return reader.readValue(new InputStreamReader(new ByteArrayInputStream(body), charset));
+    }
+
+    @Override
+    protected RuntimeException readExceptionBody(InvocationResult invocationResult, Class<? extends RuntimeException> exceptionType) throws IOException {
+        return readBody(invocationResult, exceptionType);
+    }
+
 }
@@ -0,0 +1,91 @@
+package si.mazi.rescu.serialization.jackson;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import si.mazi.rescu.CloseableIterator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Binds the elements of a JSON array as they are pulled. The parser must be positioned at the array's START_ARRAY; it
+ * and the body it reads are closed at the end of the array, on a read error, or when the iterator is closed.
+ */
+final class JsonArrayIterator<T> implements CloseableIterator<T> {
+
+    private final JsonParser parser;
+    private final Closeable body;
+    private final ObjectReader elementReader;
+
+    /** True if the parser is at the first token of an element that hasn't been returned yet. */
+    private boolean hasPending;
+    private boolean closed;
+
+    JsonArrayIterator(JsonParser parser, Closeable body, ObjectReader elementReader) {
+        this.parser = parser;
+        this.body = body;
+        this.elementReader = elementReader;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (hasPending) {
+            return true;
+        }
+        if (closed) {
+            return false;
+        }
+        try {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                close();
+                return false;
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+        hasPending = true;
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        hasPending = false;
+        try {
+            return elementReader.readValue(parser);
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            hasPending = false;
+            closeQuietly(parser, body);
+        }
+    }
+
+    /**
+     * Closes the body too, in case the parser is configured not to close its source.
+     */
+    static void closeQuietly(JsonParser parser, Closeable body) {
+        try {
+            parser.close();
+        } catch (IOException ignore) {
+        }
+        try {
+            body.close();
+        } catch (IOException ignore) {
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package si.mazi.rescu;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link HttpTransport} based on {@link HttpClient}. HTTP/2 is used where the server supports it, so concurrent
+ * requests to the same host are multiplexed over a single connection.
+ *
+ * Compiled for Java 11; use {@link HttpTransportFactory#JDK_HTTP_CLIENT} to create it.
+ */
+public class JdkHttpClientTransport implements HttpTransport {
+
+    private static final Logger log = LoggerFactory.getLogger(JdkHttpClientTransport.class);
+
+    /**
+     * Headers that HttpClient sets itself and refuses to accept from the caller.
+     */
+    private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+    static {
+        RESTRICTED_HEADERS.addAll(Arrays.asList("Connection", "Content-Length", "Expect", "Host", "Upgrade"));
+    }
+
+    private final HttpClient client;
+    private final Duration readTimeout;
+
+    public JdkHttpClientTransport(ClientConfig config) {
+        if (config.getSslSocketFactory() != null || config.getHostnameVerifier() != null) {
+            throw new IllegalArgumentException("Custom SSLSocketFactory and HostnameVerifier are not supported by the JDK HttpClient transport.");
+        }
+
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        if (config.getHttpConnTimeout() > 0) {
+            builder.connectTimeout(Duration.ofMillis(config.getHttpConnTimeout()));
+        }
+        if (config.getProxyHost() != null && config.getProxyPort() != null) {
+            if (config.getProxyType() != null && config.getProxyType() != java.net.Proxy.Type.HTTP) {
+                throw new IllegalArgumentException("Only HTTP proxies are supported by the JDK HttpClient transport, got " + config.getProxyType());
+            }
+            InetSocketAddress proxyAddress = new InetSocketAddress(config.getProxyHost(), config.getProxyPort());
+            builder.proxy(ProxySelector.of(proxyAddress));
+            log.info("Using proxy {}", proxyAddress);
+        }
+        if (config.getAsyncExecutor() != null || config.getExecutionMode() == ExecutionMode.VIRTUAL_THREADS) {
+            // The client completes its futures, and so reads and maps asynchronous responses, on these threads.
+            builder.executor(AsyncExecutors.forConfig(config));
+        }
+        this.client = builder.build();
+        this.readTimeout = config.getHttpReadTimeout() > 0 ? Duration.ofMillis(config.getHttpReadTimeout()) : null;
+    }
+
+    public JdkHttpClientTransport(HttpClient client, Duration readTimeout) {
+        this.client = client;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public HttpTransportResponse send(HttpMethod method, String url, Map<String, String> headers, byte[] body) throws IOException {
+        return send(method, url, headers, body, 0);
+    }
+
+    /**
+     * The timeout bounds the time until the response headers arrive, connecting included.
+     */
+    @Override
+    public HttpTransportResponse send(HttpMethod method, String url, Map<String, String> headers, byte[] body, int timeoutMillis) throws IOException {
+        return new Response(client.sendAsync(buildRequest(method, url, headers, body, timeoutMillis), HttpResponse.BodyHandlers.ofInputStream()));
+    }
+
+    /**
+     * Sends the request using the HttpClient's own asynchronous machinery; the executor is not used. The body is
+     * buffered before the returned future completes, so reading it never blocks.
+     */
+    @Override
+    public CompletableFuture<HttpTransportResponse> sendAsync(HttpMethod method, String url, Map<String, String> headers, byte[] body, Executor executor) {
+        return sendAsync(method, url, headers, body, executor, 0);
+    }
+
+    @Override
+    public CompletableFuture<HttpTransportResponse> sendAsync(HttpMethod method, String url, Map<String, String> headers, byte[] body, Executor executor, int timeoutMillis) {
+        HttpRequest request;
+        try {
+            request = buildRequest(method, url, headers, body, timeoutMillis);
+        } catch (IOException e) {
+            CompletableFuture<HttpTransportResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        HttpResponse.BodyHandler<InputStream> bufferingHandler = responseInfo ->
+                HttpResponse.BodySubscribers.mapping(HttpResponse.BodySubscribers.ofByteArray(), ByteArrayInputStream::new);
+        return client.sendAsync(request, bufferingHandler)
+                .thenApply(response -> (HttpTransportResponse) new Response(CompletableFuture.completedFuture(response)));
+    }
+
+    private HttpRequest buildRequest(HttpMethod method, String url, Map<String, String> headers, byte[] body, int timeoutMillis) throws IOException {
+        HttpRequest.Builder request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid url: " + url, e);
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (!RESTRICTED_HEADERS.contains(header.getKey())) {
+                request.setHeader(header.getKey(), header.getValue());
+            }
+        }
+        if (timeoutMillis > 0) {
+            request.timeout(Duration.ofMillis(timeoutMillis));
+        } else if (readTimeout != null) {
+            request.timeout(readTimeout);
+        }
+        request.method(method.name(), body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofByteArray(body));
+        return request.build();
+    }
+
+    static class Response implements HttpTransportResponse {
+
+        private final CompletableFuture<HttpResponse<InputStream>> future;
+
+        Response(CompletableFuture<HttpResponse<InputStream>> future) {
+            this.future = future;
+        }
+
+        private HttpResponse<InputStream> await() throws IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the response");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+
+        @Override
+        public int getStatusCode() throws IOException {
+            return await().statusCode();
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() throws IOException {
+            return await().headers().map();
+        }
+
+        @Override
+        public String getHeaderField(String name) throws IOException {
+            return await().headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            return await().body();
+        }
+    }
+}
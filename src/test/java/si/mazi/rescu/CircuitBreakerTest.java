@@ -0,0 +1,270 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class CircuitBreakerTest {
+
+    private LocalHttpServer server;
+    private List<String> transitions;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        server = LocalHttpServer.start();
+        server.on("/circuit/get", 500, "failure", "Content-Type", "text/plain");
+        server.on("/circuit/other", 200, "other", "Content-Type", "text/plain");
+        transitions = new CopyOnWriteArrayList<>();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void shouldOpenOnFailuresAndFailFast() {
+        CircuitBreaker breaker = createBreaker(4, TimeUnit.MINUTES.toMillis(1));
+        CircuitService proxy = createProxy(breaker);
+
+        for (int i = 0; i < 4; i++) {
+            assertThat(catchThrowable(proxy::get)).isInstanceOf(HttpStatusIOException.class);
+        }
+        assertThat(catchThrowable(proxy::get)).isInstanceOf(CircuitBreakerOpenException.class);
+        assertThat(catchThrowable(proxy::getOther)).isInstanceOf(CircuitBreakerOpenException.class);
+
+        assertThat(server.getRequests()).hasSize(4);
+        CircuitBreaker.Stats stats = breaker.getStats(server.getBaseUrl());
+        assertThat(stats.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(stats.getFailureRate()).isEqualTo(1.0);
+        assertThat(stats.getRejected()).isEqualTo(2);
+        assertThat(transitions).containsExactly("CLOSED>OPEN");
+    }
+
+    @Test
+    public void shouldCloseAfterSuccessfulProbes() throws Exception {
+        CircuitBreaker breaker = createBreaker(2, 100);
+        breaker.setHalfOpenProbes(2);
+        CircuitService proxy = createProxy(breaker);
+        catchThrowable(proxy::get);
+        catchThrowable(proxy::get);
+        assertThat(breaker.getStats(server.getBaseUrl()).getState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        server.on("/circuit/get", 200, "ok", "Content-Type", "text/plain");
+        Thread.sleep(150);
+
+        assertThat(proxy.get()).isEqualTo("ok");
+        assertThat(breaker.getStats(server.getBaseUrl()).getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(proxy.get()).isEqualTo("ok");
+        assertThat(breaker.getStats(server.getBaseUrl()).getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(transitions).containsExactly("CLOSED>OPEN", "OPEN>HALF_OPEN", "HALF_OPEN>CLOSED");
+    }
+
+    @Test
+    public void shouldOpenAgainWhenAProbeFails() throws Exception {
+        CircuitBreaker breaker = createBreaker(2, 100);
+        breaker.setHalfOpenProbes(1);
+        CircuitService proxy = createProxy(breaker);
+        catchThrowable(proxy::get);
+        catchThrowable(proxy::get);
+
+        Thread.sleep(150);
+
+        assertThat(catchThrowable(proxy::get)).isInstanceOf(HttpStatusIOException.class);
+        assertThat(catchThrowable(proxy::get)).isInstanceOf(CircuitBreakerOpenException.class);
+        assertThat(server.getRequests()).hasSize(3);
+        assertThat(transitions).containsExactly("CLOSED>OPEN", "OPEN>HALF_OPEN", "HALF_OPEN>OPEN");
+    }
+
+    @Test
+    public void shouldOpenOnSlowCalls() throws Exception {
+        server.on("/circuit/other", exchange -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LocalHttpServer.respond(200, "slow", "Content-Type", "text/plain").handle(exchange);
+        });
+        CircuitBreaker breaker = createBreaker(2, TimeUnit.MINUTES.toMillis(1));
+        breaker.setSlowCallRateThreshold(0.5, 50, TimeUnit.MILLISECONDS);
+        CircuitService proxy = createProxy(breaker);
+
+        assertThat(proxy.getOther()).isEqualTo("slow");
+        assertThat(proxy.getOther()).isEqualTo("slow");
+
+        assertThat(catchThrowable(proxy::getOther)).isInstanceOf(CircuitBreakerOpenException.class);
+        assertThat(breaker.getStats(server.getBaseUrl()).getSlowCallRate()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void shouldNotCountTheWaitForAFreeSlotAsSlow() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        server.on("/circuit/blocked", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LocalHttpServer.respond(200, "blocked", "Content-Type", "text/plain").handle(exchange);
+        });
+        CircuitBreaker breaker = createBreaker(1, TimeUnit.MINUTES.toMillis(1));
+        breaker.setSlowCallRateThreshold(0.5, 50, TimeUnit.MILLISECONDS);
+        ClientConfig config = new ClientConfig();
+        config.setCircuitBreaker(breaker);
+        config.setConcurrencyLimiter(new ConcurrencyLimiter(1, 1, 1));
+        CircuitService proxy = RestProxyFactory.createProxy(CircuitService.class, server.getBaseUrl(), config);
+
+        CompletableFuture<String> blocked = proxy.getBlockedAsync();
+        awaitUntil(() -> server.getRequests().size() == 1);
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> {
+            try {
+                return proxy.getOther();
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+        awaitUntil(() -> config.getConcurrencyLimiter().getStats(server.getBaseUrl()).getQueued() == 1);
+        Thread.sleep(150);
+        release.countDown();
+
+        assertThat(blocked.get(10, TimeUnit.SECONDS)).isEqualTo("blocked");
+        assertThat(queued.get(10, TimeUnit.SECONDS)).isEqualTo("other");
+        assertThat(config.getConcurrencyLimiter().getStats(server.getBaseUrl()).getMeanQueueWait(TimeUnit.MILLISECONDS)).isPositive();
+        CircuitBreaker.Stats stats = breaker.getStats(server.getBaseUrl());
+        assertThat(stats.getSlowCallRate()).isZero();
+        assertThat(stats.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void shouldKeepACircuitPerMethodAndSkipExcludedMethods() throws Exception {
+        CircuitBreaker breaker = createBreaker(2, TimeUnit.MINUTES.toMillis(1));
+        CircuitService proxy = createProxy(breaker);
+
+        catchThrowable(proxy::getOwnCircuit);
+        catchThrowable(proxy::getOwnCircuit);
+        assertThat(catchThrowable(proxy::getOwnCircuit)).isInstanceOf(CircuitBreakerOpenException.class);
+        assertThat(proxy.getOther()).isEqualTo("other");
+
+        catchThrowable(proxy::get);
+        catchThrowable(proxy::get);
+        assertThat(catchThrowable(proxy::getOther)).isInstanceOf(CircuitBreakerOpenException.class);
+        assertThat(proxy.getUnprotected()).isEqualTo("other");
+
+        String ownCircuit = server.getBaseUrl() + ' ' + CircuitService.class.getName() + "#getOwnCircuit";
+        assertThat(breaker.getStats()).containsOnlyKeys(server.getBaseUrl(), ownCircuit);
+        assertThat(breaker.getStats(ownCircuit).getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    @Test
+    public void shouldUseADefaultBreakerForAnnotatedMethodsOnly() throws Exception {
+        CircuitService proxy = RestProxyFactory.createProxy(CircuitService.class, server.getBaseUrl(), new ClientConfig());
+
+        for (int i = 0; i < 30; i++) {
+            catchThrowable(proxy::get);
+        }
+        assertThat(server.getRequests()).hasSize(20);
+
+        assertThat(proxy.getOther()).isEqualTo("other");
+        assertThat(catchThrowable(proxy::get)).isInstanceOf(CircuitBreakerOpenException.class);
+    }
+
+    @Test
+    public void shouldFailAsyncCallsFastWhenOpen() throws Exception {
+        CircuitBreaker breaker = createBreaker(2, TimeUnit.MINUTES.toMillis(1));
+        CircuitService proxy = createProxy(breaker);
+        catchThrowable(() -> proxy.getAsync().get(5, TimeUnit.SECONDS));
+        catchThrowable(() -> proxy.getAsync().get(5, TimeUnit.SECONDS));
+
+        Throwable failure = catchThrowable(() -> proxy.getAsync().get(5, TimeUnit.SECONDS));
+
+        assertThat(failure).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(CircuitBreakerOpenException.class);
+        assertThat(server.getRequests()).hasSize(2);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectThresholdsOfASharedCircuit() {
+        RestProxyFactory.createProxy(MisconfiguredService.class, server.getBaseUrl(), new ClientConfig());
+    }
+
+    private CircuitBreaker createBreaker(int window, long openMillis) {
+        CircuitBreaker breaker = new CircuitBreaker();
+        breaker.setSlidingWindow(window, window);
+        breaker.setOpenDuration(openMillis, TimeUnit.MILLISECONDS);
+        breaker.addListener((circuit, from, to) -> transitions.add(from + ">" + to));
+        return breaker;
+    }
+
+    private CircuitService createProxy(CircuitBreaker breaker) {
+        ClientConfig config = new ClientConfig();
+        config.setCircuitBreaker(breaker);
+        return RestProxyFactory.createProxy(CircuitService.class, server.getBaseUrl(), config);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime() - deadline).as("timed out").isNegative();
+            Thread.sleep(5);
+        }
+    }
+
+    @Path("circuit")
+    @Produces(MediaType.TEXT_PLAIN)
+    public interface CircuitService {
+
+        @GET
+        @Path("get")
+        @Circuit
+        String get() throws IOException;
+
+        @GET
+        @Path("get")
+        CompletableFuture<String> getAsync();
+
+        @GET
+        @Path("get")
+        @Circuit(perMethod = true)
+        String getOwnCircuit() throws IOException;
+
+        @GET
+        @Path("other")
+        String getOther() throws IOException;
+
+        @GET
+        @Path("blocked")
+        @Circuit(enabled = false)
+        CompletableFuture<String> getBlockedAsync();
+
+        @GET
+        @Path("other")
+        @Circuit(enabled = false)
+        String getUnprotected() throws IOException;
+    }
+
+    @Path("circuit")
+    public interface MisconfiguredService {
+
+        @GET
+        @Path("get")
+        @Circuit(failureRateThreshold = 0.1)
+        String get() throws IOException;
+    }
+}
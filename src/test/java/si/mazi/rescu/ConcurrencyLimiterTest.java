@@ -0,0 +1,423 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class ConcurrencyLimiterTest {
+
+    /** Response delays of a server that isn't overloaded, but whose latency varies a lot from request to request. */
+    private static final int[] JITTER_MILLIS = {1, 12, 3, 30, 2, 8, 25, 1, 15, 4};
+
+    private LocalHttpServer server;
+    private CountDownLatch release;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        CountDownLatch release = this.release = new CountDownLatch(1);
+        server = LocalHttpServer.start();
+        server.on("/concurrent/slow", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LocalHttpServer.respond(200, "slow", "Content-Type", "text/plain").handle(exchange);
+        });
+        AtomicInteger jittered = new AtomicInteger();
+        server.on("/concurrent/jittery", exchange -> {
+            try {
+                Thread.sleep(JITTER_MILLIS[jittered.getAndIncrement() % JITTER_MILLIS.length]);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LocalHttpServer.respond(200, "ok", "Content-Type", "text/plain").handle(exchange);
+        });
+        server.on("/concurrent/slowBusy", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LocalHttpServer.respond(429, "busy", "Content-Type", "text/plain").handle(exchange);
+        });
+        server.on("/concurrent/ok", 200, "ok", "Content-Type", "text/plain");
+        server.on("/concurrent/busy", 429, "busy", "Content-Type", "text/plain");
+        server.on("/concurrent/error", 500, "{}", "Content-Type", "application/json");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServer() {
+        release.countDown();
+        server.close();
+    }
+
+    @Test
+    public void shouldQueueCallsOverTheLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 2);
+        ConcurrentService proxy = createProxy(limiter);
+
+        Queue<String> results = new ConcurrentLinkedQueue<>();
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Thread caller = new Thread(() -> {
+                try {
+                    results.add(proxy.getSlow());
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            caller.start();
+            callers.add(caller);
+        }
+        awaitUntil(() -> server.getRequests().size() == 2 && limiter.getStats(server.getBaseUrl()).getQueued() == 3);
+        assertThat(limiter.getStats(server.getBaseUrl()).getInFlight()).isEqualTo(2);
+
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join(10_000);
+        }
+
+        assertThat(results).hasSize(5).containsOnly("slow");
+        ConcurrencyLimiter.Stats stats = limiter.getStats(server.getBaseUrl());
+        assertThat(stats.getInFlight()).isZero();
+        assertThat(stats.getQueued()).isZero();
+        assertThat(limiter.getStats()).containsOnlyKeys(server.getBaseUrl());
+    }
+
+    @Test
+    public void shouldRejectCallsWhenTheQueueIsFull() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        limiter.setMaxQueueLength(0);
+        ConcurrentService proxy = createProxy(limiter);
+
+        CompletableFuture<String> first = proxy.getSlowAsync();
+        awaitUntil(() -> server.getRequests().size() == 1);
+        Throwable failure = catchThrowable(proxy::getOk);
+        release.countDown();
+
+        assertThat(failure).isInstanceOf(ConcurrencyLimitExceededException.class);
+        assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("slow");
+        assertThat(server.getRequests()).hasSize(1);
+        assertThat(limiter.getStats(server.getBaseUrl()).getRejected()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldTimeOutWaitingInTheQueue() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        limiter.setMaxQueueWait(50, TimeUnit.MILLISECONDS);
+        ConcurrentService proxy = createProxy(limiter);
+
+        CompletableFuture<String> first = proxy.getSlowAsync();
+        awaitUntil(() -> server.getRequests().size() == 1);
+        Throwable failure = catchThrowable(proxy::getOk);
+
+        assertThat(failure).isInstanceOf(ConcurrencyLimitExceededException.class);
+        assertThat(limiter.getStats(server.getBaseUrl()).getQueued()).isZero();
+        assertThat(limiter.getStats(server.getBaseUrl()).getRejected()).isEqualTo(1);
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("slow");
+        assertThat(limiter.getStats(server.getBaseUrl()).getInFlight()).isZero();
+    }
+
+    @Test
+    public void shouldTimeOutAsyncCallsWaitingInTheQueue() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        limiter.setMaxQueueWait(50, TimeUnit.MILLISECONDS);
+        ConcurrentService proxy = createProxy(limiter);
+
+        CompletableFuture<String> first = proxy.getSlowAsync();
+        awaitUntil(() -> server.getRequests().size() == 1);
+        CompletableFuture<String> second = proxy.getOkAsync("second", null);
+        Throwable failure = catchThrowable(() -> second.get(10, TimeUnit.SECONDS));
+
+        assertThat(failure).hasCauseInstanceOf(ConcurrencyLimitExceededException.class);
+        assertThat(limiter.getStats(server.getBaseUrl()).getQueued()).isZero();
+        assertThat(limiter.getStats(server.getBaseUrl()).getRejected()).isEqualTo(1);
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("slow");
+        assertThat(server.getRequests()).hasSize(1);
+        assertThat(limiter.getStats(server.getBaseUrl()).getInFlight()).isZero();
+    }
+
+    @Test
+    public void shouldNotKeepAsyncCallsInTheQueuePastTheDeadline() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        ConcurrentService proxy = createProxy(limiter);
+
+        CompletableFuture<String> first = proxy.getSlowAsync();
+        awaitUntil(() -> server.getRequests().size() == 1);
+        CompletableFuture<String> second = proxy.getOkAsync(Deadline.after(50, TimeUnit.MILLISECONDS));
+        Throwable failure = catchThrowable(() -> second.get(10, TimeUnit.SECONDS));
+
+        assertThat(failure).hasCauseInstanceOf(DeadlineExceededException.class);
+        awaitUntil(() -> limiter.getStats(server.getBaseUrl()).getQueued() == 0);
+        release.countDown();
+        assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("slow");
+        assertThat(server.getRequests()).hasSize(1);
+    }
+
+    @Test
+    public void shouldQueueAsyncCallsWithoutBlocking() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        ConcurrentService proxy = createProxy(limiter);
+
+        CompletableFuture<String> first = proxy.getSlowAsync();
+        CompletableFuture<String> second = proxy.getSlowAsync();
+        awaitUntil(() -> server.getRequests().size() == 1);
+        assertThat(limiter.getStats(server.getBaseUrl()).getQueued()).isEqualTo(1);
+        assertThat(second).isNotDone();
+
+        release.countDown();
+
+        assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("slow");
+        assertThat(second.get(10, TimeUnit.SECONDS)).isEqualTo("slow");
+        assertThat(server.getRequests()).hasSize(2);
+    }
+
+    @Test
+    public void shouldGrowTheLimitOnSuccessAndCutItWhenTheServerIsBusy() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 10);
+        // Only the responses decide here, not the jitter of local round trips.
+        limiter.setLatencyTolerance(10_000);
+        limiter.setBackoffRatio(0.5);
+        ConcurrentService proxy = createProxy(limiter);
+
+        for (int i = 0; i < 4; i++) {
+            proxy.getOk();
+        }
+        int grown = limiter.getStats(server.getBaseUrl()).getLimit();
+        assertThat(grown).isGreaterThan(1);
+
+        assertThat(catchThrowable(proxy::getBusy)).isInstanceOf(HttpStatusIOException.class);
+        assertThat(limiter.getStats(server.getBaseUrl()).getLimit()).isLessThan(grown);
+        for (int i = 0; i < 5; i++) {
+            catchThrowable(proxy::getBusy);
+        }
+        assertThat(limiter.getStats(server.getBaseUrl()).getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldKeepTheLimitWhenTheLatencyIsJitteryButSteady() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 4);
+        ConcurrentService proxy = createProxy(limiter);
+
+        for (int i = 0; i < 5 * JITTER_MILLIS.length; i++) {
+            proxy.getJittery();
+        }
+
+        assertThat(limiter.getStats(server.getBaseUrl()).getLimit()).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldCutTheLimitOnceForTheBusyResponsesOfRequestsInFlightTogether() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 8);
+        limiter.setBackoffRatio(0.5);
+        ConcurrentService proxy = createProxy(limiter);
+
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            calls.add(proxy.getSlowBusyAsync());
+        }
+        awaitUntil(() -> server.getRequests().size() == 6);
+        release.countDown();
+        for (CompletableFuture<String> call : calls) {
+            assertThat(catchThrowable(() -> call.get(10, TimeUnit.SECONDS))).hasCauseInstanceOf(HttpStatusIOException.class);
+        }
+
+        assertThat(limiter.getStats(server.getBaseUrl()).getLimit()).isEqualTo(4);
+        // A request sent after the cut may cut it again.
+        assertThat(catchThrowable(proxy::getBusy)).isInstanceOf(HttpStatusIOException.class);
+        assertThat(limiter.getStats(server.getBaseUrl()).getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldSendWaitingCallsByPriority() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        ConcurrentService proxy = createProxy(limiter);
+        CompletableFuture<String> first = proxy.getSlowAsync();
+        awaitUntil(() -> server.getRequests().size() == 1);
+
+        List<CompletableFuture<String>> queued = new ArrayList<>();
+        queued.add(proxy.getHistoryAsync("history"));
+        queued.add(proxy.getOkAsync("normal", null));
+        queued.add(proxy.getOkAsync("high", Priority.HIGH));
+        queued.add(proxy.getOkAsync("critical", Priority.CRITICAL));
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<String> call : queued) {
+            assertThat(call.get(10, TimeUnit.SECONDS)).isEqualTo("ok");
+        }
+
+        assertThat(getCalls()).containsExactly("call=critical", "call=high", "call=normal", "call=history");
+    }
+
+    @Test
+    public void shouldShareSlotsBetweenKeysByWeight() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        limiter.setFairShareKey(invocation -> {
+            String call = (String) invocation.getParamValue(QueryParam.class, "call");
+            return call == null ? null : call.substring(0, 1);
+        });
+        limiter.setFairShareWeight("b", 2);
+        ConcurrentService proxy = createProxy(limiter);
+        CompletableFuture<String> first = proxy.getSlowAsync();
+        awaitUntil(() -> server.getRequests().size() == 1);
+
+        List<CompletableFuture<String>> queued = new ArrayList<>();
+        for (String key : new String[] {"a", "b"}) {
+            for (int i = 1; i <= 4; i++) {
+                queued.add(proxy.getOkAsync(key + i, null));
+            }
+        }
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+        for (CompletableFuture<String> call : queued) {
+            call.get(10, TimeUnit.SECONDS);
+        }
+
+        assertThat(getCalls()).containsExactly(
+                "call=a1", "call=b1", "call=b2", "call=a2", "call=b3", "call=b4", "call=a3", "call=a4");
+    }
+
+    @Test
+    public void shouldTurnAwayLowerPriorityCallsFromAFullQueue() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        limiter.setMaxQueueLength(1);
+        ConcurrentService proxy = createProxy(limiter);
+        CompletableFuture<String> first = proxy.getSlowAsync();
+        awaitUntil(() -> server.getRequests().size() == 1);
+
+        CompletableFuture<String> history = proxy.getHistoryAsync("history");
+        CompletableFuture<String> critical = proxy.getOkAsync("critical", Priority.CRITICAL);
+        CompletableFuture<String> normal = proxy.getOkAsync("normal", null);
+        release.countDown();
+
+        assertThat(catchThrowable(() -> history.get(10, TimeUnit.SECONDS)))
+                .isInstanceOf(ExecutionException.class).hasCauseInstanceOf(ConcurrencyLimitExceededException.class);
+        assertThat(catchThrowable(() -> normal.get(10, TimeUnit.SECONDS)))
+                .isInstanceOf(ExecutionException.class).hasCauseInstanceOf(ConcurrencyLimitExceededException.class);
+        first.get(10, TimeUnit.SECONDS);
+        assertThat(critical.get(10, TimeUnit.SECONDS)).isEqualTo("ok");
+        assertThat(getCalls()).containsExactly("call=critical");
+        assertThat(limiter.getStats(server.getBaseUrl()).getRejected()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldMeasureTheQueueWaitApartFromTheResponseTime() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1);
+        ConcurrentService proxy = createProxy(limiter);
+        CompletableFuture<String> first = proxy.getSlowAsync();
+        awaitUntil(() -> server.getRequests().size() == 1);
+
+        Queue<ExampleInvocationAwareException> failures = new ConcurrentLinkedQueue<>();
+        Thread caller = new Thread(() -> failures.add(ExceptionUtils.catchException(ExampleInvocationAwareException.class, proxy::getError)));
+        caller.start();
+        awaitUntil(() -> limiter.getStats(server.getBaseUrl()).getQueued() == 1);
+        Thread.sleep(100);
+        release.countDown();
+        caller.join(10_000);
+        first.get(10, TimeUnit.SECONDS);
+
+        RestInvocation invocation = failures.remove().getInvocation();
+        assertThat(invocation.getQueueWait(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(100);
+        ConcurrencyLimiter.Stats stats = limiter.getStats(server.getBaseUrl());
+        // The first call didn't wait; the second one did.
+        assertThat(stats.getMeanQueueWait(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(50);
+        assertThat(stats.getMeanResponseTime(TimeUnit.MILLISECONDS)).isGreaterThanOrEqualTo(50);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectInconsistentLimits() {
+        new ConcurrencyLimiter(10, 1, 5);
+    }
+
+    private ConcurrentService createProxy(ConcurrencyLimiter limiter) {
+        ClientConfig config = new ClientConfig();
+        config.setConcurrencyLimiter(limiter);
+        return RestProxyFactory.createProxy(ConcurrentService.class, server.getBaseUrl(), config);
+    }
+
+    private List<String> getCalls() {
+        return server.getRequests().stream()
+                .filter(request -> request.query != null)
+                .map(request -> request.query)
+                .collect(Collectors.toList());
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime() - deadline).as("timed out").isNegative();
+            Thread.sleep(5);
+        }
+    }
+
+    @Path("concurrent")
+    @Produces(MediaType.TEXT_PLAIN)
+    public interface ConcurrentService {
+
+        @GET
+        @Path("slow")
+        String getSlow() throws IOException;
+
+        @GET
+        @Path("slow")
+        CompletableFuture<String> getSlowAsync();
+
+        @GET
+        @Path("ok")
+        String getOk() throws IOException;
+
+        @GET
+        @Path("busy")
+        String getBusy() throws IOException;
+
+        @GET
+        @Path("slowBusy")
+        CompletableFuture<String> getSlowBusyAsync();
+
+        @GET
+        @Path("jittery")
+        String getJittery() throws IOException;
+
+        @GET
+        @Path("ok")
+        CompletableFuture<String> getOkAsync(@QueryParam("call") String call, Priority priority);
+
+        @GET
+        @Path("ok")
+        CompletableFuture<String> getOkAsync(Deadline deadline);
+
+        @GET
+        @Path("ok")
+        @Prioritized(Priority.LOW)
+        CompletableFuture<String> getHistoryAsync(@QueryParam("call") String call);
+
+        @GET
+        @Path("error")
+        @Produces(MediaType.APPLICATION_JSON)
+        Object getError() throws ExampleInvocationAwareException;
+    }
+}
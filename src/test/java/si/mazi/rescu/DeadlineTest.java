@@ -0,0 +1,219 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class DeadlineTest {
+
+    private LocalHttpServer server;
+    private CountDownLatch release;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        CountDownLatch release = this.release = new CountDownLatch(1);
+        server = LocalHttpServer.start();
+        server.on("/deadline/slow", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LocalHttpServer.respond(200, "slow", "Content-Type", "text/plain").handle(exchange);
+        });
+        server.on("/deadline/delayed", exchange -> {
+            try {
+                Thread.sleep(500);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LocalHttpServer.respond(200, "delayed", "Content-Type", "text/plain").handle(exchange);
+        });
+        server.on("/deadline/ok", 200, "ok", "Content-Type", "text/plain");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServer() {
+        release.countDown();
+        server.close();
+    }
+
+    @DataProvider
+    public Object[][] transports() {
+        return new Object[][]{
+                {HttpTransportFactory.URL_CONNECTION},
+                {HttpTransportFactory.JDK_HTTP_CLIENT},
+                {HttpTransportFactory.POOLED}
+        };
+    }
+
+    @Test(dataProvider = "transports")
+    public void shouldTimeOutWithTheMethodTimeout(HttpTransportFactory transportFactory) {
+        DeadlineService proxy = createProxy(transportFactory, new ClientConfig());
+
+        long start = System.nanoTime();
+        Throwable failure = catchThrowable(proxy::getSlowWithTimeout);
+
+        assertThat(failure).isInstanceOf(DeadlineExceededException.class);
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test(dataProvider = "transports")
+    public void shouldAllowMoreTimeThanTheConfigReadTimeout(HttpTransportFactory transportFactory) throws Exception {
+        ClientConfig config = new ClientConfig();
+        config.setHttpReadTimeout(100);
+        DeadlineService proxy = createProxy(transportFactory, config);
+
+        assertThat(proxy.getDelayedWithLongTimeout()).isEqualTo("delayed");
+        assertThat(catchThrowable(proxy::getDelayed)).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void shouldFailFastWhenTheDeadlineHasPassed() {
+        DeadlineService proxy = createProxy(HttpTransportFactory.URL_CONNECTION, new ClientConfig());
+
+        Throwable failure = catchThrowable(() -> proxy.getOk(Deadline.after(0, TimeUnit.SECONDS), "x"));
+
+        assertThat(failure).isInstanceOf(DeadlineExceededException.class);
+        assertThat(server.getRequests()).isEmpty();
+    }
+
+    @Test
+    public void shouldNotSendTheDeadlineArgument() throws Exception {
+        DeadlineService proxy = createProxy(HttpTransportFactory.URL_CONNECTION, new ClientConfig());
+
+        assertThat(proxy.getOk(Deadline.after(5, TimeUnit.SECONDS), "x")).isEqualTo("ok");
+        assertThat(server.getLastRequest().query).isEqualTo("p=x");
+    }
+
+    @Test
+    public void shouldNotWaitForRateLimitPastTheDeadline() throws Exception {
+        DeadlineService proxy = createProxy(HttpTransportFactory.URL_CONNECTION, new ClientConfig());
+        proxy.getLimited(Deadline.after(5, TimeUnit.SECONDS));
+
+        long start = System.nanoTime();
+        Throwable failure = catchThrowable(() -> proxy.getLimited(Deadline.after(200, TimeUnit.MILLISECONDS)));
+
+        assertThat(failure).isInstanceOf(DeadlineExceededException.class);
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(1));
+        assertThat(server.getRequests()).hasSize(1);
+    }
+
+    @Test
+    public void shouldNotRetryPastTheDeadline() {
+        server.on("/deadline/ok", 503, "unavailable", "Content-Type", "text/plain", "Retry-After", "1");
+        ClientConfig config = new ClientConfig();
+        config.setRetryPolicy(new RetryPolicy());
+        DeadlineService proxy = createProxy(HttpTransportFactory.URL_CONNECTION, config);
+
+        Throwable failure = catchThrowable(() -> proxy.getOk(Deadline.after(500, TimeUnit.MILLISECONDS), "x"));
+
+        assertThat(failure).isInstanceOf(HttpStatusIOException.class);
+        assertThat(server.getRequests()).hasSize(1);
+    }
+
+    @Test
+    public void shouldCompleteAsyncCallsAtTheDeadline() {
+        DeadlineService proxy = createProxy(HttpTransportFactory.URL_CONNECTION, new ClientConfig());
+
+        CompletableFuture<String> result = proxy.getSlowAsync(Deadline.after(200, TimeUnit.MILLISECONDS));
+        Throwable failure = catchThrowable(() -> result.get(5, TimeUnit.SECONDS));
+
+        assertThat(failure).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(DeadlineExceededException.class);
+    }
+
+    @Test
+    public void shouldNotWaitForTheTurnOfTheValueFactoryPastTheDeadline() throws Exception {
+        DeadlineService proxy = createProxy(HttpTransportFactory.URL_CONNECTION, new ClientConfig());
+        CountDownLatch generating = new CountDownLatch(1);
+        CountDownLatch generated = new CountDownLatch(1);
+        AtomicLong nonces = new AtomicLong();
+        SynchronizedValueFactory<Long> nonce = () -> {
+            generating.countDown();
+            try {
+                // The first call keeps the turn until the latch is released.
+                generated.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return nonces.incrementAndGet();
+        };
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return proxy.getOkWithNonce(Deadline.after(10, TimeUnit.SECONDS), nonce);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        });
+        assertThat(generating.await(5, TimeUnit.SECONDS)).isTrue();
+
+        long start = System.nanoTime();
+        Throwable failure = catchThrowable(() -> proxy.getOkWithNonce(Deadline.after(200, TimeUnit.MILLISECONDS), nonce));
+
+        assertThat(failure).isInstanceOf(DeadlineExceededException.class);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+        generated.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("ok");
+        // The turn that was given up isn't lost.
+        assertThat(proxy.getOkWithNonce(Deadline.after(5, TimeUnit.SECONDS), nonce)).isEqualTo("ok");
+        assertThat(server.getRequests()).extracting(request -> request.query).containsExactly("nonce=1", "nonce=2");
+    }
+
+    private DeadlineService createProxy(HttpTransportFactory transportFactory, ClientConfig config) {
+        config.setHttpTransportFactory(transportFactory);
+        return RestProxyFactory.createProxy(DeadlineService.class, server.getBaseUrl(), config);
+    }
+
+    @Path("deadline")
+    @Produces(MediaType.TEXT_PLAIN)
+    public interface DeadlineService {
+
+        @GET
+        @Path("slow")
+        @Timeout(200)
+        String getSlowWithTimeout() throws IOException;
+
+        @GET
+        @Path("slow")
+        CompletableFuture<String> getSlowAsync(Deadline deadline);
+
+        @GET
+        @Path("delayed")
+        String getDelayed() throws IOException;
+
+        @GET
+        @Path("delayed")
+        @Timeout(value = 5, unit = TimeUnit.SECONDS)
+        String getDelayedWithLongTimeout() throws IOException;
+
+        @GET
+        @Path("ok")
+        String getOk(Deadline deadline, @QueryParam("p") String p) throws IOException;
+
+        @GET
+        @Path("ok")
+        String getOkWithNonce(Deadline deadline, @QueryParam("nonce") SynchronizedValueFactory<Long> nonce) throws IOException;
+
+        @GET
+        @Path("ok")
+        @RateLimit(permits = 1, period = 1, unit = TimeUnit.HOURS)
+        String getLimited(Deadline deadline) throws IOException;
+    }
+}
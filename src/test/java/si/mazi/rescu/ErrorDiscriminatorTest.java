@@ -0,0 +1,77 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.Test;
+import si.mazi.rescu.dto.DummyTicker;
+
+import jakarta.ws.rs.PathParam;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ErrorDiscriminatorTest {
+
+    @Test
+    public void shouldReadSuccessfulResponse() throws Exception {
+        ExampleService proxy = createProxy(ResourceUtils.getResourceAsString("/example-ticker.json"), 200);
+
+        DummyTicker ticker = proxy.getDiscriminated();
+
+        assertThat(ticker.getLast()).isEqualTo(12345L);
+    }
+
+    @Test
+    public void shouldThrowDeclaredExceptionOnErrorWithStatusOk() throws Exception {
+        ExampleService proxy = createProxy(ResourceUtils.getResourceAsString("/error.json"), 200);
+
+        ExampleException e = ExceptionUtils.catchException(ExampleException.class, proxy::getDiscriminated);
+
+        assertThat(e.getError()).isEqualTo("Order not found");
+        assertThat(e.getHttpStatusCode()).isEqualTo(200);
+    }
+
+    @Test
+    public void shouldThrowDeclaredExceptionOnErrorStatus() throws Exception {
+        ExampleService proxy = createProxy("{\"result\":\"ok\",\"error\":\"Server error\"}", 500);
+
+        ExampleException e = ExceptionUtils.catchException(ExampleException.class, proxy::getDiscriminated);
+
+        assertThat(e.getError()).isEqualTo("Server error");
+        assertThat(e.getHttpStatusCode()).isEqualTo(500);
+    }
+
+    @Test
+    public void shouldThrowHttpStatusIOExceptionIfNoExceptionIsDeclared() throws Exception {
+        ExampleService proxy = createProxy("{\"error\":\"Invalid nonce\"}", 200);
+
+        HttpStatusIOException e = ExceptionUtils.catchException(HttpStatusIOException.class, proxy::getDiscriminatedWithoutException);
+
+        assertThat(e.getHttpBody()).contains("Invalid nonce");
+        assertThat(e.getMessage()).contains("'error' field");
+    }
+
+    @Test
+    public void shouldThrowHttpStatusIOExceptionOnErrorStatusWithNonJsonBody() throws Exception {
+        ExampleService proxy = createProxy("<html><body><h1>502 Bad Gateway</h1></body></html>", 502);
+
+        HttpStatusIOException e = ExceptionUtils.catchException(HttpStatusIOException.class, proxy::getDiscriminatedWithoutException);
+
+        assertThat(e.getHttpStatusCode()).isEqualTo(502);
+        assertThat(e.getHttpBody()).contains("502 Bad Gateway");
+        assertThat(e.getMessage()).contains("HTTP status code was not OK: 502");
+    }
+
+    @Test
+    public void shouldNotTreatEmptyOrFalseValuesAsErrors() throws Exception {
+        assertThat(createProxy("{\"error\":\"\",\"value\":1}", 200).getDiscriminatedWithoutException()).containsEntry("value", 1);
+        assertThat(createProxy("{\"error\":false,\"value\":2}", 200).getDiscriminatedWithoutException()).containsEntry("value", 2);
+        assertThat(createProxy("{\"error\":[],\"value\":3}", 200).getDiscriminatedWithoutException()).containsEntry("value", 3);
+        Map<String, Object> result = createProxy("{\"value\":4}", 200).getDiscriminatedWithoutException();
+        assertThat(result).containsEntry("value", 4);
+    }
+
+    private static ExampleService createProxy(String responseBody, int status) {
+        ClientConfig config = new ClientConfig();
+        config.addDefaultParam(PathParam.class, "version", 2);
+        return RestProxyFactory.createProxy(ExampleService.class, new TestRestInvocationHandler(ExampleService.class, config, responseBody, status));
+    }
+}
@@ -32,6 +32,10 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
 
 /**
  * @author Matija Mazi
@@ -103,6 +107,12 @@ public interface ExampleService {
     @Produces(MediaType.TEXT_PLAIN)
     String getNonce(@FormParam("nonce") SynchronizedValueFactory nonce);
 
+    @GET
+    @Path("nonce")
+    @Consumes(MediaType.TEXT_PLAIN)
+    @Produces(MediaType.TEXT_PLAIN)
+    CompletableFuture<String> getNonceAsync(@FormParam("nonce") SynchronizedValueFactory nonce);
+
     @GET
     @Path("testSmallNumbers")
     @Consumes(MediaType.TEXT_PLAIN)
@@ -174,4 +184,46 @@ public interface ExampleService {
     @POST
     @Path("resultWithResponseHeaders")
     ExampleResponseHeadersAwareResult getResultWithResponseHeaders();
+
+    @GET
+    @Path("{ident}_{currency}/ticker")
+    CompletableFuture<DummyTicker> getTickerAsync(@PathParam("ident") String tradeableIdentifier, @PathParam("currency") String currency);
+
+    @POST
+    @FormParam("method")
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    CompletableFuture<DummyTicker> getInfoAsync(@FormParam("from") Long from) throws ExampleException;
+
+    @POST
+    @Path("signed/{id}")
+    @Consumes(MediaType.APPLICATION_JSON)
+    Object signed(@PathParam("id") String id, @QueryParam("b") String b, @QueryParam("a") String a, DummyAccountInfo body, RequestSigner signer);
+
+    @GET
+    @Path("discriminated")
+    @ErrorDiscriminator(field = "result", errorValues = "error")
+    DummyTicker getDiscriminated() throws ExampleException;
+
+    @GET
+    @Path("discriminated")
+    @ErrorDiscriminator(field = "error")
+    Map<String, Object> getDiscriminatedWithoutException() throws IOException;
+
+    @GET
+    @Path("tickers")
+    Stream<DummyTicker> streamTickers() throws ExampleException;
+
+    @GET
+    @Path("tickers")
+    CloseableIterator<DummyTicker> iterateTickers() throws ExampleException;
+
+    @GET
+    @Path("cached/{id}")
+    @Cacheable
+    DummyTicker getCached(@PathParam("id") String id);
+
+    @GET
+    @Path("cached/{id}")
+    @Cacheable(maxAge = 1, unit = TimeUnit.MINUTES)
+    DummyTicker getCachedWithTtl(@PathParam("id") String id);
 }
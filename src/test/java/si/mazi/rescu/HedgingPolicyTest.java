@@ -0,0 +1,183 @@
+package si.mazi.rescu;
+
+import com.sun.net.httpserver.HttpHandler;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HedgingPolicyTest {
+
+    private LocalHttpServer server;
+    private CountDownLatch release;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        release = new CountDownLatch(1);
+        server = LocalHttpServer.start();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServer() {
+        release.countDown();
+        server.close();
+    }
+
+    @Test
+    public void shouldHedgeASlowRequestAndUseTheFirstResponse() throws Exception {
+        server.on("/hedged/get", stallingRequest(1));
+        HedgingPolicy policy = new HedgingPolicy();
+        policy.setDelay(50, TimeUnit.MILLISECONDS);
+        HedgedService proxy = createProxy(policy);
+
+        long start = System.nanoTime();
+        assertThat(proxy.get()).isEqualTo("fast");
+
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+        assertThat(server.getRequests()).hasSize(2);
+        HedgingPolicy.Stats stats = policy.getStats();
+        assertThat(stats.getCalls()).isEqualTo(1);
+        assertThat(stats.getHedges()).isEqualTo(1);
+        assertThat(stats.getHedgeWins()).isEqualTo(1);
+        assertThat(stats.getWinRate()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void shouldHedgeAsyncCalls() throws Exception {
+        server.on("/hedged/get", stallingRequest(1));
+        HedgingPolicy policy = new HedgingPolicy();
+        policy.setDelay(50, TimeUnit.MILLISECONDS);
+        HedgedService proxy = createProxy(policy);
+
+        assertThat(proxy.getAsync().get(5, TimeUnit.SECONDS)).isEqualTo("fast");
+        assertThat(policy.getStats().getHedgeWins()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotHedgeFastResponses() throws Exception {
+        server.on("/hedged/get", 200, "fast", "Content-Type", "text/plain");
+        HedgingPolicy policy = new HedgingPolicy();
+        policy.setDelay(5, TimeUnit.SECONDS);
+        HedgedService proxy = createProxy(policy);
+
+        for (int i = 0; i < 5; i++) {
+            proxy.get();
+        }
+
+        assertThat(server.getRequests()).hasSize(5);
+        assertThat(policy.getStats().getCalls()).isEqualTo(5);
+        assertThat(policy.getStats().getHedgeRate()).isZero();
+    }
+
+    @Test
+    public void shouldHedgeOnlyWithinTheBudget() throws Exception {
+        server.on("/hedged/get", exchange -> {
+            sleep(100);
+            LocalHttpServer.respond(200, "slow", "Content-Type", "text/plain").handle(exchange);
+        });
+        HedgingPolicy policy = new HedgingPolicy();
+        policy.setDelay(10, TimeUnit.MILLISECONDS);
+        policy.setHedgingBudget(0, 1);
+        HedgedService proxy = createProxy(policy);
+
+        proxy.get();
+        proxy.get();
+
+        assertThat(policy.getStats().getHedges()).isEqualTo(1);
+        assertThat(policy.getStats().getHedgeRate()).isEqualTo(0.5);
+        assertThat(server.getRequests()).hasSize(3);
+    }
+
+    @Test
+    public void shouldHedgeAfterThePercentileOfRecentResponseTimes() throws Exception {
+        server.on("/hedged/get", stallingRequest(21));
+        HedgingPolicy policy = new HedgingPolicy();
+        policy.setDelayPercentile(0.5, 1, TimeUnit.MILLISECONDS);
+        HedgedService proxy = createProxy(policy);
+
+        for (int i = 0; i < 20; i++) {
+            proxy.get();
+        }
+        assertThat(policy.getStats().getHedges()).isZero();
+
+        assertThat(proxy.get()).isEqualTo("fast");
+        assertThat(policy.getStats().getHedges()).isEqualTo(1);
+        assertThat(server.getRequests()).hasSize(22);
+    }
+
+    @Test
+    public void shouldNotHedgeRequestsWithGeneratedValues() throws Exception {
+        server.on("/hedged/get", exchange -> {
+            sleep(100);
+            LocalHttpServer.respond(200, "slow", "Content-Type", "text/plain").handle(exchange);
+        });
+        HedgingPolicy policy = new HedgingPolicy();
+        policy.setDelay(10, TimeUnit.MILLISECONDS);
+        HedgedService proxy = createProxy(policy);
+
+        assertThat(proxy.getWithNonce(new LongValueFactory())).isEqualTo("slow");
+        assertThat(server.getRequests()).hasSize(1);
+        assertThat(policy.getStats().getCalls()).isZero();
+    }
+
+    private HedgedService createProxy(HedgingPolicy policy) {
+        ClientConfig config = new ClientConfig();
+        config.setHedgingPolicy(policy);
+        return RestProxyFactory.createProxy(HedgedService.class, server.getBaseUrl(), config);
+    }
+
+    /**
+     * Responds "fast", except to the n-th request, which waits until the test ends.
+     */
+    private HttpHandler stallingRequest(int n) {
+        CountDownLatch release = this.release;
+        AtomicInteger requests = new AtomicInteger();
+        return exchange -> {
+            if (requests.incrementAndGet() == n) {
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            LocalHttpServer.respond(200, "fast", "Content-Type", "text/plain").handle(exchange);
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Path("hedged")
+    @Produces(MediaType.TEXT_PLAIN)
+    public interface HedgedService {
+
+        @GET
+        @Path("get")
+        String get() throws IOException;
+
+        @GET
+        @Path("get")
+        CompletableFuture<String> getAsync();
+
+        @GET
+        @Path("get")
+        String getWithNonce(@QueryParam("nonce") SynchronizedValueFactory<Long> nonce) throws IOException;
+    }
+}
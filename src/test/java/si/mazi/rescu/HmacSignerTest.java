@@ -0,0 +1,78 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class HmacSignerTest {
+
+    private static final String DATA = "what do ya want for nothing?";
+
+    @DataProvider
+    public Object[][] rfc4231() {
+        return new Object[][] {
+                {HmacSigner.Algorithm.HMAC_SHA256, "5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843"},
+                {HmacSigner.Algorithm.HMAC_SHA384, "af45d2e376484031617f78d2b58a6b1b9c7ef464f5a01b47e42ec3736322445e8e2240ca5e69e2c78b3239ecfab21649"},
+                {HmacSigner.Algorithm.HMAC_SHA512, "164b7a7bfcf819e2e395fbe73b56e0a387bd64222e831fd610270cd7ea2505549758bf75c05a994a6d034f65f8f0e6fdcaeab1a34d4a6b4b636e070a38bce737"},
+        };
+    }
+
+    @Test(dataProvider = "rfc4231")
+    public void shouldSignToHex(HmacSigner.Algorithm algorithm, String expected) {
+        HmacSigner signer = HmacSigner.create(algorithm, "Jefe");
+
+        assertThat(signer.signUtf8(DATA, HmacSigner.Encoding.HEX)).isEqualTo(expected);
+        assertThat(signer.sign(DATA.getBytes(StandardCharsets.UTF_8), HmacSigner.Encoding.HEX)).isEqualTo(expected);
+    }
+
+    @Test
+    public void shouldSignToBase64() {
+        HmacSigner signer = HmacSigner.create(HmacSigner.Algorithm.HMAC_SHA256, "Jefe");
+
+        assertThat(signer.signUtf8(DATA, HmacSigner.Encoding.BASE64)).isEqualTo("W9zBRr9gdU5qBCQmCJV1x1oAPwidJzmDnexYuWTsOEM=");
+    }
+
+    @Test
+    public void shouldSignConcatenatedParts() {
+        HmacSigner signer = HmacSigner.create(HmacSigner.Algorithm.HMAC_SHA256, "Jefe");
+
+        byte[] signature = signer.sign("what do ya ".getBytes(StandardCharsets.UTF_8), null, "want for nothing?".getBytes(StandardCharsets.UTF_8));
+
+        assertThat(HmacSigner.encode(signature, HmacSigner.Encoding.HEX)).isEqualTo("5bdcc146bf60754e6a042426089575c75a003f089d2739839dec58b964ec3843");
+    }
+
+    @Test
+    public void shouldSignConcurrently() throws Exception {
+        HmacSigner signer = HmacSigner.create(HmacSigner.Algorithm.HMAC_SHA512, "Jefe");
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String data = "message " + (i % 10);
+                futures.add(threads.submit(() -> data + ":" + signer.signUtf8(data, HmacSigner.Encoding.HEX)));
+            }
+            for (Future<String> future : futures) {
+                String[] result = future.get(10, TimeUnit.SECONDS).split(":");
+                assertThat(result[1]).isEqualTo(HmacSigner.create(HmacSigner.Algorithm.HMAC_SHA512, "Jefe").signUtf8(result[0], HmacSigner.Encoding.HEX));
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldRejectInvalidBase64Key() {
+        assertThatThrownBy(() -> HmacSigner.createWithBase64Key(HmacSigner.Algorithm.HMAC_SHA256, "not base 64!"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -23,6 +23,7 @@ package si.mazi.rescu;
 
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -30,7 +31,7 @@ import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -54,13 +55,23 @@ public class HttpTemplateTest {
     @Test
     public void testReadInputStreamAsEncodedString() throws Exception {
         HttpTemplate testObject = new HttpTemplate(30000, null, null, null, null, null, null) {
-            @Override String getResponseEncoding(URLConnection connection) { return "UTF-8"; }
-            @Override boolean izGzipped(HttpURLConnection connection) { return false; }
+            @Override String getResponseEncoding(HttpTransportResponse response) { return "UTF-8"; }
+            @Override boolean izGzipped(HttpTransportResponse response) { return false; }
         };
         InputStream inputStream = HttpTemplateTest.class.getResourceAsStream("/example-httpdata.txt");
         assertEquals("Test data", testObject.readInputStreamAsEncodedString(inputStream, null));
     }
 
+    @Test
+    public void shouldKeepLineBreaks() throws Exception {
+        HttpTemplate testObject = new HttpTemplate(30000, null, null, null, null, null, null) {
+            @Override String getResponseEncoding(HttpTransportResponse response) { return "UTF-8"; }
+            @Override boolean izGzipped(HttpTransportResponse response) { return false; }
+        };
+        InputStream inputStream = new ByteArrayInputStream("first line\nsecond line\r\n\nlast".getBytes(StandardCharsets.UTF_8));
+        assertEquals(testObject.readInputStreamAsEncodedString(inputStream, null), "first line\nsecond line\r\n\nlast");
+    }
+
     @Test
     public void testPostWithError() throws Exception {
         final HttpURLConnection mockHttpURLConnection = new MockErrorHttpURLConnection("/error.json");
@@ -83,15 +94,23 @@ public class HttpTemplateTest {
     public static InvocationResult executeRequest(HttpTemplate httpTemplate, String urlString, String requestBody,
                                                   Map<String, String> httpHeaders, HttpMethod method)
             throws IOException {
-        return httpTemplate.receive(httpTemplate.send(urlString, requestBody, httpHeaders, method));
+        byte[] body = requestBody == null ? null : requestBody.getBytes(StandardCharsets.UTF_8);
+        return httpTemplate.receive(httpTemplate.send(urlString, body, httpHeaders, method));
     }
 
     private static class MockHttpTemplate extends HttpTemplate {
 
+        public MockHttpTemplate(HttpURLConnection mockHttpURLConnection) {
+            super(new MockUrlConnectionHttpTransport(mockHttpURLConnection), null);
+        }
+    }
+
+    private static class MockUrlConnectionHttpTransport extends UrlConnectionHttpTransport {
+
         private final HttpURLConnection mockHttpURLConnection;
 
-        public MockHttpTemplate(HttpURLConnection mockHttpURLConnection) {
-            super(30000, null, null, null, null, null, null);
+        public MockUrlConnectionHttpTransport(HttpURLConnection mockHttpURLConnection) {
+            super(0, 30000, null, null, null, null, null);
             this.mockHttpURLConnection = mockHttpURLConnection;
         }
 
@@ -0,0 +1,279 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+import si.mazi.rescu.dto.DummyTicker;
+
+import jakarta.ws.rs.PathParam;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Runs the same requests against a local server with each of the built-in transports.
+ */
+public class HttpTransportTest {
+
+    private LocalHttpServer server;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        server = LocalHttpServer.start();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServer() {
+        server.close();
+    }
+
+    @DataProvider
+    public Object[][] transports() {
+        return new Object[][]{
+                {HttpTransportFactory.URL_CONNECTION},
+                {HttpTransportFactory.JDK_HTTP_CLIENT},
+                {HttpTransportFactory.POOLED}
+        };
+    }
+
+    @Test(dataProvider = "transports")
+    public void testGet(HttpTransportFactory transportFactory) throws Exception {
+        server.on("/ticker", 200, ResourceUtils.getResourceAsString("/example-httpdata.txt"));
+        HttpTemplate httpTemplate = createHttpTemplate(transportFactory);
+
+        InvocationResult result = HttpTemplateTest.executeRequest(httpTemplate, server.getBaseUrl() + "/ticker?pair=btc_usd", null, Collections.singletonMap("X-Test", "yes"), HttpMethod.GET);
+
+        assertThat(result.getStatusCode()).isEqualTo(200);
+        assertThat(result.getHttpBody()).isEqualTo("Test data");
+        assertThat(server.getLastRequest().method).isEqualTo("GET");
+        assertThat(server.getLastRequest().query).isEqualTo("pair=btc_usd");
+        assertThat(server.getLastRequest().getHeader("X-Test")).isEqualTo("yes");
+        assertThat(server.getLastRequest().getHeader("Accept")).isEqualTo("application/json");
+    }
+
+    @Test(dataProvider = "transports")
+    public void testPostWithError(HttpTransportFactory transportFactory) throws Exception {
+        server.on("/accountinfo", 500, ResourceUtils.getResourceAsString("/error.json"));
+        HttpTemplate httpTemplate = createHttpTemplate(transportFactory);
+
+        InvocationResult result = HttpTemplateTest.executeRequest(httpTemplate, server.getBaseUrl() + "/accountinfo", "Example €", Collections.<String, String>emptyMap(), HttpMethod.POST);
+
+        assertThat(result.getStatusCode()).isEqualTo(500);
+        assertThat(result.getHttpBody()).isEqualTo("{\"result\":\"error\",\"error\":\"Order not found\",\"token\":\"unknown_error\"}");
+        assertThat(server.getLastRequest().method).isEqualTo("POST");
+        assertThat(server.getLastRequest().getBodyAsString()).isEqualTo("Example €");
+        assertThat(server.getLastRequest().getHeader("Content-Length")).isEqualTo(String.valueOf("Example €".getBytes(StandardCharsets.UTF_8).length));
+    }
+
+    @Test(dataProvider = "transports")
+    public void testGzippedResponse(HttpTransportFactory transportFactory) throws Exception {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write("Test data".getBytes(StandardCharsets.UTF_8));
+        }
+        server.on("/gzip", LocalHttpServer.respond(200, gzipped.toByteArray(), "Content-Encoding", "gzip"));
+        HttpTemplate httpTemplate = createHttpTemplate(transportFactory);
+
+        InvocationResult result = HttpTemplateTest.executeRequest(httpTemplate, server.getBaseUrl() + "/gzip", null, Collections.<String, String>emptyMap(), HttpMethod.GET);
+
+        assertThat(result.getHttpBody()).isEqualTo("Test data");
+    }
+
+    @Test(dataProvider = "transports")
+    public void testBodyIsNotAltered(HttpTransportFactory transportFactory) throws Exception {
+        String body = "line 1\nline 2\r\n\nžaba\n";
+        server.on("/text", LocalHttpServer.respond(200, body.getBytes(Charset.forName("ISO-8859-2")), "Content-Type", "text/plain; charset=ISO-8859-2"));
+        HttpTemplate httpTemplate = createHttpTemplate(transportFactory);
+
+        InvocationResult result = HttpTemplateTest.executeRequest(httpTemplate, server.getBaseUrl() + "/text", null, Collections.<String, String>emptyMap(), HttpMethod.GET);
+
+        assertThat(result.getHttpBody()).isEqualTo(body);
+    }
+
+    @Test(dataProvider = "transports")
+    public void testJsonResponseWithByteOrderMark(HttpTransportFactory transportFactory) throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(new byte[]{(byte) 0xEF, (byte) 0xBB, (byte) 0xBF});
+        body.write(ResourceUtils.getResourceAsString("/example-ticker.json").getBytes(StandardCharsets.UTF_8));
+        server.on("/api/2/btc_usd/ticker", LocalHttpServer.respond(200, body.toByteArray(), "Content-Type", "application/json"));
+        ExampleService proxy = createProxy(transportFactory);
+
+        assertThat(proxy.getTicker("btc", "usd").getLast()).isEqualTo(12345L);
+    }
+
+    @Test(dataProvider = "transports")
+    public void testJsonResponse(HttpTransportFactory transportFactory) throws Exception {
+        server.on("/api/2/btc_usd/ticker", 200, ResourceUtils.getResourceAsString("/example-ticker.json"), "Content-Type", "application/json");
+        ExampleService proxy = createProxy(transportFactory);
+
+        DummyTicker ticker = proxy.getTicker("btc", "usd");
+
+        assertThat(ticker.getLast()).isEqualTo(12345L);
+        assertThat(ticker.getVolume()).isEqualTo(34567L);
+    }
+
+    @Test(dataProvider = "transports")
+    public void testDeclaredExceptionOnHttpError(HttpTransportFactory transportFactory) throws Exception {
+        server.on("/api/2", 500, ResourceUtils.getResourceAsString("/error.json"));
+        ExampleService proxy = createProxy(transportFactory);
+
+        ExampleException e = ExceptionUtils.catchException(ExampleException.class, () -> proxy.getInfo(1L, 2L));
+
+        assertThat(e.getError()).isEqualTo("Order not found");
+        assertThat(e.getHttpStatusCode()).isEqualTo(500);
+        assertThat(server.getLastRequest().getBodyAsString()).isEqualTo("method=getInfo");
+    }
+
+    @Test(dataProvider = "transports")
+    public void testResponseHeadersAware(HttpTransportFactory transportFactory) throws Exception {
+        server.on("/api/2/resultWithResponseHeaders", 200, "{}", "X-my-header", "My value");
+        ExampleService proxy = createProxy(transportFactory);
+
+        ExampleResponseHeadersAwareResult result = proxy.getResultWithResponseHeaders();
+
+        assertThat(result.getResponseHeaders()).containsEntry("X-my-header", Collections.singletonList("My value"));
+    }
+
+    @Test(dataProvider = "transports")
+    public void testConcurrentCalls(HttpTransportFactory transportFactory) throws Exception {
+        server.on("/api/2/btc_usd/ticker", 200, ResourceUtils.getResourceAsString("/example-ticker.json"));
+        ExampleService proxy = createProxy(transportFactory);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<DummyTicker>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(pool.submit(() -> proxy.getTicker("btc", "usd")));
+            }
+            for (Future<DummyTicker> future : futures) {
+                assertThat(future.get(10, TimeUnit.SECONDS).getLast()).isEqualTo(12345L);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(server.getRequests()).hasSize(50);
+    }
+
+    @Test(dataProvider = "transports")
+    public void testAsyncCallsFromOneThread(HttpTransportFactory transportFactory) throws Exception {
+        server.on("/api/2/btc_usd/ticker", 200, ResourceUtils.getResourceAsString("/example-ticker.json"));
+        server.on("/api/2", 500, ResourceUtils.getResourceAsString("/error.json"));
+        ExampleService proxy = createProxy(transportFactory);
+
+        List<CompletableFuture<DummyTicker>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(proxy.getTickerAsync("btc", "usd"));
+        }
+        for (CompletableFuture<DummyTicker> future : futures) {
+            assertThat(future.get(10, TimeUnit.SECONDS).getVolume()).isEqualTo(34567L);
+        }
+
+        CompletableFuture<DummyTicker> failed = proxy.getInfoAsync(1L);
+        assertThat(catchThrowable(() -> failed.get(10, TimeUnit.SECONDS))).hasCauseInstanceOf(ExampleException.class);
+    }
+
+    @Test(dataProvider = "transports")
+    public void testStreamedArrayResponse(HttpTransportFactory transportFactory) throws Exception {
+        server.on("/api/2/tickers", 200, createTickersJson(1000), "Content-Type", "application/json");
+        ExampleService proxy = createProxy(transportFactory);
+
+        long volume;
+        try (Stream<DummyTicker> tickers = proxy.streamTickers()) {
+            volume = tickers.mapToLong(DummyTicker::getVolume).sum();
+        }
+
+        assertThat(volume).isEqualTo(1000L * 1001 / 2);
+    }
+
+    @Test(dataProvider = "transports")
+    public void testStreamedGzippedArrayResponse(HttpTransportFactory transportFactory) throws Exception {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(createTickersJson(3).getBytes(StandardCharsets.UTF_8));
+        }
+        server.on("/api/2/tickers", LocalHttpServer.respond(200, gzipped.toByteArray(), "Content-Encoding", "gzip"));
+        ExampleService proxy = createProxy(transportFactory);
+
+        List<Long> volumes = new ArrayList<>();
+        try (CloseableIterator<DummyTicker> tickers = proxy.iterateTickers()) {
+            tickers.forEachRemaining(ticker -> volumes.add(ticker.getVolume()));
+            assertThat(tickers.hasNext()).isFalse();
+        }
+
+        assertThat(volumes).containsExactly(1L, 2L, 3L);
+    }
+
+    @Test(dataProvider = "transports")
+    public void testStreamedErrorResponse(HttpTransportFactory transportFactory) throws Exception {
+        server.on("/api/2/tickers", 500, ResourceUtils.getResourceAsString("/error.json"));
+        ExampleService proxy = createProxy(transportFactory);
+
+        ExampleException e = ExceptionUtils.catchException(ExampleException.class, proxy::streamTickers);
+
+        assertThat(e.getError()).isEqualTo("Order not found");
+        assertThat(e.getHttpStatusCode()).isEqualTo(500);
+    }
+
+    @Test(dataProvider = "transports")
+    public void testStreamedObjectResponseIsReadAsException(HttpTransportFactory transportFactory) throws Exception {
+        server.on("/api/2/tickers", 200, ResourceUtils.getResourceAsString("/error.json"));
+        ExampleService proxy = createProxy(transportFactory);
+
+        ExampleException e = ExceptionUtils.catchException(ExampleException.class, proxy::iterateTickers);
+
+        assertThat(e.getError()).isEqualTo("Order not found");
+    }
+
+    @Test
+    public void testAsyncCallsOnVirtualThreads() throws Exception {
+        server.on("/api/2/btc_usd/ticker", 200, ResourceUtils.getResourceAsString("/example-ticker.json"));
+        ClientConfig config = new ClientConfig();
+        config.setExecutionMode(ExecutionMode.VIRTUAL_THREADS); // falls back to platform threads before Java 21
+        config.addDefaultParam(PathParam.class, "version", 2);
+        ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, server.getBaseUrl(), config);
+
+        List<CompletableFuture<DummyTicker>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(proxy.getTickerAsync("btc", "usd"));
+        }
+        for (CompletableFuture<DummyTicker> future : futures) {
+            assertThat(future.get(10, TimeUnit.SECONDS).getLast()).isEqualTo(12345L);
+        }
+    }
+
+    /**
+     * @return a JSON array of tickers with volumes 1 to count
+     */
+    static String createTickersJson(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"last\":\"").append(i + 1).append("\",\"volume\":\"").append(i + 1).append("\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    private HttpTemplate createHttpTemplate(HttpTransportFactory transportFactory) {
+        return new HttpTemplate(transportFactory.createTransport(new ClientConfig()), null);
+    }
+
+    private ExampleService createProxy(HttpTransportFactory transportFactory) {
+        ClientConfig config = new ClientConfig();
+        config.setHttpTransportFactory(transportFactory);
+        config.addDefaultParam(PathParam.class, "version", 2);
+        return RestProxyFactory.createProxy(ExampleService.class, server.getBaseUrl(), config);
+    }
+}
@@ -28,6 +28,7 @@ import org.testng.annotations.Test;
 
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -108,6 +109,29 @@ public class InvocationDigestTest {
         assertThat(restInvocation.getRequestBody()).isEqualTo("_50_"); // https://example.com/api/digestUrlInPlainBody?q1=v1
     }
 
+    @Test
+    public void shouldDigestTheBodyBytesThatAreSent() throws Exception {
+        BodyBytesDigest digest = new BodyBytesDigest();
+        RestInvocation restInvocation = getRestInvocation(
+                "digestBodyBytesInHeader",
+                new Object[]{"Žiga", digest},
+                String.class, BodyBytesDigest.class);
+
+        assertThat(digest.digested).isSameAs(restInvocation.getRequestBodyBytes());
+        assertThat(restInvocation.getRequestBodyBytes()).isEqualTo("Žiga".getBytes(StandardCharsets.UTF_8));
+        assertThat(restInvocation.getHttpHeadersFromParams()).contains(entry("signature", "_5_"));
+    }
+
+    @Test
+    public void shouldNotReuseBodyDigestedBeforeItsOwnDigestWasReplaced() throws Exception {
+        RestInvocation restInvocation = getRestInvocation(
+                "digestBodyInQueryParamAndUrlInPlainBody",
+                new Object[]{new UrlDigest(), new BodyDigest()},
+                UrlDigest.class, BodyDigest.class);
+
+        assertThat(restInvocation.getRequestBody()).isEqualTo(wrapInUnderscores(restInvocation.getInvocationUrl().length()));
+    }
+
     private RestInvocation getRestInvocation(String methodName, Object[] invocationArguments, Class<?>... methodParamTypes) throws NoSuchMethodException {
         return RestInvocation.create(requestWriterResolver,
                 RestMethodMetadata.create(
@@ -130,6 +154,16 @@ public class InvocationDigestTest {
         }
     }
 
+    /** Digests the body bytes by returning their count between underscores. */
+    static class BodyBytesDigest implements ParamsDigest {
+        private byte[] digested;
+
+        @Override public String digestParams(RestInvocation restInvocation) {
+            digested = restInvocation.getRequestBodyBytes();
+            return wrapInUnderscores(digested.length);
+        }
+    }
+
     /** Digests the URL by returning its length between underscores. */
     static class UrlDigest implements ParamsDigest {
         @Override public String digestParams(RestInvocation restInvocation) {
@@ -175,6 +209,24 @@ public class InvocationDigestTest {
                 @HeaderParam("signature") BodyDigest digest
         );
 
+        @POST
+        @Path("digestBodyBytesInHeader")
+        @Produces(MediaType.TEXT_PLAIN)
+        @Consumes(MediaType.TEXT_PLAIN)
+        String digestBodyBytesInHeader(
+                String body,
+                @HeaderParam("signature") BodyBytesDigest digest
+        );
+
+        @POST
+        @Path("digestBodyInQueryParamAndUrlInPlainBody")
+        @Produces(MediaType.TEXT_PLAIN)
+        @Consumes(MediaType.TEXT_PLAIN)
+        String digestBodyInQueryParamAndUrlInPlainBody(
+                UrlDigest body,
+                @QueryParam("signature") BodyDigest digest
+        );
+
         @POST
         @Path("digestBodyInQueryParam")
         @Produces(MediaType.TEXT_PLAIN)
@@ -0,0 +1,155 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LoadBalancerTest {
+
+    private LocalHttpServer primary;
+    private LocalHttpServer backup;
+
+    @BeforeMethod
+    public void startServers() throws Exception {
+        primary = LocalHttpServer.start();
+        backup = LocalHttpServer.start();
+        for (LocalHttpServer server : new LocalHttpServer[]{primary, backup}) {
+            server.on("/balanced/get", 200, "ok from " + port(server), "Content-Type", "text/plain");
+        }
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServers() {
+        primary.close();
+        backup.close();
+    }
+
+    @Test
+    public void shouldFailOverAndEjectTheFailingEndpoint() throws Exception {
+        primary.on("/balanced/get", 503, "unavailable", "Content-Type", "text/plain");
+        LoadBalancer balancer = new LoadBalancer(LoadBalancer.FAILOVER, primary.getBaseUrl(), backup.getBaseUrl());
+        balancer.setEjection(2, 1, 1, TimeUnit.MINUTES);
+        BalancedService proxy = createProxy(balancer, new RetryPolicy());
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(proxy.get()).isEqualTo("ok from " + port(backup));
+        }
+
+        assertThat(primary.getRequests()).hasSize(2);
+        assertThat(backup.getRequests()).hasSize(3);
+        assertThat(balancer.getEndpoints().get(0).isEjected()).isTrue();
+        assertThat(balancer.getEndpoints().get(1).isEjected()).isFalse();
+    }
+
+    @Test
+    public void shouldProbeAnEjectedEndpointBackIn() throws Exception {
+        primary.on("/balanced/get", 503, "unavailable", "Content-Type", "text/plain");
+        LoadBalancer balancer = new LoadBalancer(LoadBalancer.FAILOVER, primary.getBaseUrl(), backup.getBaseUrl());
+        balancer.setEjection(1, 100, 1000, TimeUnit.MILLISECONDS);
+        BalancedService proxy = createProxy(balancer, new RetryPolicy());
+
+        assertThat(proxy.get()).isEqualTo("ok from " + port(backup));
+        assertThat(proxy.get()).isEqualTo("ok from " + port(backup));
+        assertThat(primary.getRequests()).hasSize(1);
+
+        primary.on("/balanced/get", 200, "recovered", "Content-Type", "text/plain");
+        Thread.sleep(150);
+
+        assertThat(proxy.get()).isEqualTo("recovered");
+        assertThat(balancer.getEndpoints().get(0).isEjected()).isFalse();
+        assertThat(proxy.get()).isEqualTo("recovered");
+    }
+
+    @Test
+    public void shouldSignRequestsForTheChosenHost() throws Exception {
+        LoadBalancer balancer = new LoadBalancer(LoadBalancer.LEAST_OUTSTANDING, primary.getBaseUrl(), backup.getBaseUrl());
+        ClientConfig config = new ClientConfig();
+        config.setRequestSigner(request -> RequestSignature.of()
+                .queryParam("signedPort", String.valueOf(URI.create(request.getInvocation().getInvocationUrl()).getPort())));
+        BalancedService proxy = RestProxyFactory.createProxy(BalancedService.class, balancer, config);
+
+        for (int i = 0; i < 20; i++) {
+            proxy.get();
+        }
+
+        assertThat(primary.getRequests()).isNotEmpty();
+        assertThat(backup.getRequests()).isNotEmpty();
+        assertThat(primary.getRequests()).allSatisfy(r -> assertThat(r.query).isEqualTo("signedPort=" + port(primary)));
+        assertThat(backup.getRequests()).allSatisfy(r -> assertThat(r.query).isEqualTo("signedPort=" + port(backup)));
+    }
+
+    @Test
+    public void shouldPreferTheFasterEndpoint() throws Exception {
+        primary.on("/balanced/get", exchange -> {
+            try {
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LocalHttpServer.respond(200, "slow", "Content-Type", "text/plain").handle(exchange);
+        });
+        LoadBalancer balancer = new LoadBalancer(LoadBalancer.LEAST_LATENCY, primary.getBaseUrl(), backup.getBaseUrl());
+        BalancedService proxy = createProxy(balancer, null);
+
+        for (int i = 0; i < 6; i++) {
+            proxy.get();
+        }
+
+        assertThat(primary.getRequests()).hasSize(1);
+        assertThat(backup.getRequests()).hasSize(5);
+        assertThat(balancer.getEndpoints().get(0).getLatency(TimeUnit.MILLISECONDS))
+                .isGreaterThan(balancer.getEndpoints().get(1).getLatency(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void shouldFailOverAsyncCalls() throws Exception {
+        primary.close();
+        LoadBalancer balancer = new LoadBalancer(LoadBalancer.FAILOVER, primary.getBaseUrl(), backup.getBaseUrl());
+        BalancedService proxy = createProxy(balancer, new RetryPolicy());
+
+        assertThat(proxy.getAsync().get(10, TimeUnit.SECONDS)).isEqualTo("ok from " + port(backup));
+        assertThat(backup.getRequests()).hasSize(1);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldRejectDuplicateBaseUrls() {
+        new LoadBalancer(LoadBalancer.FAILOVER, "http://a.example.com", "http://a.example.com");
+    }
+
+    private static BalancedService createProxy(LoadBalancer balancer, RetryPolicy retryPolicy) {
+        ClientConfig config = new ClientConfig();
+        if (retryPolicy != null) {
+            retryPolicy.setBackoff(1, 10, TimeUnit.MILLISECONDS, 2);
+            config.setRetryPolicy(retryPolicy);
+        }
+        return RestProxyFactory.createProxy(BalancedService.class, balancer, config);
+    }
+
+    private static int port(LocalHttpServer server) {
+        return URI.create(server.getBaseUrl()).getPort();
+    }
+
+    @Path("balanced")
+    @Produces(MediaType.TEXT_PLAIN)
+    public interface BalancedService {
+
+        @GET
+        @Path("get")
+        String get() throws IOException;
+
+        @GET
+        @Path("get")
+        CompletableFuture<String> getAsync();
+    }
+}
@@ -0,0 +1,143 @@
+package si.mazi.rescu;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+/**
+ * A minimal HTTP server on localhost, used to test the HTTP transports end-to-end.
+ */
+class LocalHttpServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final Map<String, HttpHandler> handlers = new ConcurrentHashMap<>();
+    private final List<RecordedRequest> requests = new CopyOnWriteArrayList<>();
+
+    private LocalHttpServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "local-http-server");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.createContext("/", this::dispatch);
+        server.start();
+    }
+
+    static LocalHttpServer start() throws IOException {
+        return new LocalHttpServer();
+    }
+
+    String getBaseUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    LocalHttpServer on(String path, HttpHandler handler) {
+        handlers.put(path, handler);
+        return this;
+    }
+
+    LocalHttpServer on(String path, int status, String body, String... headerNameValues) {
+        return on(path, respond(status, body, headerNameValues));
+    }
+
+    List<RecordedRequest> getRequests() {
+        return requests;
+    }
+
+    RecordedRequest getLastRequest() {
+        return requests.isEmpty() ? null : requests.get(requests.size() - 1);
+    }
+
+    static HttpHandler respond(int status, String body, String... headerNameValues) {
+        return respond(status, body == null ? null : body.getBytes(StandardCharsets.UTF_8), headerNameValues);
+    }
+
+    static HttpHandler respond(int status, byte[] body, String... headerNameValues) {
+        return exchange -> {
+            for (int i = 0; i < headerNameValues.length; i += 2) {
+                exchange.getResponseHeaders().add(headerNameValues[i], headerNameValues[i + 1]);
+            }
+            if (body == null || body.length == 0) {
+                exchange.sendResponseHeaders(status, -1);
+            } else {
+                exchange.sendResponseHeaders(status, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        };
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        byte[] body = readFully(exchange.getRequestBody());
+        requests.add(new RecordedRequest(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                exchange.getRequestURI().getRawQuery(), exchange.getRequestHeaders(), body, exchange.getRemoteAddress().getPort()));
+        HttpHandler handler = handlers.get(exchange.getRequestURI().getPath());
+        if (handler == null) {
+            respond(404, "No handler for " + exchange.getRequestURI().getPath()).handle(exchange);
+        } else {
+            handler.handle(exchange);
+        }
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read; (read = in.read(buffer)) != -1; ) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    static class RecordedRequest {
+        final String method;
+        final String path;
+        final String query;
+        final Map<String, List<String>> headers;
+        final byte[] body;
+        /** Identifies the client's connection. */
+        final int clientPort;
+
+        RecordedRequest(String method, String path, String query, Map<String, List<String>> headers, byte[] body, int clientPort) {
+            this.method = method;
+            this.path = path;
+            this.query = query;
+            this.headers = headers;
+            this.body = body;
+            this.clientPort = clientPort;
+        }
+
+        String getHeader(String name) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                    return header.getValue().get(0);
+                }
+            }
+            return null;
+        }
+
+        String getBodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.testng.annotations.Test;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 
 public class ParamsTest  {
@@ -45,4 +46,37 @@ public class ParamsTest  {
         HashMap<String, String> expected = new HashMap<String, String>() {{ put("key", "null"); }};
         Assert.assertEquals(Params.of("key", Collections.<String>singletonList(null)).asHttpHeaders(), expected);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void shouldFormatDatesInUtc() throws Exception {
+        Assert.assertEquals(Params.of().toString(new Date(1_500_000_000_123L)), "2017-07-14T02:40:00Z");
+        Assert.assertEquals(Params.of().toString(new java.sql.Date(1_500_000_000_123L)), "2017-07-14");
+    }
+
+    @Test
+    public void shouldApplyToPath() throws Exception {
+        Params params = Params.of("ident", "btc", "currency", "usd/eur", "id", 123);
+
+        Assert.assertEquals(params.applyToPath("{ident: [a-Z]+}_{currency}/ticker"), "btc_usd%2Feur/ticker");
+        Assert.assertEquals(params.applyToPath("orders/{id: [0-9]{3}}/{id}"), "orders/123/123");
+        Assert.assertEquals(params.applyToPath("{other}/{ident}"), "{other}/btc");
+        Assert.assertEquals(params.applyToPath("no/params/"), "no/params/");
+        Assert.assertEquals(params.applyToPath("unclosed/{ident"), "unclosed/{ident");
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void shouldNotApplyUnsetParamToPath() throws Exception {
+        Params.of("ident", null).applyToPath("{ident}/ticker");
+    }
+
+    @Test
+    public void shouldKeepOrderWhenReplacingAndCopying() throws Exception {
+        Params params = Params.of("a", 1, "b", 2, "c", 3, "d", 4).add("e", 5).add("b", 20);
+        Params copy = params.copy().add("a", 10).add("f", 6);
+
+        Assert.assertEquals(params.asQueryString(), "a=1&b=20&c=3&d=4&e=5");
+        Assert.assertEquals(copy.asQueryString(), "a=10&b=20&c=3&d=4&e=5&f=6");
+        Assert.assertTrue(Params.of().copy().isEmpty());
+        Assert.assertNull(params.getParamValue("f"));
+    }
+}
@@ -0,0 +1,363 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import si.mazi.rescu.dto.DummyTicker;
+
+import jakarta.ws.rs.PathParam;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PooledHttpTransportTest {
+
+    private LocalHttpServer server;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        server = LocalHttpServer.start();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void shouldReuseConnection() throws Exception {
+        server.on("/api/2/btc_usd/ticker", 200, ResourceUtils.getResourceAsString("/example-ticker.json"));
+        ConnectionPool pool = new ConnectionPool();
+        ExampleService proxy = createProxy(pool);
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(proxy.getTicker("btc", "usd").getLast()).isEqualTo(12345L);
+        }
+
+        assertThat(getClientPorts()).hasSize(1);
+        ConnectionPool.Stats stats = pool.getStats();
+        assertThat(stats.getCreated()).isEqualTo(1);
+        assertThat(stats.getLeased()).isEqualTo(0);
+        assertThat(stats.getIdle()).isEqualTo(1);
+        assertThat(pool.getHostStats()).containsOnlyKeys("http://" + server.getBaseUrl().substring("http://".length()));
+    }
+
+    @Test
+    public void shouldReuseConnectionAfterErrorResponse() throws Exception {
+        server.on("/api/2", 500, ResourceUtils.getResourceAsString("/error.json"));
+        ConnectionPool pool = new ConnectionPool();
+        ExampleService proxy = createProxy(pool);
+
+        for (int i = 0; i < 3; i++) {
+            ExampleException e = ExceptionUtils.catchException(ExampleException.class, () -> proxy.getInfo(1L, 2L));
+            assertThat(e.getHttpStatusCode()).isEqualTo(500);
+        }
+
+        assertThat(pool.getStats().getCreated()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotOpenMoreThanMaxConnectionsPerHost() throws Exception {
+        String ticker = ResourceUtils.getResourceAsString("/example-ticker.json");
+        server.on("/api/2/btc_usd/ticker", exchange -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            LocalHttpServer.respond(200, ticker).handle(exchange);
+        });
+        ConnectionPool pool = new ConnectionPool(2, 1, TimeUnit.MINUTES);
+        ExampleService proxy = createProxy(pool);
+
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<DummyTicker>> futures = new ArrayList<>();
+            for (int i = 0; i < 24; i++) {
+                futures.add(threads.submit(() -> proxy.getTicker("btc", "usd")));
+            }
+            for (Future<DummyTicker> future : futures) {
+                assertThat(future.get(10, TimeUnit.SECONDS).getLast()).isEqualTo(12345L);
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        assertThat(server.getRequests()).hasSize(24);
+        assertThat(getClientPorts()).hasSize(2);
+        assertThat(pool.getStats().getCreated()).isEqualTo(2);
+        assertThat(pool.getStats().getLeased()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldEvictIdleConnections() throws Exception {
+        server.on("/ping", 200, "pong");
+        ConnectionPool pool = new ConnectionPool(4, 50, TimeUnit.MILLISECONDS);
+        HttpTemplate httpTemplate = new HttpTemplate(new PooledHttpTransport(new ClientConfig(), pool), null);
+
+        HttpTemplateTest.executeRequest(httpTemplate, server.getBaseUrl() + "/ping", null, Collections.<String, String>emptyMap(), HttpMethod.GET);
+        assertThat(pool.getStats().getIdle()).isEqualTo(1);
+        Thread.sleep(100);
+        pool.evictIdleConnections();
+
+        assertThat(pool.getStats().getIdle()).isEqualTo(0);
+        assertThat(pool.getStats().getEvicted()).isEqualTo(1);
+
+        HttpTemplateTest.executeRequest(httpTemplate, server.getBaseUrl() + "/ping", null, Collections.<String, String>emptyMap(), HttpMethod.GET);
+        assertThat(pool.getStats().getCreated()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotReuseConnectionClosedByServer() throws Exception {
+        server.on("/ping", 200, "pong", "Connection", "close");
+        ConnectionPool pool = new ConnectionPool();
+        HttpTemplate httpTemplate = new HttpTemplate(new PooledHttpTransport(new ClientConfig(), pool), null);
+
+        for (int i = 0; i < 2; i++) {
+            InvocationResult result = HttpTemplateTest.executeRequest(httpTemplate, server.getBaseUrl() + "/ping", null, Collections.<String, String>emptyMap(), HttpMethod.GET);
+            assertThat(result.getHttpBody()).isEqualTo("pong");
+        }
+
+        assertThat(pool.getStats().getCreated()).isEqualTo(2);
+        assertThat(pool.getStats().getIdle()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReadChunkedBody() throws Exception {
+        server.on("/chunked", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = exchange.getResponseBody()) {
+                for (int i = 0; i < 3; i++) {
+                    out.write(("chunk" + i + ";").getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                }
+            }
+            exchange.close();
+        });
+        ConnectionPool pool = new ConnectionPool();
+        HttpTemplate httpTemplate = new HttpTemplate(new PooledHttpTransport(new ClientConfig(), pool), null);
+
+        for (int i = 0; i < 2; i++) {
+            InvocationResult result = HttpTemplateTest.executeRequest(httpTemplate, server.getBaseUrl() + "/chunked", null, Collections.<String, String>emptyMap(), HttpMethod.GET);
+            assertThat(result.getHttpBody()).isEqualTo("chunk0;chunk1;chunk2;");
+        }
+
+        assertThat(pool.getStats().getCreated()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDrainUnreadBodyOnClose() throws Exception {
+        server.on("/ping", 200, "pong");
+        ConnectionPool pool = new ConnectionPool();
+        PooledHttpTransport transport = new PooledHttpTransport(new ClientConfig(), pool);
+
+        for (int i = 0; i < 3; i++) {
+            HttpTransportResponse response = transport.send(HttpMethod.GET, server.getBaseUrl() + "/ping", Collections.<String, String>emptyMap(), null);
+            try (InputStream body = response.getBody()) {
+                assertThat(body.read()).isEqualTo('p');
+            }
+        }
+
+        assertThat(pool.getStats().getCreated()).isEqualTo(1);
+        assertThat(pool.getStats().getLeased()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReleaseConnectionWhenStreamedResponseIsReadOrClosed() throws Exception {
+        server.on("/api/2/tickers", 200, HttpTransportTest.createTickersJson(20_000));
+        ConnectionPool pool = new ConnectionPool();
+        ExampleService proxy = createProxy(pool);
+
+        try (CloseableIterator<DummyTicker> tickers = proxy.iterateTickers()) {
+            assertThat(tickers.next().getVolume()).isEqualTo(1L);
+            assertThat(pool.getStats().getLeased()).isEqualTo(1);
+        }
+        assertThat(pool.getStats().getLeased()).isEqualTo(0);
+
+        try (Stream<DummyTicker> tickers = proxy.streamTickers()) {
+            assertThat(tickers.count()).isEqualTo(20_000);
+        }
+        try (Stream<DummyTicker> tickers = proxy.streamTickers()) {
+            assertThat(tickers.count()).isEqualTo(20_000);
+        }
+        // The body that was cut off is too long to drain, so its connection was closed; the ones read to the end are reused.
+        assertThat(pool.getStats().getCreated()).isEqualTo(2);
+        assertThat(pool.getStats().getLeased()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldWarmUpConnections() throws Exception {
+        server.on("/ping", 200, "pong");
+        ConnectionPool pool = new ConnectionPool(2, 1, TimeUnit.MINUTES);
+        PooledHttpTransport transport = new PooledHttpTransport(new ClientConfig(), pool);
+
+        transport.warmUp(server.getBaseUrl(), 3);
+
+        assertThat(pool.getStats().getCreated()).isEqualTo(2);
+        assertThat(pool.getStats().getIdle()).isEqualTo(2);
+        assertThat(server.getRequests()).isEmpty();
+    }
+
+    @Test
+    public void shouldRetryOnNewConnectionIfPooledOneWasClosed() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Thread serverThread = new Thread(() -> {
+                // Answers one request per connection, then closes it without saying so.
+                try {
+                    while (true) {
+                        try (Socket socket = serverSocket.accept()) {
+                            InputStream in = socket.getInputStream();
+                            for (String line; (line = HttpStreams.readLine(in)) != null && !line.isEmpty(); ) {
+                            }
+                            socket.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes(StandardCharsets.ISO_8859_1));
+                        }
+                    }
+                } catch (Exception ignore) {
+                }
+            });
+            serverThread.setDaemon(true);
+            serverThread.start();
+            ConnectionPool pool = new ConnectionPool();
+            HttpTemplate httpTemplate = new HttpTemplate(new PooledHttpTransport(new ClientConfig(), pool), null);
+            String url = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "/";
+
+            for (int i = 0; i < 2; i++) {
+                InvocationResult result = HttpTemplateTest.executeRequest(httpTemplate, url, null, Collections.<String, String>emptyMap(), HttpMethod.GET);
+                assertThat(result.getHttpBody()).isEqualTo("ok");
+            }
+
+            assertThat(pool.getStats().getCreated()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    public void shouldRetryOnNewConnectionIfAllPooledOnesWereClosed() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            List<Socket> accepted = new CopyOnWriteArrayList<>();
+            Thread serverThread = new Thread(() -> {
+                // Answers every request on every connection until the connection is closed below.
+                try {
+                    while (true) {
+                        Socket socket = serverSocket.accept();
+                        accepted.add(socket);
+                        Thread connectionThread = new Thread(() -> {
+                            try {
+                                InputStream in = socket.getInputStream();
+                                while (HttpStreams.readLine(in) != null) {
+                                    for (String line; (line = HttpStreams.readLine(in)) != null && !line.isEmpty(); ) {
+                                    }
+                                    socket.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes(StandardCharsets.ISO_8859_1));
+                                }
+                            } catch (Exception ignore) {
+                            }
+                        });
+                        connectionThread.setDaemon(true);
+                        connectionThread.start();
+                    }
+                } catch (Exception ignore) {
+                }
+            });
+            serverThread.setDaemon(true);
+            serverThread.start();
+            ConnectionPool pool = new ConnectionPool();
+            PooledHttpTransport transport = new PooledHttpTransport(new ClientConfig(), pool);
+            HttpTemplate httpTemplate = new HttpTemplate(transport, null);
+            String url = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "/";
+            transport.warmUp(url, 3);
+            assertThat(pool.getStats().getIdle()).isEqualTo(3);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (accepted.size() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+
+            // Like a server restart: all the pooled connections are dead.
+            for (Socket socket : accepted) {
+                socket.close();
+            }
+            InvocationResult result = HttpTemplateTest.executeRequest(httpTemplate, url, null, Collections.<String, String>emptyMap(), HttpMethod.GET);
+
+            assertThat(result.getHttpBody()).isEqualTo("ok");
+            assertThat(pool.getStats().getCreated()).isEqualTo(4);
+        }
+    }
+
+    @Test
+    public void shouldNotResendPostIfConnectionIsClosedAfterItWasWritten() throws Exception {
+        try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            AtomicInteger posts = new AtomicInteger();
+            Thread serverThread = new Thread(() -> {
+                // Answers the first request on each connection; reads the second one, then closes the connection.
+                try {
+                    while (true) {
+                        try (Socket socket = serverSocket.accept()) {
+                            InputStream in = socket.getInputStream();
+                            for (int i = 0; i < 2; i++) {
+                                String requestLine = HttpStreams.readLine(in);
+                                int contentLength = 0;
+                                for (String line; (line = HttpStreams.readLine(in)) != null && !line.isEmpty(); ) {
+                                    if (line.toLowerCase().startsWith("content-length:")) {
+                                        contentLength = Integer.parseInt(line.substring("content-length:".length()).trim());
+                                    }
+                                }
+                                for (int j = 0; j < contentLength; j++) {
+                                    in.read();
+                                }
+                                if (requestLine != null && requestLine.startsWith("POST")) {
+                                    posts.incrementAndGet();
+                                }
+                                if (i == 0) {
+                                    socket.getOutputStream().write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes(StandardCharsets.ISO_8859_1));
+                                }
+                            }
+                        }
+                    }
+                } catch (Exception ignore) {
+                }
+            });
+            serverThread.setDaemon(true);
+            serverThread.start();
+            ConnectionPool pool = new ConnectionPool();
+            HttpTemplate httpTemplate = new HttpTemplate(new PooledHttpTransport(new ClientConfig(), pool), null);
+            String url = "http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + serverSocket.getLocalPort() + "/";
+
+            InvocationResult result = HttpTemplateTest.executeRequest(httpTemplate, url, null, Collections.<String, String>emptyMap(), HttpMethod.GET);
+            assertThat(result.getHttpBody()).isEqualTo("ok");
+
+            ExceptionUtils.catchException(IOException.class,
+                    () -> HttpTemplateTest.executeRequest(httpTemplate, url, "order", Collections.<String, String>emptyMap(), HttpMethod.POST));
+
+            assertThat(posts.get()).isEqualTo(1);
+            assertThat(pool.getStats().getCreated()).isEqualTo(1);
+        }
+    }
+
+    private Set<Integer> getClientPorts() {
+        return server.getRequests().stream().map(request -> request.clientPort).collect(Collectors.toSet());
+    }
+
+    private ExampleService createProxy(ConnectionPool pool) {
+        ClientConfig config = new ClientConfig();
+        config.setHttpTransportFactory(HttpTransportFactory.pooled(pool));
+        config.addDefaultParam(PathParam.class, "version", 2);
+        return RestProxyFactory.createProxy(ExampleService.class, server.getBaseUrl(), config);
+    }
+}
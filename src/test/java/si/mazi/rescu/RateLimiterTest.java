@@ -0,0 +1,182 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class RateLimiterTest {
+
+    private LocalHttpServer server;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        server = LocalHttpServer.start();
+        server.on("/limited/a", 200, "a", "Content-Type", "text/plain");
+        server.on("/limited/b", 200, "b", "Content-Type", "text/plain");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void shouldGrantBurstThenMakeCallersWait() {
+        TokenBucket bucket = new TokenBucket("test", 3, 1, TimeUnit.HOURS);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(bucket.tryReserve(1, 0)).isEqualTo(0);
+        }
+        assertThat(bucket.tryReserve(1, 0)).isEqualTo(-1);
+        assertThat(bucket.tryReserve(1, Long.MAX_VALUE)).isBetween(TimeUnit.MINUTES.toNanos(19), TimeUnit.MINUTES.toNanos(20));
+        assertThat(bucket.getAvailablePermits()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldFailFastWhenInterfaceLimitIsExhausted() throws Exception {
+        LimitedService proxy = createProxy(new RateLimiter(0, TimeUnit.SECONDS));
+
+        proxy.getA();
+        proxy.getB();
+        Throwable failure = catchThrowable(proxy::getA);
+
+        assertThat(failure).isInstanceOf(RateLimitExceededException.class);
+        assertThat(((RateLimitExceededException) failure).getBucket()).isEqualTo(LimitedService.class.getName());
+        assertThat(server.getRequests()).hasSize(2);
+    }
+
+    @Test
+    public void shouldTakeMethodWeight() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(0, TimeUnit.SECONDS);
+        LimitedService proxy = createProxy(rateLimiter);
+
+        proxy.getHeavy();
+
+        assertThat(rateLimiter.getAvailablePermits(LimitedService.class.getName())).isEqualTo(1);
+        assertThat(catchThrowable(proxy::getHeavy)).isInstanceOf(RateLimitExceededException.class);
+    }
+
+    @Test
+    public void shouldShareNamedBucketBetweenProxies() throws Exception {
+        RateLimiter rateLimiter = new RateLimiter(0, TimeUnit.SECONDS);
+        LimitedService first = createProxy(rateLimiter);
+        LimitedService second = createProxy(rateLimiter);
+
+        first.getShared();
+        assertThat(catchThrowable(second::getShared)).isInstanceOf(RateLimitExceededException.class);
+        assertThat(rateLimiter.getAvailablePermits("shared")).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldWaitForPermits() throws Exception {
+        ClientConfig config = new ClientConfig();
+        config.setRateLimiter(new RateLimiter().defineBucket(RateLimiter.DEFAULT_BUCKET, 2, 200, TimeUnit.MILLISECONDS));
+        UnlimitedService proxy = RestProxyFactory.createProxy(UnlimitedService.class, server.getBaseUrl(), config);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            assertThat(proxy.getA()).isEqualTo("a");
+        }
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(180));
+    }
+
+    @Test
+    public void shouldCompleteAsyncCallWhenPermitIsGranted() throws Exception {
+        ClientConfig config = new ClientConfig();
+        config.setRateLimiter(new RateLimiter().defineBucket(RateLimiter.DEFAULT_BUCKET, 1, 300, TimeUnit.MILLISECONDS));
+        UnlimitedService proxy = RestProxyFactory.createProxy(UnlimitedService.class, server.getBaseUrl(), config);
+
+        assertThat(proxy.getAAsync().get(10, TimeUnit.SECONDS)).isEqualTo("a");
+        CompletableFuture<String> delayed = proxy.getAAsync();
+
+        assertThat(delayed).isNotDone();
+        assertThat(server.getRequests()).hasSize(1);
+        assertThat(delayed.get(10, TimeUnit.SECONDS)).isEqualTo("a");
+        assertThat(server.getRequests()).hasSize(2);
+    }
+
+    @Test
+    public void shouldFailAsyncCallFastWithoutSending() throws Exception {
+        ClientConfig config = new ClientConfig();
+        config.setRateLimiter(new RateLimiter(0, TimeUnit.SECONDS).defineBucket(RateLimiter.DEFAULT_BUCKET, 1, 1, TimeUnit.HOURS));
+        UnlimitedService proxy = RestProxyFactory.createProxy(UnlimitedService.class, server.getBaseUrl(), config);
+
+        proxy.getAAsync().get(10, TimeUnit.SECONDS);
+        Throwable failure = catchThrowable(() -> proxy.getAAsync().get(10, TimeUnit.SECONDS));
+
+        assertThat(failure).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(RateLimitExceededException.class);
+        assertThat(server.getRequests()).hasSize(1);
+    }
+
+    @Test
+    public void shouldRejectUndefinedBucket() {
+        Throwable failure = catchThrowable(() -> RestProxyFactory.createProxy(MisconfiguredService.class, server.getBaseUrl()));
+
+        assertThat(failure).isInstanceOf(IllegalArgumentException.class).hasMessageContaining("orders");
+    }
+
+    private LimitedService createProxy(RateLimiter rateLimiter) {
+        ClientConfig config = new ClientConfig();
+        config.setRateLimiter(rateLimiter);
+        return RestProxyFactory.createProxy(LimitedService.class, server.getBaseUrl(), config);
+    }
+
+    @Path("limited")
+    @Produces(MediaType.TEXT_PLAIN)
+    @RateLimit(permits = 2, period = 1, unit = TimeUnit.HOURS)
+    public interface LimitedService {
+        @GET
+        @Path("a")
+        String getA() throws IOException;
+
+        @GET
+        @Path("b")
+        String getB() throws IOException;
+
+        @GET
+        @Path("a")
+        @RateLimit(weight = 1)
+        @RateLimit(bucket = "heavy", permits = 3, period = 1, unit = TimeUnit.HOURS, weight = 3)
+        String getHeavy() throws IOException;
+
+        @GET
+        @Path("b")
+        @RateLimit(weight = 0)
+        @RateLimit(bucket = "shared", permits = 1, period = 1, unit = TimeUnit.HOURS)
+        String getShared() throws IOException;
+    }
+
+    @Path("limited")
+    @Produces(MediaType.TEXT_PLAIN)
+    public interface UnlimitedService {
+        @GET
+        @Path("a")
+        String getA() throws IOException;
+
+        @GET
+        @Path("a")
+        CompletableFuture<String> getAAsync();
+    }
+
+    @Path("limited")
+    @Produces(MediaType.TEXT_PLAIN)
+    public interface MisconfiguredService {
+        @GET
+        @Path("a")
+        @RateLimit(bucket = "orders")
+        String getA() throws IOException;
+    }
+}
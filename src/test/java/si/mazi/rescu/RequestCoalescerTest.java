@@ -0,0 +1,140 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import si.mazi.rescu.dto.DummyTicker;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import jakarta.ws.rs.QueryParam;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class RequestCoalescerTest {
+
+    private static final int CALLERS = 10;
+
+    private LocalHttpServer server;
+    private CountDownLatch release;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        CountDownLatch release = this.release = new CountDownLatch(1);
+        server = LocalHttpServer.start();
+        server.on("/api/2/btc_usd/ticker", exchange -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            LocalHttpServer.respond(200, ResourceUtils.getResourceAsString("/example-ticker.json")).handle(exchange);
+        });
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServer() {
+        release.countDown();
+        server.close();
+    }
+
+    @Test
+    public void shouldShareOneRequestBetweenConcurrentCalls() throws Exception {
+        ClientConfig config = createConfig();
+        ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, server.getBaseUrl(), config);
+
+        Queue<DummyTicker> results = new ConcurrentLinkedQueue<>();
+        List<Thread> callers = startCallers(() -> results.add(proxy.getTicker("btc", "usd")));
+        // All but the caller that sends the request are waiting for its response.
+        awaitUntil(() -> server.getRequests().size() == 1
+                && callers.stream().filter(t -> t.getState() == Thread.State.WAITING).count() >= CALLERS - 1);
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join(10_000);
+        }
+
+        assertThat(server.getRequests()).hasSize(1);
+        assertThat(results).hasSize(CALLERS).allMatch(ticker -> ticker.getLast() == 12345L);
+        assertThat(results.stream().distinct()).hasSize(CALLERS);
+    }
+
+    @Test
+    public void shouldNotShareRequestsWithGeneratedValues() throws Exception {
+        ClientConfig config = createConfig();
+        config.addDefaultParam(QueryParam.class, "nonce", new LongValueFactory());
+        ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, server.getBaseUrl(), config);
+
+        List<Thread> callers = startCallers(() -> proxy.getTicker("btc", "usd"));
+        awaitUntil(() -> server.getRequests().size() == CALLERS);
+        release.countDown();
+        for (Thread caller : callers) {
+            caller.join(10_000);
+        }
+
+        assertThat(server.getRequests()).hasSize(CALLERS);
+    }
+
+    @Test
+    public void shouldNotWaitForSharedRequestPastTheDeadline() throws Exception {
+        ClientConfig config = createConfig();
+        TickerService proxy = RestProxyFactory.createProxy(TickerService.class, server.getBaseUrl(), config);
+
+        Thread sender = new Thread(() -> {
+            try {
+                proxy.getTicker(null);
+            } catch (IOException ignore) {
+            }
+        });
+        sender.start();
+        awaitUntil(() -> server.getRequests().size() == 1);
+        Throwable failure = catchThrowable(() -> proxy.getTicker(Deadline.after(200, TimeUnit.MILLISECONDS)));
+        release.countDown();
+        sender.join(10_000);
+
+        assertThat(failure).isInstanceOf(DeadlineExceededException.class);
+        assertThat(server.getRequests()).hasSize(1);
+    }
+
+    private ClientConfig createConfig() {
+        ClientConfig config = new ClientConfig();
+        config.setCoalesceRequests(true);
+        config.addDefaultParam(PathParam.class, "version", 2);
+        return config;
+    }
+
+    private static List<Thread> startCallers(Runnable call) {
+        List<Thread> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            Thread caller = new Thread(call);
+            caller.start();
+            callers.add(caller);
+        }
+        return callers;
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime() - deadline).as("timed out").isNegative();
+            Thread.sleep(5);
+        }
+    }
+
+    @Path("api/2")
+    public interface TickerService {
+
+        @GET
+        @Path("btc_usd/ticker")
+        DummyTicker getTicker(Deadline deadline) throws IOException;
+    }
+}
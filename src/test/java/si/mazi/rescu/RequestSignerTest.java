@@ -0,0 +1,76 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.Test;
+import si.mazi.rescu.dto.DummyAccountInfo;
+
+import jakarta.ws.rs.PathParam;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RequestSignerTest {
+
+    private static final String BODY = "{\"username\":\"mm\",\"currency\":\"USD\",\"amount_int\":3}";
+
+    @Test
+    public void shouldSignCanonicalRequest() throws Exception {
+        ClientConfig config = new ClientConfig();
+        config.addDefaultParam(PathParam.class, "version", 2);
+        TestRestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, config, null, 200, "https://example.com/base");
+        ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, testHandler);
+        List<CanonicalRequest> signed = new ArrayList<>();
+        HmacSigner hmac = HmacSigner.create(HmacSigner.Algorithm.HMAC_SHA256, "secret");
+
+        proxy.signed("42", "2", "1", new DummyAccountInfo("mm", "USD", 3), request -> {
+            signed.add(request);
+            return RequestSignature.of()
+                    .header("X-SIGN", hmac.sign(HmacSigner.Encoding.HEX, CanonicalRequest.utf8(request.getMethod() + request.getPathAndQuery()), request.getBody()))
+                    .queryParam("signature", "s");
+        });
+
+        CanonicalRequest request = signed.get(0);
+        assertThat(request.getMethod()).isEqualTo("POST");
+        assertThat(request.getUrlPath()).isEqualTo("/base/api/2/signed/42");
+        assertThat(request.getQueryString()).isEqualTo("b=2&a=1");
+        assertThat(request.getSortedQueryString()).isEqualTo("a=1&b=2");
+        assertThat(request.getPathAndQuery()).isEqualTo("/base/api/2/signed/42?b=2&a=1");
+        assertThat(request.getHeader("content-type")).isEqualTo("application/json");
+
+        RestInvocation invocation = testHandler.getInvocation();
+        assertThat(invocation.getRequestBody()).isEqualTo(BODY);
+        assertThat(invocation.getRequestBodyBytes()).isSameAs(request.getBody());
+        assertThat(invocation.getHttpHeaders()).containsEntry("X-SIGN",
+                hmac.sign(("POST/base/api/2/signed/42?b=2&a=1" + BODY).getBytes(StandardCharsets.UTF_8), HmacSigner.Encoding.HEX));
+        assertThat(invocation.getInvocationUrl()).isEqualTo("https://example.com/base/api/2/signed/42?b=2&a=1&signature=s");
+    }
+
+    @Test
+    public void shouldSignWithConfiguredSigner() throws Exception {
+        ClientConfig config = new ClientConfig();
+        config.addDefaultParam(PathParam.class, "version", 2);
+        config.setRequestSigner(request -> RequestSignature.of().header("X-PATH", request.getUrlPath()));
+        TestRestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, config, null, 200);
+        ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, testHandler);
+
+        proxy.removeEntity("x");
+        assertThat(testHandler.getInvocation().getHttpHeaders()).containsEntry("X-PATH", "/api/2/entity/x/remove");
+
+        proxy.signed("42", null, null, new DummyAccountInfo("mm", "USD", 3), request -> null);
+        assertThat(testHandler.getInvocation().getHttpHeaders()).doesNotContainKey("X-PATH");
+        assertThat(testHandler.getInvocation().getInvocationUrl()).isEqualTo("https://example.com/api/2/signed/42");
+    }
+
+    @Test
+    public void shouldAppendSignatureQueryParamThatWasAlreadySet() throws Exception {
+        ClientConfig config = new ClientConfig();
+        config.addDefaultParam(PathParam.class, "version", 2);
+        TestRestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, config, null, 200);
+        ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, testHandler);
+
+        proxy.signed("42", "2", "1", new DummyAccountInfo("mm", "USD", 3), request -> RequestSignature.of().queryParam("b", "s"));
+
+        assertThat(testHandler.getInvocation().getInvocationUrl()).isEqualTo("https://example.com/api/2/signed/42?a=1&b=s");
+    }
+}
@@ -0,0 +1,223 @@
+package si.mazi.rescu;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+import si.mazi.rescu.dto.DummyTicker;
+
+import jakarta.ws.rs.HeaderParam;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.PathParam;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ResponseCacheTest {
+
+    private static final String TICKER = "{\"last\":\"1\",\"volume\":\"2\"}";
+
+    private LocalHttpServer server;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        server = LocalHttpServer.start();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void shouldServeFreshResponseFromCache() throws Exception {
+        server.on("/api/2/cached/a", 200, TICKER, "Cache-Control", "public, max-age=60");
+        ResponseCache cache = new ResponseCache(10);
+        ExampleService proxy = createProxy(cache);
+
+        DummyTicker first = proxy.getCached("a");
+        DummyTicker second = proxy.getCached("a");
+
+        assertThat(first.getVolume()).isEqualTo(2L);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getVolume()).isEqualTo(2L);
+        assertThat(server.getRequests()).hasSize(1);
+        assertThat(cache.getStats().getHits()).isEqualTo(1);
+        assertThat(cache.getStats().getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRevalidateWithEtag() throws Exception {
+        server.on("/api/2/cached/a", exchange -> {
+            if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] body = TICKER.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+            exchange.close();
+        });
+        ResponseCache cache = new ResponseCache(10);
+        ExampleService proxy = createProxy(cache);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(proxy.getCached("a").getLast()).isEqualTo(1L);
+        }
+
+        assertThat(server.getRequests()).hasSize(3);
+        assertThat(server.getRequests().get(0).getHeader("If-None-Match")).isNull();
+        assertThat(server.getLastRequest().getHeader("If-None-Match")).isEqualTo("\"v1\"");
+        assertThat(cache.getStats().getRevalidations()).isEqualTo(2);
+        assertThat(cache.getStats().getMisses()).isEqualTo(1);
+        assertThat(cache.getStats().getHits()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldUseAnnotatedMaxAgeIfResponseHasNone() throws Exception {
+        server.on("/api/2/cached/a", 200, TICKER);
+        server.on("/api/2/cached/b", 200, TICKER);
+        ResponseCache cache = new ResponseCache(10);
+        ExampleService proxy = createProxy(cache);
+
+        proxy.getCachedWithTtl("a");
+        proxy.getCachedWithTtl("a");
+        proxy.getCached("b");
+        proxy.getCached("b");
+
+        // getCached has no max-age and there's nothing to revalidate with, so it's not served from the cache.
+        assertThat(server.getRequests()).hasSize(3);
+        assertThat(cache.getStats().getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotStoreNoStoreResponses() throws Exception {
+        server.on("/api/2/cached/a", 200, TICKER, "Cache-Control", "no-store", "ETag", "\"v1\"");
+        ResponseCache cache = new ResponseCache(10);
+        ExampleService proxy = createProxy(cache);
+
+        proxy.getCachedWithTtl("a");
+        proxy.getCachedWithTtl("a");
+
+        assertThat(server.getRequests()).hasSize(2);
+        assertThat(server.getLastRequest().getHeader("If-None-Match")).isNull();
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotCacheMethodsWithoutAnnotation() throws Exception {
+        server.on("/api/2/btc_usd/ticker", 200, TICKER, "Cache-Control", "max-age=60");
+        ResponseCache cache = new ResponseCache(10);
+        ExampleService proxy = createProxy(cache);
+
+        proxy.getTicker("btc", "usd");
+        proxy.getTicker("btc", "usd");
+
+        assertThat(server.getRequests()).hasSize(2);
+        assertThat(cache.getStats().getMisses()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldEvictLeastRecentlyUsed() throws Exception {
+        for (String id : new String[]{"a", "b", "c"}) {
+            server.on("/api/2/cached/" + id, 200, TICKER, "Cache-Control", "max-age=60");
+        }
+        ResponseCache cache = new ResponseCache(2);
+        ExampleService proxy = createProxy(cache);
+
+        proxy.getCached("a");
+        proxy.getCached("b");
+        proxy.getCached("a");
+        proxy.getCached("c"); // evicts b
+        proxy.getCached("a");
+        proxy.getCached("b");
+
+        assertThat(server.getRequests()).extracting(request -> request.path)
+                .containsExactly("/api/2/cached/a", "/api/2/cached/b", "/api/2/cached/c", "/api/2/cached/b");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getStats().getEvictions()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldNotShareResponsesBetweenDifferentRequestHeaders() throws Exception {
+        server.on("/api/2/cached/a", 200, TICKER, "Cache-Control", "max-age=60");
+        ResponseCache cache = new ResponseCache(10);
+        ExampleService alice = createProxy(cache, "alice");
+        ExampleService bob = createProxy(cache, "bob");
+
+        alice.getCached("a");
+        bob.getCached("a");
+        alice.getCached("a");
+
+        assertThat(server.getRequests()).extracting(request -> request.getHeader("X-API-KEY")).containsExactly("alice", "bob");
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getStats().getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotStorePrivateOrVaryingResponses() throws Exception {
+        server.on("/api/2/cached/a", 200, TICKER, "Cache-Control", "private, max-age=60");
+        server.on("/api/2/cached/b", 200, TICKER, "Cache-Control", "max-age=60", "Vary", "*");
+        ResponseCache cache = new ResponseCache(10);
+        ExampleService proxy = createProxy(cache);
+
+        proxy.getCached("a");
+        proxy.getCached("a");
+        proxy.getCached("b");
+        proxy.getCached("b");
+
+        assertThat(server.getRequests()).hasSize(4);
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldNotCacheCallsWithGeneratedValues() throws Exception {
+        server.on("/api/2/cached/a", 200, TICKER, "Cache-Control", "max-age=60");
+        ResponseCache cache = new ResponseCache(10);
+        ClientConfig config = createConfig(cache);
+        config.addDefaultParam(HeaderParam.class, "X-NONCE", new LongValueFactory());
+        ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, server.getBaseUrl(), config);
+
+        proxy.getCached("a");
+        proxy.getCached("a");
+
+        assertThat(server.getRequests()).hasSize(2);
+        assertThat(cache.getStats().getMisses()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldRejectCacheableNonGetMethod() {
+        assertThat(ExceptionUtils.catchException(IllegalArgumentException.class,
+                () -> RestProxyFactory.createProxy(CacheablePostService.class, server.getBaseUrl())))
+                .hasMessageContaining("Only GET methods");
+    }
+
+    private ExampleService createProxy(ResponseCache cache) {
+        return RestProxyFactory.createProxy(ExampleService.class, server.getBaseUrl(), createConfig(cache));
+    }
+
+    private ExampleService createProxy(ResponseCache cache, String apiKey) {
+        ClientConfig config = createConfig(cache);
+        config.addDefaultParam(HeaderParam.class, "X-API-KEY", apiKey);
+        return RestProxyFactory.createProxy(ExampleService.class, server.getBaseUrl(), config);
+    }
+
+    private static ClientConfig createConfig(ResponseCache cache) {
+        ClientConfig config = new ClientConfig();
+        config.setResponseCache(cache);
+        config.addDefaultParam(PathParam.class, "version", 2);
+        return config;
+    }
+
+    @Path("api")
+    public interface CacheablePostService {
+        @POST
+        @Cacheable
+        Object post();
+    }
+}
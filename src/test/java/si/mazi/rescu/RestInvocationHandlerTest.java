@@ -44,9 +44,9 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
-import java.net.HttpURLConnection;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.catchThrowable;
@@ -218,6 +218,34 @@ public class RestInvocationHandlerTest {
         assertThat(generic.getResult()[1].getVolume()).isEqualTo(8910);
     }
 
+    @Test
+    public void testAsyncJsonResponse() throws Exception {
+        TestRestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, new ClientConfig(),
+                ResourceUtils.getResourceAsString("/example-ticker.json"), 200);
+        ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, testHandler);
+
+        CompletableFuture<DummyTicker> future = proxy.getTickerAsync("BTC", "USD");
+
+        assertThat(future.get(5, TimeUnit.SECONDS).getLast()).isEqualTo(12345L);
+        assertThat(testHandler.getInvocation().getMethodMetadata().isAsync()).isTrue();
+        assertThat(testHandler.getInvocation().getMethodMetadata().getReturnType()).isEqualTo(DummyTicker.class);
+        assertThat(testHandler.getInvocation().getPath()).isEqualTo("api/{version}/BTC_USD/ticker");
+    }
+
+    @Test
+    public void testAsyncDeclaredException() throws Exception {
+        TestRestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, new ClientConfig(),
+                ResourceUtils.getResourceAsString("/error.json"), 500);
+        ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, testHandler);
+
+        CompletableFuture<DummyTicker> future = proxy.getInfoAsync(3L);
+
+        assertThat(catchThrowable(() -> future.get(5, TimeUnit.SECONDS)))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(ExampleException.class);
+        assertThat(testHandler.getInvocation().getRequestBody()).isEqualTo("from=3&method=getInfoAsync");
+    }
+
     @Test
     public void testGetTextPlain() throws Exception {
         ClientConfig clientConfig = new ClientConfig();
@@ -384,11 +412,11 @@ public class RestInvocationHandlerTest {
         mockHeaders.put("X-my-header", Collections.singletonList("My value"));
         TestRestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, new ClientConfig(), "{}", 500) {
             @Override
-            protected HttpURLConnection invokeHttp(RestInvocation invocation) {
+            protected HttpTransportResponse invokeHttp(RestInvocation invocation) throws IOException {
                 super.invokeHttp(invocation);
-                HttpURLConnection mockConnection = Mockito.mock(HttpURLConnection.class);
-                Mockito.when(mockConnection.getHeaderFields()).thenReturn(mockHeaders);
-                return mockConnection;
+                HttpTransportResponse mockResponse = Mockito.mock(HttpTransportResponse.class);
+                Mockito.when(mockResponse.getHeaderFields()).thenReturn(mockHeaders);
+                return mockResponse;
             }
         };
         ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, testHandler);
@@ -406,11 +434,11 @@ public class RestInvocationHandlerTest {
         mockHeaders.put("X-my-header", Collections.singletonList("My value"));
         TestRestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, new ClientConfig(), "{}", 500) {
             @Override
-            protected HttpURLConnection invokeHttp(RestInvocation invocation) {
+            protected HttpTransportResponse invokeHttp(RestInvocation invocation) throws IOException {
                 super.invokeHttp(invocation);
-                HttpURLConnection mockConnection = Mockito.mock(HttpURLConnection.class);
-                Mockito.when(mockConnection.getHeaderFields()).thenReturn(mockHeaders);
-                return mockConnection;
+                HttpTransportResponse mockResponse = Mockito.mock(HttpTransportResponse.class);
+                Mockito.when(mockResponse.getHeaderFields()).thenReturn(mockHeaders);
+                return mockResponse;
             }
         };
         ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, testHandler);
@@ -428,11 +456,11 @@ public class RestInvocationHandlerTest {
         mockHeaders.put("X-my-header-1", Collections.singletonList("My value for result"));
         TestRestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, new ClientConfig(), "{}", 200) {
             @Override
-            protected HttpURLConnection invokeHttp(RestInvocation invocation) {
+            protected HttpTransportResponse invokeHttp(RestInvocation invocation) throws IOException {
                 super.invokeHttp(invocation);
-                HttpURLConnection mockConnection = Mockito.mock(HttpURLConnection.class);
-                Mockito.when(mockConnection.getHeaderFields()).thenReturn(mockHeaders);
-                return mockConnection;
+                HttpTransportResponse mockResponse = Mockito.mock(HttpTransportResponse.class);
+                Mockito.when(mockResponse.getHeaderFields()).thenReturn(mockHeaders);
+                return mockResponse;
             }
         };
         ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, testHandler);
@@ -505,6 +533,101 @@ public class RestInvocationHandlerTest {
         }
     }
 
+    @Test
+    public void shouldSendValueFactoryValuesInOrder() throws Exception {
+        final List<Long> sentNonces = Collections.synchronizedList(new ArrayList<Long>());
+        final RestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, new ClientConfig(), "{}", 200) {
+            @Override
+            protected HttpTransportResponse invokeHttp(RestInvocation invocation) throws IOException {
+                Long nonce = (Long) invocation.getParamValue(FormParam.class, "nonce");
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                sentNonces.add(nonce);
+                return super.invokeHttp(invocation);
+            }
+        };
+        final ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, testHandler);
+        final SynchronizedValueFactory<Long> vf = new LongValueFactory();
+
+        final ExecutorService threadPool = Executors.newFixedThreadPool(5);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(threadPool.submit(() -> proxy.getNonce(vf)));
+            }
+            for (Future<?> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            threadPool.shutdownNow();
+        }
+
+        assertThat(sentNonces).hasSize(50).isSorted().doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void shouldSendAsyncValueFactoryCallsOneAtATime() throws Exception {
+        final List<Long> arrivedNonces = Collections.synchronizedList(new ArrayList<Long>());
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final ExecutorService server = Executors.newFixedThreadPool(4);
+        final RestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, new ClientConfig(), "ok", 200) {
+            @Override
+            protected CompletableFuture<HttpTransportResponse> invokeHttpAsync(RestInvocation invocation) {
+                Long nonce = (Long) invocation.getParamValue(FormParam.class, "nonce");
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    arrivedNonces.add(nonce);
+                    inFlight.decrementAndGet();
+                    return null;
+                }, server);
+            }
+        };
+        final ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, testHandler);
+        final SynchronizedValueFactory<Long> vf = new LongValueFactory();
+
+        try {
+            List<CompletableFuture<String>> futures = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                futures.add(proxy.getNonceAsync(vf));
+            }
+            for (CompletableFuture<String> future : futures) {
+                future.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            server.shutdownNow();
+        }
+
+        assertThat(arrivedNonces).hasSize(30).isSorted().doesNotHaveDuplicates();
+        assertThat(maxInFlight.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldGenerateValuesHoldingTheFactoryMonitor() throws Exception {
+        TestRestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, new ClientConfig(), "{}", 200);
+        final ExampleService proxy = RestProxyFactory.createProxy(ExampleService.class, testHandler);
+        final SynchronizedValueFactory<Long> vf = new LongValueFactory();
+
+        Thread caller = new Thread(() -> proxy.getNonce(vf));
+        synchronized (vf) {
+            caller.start();
+            caller.join(200);
+            assertThat(caller.getState()).isEqualTo(Thread.State.BLOCKED);
+        }
+        caller.join(5000);
+
+        assertThat(caller.isAlive()).isFalse();
+        assertThat(testHandler.getInvocation().getParamValue(FormParam.class, "nonce")).isEqualTo(0L);
+    }
+
     @Test
     public void shouldDigestParmasOnEveryCall() {
         ClientConfig config = new ClientConfig();
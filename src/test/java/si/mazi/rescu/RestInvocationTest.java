@@ -35,6 +35,7 @@ import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.MediaType;
 import java.io.UnsupportedEncodingException;
 import java.lang.annotation.Annotation;
+import java.math.BigDecimal;
 import java.net.URLDecoder;
 import java.net.URLEncoder;
 import java.util.Arrays;
@@ -97,6 +98,32 @@ public class RestInvocationTest {
         assertEquals(invocation.getParamValue(FormParam.class, "nonce"), nonce);
     }
 
+    @Test
+    public void shouldResolveParamBindingsOnce() throws Exception {
+        RestMethodMetadata withdraw = RestMethodMetadata.create(
+                ExampleService.class.getMethod("withdrawBitcoin", String.class, String.class, BigDecimal.class, String.class), "http://example.com", "api");
+
+        assertThat(withdraw.getUnannotatedArgIndexes()).isEmpty();
+        assertThat(withdraw.getParamBindings())
+                .extracting(b -> b.paramType.getSimpleName() + ":" + b.name + ":" + b.argIndex)
+                .containsExactly("PathParam:user:0", "FormParam:password:1", "QueryParam:amount:2", "QueryParam:address:3");
+
+        RestMethodMetadata getInfo = RestMethodMetadata.create(
+                ExampleService.class.getMethod("getInfo", Long.class, Long.class), "http://example.com", "api");
+
+        assertThat(getInfo.getUnannotatedArgIndexes()).containsExactly(0, 1);
+        assertThat(getInfo.getParamBindings())
+                .extracting(b -> b.paramType.getSimpleName() + ":" + b.name + ":" + b.argIndex)
+                .containsExactly("FormParam:method:" + RestMethodMetadata.ParamBinding.METHOD_NAME);
+
+        RestInvocation invocation = RestInvocation.create(RequestWriterResolver.createDefault(null), withdraw,
+                new Object[] {"joe", "secret", new BigDecimal("1.5"), "1abc"}, null);
+
+        assertThat(invocation.getPath()).isEqualTo("api/bitcoin_withdrawal/joe");
+        assertThat(invocation.getParamValue(FormParam.class, "password")).isEqualTo("secret");
+        assertThat(invocation.getQueryString()).isEqualTo("amount=1.5&address=1abc");
+    }
+
     @Test
     public void testFormPostCollectionDefault() throws Exception {
         TestRestInvocationHandler testHandler = new TestRestInvocationHandler(ExampleService.class, new ClientConfig(), null, 200);
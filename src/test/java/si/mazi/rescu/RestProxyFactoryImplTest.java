@@ -2,7 +2,14 @@ package si.mazi.rescu;
 
 import org.testng.annotations.Test;
 
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.MediaType;
+import java.util.stream.Stream;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class RestProxyFactoryImplTest {
 
@@ -21,4 +28,42 @@ public class RestProxyFactoryImplTest {
 
         assertThat(proxy).isNotNull();
     }
+
+    @Test
+    public void shouldFailOnMisconfiguredMethodWhenCreatingProxy() {
+        IRestProxyFactory f = new RestProxyFactoryImpl();
+
+        assertThatThrownBy(() -> f.createProxy(MisconfiguredService.class, "http://example.com/api"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("withoutHttpMethod");
+    }
+
+    @Test
+    public void shouldFailOnStreamingMethodWhoseReaderCannotStreamWhenCreatingProxy() {
+        IRestProxyFactory f = new RestProxyFactoryImpl();
+
+        assertThatThrownBy(() -> f.createProxy(PlainTextStreamingService.class, "http://example.com/api"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("lines");
+    }
+
+    @Path("api")
+    public interface MisconfiguredService {
+
+        @GET
+        @Path("fine")
+        Object fine();
+
+        @Path("withoutHttpMethod")
+        Object withoutHttpMethod();
+    }
+
+    @Path("api")
+    public interface PlainTextStreamingService {
+
+        @GET
+        @Path("lines")
+        @Produces(MediaType.TEXT_PLAIN)
+        Stream<String> lines();
+    }
 }
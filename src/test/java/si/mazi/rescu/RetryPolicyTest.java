@@ -0,0 +1,202 @@
+package si.mazi.rescu;
+
+import com.sun.net.httpserver.HttpHandler;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import jakarta.ws.rs.GET;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class RetryPolicyTest {
+
+    private LocalHttpServer server;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        server = LocalHttpServer.start();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void shouldRetryTransientStatusWithFreshNonces() throws Exception {
+        server.on("/retried/get", failing(2, 503));
+        RetriedService proxy = createProxy(createPolicy(), new LongValueFactory());
+
+        assertThat(proxy.get()).isEqualTo("ok");
+
+        assertThat(server.getRequests()).hasSize(3);
+        assertThat(server.getRequests().stream().map(r -> r.query).distinct()).hasSize(3);
+    }
+
+    @Test
+    public void shouldGiveUpAfterMaxAttempts() {
+        server.on("/retried/get", 502, "bad gateway", "Content-Type", "text/plain");
+        RetryPolicy policy = createPolicy();
+        policy.setMaxAttempts(4);
+        RetriedService proxy = createProxy(policy, null);
+
+        Throwable failure = catchThrowable(proxy::get);
+
+        assertThat(failure).isInstanceOf(HttpStatusIOException.class);
+        assertThat(((HttpStatusIOException) failure).getHttpStatusCode()).isEqualTo(502);
+        assertThat(server.getRequests()).hasSize(4);
+    }
+
+    @Test
+    public void shouldNotRetryNonIdempotentMethods() {
+        server.on("/retried/post", failing(1, 503));
+        RetriedService proxy = createProxy(createPolicy(), null);
+
+        assertThat(catchThrowable(proxy::post)).isInstanceOf(HttpStatusIOException.class);
+        assertThat(server.getRequests()).hasSize(1);
+    }
+
+    @Test
+    public void shouldRetryMethodsDeclaredIdempotent() throws Exception {
+        server.on("/retried/post", failing(1, 503));
+        RetriedService proxy = createProxy(createPolicy(), null);
+
+        assertThat(proxy.postIdempotent()).isEqualTo("ok");
+        assertThat(server.getRequests()).hasSize(2);
+    }
+
+    @Test
+    public void shouldRetryOnlyAnnotatedMethodsWithoutPolicy() throws Exception {
+        server.on("/retried/get", failing(1, 503));
+        server.on("/retried/post", failing(1, 503));
+        RetriedService proxy = createProxy(null, null);
+
+        assertThat(catchThrowable(proxy::get)).isInstanceOf(HttpStatusIOException.class);
+        assertThat(proxy.postIdempotent()).isEqualTo("ok");
+        assertThat(server.getRequests()).hasSize(3);
+    }
+
+    @Test
+    public void shouldWaitAsLongAsRetryAfterSays() throws Exception {
+        server.on("/retried/get", failing(1, 429, "Retry-After", "1"));
+        RetriedService proxy = createProxy(createPolicy(), null);
+
+        long start = System.nanoTime();
+        assertThat(proxy.get()).isEqualTo("ok");
+
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(950));
+        assertThat(server.getRequests()).hasSize(2);
+    }
+
+    @Test
+    public void shouldNotRetryPastTheTimeBudget() {
+        server.on("/retried/get", failing(1, 503, "Retry-After", "60"));
+        RetriedService proxy = createProxy(createPolicy(), null);
+
+        assertThat(catchThrowable(proxy::get)).isInstanceOf(HttpStatusIOException.class);
+        assertThat(server.getRequests()).hasSize(1);
+    }
+
+    @Test
+    public void shouldStopRetryingWhenTheBudgetIsUsedUp() throws Exception {
+        server.on("/retried/get", 503, "unavailable", "Content-Type", "text/plain");
+        RetryPolicy policy = createPolicy();
+        policy.setRetryBudget(0, 2);
+        RetriedService proxy = createProxy(policy, null);
+
+        catchThrowable(proxy::get);
+        assertThat(server.getRequests()).hasSize(3);
+        assertThat(policy.getAvailableRetries()).isZero();
+
+        catchThrowable(proxy::get);
+        assertThat(server.getRequests()).hasSize(4);
+    }
+
+    @Test
+    public void shouldRetryAsyncCalls() throws Exception {
+        server.on("/retried/get", failing(2, 503));
+        RetriedService proxy = createProxy(createPolicy(), new LongValueFactory());
+
+        assertThat(proxy.getAsync().get(10, TimeUnit.SECONDS)).isEqualTo("ok");
+        assertThat(server.getRequests()).hasSize(3);
+        assertThat(server.getRequests().stream().map(r -> r.query).distinct()).hasSize(3);
+    }
+
+    @Test
+    public void shouldRetryIOExceptionsButNotClientSideLimits() {
+        RetryPolicy.Attempts attempts = createPolicy().new Plan(5).start();
+
+        assertThat(attempts.getRetryDelayNanos(new IOException("Connection reset"))).isNotNegative();
+        assertThat(attempts.getRetryDelayNanos(new RateLimitExceededException("test"))).isEqualTo(-1);
+        assertThat(attempts.getRetryDelayNanos(new ConcurrencyLimitExceededException("test"))).isEqualTo(-1);
+        assertThat(attempts.getRetryDelayNanos(new IllegalStateException())).isEqualTo(-1);
+        assertThat(attempts.getAttempt()).isEqualTo(2);
+    }
+
+    private static RetryPolicy createPolicy() {
+        RetryPolicy policy = new RetryPolicy();
+        policy.setBackoff(1, 10, TimeUnit.MILLISECONDS, 2);
+        policy.setMaxElapsed(5, TimeUnit.SECONDS);
+        return policy;
+    }
+
+    private RetriedService createProxy(RetryPolicy policy, SynchronizedValueFactory<Long> nonceFactory) {
+        ClientConfig config = new ClientConfig();
+        config.setRetryPolicy(policy);
+        if (nonceFactory != null) {
+            config.addDefaultParam(QueryParam.class, "nonce", nonceFactory);
+        }
+        return RestProxyFactory.createProxy(RetriedService.class, server.getBaseUrl(), config);
+    }
+
+    /**
+     * Responds with the status the first {@code failures} times, and with "ok" afterwards.
+     */
+    private static HttpHandler failing(int failures, int status, String... headerNameValues) {
+        AtomicInteger calls = new AtomicInteger();
+        return exchange -> {
+            if (calls.incrementAndGet() <= failures) {
+                String[] headers = new String[headerNameValues.length + 2];
+                System.arraycopy(headerNameValues, 0, headers, 0, headerNameValues.length);
+                headers[headerNameValues.length] = "Content-Type";
+                headers[headerNameValues.length + 1] = "text/plain";
+                LocalHttpServer.respond(status, "failure", headers).handle(exchange);
+            } else {
+                LocalHttpServer.respond(200, "ok", "Content-Type", "text/plain").handle(exchange);
+            }
+        };
+    }
+
+    @Path("retried")
+    @Produces(MediaType.TEXT_PLAIN)
+    public interface RetriedService {
+
+        @GET
+        @Path("get")
+        String get() throws IOException;
+
+        @GET
+        @Path("get")
+        CompletableFuture<String> getAsync();
+
+        @POST
+        @Path("post")
+        String post() throws IOException;
+
+        @POST
+        @Path("post")
+        @Retry(idempotent = true)
+        String postIdempotent() throws IOException;
+    }
+}
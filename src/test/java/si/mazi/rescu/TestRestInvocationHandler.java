@@ -24,7 +24,7 @@
 package si.mazi.rescu;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * NOT thread-safe
@@ -49,13 +49,24 @@ class TestRestInvocationHandler extends RestInvocationHandler {
     }
 
     @Override
-    protected HttpURLConnection invokeHttp(RestInvocation invocation) {
+    protected HttpTransportResponse invokeHttp(RestInvocation invocation) throws IOException {
         this.invocation = invocation;
         return null;
     }
 
     @Override
-    protected Object receiveAndMap(RestMethodMetadata methodMetadata, HttpURLConnection connection) throws IOException {
+    protected CompletableFuture<HttpTransportResponse> invokeHttpAsync(RestInvocation invocation) {
+        try {
+            return CompletableFuture.completedFuture(invokeHttp(invocation));
+        } catch (IOException e) {
+            CompletableFuture<HttpTransportResponse> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    @Override
+    protected Object receiveAndMap(RestMethodMetadata methodMetadata, HttpTransportResponse response) throws IOException {
         InvocationResult invocationResult = new InvocationResult(getResponseBody(), getResponseStatusCode());
         return mapInvocationResult(invocationResult, methodMetadata);
     }
@@ -34,6 +34,7 @@ import si.mazi.rescu.dto.GenericResult;
 
 import jakarta.ws.rs.core.MediaType;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -67,6 +68,67 @@ public class JacksonResponseReaderTest {
         assertThat(((DummyTicker) result).getVolume()).isEqualTo(34567L);
     }
     
+    @Test
+    public void testReadPreparedGenericType() throws Exception {
+        JacksonResponseReader reader = new JacksonResponseReader(createObjectMapper(), false);
+        RestMethodMetadata methodMetadata = RestMethodMetadata.create(ExampleService.class.getMethod("getGeneric"), "http://example.com", "api");
+        reader.prepare(methodMetadata);
+
+        for (int i = 0; i < 2; i++) {
+            InvocationResult invocationResult = new InvocationResult(
+                    ResourceUtils.getResourceAsString("/example-generic.json").getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, 200);
+
+            @SuppressWarnings("unchecked")
+            GenericResult<DummyTicker[]> result = (GenericResult<DummyTicker[]>) reader.read(invocationResult, methodMetadata);
+
+            assertThat(result.getResult()).hasSize(2);
+            assertThat(result.getResult()[1].getVolume()).isEqualTo(8910);
+        }
+    }
+
+    @Test
+    public void testReadBytes() throws Exception {
+        JacksonResponseReader reader = new JacksonResponseReader(createObjectMapper(), true);
+
+        InvocationResult invocationResult = new InvocationResult(
+                ResourceUtils.getResourceAsString("/example-ticker.json").getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, 200);
+
+        Object result = reader.read(invocationResult,
+                new RestMethodMetadata(DummyTicker.class, HttpMethod.GET, null, null, null,
+                        RuntimeException.class, null, MediaType.APPLICATION_JSON, null, null, null));
+
+        assertThat(((DummyTicker) result).getVolume()).isEqualTo(34567L);
+    }
+
+    @Test
+    public void testReadBytesInOtherCharset() throws Exception {
+        JacksonResponseReader reader = new JacksonResponseReader(createObjectMapper(), true);
+
+        InvocationResult invocationResult = new InvocationResult(
+                "{\"name\":\"Žiga\"}".getBytes(StandardCharsets.UTF_16LE), StandardCharsets.UTF_16LE, 200);
+
+        Object result = reader.read(invocationResult,
+                new RestMethodMetadata(Map.class, HttpMethod.GET, null, null, null,
+                        RuntimeException.class, null, MediaType.APPLICATION_JSON, null, null, null));
+
+        assertThat(((Map) result).get("name")).isEqualTo("Žiga");
+    }
+
+    @Test
+    public void testExceptionReadFromBytes() throws Exception {
+        JacksonResponseReader reader = new JacksonResponseReader(createObjectMapper(), false);
+
+        InvocationResult invocationResult = new InvocationResult(
+                ResourceUtils.getResourceAsString("/error.json").getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, 500);
+
+        ExampleException e = ExceptionUtils.catchException(ExampleException.class,
+                () -> reader.read(invocationResult, new RestMethodMetadata(DummyTicker.class, HttpMethod.GET, null, null, null,
+                        ExampleException.class, null, MediaType.APPLICATION_JSON, null, null, null))
+        );
+        assertThat(e.getError()).isEqualTo("Order not found");
+        assertThat(e.getHttpStatusCode()).isEqualTo(500);
+    }
+
     @Test
     public void testExceptionRead() throws Exception {
         JacksonResponseReader reader = new JacksonResponseReader(createObjectMapper(), false);